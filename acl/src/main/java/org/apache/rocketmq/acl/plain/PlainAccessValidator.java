@@ -28,7 +28,9 @@ import org.apache.rocketmq.acl.common.Permission;
 import org.apache.rocketmq.acl.common.SessionCredentials;
 import org.apache.rocketmq.common.PlainAccessConfig;
 import org.apache.rocketmq.common.protocol.RequestCode;
+import org.apache.rocketmq.common.protocol.body.PullMessageBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.GetConsumerListByGroupRequestHeader;
+import org.apache.rocketmq.common.protocol.header.PullMessageRequestHeader;
 import org.apache.rocketmq.common.protocol.header.UnregisterClientRequestHeader;
 import org.apache.rocketmq.common.protocol.header.UpdateConsumerOffsetRequestHeader;
 import org.apache.rocketmq.common.protocol.heartbeat.ConsumerData;
@@ -82,6 +84,15 @@ public class PlainAccessValidator implements AccessValidator {
                     accessResource.addResourceAndPerm(request.getExtFields().get("topic"), Permission.SUB);
                     accessResource.addResourceAndPerm(getRetryTopic(request.getExtFields().get("consumerGroup")), Permission.SUB);
                     break;
+                case RequestCode.PULL_MESSAGE_BATCH:
+                    // the request headers are in the body, which is signed as a whole
+                    PullMessageBatchRequestBody pullMessageBatchRequestBody =
+                        PullMessageBatchRequestBody.decode(request.getBody(), PullMessageBatchRequestBody.class);
+                    for (PullMessageRequestHeader requestHeader : pullMessageBatchRequestBody.getRequestHeaderList()) {
+                        accessResource.addResourceAndPerm(requestHeader.getTopic(), Permission.SUB);
+                        accessResource.addResourceAndPerm(getRetryTopic(requestHeader.getConsumerGroup()), Permission.SUB);
+                    }
+                    break;
                 case RequestCode.QUERY_MESSAGE:
                     accessResource.addResourceAndPerm(request.getExtFields().get("topic"), Permission.SUB);
                     break;
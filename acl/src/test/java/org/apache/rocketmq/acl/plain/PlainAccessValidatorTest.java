@@ -31,6 +31,7 @@ import org.apache.rocketmq.acl.common.AclUtils;
 import org.apache.rocketmq.acl.common.SessionCredentials;
 import org.apache.rocketmq.common.PlainAccessConfig;
 import org.apache.rocketmq.common.protocol.RequestCode;
+import org.apache.rocketmq.common.protocol.body.PullMessageBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.*;
 import org.apache.rocketmq.common.protocol.heartbeat.ConsumerData;
 import org.apache.rocketmq.common.protocol.heartbeat.HeartbeatData;
@@ -153,6 +154,32 @@ public class PlainAccessValidatorTest {
         plainAccessValidator.validate(accessResource);
     }
 
+    @Test
+    public void validatePullMessageBatchTest() {
+        List<PullMessageRequestHeader> requestHeaderList = new ArrayList<>();
+        for (String topic : new String[] {"topicB", "topicC"}) {
+            PullMessageRequestHeader pullMessageRequestHeader = new PullMessageRequestHeader();
+            pullMessageRequestHeader.setTopic(topic);
+            pullMessageRequestHeader.setConsumerGroup("consumerGroupA");
+            requestHeaderList.add(pullMessageRequestHeader);
+        }
+        PullMessageBatchRequestBody requestBody = new PullMessageBatchRequestBody();
+        requestBody.setRequestHeaderList(requestHeaderList);
+        RemotingCommand remotingCommand = RemotingCommand.createRequestCommand(RequestCode.PULL_MESSAGE_BATCH, null);
+        remotingCommand.setBody(requestBody.encode());
+        aclClient.doBeforeRequest("", remotingCommand);
+        ByteBuffer buf = remotingCommand.encode();
+        buf.getInt();
+        buf = ByteBuffer.allocate(buf.limit() - buf.position()).put(buf);
+        buf.position(0);
+        PlainAccessResource accessResource = (PlainAccessResource) plainAccessValidator.parse(RemotingCommand.decode(buf), "192.168.0.1:9876");
+        Assert.assertEquals(3, accessResource.getResourcePermMap().size());
+        Assert.assertTrue(accessResource.getResourcePermMap().containsKey("topicB"));
+        Assert.assertTrue(accessResource.getResourcePermMap().containsKey("topicC"));
+        Assert.assertTrue(accessResource.getResourcePermMap().containsKey(PlainAccessResource.getRetryTopic("consumerGroupA")));
+        plainAccessValidator.validate(accessResource);
+    }
+
     @Test
     public void validateConsumeMessageBackTest() {
         ConsumerSendMsgBackRequestHeader consumerSendMsgBackRequestHeader=new ConsumerSendMsgBackRequestHeader();
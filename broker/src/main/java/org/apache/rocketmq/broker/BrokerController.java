@@ -47,10 +47,15 @@ import org.apache.rocketmq.broker.filter.ConsumerFilterManager;
 import org.apache.rocketmq.broker.filtersrv.FilterServerManager;
 import org.apache.rocketmq.broker.latency.BrokerFastFailure;
 import org.apache.rocketmq.broker.latency.BrokerFixedThreadPoolExecutor;
+import org.apache.rocketmq.broker.latency.BrokerRateLimiter;
+import org.apache.rocketmq.broker.latency.TenantFairQueue;
 import org.apache.rocketmq.broker.longpolling.NotifyMessageArrivingListener;
 import org.apache.rocketmq.broker.longpolling.PullRequestHoldService;
+import org.apache.rocketmq.broker.metrics.BrokerMetricsCollector;
 import org.apache.rocketmq.broker.mqtrace.ConsumeMessageHook;
 import org.apache.rocketmq.broker.mqtrace.SendMessageHook;
+import org.apache.rocketmq.broker.offset.ConsumerLagHistoryManager;
+import org.apache.rocketmq.broker.offset.ConsumerLagIndex;
 import org.apache.rocketmq.broker.offset.ConsumerOffsetManager;
 import org.apache.rocketmq.broker.out.BrokerOuterAPI;
 import org.apache.rocketmq.broker.plugin.MessageStoreFactory;
@@ -68,6 +73,7 @@ import org.apache.rocketmq.broker.topic.TopicConfigManager;
 import org.apache.rocketmq.broker.transaction.AbstractTransactionalMessageCheckListener;
 import org.apache.rocketmq.broker.transaction.TransactionalMessageCheckService;
 import org.apache.rocketmq.broker.transaction.TransactionalMessageService;
+import org.apache.rocketmq.broker.transaction.file.FileTransactionalMessageService;
 import org.apache.rocketmq.broker.transaction.queue.DefaultTransactionalMessageCheckListener;
 import org.apache.rocketmq.broker.transaction.queue.TransactionalMessageBridge;
 import org.apache.rocketmq.broker.transaction.queue.TransactionalMessageServiceImpl;
@@ -80,6 +86,8 @@ import org.apache.rocketmq.common.TopicConfig;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.common.constant.PermName;
+import org.apache.rocketmq.common.metrics.MetricsHttpServer;
+import org.apache.rocketmq.common.metrics.MetricsRegistry;
 import org.apache.rocketmq.common.namesrv.RegisterBrokerResult;
 import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
@@ -105,6 +113,7 @@ import org.apache.rocketmq.store.config.MessageStoreConfig;
 import org.apache.rocketmq.store.dledger.DLedgerCommitLog;
 import org.apache.rocketmq.store.stats.BrokerStats;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.apache.rocketmq.store.stats.StoreMetricsCollector;
 
 public class BrokerController {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
@@ -115,6 +124,8 @@ public class BrokerController {
     private final NettyClientConfig nettyClientConfig;
     private final MessageStoreConfig messageStoreConfig;
     private final ConsumerOffsetManager consumerOffsetManager;
+    private final ConsumerLagIndex consumerLagIndex;
+    private final ConsumerLagHistoryManager consumerLagHistoryManager;
     private final ConsumerManager consumerManager;
     private final ConsumerFilterManager consumerFilterManager;
     private final ProducerManager producerManager;
@@ -129,6 +140,8 @@ public class BrokerController {
     private final BrokerOuterAPI brokerOuterAPI;
     private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl(
         "BrokerControllerScheduledThread"));
+    private final ScheduledExecutorService consumerLagSampleExecutor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryImpl("ConsumerLagSampleThread"));
     private final SlaveSynchronize slaveSynchronize;
     private final BlockingQueue<Runnable> sendThreadPoolQueue;
     private final BlockingQueue<Runnable> pullThreadPoolQueue;
@@ -137,8 +150,11 @@ public class BrokerController {
     private final BlockingQueue<Runnable> heartbeatThreadPoolQueue;
     private final BlockingQueue<Runnable> consumerManagerThreadPoolQueue;
     private final BlockingQueue<Runnable> endTransactionThreadPoolQueue;
+    private final BlockingQueue<Runnable> putThreadPoolQueue;
     private final FilterServerManager filterServerManager;
     private final BrokerStatsManager brokerStatsManager;
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+    private MetricsHttpServer metricsHttpServer;
     private final List<SendMessageHook> sendMessageHookList = new ArrayList<SendMessageHook>();
     private final List<ConsumeMessageHook> consumeMessageHookList = new ArrayList<ConsumeMessageHook>();
     private MessageStore messageStore;
@@ -146,6 +162,7 @@ public class BrokerController {
     private RemotingServer fastRemotingServer;
     private TopicConfigManager topicConfigManager;
     private ExecutorService sendMessageExecutor;
+    private ExecutorService putMessageFutureExecutor;
     private ExecutorService pullMessageExecutor;
     private ExecutorService queryMessageExecutor;
     private ExecutorService adminBrokerExecutor;
@@ -157,6 +174,7 @@ public class BrokerController {
     private BrokerStats brokerStats;
     private InetSocketAddress storeHost;
     private BrokerFastFailure brokerFastFailure;
+    private final BrokerRateLimiter brokerRateLimiter;
     private Configuration configuration;
     private FileWatchService fileWatchService;
     private TransactionalMessageCheckService transactionalMessageCheckService;
@@ -176,6 +194,8 @@ public class BrokerController {
         this.nettyClientConfig = nettyClientConfig;
         this.messageStoreConfig = messageStoreConfig;
         this.consumerOffsetManager = new ConsumerOffsetManager(this);
+        this.consumerLagIndex = new ConsumerLagIndex(this);
+        this.consumerLagHistoryManager = new ConsumerLagHistoryManager(this);
         this.topicConfigManager = new TopicConfigManager(this);
         this.pullMessageProcessor = new PullMessageProcessor(this);
         this.pullRequestHoldService = new PullRequestHoldService(this);
@@ -192,18 +212,28 @@ public class BrokerController {
 
         this.slaveSynchronize = new SlaveSynchronize(this);
 
-        this.sendThreadPoolQueue = new LinkedBlockingQueue<Runnable>(this.brokerConfig.getSendThreadPoolQueueCapacity());
-        this.pullThreadPoolQueue = new LinkedBlockingQueue<Runnable>(this.brokerConfig.getPullThreadPoolQueueCapacity());
-        this.queryThreadPoolQueue = new LinkedBlockingQueue<Runnable>(this.brokerConfig.getQueryThreadPoolQueueCapacity());
+        if (this.brokerConfig.isTenantFairQueueEnable()) {
+            this.sendThreadPoolQueue = new TenantFairQueue(this.brokerConfig.getSendThreadPoolQueueCapacity(), this.brokerConfig);
+            this.pullThreadPoolQueue = new TenantFairQueue(this.brokerConfig.getPullThreadPoolQueueCapacity(), this.brokerConfig);
+            this.queryThreadPoolQueue = new TenantFairQueue(this.brokerConfig.getQueryThreadPoolQueueCapacity(), this.brokerConfig);
+        } else {
+            this.sendThreadPoolQueue = new LinkedBlockingQueue<Runnable>(this.brokerConfig.getSendThreadPoolQueueCapacity());
+            this.pullThreadPoolQueue = new LinkedBlockingQueue<Runnable>(this.brokerConfig.getPullThreadPoolQueueCapacity());
+            this.queryThreadPoolQueue = new LinkedBlockingQueue<Runnable>(this.brokerConfig.getQueryThreadPoolQueueCapacity());
+        }
         this.clientManagerThreadPoolQueue = new LinkedBlockingQueue<Runnable>(this.brokerConfig.getClientManagerThreadPoolQueueCapacity());
         this.consumerManagerThreadPoolQueue = new LinkedBlockingQueue<Runnable>(this.brokerConfig.getConsumerManagerThreadPoolQueueCapacity());
         this.heartbeatThreadPoolQueue = new LinkedBlockingQueue<Runnable>(this.brokerConfig.getHeartbeatThreadPoolQueueCapacity());
         this.endTransactionThreadPoolQueue = new LinkedBlockingQueue<Runnable>(this.brokerConfig.getEndTransactionPoolQueueCapacity());
+        this.putThreadPoolQueue = new LinkedBlockingQueue<Runnable>(this.brokerConfig.getPutThreadPoolQueueCapacity());
 
-        this.brokerStatsManager = new BrokerStatsManager(this.brokerConfig.getBrokerClusterName());
+        this.brokerStatsManager = new BrokerStatsManager(this.brokerConfig.getBrokerClusterName(),
+            this.brokerConfig.getMaxLatencyStatsKeys());
         this.setStoreHost(new InetSocketAddress(this.getBrokerConfig().getBrokerIP1(), this.getNettyServerConfig().getListenPort()));
 
         this.brokerFastFailure = new BrokerFastFailure(this);
+        this.brokerRateLimiter = new BrokerRateLimiter(this.brokerConfig);
+        this.metricsRegistry.register(new BrokerMetricsCollector(this));
         this.configuration = new Configuration(
             log,
             BrokerPathConfigHelper.getBrokerConfigPath(),
@@ -219,6 +249,10 @@ public class BrokerController {
         return nettyServerConfig;
     }
 
+    public BlockingQueue<Runnable> getPutThreadPoolQueue() {
+        return putThreadPoolQueue;
+    }
+
     public BlockingQueue<Runnable> getPullThreadPoolQueue() {
         return pullThreadPoolQueue;
     }
@@ -227,6 +261,14 @@ public class BrokerController {
         return queryThreadPoolQueue;
     }
 
+    public BlockingQueue<Runnable> getClientManagerThreadPoolQueue() {
+        return clientManagerThreadPoolQueue;
+    }
+
+    public BlockingQueue<Runnable> getConsumerManagerThreadPoolQueue() {
+        return consumerManagerThreadPoolQueue;
+    }
+
     public boolean initialize() throws CloneNotSupportedException {
         boolean result = this.topicConfigManager.load();
 
@@ -244,10 +286,12 @@ public class BrokerController {
                     ((DLedgerCommitLog)((DefaultMessageStore) messageStore).getCommitLog()).getdLedgerServer().getdLedgerLeaderElector().addRoleChangeHandler(roleChangeHandler);
                 }
                 this.brokerStats = new BrokerStats((DefaultMessageStore) this.messageStore);
+                this.metricsRegistry.register(new StoreMetricsCollector((DefaultMessageStore) this.messageStore));
                 //load plugin
                 MessageStorePluginContext context = new MessageStorePluginContext(messageStoreConfig, brokerStatsManager, messageArrivingListener, brokerConfig);
                 this.messageStore = MessageStoreFactory.build(context, this.messageStore);
                 this.messageStore.getDispatcherList().addFirst(new CommitLogDispatcherCalcBitMap(this.brokerConfig, this.consumerFilterManager));
+                this.messageStore.getDispatcherList().addLast(this.consumerLagIndex);
             } catch (IOException e) {
                 result = false;
                 log.error("Failed to initialize", e);
@@ -269,6 +313,14 @@ public class BrokerController {
                 this.sendThreadPoolQueue,
                 new ThreadFactoryImpl("SendMessageThread_"));
 
+            this.putMessageFutureExecutor = new BrokerFixedThreadPoolExecutor(
+                this.brokerConfig.getPutMessageFutureThreadPoolNums(),
+                this.brokerConfig.getPutMessageFutureThreadPoolNums(),
+                1000 * 60,
+                TimeUnit.MILLISECONDS,
+                this.putThreadPoolQueue,
+                new ThreadFactoryImpl("PutMessageFutureExecutor_"));
+
             this.pullMessageExecutor = new BrokerFixedThreadPoolExecutor(
                 this.brokerConfig.getPullMessageThreadPoolNums(),
                 this.brokerConfig.getPullMessageThreadPoolNums(),
@@ -376,6 +428,36 @@ public class BrokerController {
                 }
             }, 10, 1, TimeUnit.SECONDS);
 
+            this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        BrokerController.this.consumerLagIndex.evictIdleTimelines();
+                    } catch (Throwable e) {
+                        log.error("schedule evict idle consumer lag timelines error.", e);
+                    }
+                }
+            }, 1, 1, TimeUnit.MINUTES);
+
+            final long lagSampleInterval = this.brokerConfig.getConsumerLagSampleInterval();
+            if (lagSampleInterval > 0) {
+                // samples are taken at multiples of the interval, so that the samples of brokers line up, on an executor
+                // of their own as computing the lag of all groups may take a while
+                final long now = System.currentTimeMillis();
+                this.consumerLagSampleExecutor.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            // to the nearest multiple, a run slightly early or late is still stamped with its own
+                            long timestamp = System.currentTimeMillis() + lagSampleInterval / 2;
+                            BrokerController.this.consumerLagHistoryManager.sample(timestamp - timestamp % lagSampleInterval);
+                        } catch (Throwable e) {
+                            log.error("schedule sample consumer lag error.", e);
+                        }
+                    }
+                }, lagSampleInterval - now % lagSampleInterval, lagSampleInterval, TimeUnit.MILLISECONDS);
+            }
+
             this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
 
                 @Override
@@ -467,16 +549,19 @@ public class BrokerController {
                     log.warn("FileWatchService created error, can't load the certificate dynamically");
                 }
             }
-            initialTransaction();
+            result = initialTransaction();
             initialAcl();
             initialRpcHooks();
         }
         return result;
     }
 
-    private void initialTransaction() {
+    private boolean initialTransaction() {
         this.transactionalMessageService = ServiceProvider.loadClass(ServiceProvider.TRANSACTION_SERVICE_ID, TransactionalMessageService.class);
-        if (null == this.transactionalMessageService) {
+        if (null == this.transactionalMessageService && this.brokerConfig.isTransactionStateLogEnable()) {
+            this.transactionalMessageService = new FileTransactionalMessageService(new TransactionalMessageBridge(this, this.getMessageStore()));
+            log.info("Load transaction message service: {}", FileTransactionalMessageService.class.getSimpleName());
+        } else if (null == this.transactionalMessageService) {
             this.transactionalMessageService = new TransactionalMessageServiceImpl(new TransactionalMessageBridge(this, this.getMessageStore()));
             log.warn("Load default transaction message hook service: {}", TransactionalMessageServiceImpl.class.getSimpleName());
         }
@@ -487,6 +572,11 @@ public class BrokerController {
         }
         this.transactionalMessageCheckListener.setBrokerController(this);
         this.transactionalMessageCheckService = new TransactionalMessageCheckService(this);
+        if (!this.transactionalMessageService.open()) {
+            log.error("Open transaction message service failed");
+            return false;
+        }
+        return true;
     }
 
     private void initialAcl() {
@@ -551,6 +641,7 @@ public class BrokerController {
          * PullMessageProcessor
          */
         this.remotingServer.registerProcessor(RequestCode.PULL_MESSAGE, this.pullMessageProcessor, this.pullMessageExecutor);
+        this.remotingServer.registerProcessor(RequestCode.PULL_MESSAGE_BATCH, this.pullMessageProcessor, this.pullMessageExecutor);
         this.pullMessageProcessor.registerConsumeMessageHook(consumeMessageHookList);
 
         /**
@@ -568,10 +659,12 @@ public class BrokerController {
          */
         ClientManageProcessor clientProcessor = new ClientManageProcessor(this);
         this.remotingServer.registerProcessor(RequestCode.HEART_BEAT, clientProcessor, this.heartbeatExecutor);
+        this.remotingServer.registerProcessor(RequestCode.HEART_BEAT_LITE, clientProcessor, this.heartbeatExecutor);
         this.remotingServer.registerProcessor(RequestCode.UNREGISTER_CLIENT, clientProcessor, this.clientManageExecutor);
         this.remotingServer.registerProcessor(RequestCode.CHECK_CLIENT_CONFIG, clientProcessor, this.clientManageExecutor);
 
         this.fastRemotingServer.registerProcessor(RequestCode.HEART_BEAT, clientProcessor, this.heartbeatExecutor);
+        this.fastRemotingServer.registerProcessor(RequestCode.HEART_BEAT_LITE, clientProcessor, this.heartbeatExecutor);
         this.fastRemotingServer.registerProcessor(RequestCode.UNREGISTER_CLIENT, clientProcessor, this.clientManageExecutor);
         this.fastRemotingServer.registerProcessor(RequestCode.CHECK_CLIENT_CONFIG, clientProcessor, this.clientManageExecutor);
 
@@ -592,6 +685,8 @@ public class BrokerController {
          */
         this.remotingServer.registerProcessor(RequestCode.END_TRANSACTION, new EndTransactionProcessor(this), this.endTransactionExecutor);
         this.fastRemotingServer.registerProcessor(RequestCode.END_TRANSACTION, new EndTransactionProcessor(this), this.endTransactionExecutor);
+        this.remotingServer.registerProcessor(RequestCode.END_TRANSACTION_BATCH, new EndTransactionProcessor(this), this.endTransactionExecutor);
+        this.fastRemotingServer.registerProcessor(RequestCode.END_TRANSACTION_BATCH, new EndTransactionProcessor(this), this.endTransactionExecutor);
 
         /**
          * Default
@@ -694,6 +789,14 @@ public class BrokerController {
         return consumerOffsetManager;
     }
 
+    public ConsumerLagIndex getConsumerLagIndex() {
+        return consumerLagIndex;
+    }
+
+    public ConsumerLagHistoryManager getConsumerLagHistoryManager() {
+        return consumerLagHistoryManager;
+    }
+
     public MessageStoreConfig getMessageStoreConfig() {
         return messageStoreConfig;
     }
@@ -719,6 +822,10 @@ public class BrokerController {
     }
 
     public void shutdown() {
+        if (this.metricsHttpServer != null) {
+            this.metricsHttpServer.shutdown();
+        }
+
         if (this.brokerStatsManager != null) {
             this.brokerStatsManager.shutdown();
         }
@@ -743,6 +850,8 @@ public class BrokerController {
             this.fileWatchService.shutdown();
         }
 
+        this.consumerLagSampleExecutor.shutdown();
+
         if (this.messageStore != null) {
             this.messageStore.shutdown();
         }
@@ -759,6 +868,10 @@ public class BrokerController {
             this.sendMessageExecutor.shutdown();
         }
 
+        if (this.putMessageFutureExecutor != null) {
+            this.putMessageFutureExecutor.shutdown();
+        }
+
         if (this.pullMessageExecutor != null) {
             this.pullMessageExecutor.shutdown();
         }
@@ -772,6 +885,7 @@ public class BrokerController {
         }
 
         this.consumerOffsetManager.persist();
+        this.consumerOffsetManager.shutdown();
 
         if (this.filterServerManager != null) {
             this.filterServerManager.shutdown();
@@ -803,6 +917,9 @@ public class BrokerController {
         if (this.transactionalMessageCheckService != null) {
             this.transactionalMessageCheckService.shutdown(false);
         }
+        if (this.transactionalMessageService != null) {
+            this.transactionalMessageService.close();
+        }
 
         if (this.endTransactionExecutor != null) {
             this.endTransactionExecutor.shutdown();
@@ -883,6 +1000,11 @@ public class BrokerController {
             this.brokerFastFailure.start();
         }
 
+        if (this.brokerConfig.isMetricsExporterEnable()) {
+            this.metricsHttpServer = new MetricsHttpServer(this.metricsRegistry, this.brokerConfig.getMetricsExporterPort());
+            this.metricsHttpServer.start();
+        }
+
 
     }
 
@@ -901,7 +1023,7 @@ public class BrokerController {
         topicConfigSerializeWrapper.setDataVersion(dataVersion);
         topicConfigSerializeWrapper.setTopicConfigTable(topicConfigTable);
 
-        doRegisterBrokerAll(true, false, topicConfigSerializeWrapper);
+        doRegisterBrokerAll(true, false, topicConfigSerializeWrapper, true);
     }
 
     public synchronized void registerBrokerAll(final boolean checkOrderConfig, boolean oneway, boolean forceRegister) {
@@ -924,12 +1046,12 @@ public class BrokerController {
             this.brokerConfig.getBrokerName(),
             this.brokerConfig.getBrokerId(),
             this.brokerConfig.getRegisterBrokerTimeoutMills())) {
-            doRegisterBrokerAll(checkOrderConfig, oneway, topicConfigWrapper);
+            doRegisterBrokerAll(checkOrderConfig, oneway, topicConfigWrapper, false);
         }
     }
 
     private void doRegisterBrokerAll(boolean checkOrderConfig, boolean oneway,
-        TopicConfigSerializeWrapper topicConfigWrapper) {
+        TopicConfigSerializeWrapper topicConfigWrapper, boolean increment) {
         List<RegisterBrokerResult> registerBrokerResultList = this.brokerOuterAPI.registerBrokerAll(
             this.brokerConfig.getBrokerClusterName(),
             this.getBrokerAddr(),
@@ -940,7 +1062,9 @@ public class BrokerController {
             this.filterServerManager.buildNewFilterServerList(),
             oneway,
             this.brokerConfig.getRegisterBrokerTimeoutMills(),
-            this.brokerConfig.isCompressedRegister());
+            this.brokerConfig.isCompressedRegister(),
+            this.brokerConfig.isDeltaRegister(),
+            increment);
 
         if (registerBrokerResultList.size() > 0) {
             RegisterBrokerResult registerBrokerResult = registerBrokerResultList.get(0);
@@ -996,6 +1120,10 @@ public class BrokerController {
         return slaveSynchronize;
     }
 
+    public ExecutorService getPutMessageFutureExecutor() {
+        return putMessageFutureExecutor;
+    }
+
     public ExecutorService getPullMessageExecutor() {
         return pullMessageExecutor;
     }
@@ -1012,10 +1140,18 @@ public class BrokerController {
         return filterServerManager;
     }
 
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
     public BrokerStatsManager getBrokerStatsManager() {
         return brokerStatsManager;
     }
 
+    public BrokerRateLimiter getBrokerRateLimiter() {
+        return brokerRateLimiter;
+    }
+
     public List<SendMessageHook> getSendMessageHookList() {
         return sendMessageHookList;
     }
@@ -25,6 +25,7 @@ public class ClientChannelInfo {
     private final LanguageCode language;
     private final int version;
     private volatile long lastUpdateTimestamp = System.currentTimeMillis();
+    private volatile Integer heartbeatFingerprint;
 
     public ClientChannelInfo(Channel channel) {
         this(channel, null, null, 0);
@@ -61,6 +62,14 @@ public class ClientChannelInfo {
         this.lastUpdateTimestamp = lastUpdateTimestamp;
     }
 
+    public Integer getHeartbeatFingerprint() {
+        return heartbeatFingerprint;
+    }
+
+    public void setHeartbeatFingerprint(Integer heartbeatFingerprint) {
+        this.heartbeatFingerprint = heartbeatFingerprint;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timing wheel of the client channels of groups by the time they expire at.
+ * <p>
+ * Heartbeats only refresh the timestamp of a channel. A channel is checked once the wheel reaches the time it would
+ * expire at as of its previous check, and is scheduled again if a heartbeat came in meanwhile, so an expiration scan
+ * only visits the channels due instead of every channel. Channels unregistered or closed meanwhile are still returned
+ * once due, callers drop the ones no longer registered.
+ */
+public class ClientChannelTimeoutWheel {
+    private final long timeoutMillis;
+    private final long tickMillis;
+    private final List<Queue<Timeout>> slots;
+    private volatile long lastExpiredTick;
+
+    public ClientChannelTimeoutWheel(final long timeoutMillis, final long tickMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.tickMillis = tickMillis;
+        int slotCount = (int) (timeoutMillis / tickMillis) + 1;
+        this.slots = new ArrayList<Queue<Timeout>>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            this.slots.add(new ConcurrentLinkedQueue<Timeout>());
+        }
+        this.lastExpiredTick = System.currentTimeMillis() / tickMillis - 1;
+    }
+
+    /**
+     * Schedule a newly registered channel, to expire {@code timeoutMillis} after its last update.
+     */
+    public void schedule(final String group, final ClientChannelInfo clientChannelInfo) {
+        Timeout timeout = new Timeout(group, clientChannelInfo);
+        this.schedule(timeout, timeout.deadline(), this.lastExpiredTick + 1);
+    }
+
+    /**
+     * Advance the wheel to {@code now}.
+     *
+     * @return the channels not updated for {@code timeoutMillis}
+     */
+    public synchronized List<Timeout> expire(final long now) {
+        List<Timeout> expired = new ArrayList<Timeout>();
+        final long nowTick = now / this.tickMillis;
+        // each slot is visited at most once, a slot holds every timeout due at its ticks
+        for (long tick = Math.max(this.lastExpiredTick + 1, nowTick - this.slots.size() + 1); tick <= nowTick; tick++) {
+            this.lastExpiredTick = tick;
+            Queue<Timeout> slot = this.slots.get((int) (tick % this.slots.size()));
+            List<Timeout> due = new ArrayList<Timeout>();
+            Timeout timeout;
+            while ((timeout = slot.poll()) != null) {
+                due.add(timeout);
+            }
+            for (Timeout t : due) {
+                long deadline = t.deadline();
+                if (deadline <= now) {
+                    expired.add(t);
+                } else {
+                    this.schedule(t, deadline, nowTick + 1);
+                }
+            }
+        }
+        return expired;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    private void schedule(final Timeout timeout, final long deadline, final long minTick) {
+        long tick = Math.max(deadline / this.tickMillis, minTick);
+        this.slots.get((int) (tick % this.slots.size())).add(timeout);
+    }
+
+    public class Timeout {
+        private final String group;
+        private final ClientChannelInfo clientChannelInfo;
+
+        Timeout(final String group, final ClientChannelInfo clientChannelInfo) {
+            this.group = group;
+            this.clientChannelInfo = clientChannelInfo;
+        }
+
+        long deadline() {
+            return this.clientChannelInfo.getLastUpdateTimestamp() + timeoutMillis;
+        }
+
+        public String getGroup() {
+            return group;
+        }
+
+        public ClientChannelInfo getClientChannelInfo() {
+            return clientChannelInfo;
+        }
+    }
+}
@@ -141,11 +141,26 @@ public class ConsumerGroupInfo {
         }
 
         this.lastUpdateTimestamp = System.currentTimeMillis();
+        infoOld.setHeartbeatFingerprint(infoNew.getHeartbeatFingerprint());
         infoOld.setLastUpdateTimestamp(this.lastUpdateTimestamp);
 
         return updated;
     }
 
+    /**
+     * Refresh the channel on a lite heartbeat, unless it registered heartbeat data of another fingerprint.
+     */
+    public boolean refreshChannel(final Channel channel, final int heartbeatFingerprint) {
+        ClientChannelInfo info = this.channelInfoTable.get(channel);
+        if (null == info || null == info.getHeartbeatFingerprint() || info.getHeartbeatFingerprint() != heartbeatFingerprint) {
+            return false;
+        }
+
+        this.lastUpdateTimestamp = System.currentTimeMillis();
+        info.setLastUpdateTimestamp(this.lastUpdateTimestamp);
+        return true;
+    }
+
     public boolean updateSubscription(final Set<SubscriptionData> subList) {
         boolean updated = false;
 
@@ -36,8 +36,13 @@ import org.apache.rocketmq.remoting.common.RemotingUtil;
 public class ConsumerManager {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
     private static final long CHANNEL_EXPIRED_TIMEOUT = 1000 * 120;
+    private static final long CHANNEL_EXPIRED_TICK_MILLIS = 1000;
     private final ConcurrentMap<String/* Group */, ConsumerGroupInfo> consumerTable =
         new ConcurrentHashMap<String, ConsumerGroupInfo>(1024);
+    private final ConcurrentMap<Channel, Set<String/* Group */>> channelGroupTable =
+        new ConcurrentHashMap<Channel, Set<String>>(1024);
+    private final ClientChannelTimeoutWheel timeoutWheel =
+        new ClientChannelTimeoutWheel(CHANNEL_EXPIRED_TIMEOUT, CHANNEL_EXPIRED_TICK_MILLIS);
     private final ConsumerIdsChangeListener consumerIdsChangeListener;
 
     public ConsumerManager(final ConsumerIdsChangeListener consumerIdsChangeListener) {
@@ -75,22 +80,19 @@ public class ConsumerManager {
     }
 
     public void doChannelCloseEvent(final String remoteAddr, final Channel channel) {
-        Iterator<Entry<String, ConsumerGroupInfo>> it = this.consumerTable.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<String, ConsumerGroupInfo> next = it.next();
-            ConsumerGroupInfo info = next.getValue();
-            boolean removed = info.doChannelCloseEvent(remoteAddr, channel);
-            if (removed) {
-                if (info.getChannelInfoTable().isEmpty()) {
-                    ConsumerGroupInfo remove = this.consumerTable.remove(next.getKey());
-                    if (remove != null) {
-                        log.info("unregister consumer ok, no any connection, and remove consumer group, {}",
-                            next.getKey());
-                        this.consumerIdsChangeListener.handle(ConsumerGroupEvent.UNREGISTER, next.getKey());
-                    }
+        Set<String> groups = this.channelGroupTable.remove(channel);
+        if (null == groups) {
+            return;
+        }
+        for (String group : groups) {
+            ConsumerGroupInfo info = this.consumerTable.get(group);
+            if (info != null && info.doChannelCloseEvent(remoteAddr, channel)) {
+                if (this.removeIfEmpty(group, info)) {
+                    log.info("unregister consumer ok, no any connection, and remove consumer group, {}", group);
+                    this.consumerIdsChangeListener.handle(ConsumerGroupEvent.UNREGISTER, group);
                 }
 
-                this.consumerIdsChangeListener.handle(ConsumerGroupEvent.CHANGE, next.getKey(), info.getAllChannel());
+                this.consumerIdsChangeListener.handle(ConsumerGroupEvent.CHANGE, group, info.getAllChannel());
             }
         }
     }
@@ -99,16 +101,25 @@ public class ConsumerManager {
         ConsumeType consumeType, MessageModel messageModel, ConsumeFromWhere consumeFromWhere,
         final Set<SubscriptionData> subList, boolean isNotifyConsumerIdsChangedEnable) {
 
-        ConsumerGroupInfo consumerGroupInfo = this.consumerTable.get(group);
-        if (null == consumerGroupInfo) {
-            ConsumerGroupInfo tmp = new ConsumerGroupInfo(group, consumeType, messageModel, consumeFromWhere);
-            ConsumerGroupInfo prev = this.consumerTable.putIfAbsent(group, tmp);
-            consumerGroupInfo = prev != null ? prev : tmp;
-        }
+        ConsumerGroupInfo consumerGroupInfo;
+        boolean r1;
+        do {
+            consumerGroupInfo = this.consumerTable.get(group);
+            if (null == consumerGroupInfo) {
+                ConsumerGroupInfo tmp = new ConsumerGroupInfo(group, consumeType, messageModel, consumeFromWhere);
+                ConsumerGroupInfo prev = this.consumerTable.putIfAbsent(group, tmp);
+                consumerGroupInfo = prev != null ? prev : tmp;
+            }
 
-        boolean r1 =
-            consumerGroupInfo.updateChannel(clientChannelInfo, consumeType, messageModel,
+            r1 = consumerGroupInfo.updateChannel(clientChannelInfo, consumeType, messageModel,
                 consumeFromWhere);
+            // register again if the group was removed for being empty meanwhile
+        } while (this.consumerTable.get(group) != consumerGroupInfo);
+
+        if (consumerGroupInfo.getChannelInfoTable().get(clientChannelInfo.getChannel()) == clientChannelInfo) {
+            this.addChannelGroup(clientChannelInfo.getChannel(), group);
+            this.timeoutWheel.schedule(group, clientChannelInfo);
+        }
         boolean r2 = consumerGroupInfo.updateSubscription(subList);
 
         if (r1 || r2) {
@@ -122,18 +133,37 @@ public class ConsumerManager {
         return r1 || r2;
     }
 
+    /**
+     * Refresh the channel in every consumer group it is registered to, on a lite heartbeat.
+     *
+     * @return the number of consumer groups refreshed, or -1 if the channel registered other heartbeat data
+     */
+    public int refreshChannel(final Channel channel, final int heartbeatFingerprint) {
+        Set<String> groups = this.channelGroupTable.get(channel);
+        if (null == groups) {
+            return 0;
+        }
+        int refreshed = 0;
+        for (String group : groups) {
+            ConsumerGroupInfo consumerGroupInfo = this.consumerTable.get(group);
+            if (null == consumerGroupInfo || !consumerGroupInfo.refreshChannel(channel, heartbeatFingerprint)) {
+                return -1;
+            }
+            refreshed++;
+        }
+        return refreshed;
+    }
+
     public void unregisterConsumer(final String group, final ClientChannelInfo clientChannelInfo,
         boolean isNotifyConsumerIdsChangedEnable) {
         ConsumerGroupInfo consumerGroupInfo = this.consumerTable.get(group);
         if (null != consumerGroupInfo) {
             consumerGroupInfo.unregisterChannel(clientChannelInfo);
-            if (consumerGroupInfo.getChannelInfoTable().isEmpty()) {
-                ConsumerGroupInfo remove = this.consumerTable.remove(group);
-                if (remove != null) {
-                    log.info("unregister consumer ok, no any connection, and remove consumer group, {}", group);
+            this.removeChannelGroup(clientChannelInfo.getChannel(), group);
+            if (this.removeIfEmpty(group, consumerGroupInfo)) {
+                log.info("unregister consumer ok, no any connection, and remove consumer group, {}", group);
 
-                    this.consumerIdsChangeListener.handle(ConsumerGroupEvent.UNREGISTER, group);
-                }
+                this.consumerIdsChangeListener.handle(ConsumerGroupEvent.UNREGISTER, group);
             }
             if (isNotifyConsumerIdsChangedEnable) {
                 this.consumerIdsChangeListener.handle(ConsumerGroupEvent.CHANGE, group, consumerGroupInfo.getAllChannel());
@@ -142,33 +172,24 @@ public class ConsumerManager {
     }
 
     public void scanNotActiveChannel() {
-        Iterator<Entry<String, ConsumerGroupInfo>> it = this.consumerTable.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<String, ConsumerGroupInfo> next = it.next();
-            String group = next.getKey();
-            ConsumerGroupInfo consumerGroupInfo = next.getValue();
-            ConcurrentMap<Channel, ClientChannelInfo> channelInfoTable =
-                consumerGroupInfo.getChannelInfoTable();
-
-            Iterator<Entry<Channel, ClientChannelInfo>> itChannel = channelInfoTable.entrySet().iterator();
-            while (itChannel.hasNext()) {
-                Entry<Channel, ClientChannelInfo> nextChannel = itChannel.next();
-                ClientChannelInfo clientChannelInfo = nextChannel.getValue();
-                long diff = System.currentTimeMillis() - clientChannelInfo.getLastUpdateTimestamp();
-                if (diff > CHANNEL_EXPIRED_TIMEOUT) {
-                    log.warn(
-                        "SCAN: remove expired channel from ConsumerManager consumerTable. channel={}, consumerGroup={}",
-                        RemotingHelper.parseChannelRemoteAddr(clientChannelInfo.getChannel()), group);
-                    RemotingUtil.closeChannel(clientChannelInfo.getChannel());
-                    itChannel.remove();
-                }
+        for (ClientChannelTimeoutWheel.Timeout timeout : this.timeoutWheel.expire(System.currentTimeMillis())) {
+            String group = timeout.getGroup();
+            ClientChannelInfo clientChannelInfo = timeout.getClientChannelInfo();
+            ConsumerGroupInfo consumerGroupInfo = this.consumerTable.get(group);
+            if (null == consumerGroupInfo || !removeChannel(consumerGroupInfo, clientChannelInfo)) {
+                continue;
             }
 
-            if (channelInfoTable.isEmpty()) {
+            log.warn(
+                "SCAN: remove expired channel from ConsumerManager consumerTable. channel={}, consumerGroup={}",
+                RemotingHelper.parseChannelRemoteAddr(clientChannelInfo.getChannel()), group);
+            RemotingUtil.closeChannel(clientChannelInfo.getChannel());
+            this.removeChannelGroup(clientChannelInfo.getChannel(), group);
+
+            if (this.removeIfEmpty(group, consumerGroupInfo)) {
                 log.warn(
                     "SCAN: remove expired channel from ConsumerManager consumerTable, all clear, consumerGroup={}",
                     group);
-                it.remove();
             }
         }
     }
@@ -186,4 +207,40 @@ public class ConsumerManager {
         }
         return groups;
     }
+
+    private static boolean removeChannel(final ConsumerGroupInfo consumerGroupInfo, final ClientChannelInfo info) {
+        final boolean[] removed = new boolean[1];
+        // ClientChannelInfo equals any info of the same channel, only remove this very one
+        consumerGroupInfo.getChannelInfoTable().computeIfPresent(info.getChannel(), (channel, current) -> {
+            removed[0] = current == info;
+            return removed[0] ? null : current;
+        });
+        return removed[0];
+    }
+
+    private boolean removeIfEmpty(final String group, final ConsumerGroupInfo consumerGroupInfo) {
+        final boolean[] removed = new boolean[1];
+        this.consumerTable.computeIfPresent(group, (key, info) -> {
+            removed[0] = info == consumerGroupInfo && info.getChannelInfoTable().isEmpty();
+            return removed[0] ? null : info;
+        });
+        return removed[0];
+    }
+
+    private void addChannelGroup(final Channel channel, final String group) {
+        this.channelGroupTable.compute(channel, (key, groups) -> {
+            if (null == groups) {
+                groups = ConcurrentHashMap.newKeySet();
+            }
+            groups.add(group);
+            return groups;
+        });
+    }
+
+    private void removeChannelGroup(final Channel channel, final String group) {
+        this.channelGroupTable.computeIfPresent(channel, (key, groups) -> {
+            groups.remove(group);
+            return groups.isEmpty() ? null : groups;
+        });
+    }
 }
@@ -19,14 +19,10 @@ package org.apache.rocketmq.broker.client;
 import io.netty.channel.Channel;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.rocketmq.broker.util.PositiveAtomicCounter;
 import org.apache.rocketmq.common.constant.LoggerName;
@@ -35,165 +31,132 @@ import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.remoting.common.RemotingHelper;
 import org.apache.rocketmq.remoting.common.RemotingUtil;
 
+/**
+ * Producer channels by group, maintained without locking: heartbeats of known channels only refresh a timestamp, a
+ * reverse index of the groups of each channel makes closing a channel independent of the number of groups, and
+ * expiration only visits the channels due in the timing wheel.
+ */
 public class ProducerManager {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
-    private static final long LOCK_TIMEOUT_MILLIS = 3000;
     private static final long CHANNEL_EXPIRED_TIMEOUT = 1000 * 120;
+    private static final long CHANNEL_EXPIRED_TICK_MILLIS = 1000;
     private static final int GET_AVALIABLE_CHANNEL_RETRY_COUNT = 3;
-    private final Lock groupChannelLock = new ReentrantLock();
-    private final HashMap<String /* group name */, HashMap<Channel, ClientChannelInfo>> groupChannelTable =
-        new HashMap<String, HashMap<Channel, ClientChannelInfo>>();
+    private final ConcurrentMap<String /* group name */, ConcurrentMap<Channel, ClientChannelInfo>> groupChannelTable =
+        new ConcurrentHashMap<String, ConcurrentMap<Channel, ClientChannelInfo>>();
+    private final ConcurrentMap<Channel, Set<String /* group name */>> channelGroupTable =
+        new ConcurrentHashMap<Channel, Set<String>>();
+    private final ClientChannelTimeoutWheel timeoutWheel =
+        new ClientChannelTimeoutWheel(CHANNEL_EXPIRED_TIMEOUT, CHANNEL_EXPIRED_TICK_MILLIS);
     private PositiveAtomicCounter positiveAtomicCounter = new PositiveAtomicCounter();
     public ProducerManager() {
     }
 
-    public HashMap<String, HashMap<Channel, ClientChannelInfo>> getGroupChannelTable() {
-        HashMap<String /* group name */, HashMap<Channel, ClientChannelInfo>> newGroupChannelTable =
-            new HashMap<String, HashMap<Channel, ClientChannelInfo>>();
-        try {
-            if (this.groupChannelLock.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
-                try {
-                    newGroupChannelTable.putAll(groupChannelTable);
-                } finally {
-                    groupChannelLock.unlock();
-                }
-            }
-        } catch (InterruptedException e) {
-            log.error("", e);
-        }
-        return newGroupChannelTable;
+    public ConcurrentMap<String, ConcurrentMap<Channel, ClientChannelInfo>> getGroupChannelTable() {
+        return groupChannelTable;
     }
 
     public void scanNotActiveChannel() {
-        try {
-            if (this.groupChannelLock.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
-                try {
-                    for (final Map.Entry<String, HashMap<Channel, ClientChannelInfo>> entry : this.groupChannelTable
-                        .entrySet()) {
-                        final String group = entry.getKey();
-                        final HashMap<Channel, ClientChannelInfo> chlMap = entry.getValue();
-
-                        Iterator<Entry<Channel, ClientChannelInfo>> it = chlMap.entrySet().iterator();
-                        while (it.hasNext()) {
-                            Entry<Channel, ClientChannelInfo> item = it.next();
-                            // final Integer id = item.getKey();
-                            final ClientChannelInfo info = item.getValue();
-
-                            long diff = System.currentTimeMillis() - info.getLastUpdateTimestamp();
-                            if (diff > CHANNEL_EXPIRED_TIMEOUT) {
-                                it.remove();
-                                log.warn(
-                                    "SCAN: remove expired channel[{}] from ProducerManager groupChannelTable, producer group name: {}",
-                                    RemotingHelper.parseChannelRemoteAddr(info.getChannel()), group);
-                                RemotingUtil.closeChannel(info.getChannel());
-                            }
-                        }
-                    }
-                } finally {
-                    this.groupChannelLock.unlock();
-                }
-            } else {
-                log.warn("ProducerManager scanNotActiveChannel lock timeout");
+        for (ClientChannelTimeoutWheel.Timeout timeout : this.timeoutWheel.expire(System.currentTimeMillis())) {
+            final String group = timeout.getGroup();
+            final ClientChannelInfo info = timeout.getClientChannelInfo();
+            if (this.removeChannel(group, info.getChannel(), info)) {
+                log.warn(
+                    "SCAN: remove expired channel[{}] from ProducerManager groupChannelTable, producer group name: {}",
+                    RemotingHelper.parseChannelRemoteAddr(info.getChannel()), group);
+                RemotingUtil.closeChannel(info.getChannel());
             }
-        } catch (InterruptedException e) {
-            log.error("", e);
         }
     }
 
     public void doChannelCloseEvent(final String remoteAddr, final Channel channel) {
         if (channel != null) {
-            try {
-                if (this.groupChannelLock.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
-                    try {
-                        for (final Map.Entry<String, HashMap<Channel, ClientChannelInfo>> entry : this.groupChannelTable
-                            .entrySet()) {
-                            final String group = entry.getKey();
-                            final HashMap<Channel, ClientChannelInfo> clientChannelInfoTable =
-                                entry.getValue();
-                            final ClientChannelInfo clientChannelInfo =
-                                clientChannelInfoTable.remove(channel);
-                            if (clientChannelInfo != null) {
-                                log.info(
-                                    "NETTY EVENT: remove channel[{}][{}] from ProducerManager groupChannelTable, producer group: {}",
-                                    clientChannelInfo.toString(), remoteAddr, group);
-                            }
-
-                        }
-                    } finally {
-                        this.groupChannelLock.unlock();
-                    }
-                } else {
-                    log.warn("ProducerManager doChannelCloseEvent lock timeout");
+            Set<String> groups = this.channelGroupTable.remove(channel);
+            if (groups == null) {
+                return;
+            }
+            for (final String group : groups) {
+                final ConcurrentMap<Channel, ClientChannelInfo> clientChannelInfoTable = this.groupChannelTable.get(group);
+                final ClientChannelInfo clientChannelInfo =
+                    clientChannelInfoTable != null ? clientChannelInfoTable.get(channel) : null;
+                if (clientChannelInfo != null && this.removeChannel(group, channel, clientChannelInfo)) {
+                    log.info(
+                        "NETTY EVENT: remove channel[{}][{}] from ProducerManager groupChannelTable, producer group: {}",
+                        clientChannelInfo.toString(), remoteAddr, group);
                 }
-            } catch (InterruptedException e) {
-                log.error("", e);
             }
         }
     }
 
     public void registerProducer(final String group, final ClientChannelInfo clientChannelInfo) {
-        try {
-            ClientChannelInfo clientChannelInfoFound = null;
-
-            if (this.groupChannelLock.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
-                try {
-                    HashMap<Channel, ClientChannelInfo> channelTable = this.groupChannelTable.get(group);
-                    if (null == channelTable) {
-                        channelTable = new HashMap<>();
-                        this.groupChannelTable.put(group, channelTable);
-                    }
+        final Channel channel = clientChannelInfo.getChannel();
+        ConcurrentMap<Channel, ClientChannelInfo> channelTable = this.groupChannelTable.get(group);
+        ClientChannelInfo clientChannelInfoFound = channelTable != null ? channelTable.get(channel) : null;
+        if (clientChannelInfoFound != null) {
+            clientChannelInfoFound.setHeartbeatFingerprint(clientChannelInfo.getHeartbeatFingerprint());
+            clientChannelInfoFound.setLastUpdateTimestamp(System.currentTimeMillis());
+            return;
+        }
 
-                    clientChannelInfoFound = channelTable.get(clientChannelInfo.getChannel());
-                    if (null == clientChannelInfoFound) {
-                        channelTable.put(clientChannelInfo.getChannel(), clientChannelInfo);
-                        log.info("new producer connected, group: {} channel: {}", group,
-                            clientChannelInfo.toString());
-                    }
-                } finally {
-                    this.groupChannelLock.unlock();
-                }
+        // added and removed under the lock of the channel, so a group is never added to a set just removed
+        this.channelGroupTable.compute(channel, (key, groups) -> {
+            if (null == groups) {
+                groups = ConcurrentHashMap.newKeySet();
+            }
+            groups.add(group);
+            return groups;
+        });
+
+        final boolean[] added = new boolean[1];
+        this.groupChannelTable.compute(group, (key, table) -> {
+            if (null == table) {
+                table = new ConcurrentHashMap<Channel, ClientChannelInfo>();
+            }
+            added[0] = table.putIfAbsent(channel, clientChannelInfo) == null;
+            return table;
+        });
+        if (added[0]) {
+            this.timeoutWheel.schedule(group, clientChannelInfo);
+            log.info("new producer connected, group: {} channel: {}", group,
+                clientChannelInfo.toString());
+        }
+    }
 
-                if (clientChannelInfoFound != null) {
-                    clientChannelInfoFound.setLastUpdateTimestamp(System.currentTimeMillis());
-                }
-            } else {
-                log.warn("ProducerManager registerProducer lock timeout");
+    /**
+     * Refresh the channel in every producer group it is registered to, on a lite heartbeat.
+     *
+     * @return the number of producer groups refreshed, or -1 if the channel registered other heartbeat data
+     */
+    public int refreshChannel(final Channel channel, final int heartbeatFingerprint) {
+        Set<String> groups = this.channelGroupTable.get(channel);
+        if (null == groups) {
+            return 0;
+        }
+        final long now = System.currentTimeMillis();
+        int refreshed = 0;
+        for (String group : groups) {
+            ConcurrentMap<Channel, ClientChannelInfo> channelTable = this.groupChannelTable.get(group);
+            ClientChannelInfo info = channelTable != null ? channelTable.get(channel) : null;
+            if (null == info || null == info.getHeartbeatFingerprint() || info.getHeartbeatFingerprint() != heartbeatFingerprint) {
+                return -1;
             }
-        } catch (InterruptedException e) {
-            log.error("", e);
+            info.setLastUpdateTimestamp(now);
+            refreshed++;
         }
+        return refreshed;
     }
 
     public void unregisterProducer(final String group, final ClientChannelInfo clientChannelInfo) {
-        try {
-            if (this.groupChannelLock.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
-                try {
-                    HashMap<Channel, ClientChannelInfo> channelTable = this.groupChannelTable.get(group);
-                    if (null != channelTable && !channelTable.isEmpty()) {
-                        ClientChannelInfo old = channelTable.remove(clientChannelInfo.getChannel());
-                        if (old != null) {
-                            log.info("unregister a producer[{}] from groupChannelTable {}", group,
-                                clientChannelInfo.toString());
-                        }
-
-                        if (channelTable.isEmpty()) {
-                            this.groupChannelTable.remove(group);
-                            log.info("unregister a producer group[{}] from groupChannelTable", group);
-                        }
-                    }
-                } finally {
-                    this.groupChannelLock.unlock();
-                }
-            } else {
-                log.warn("ProducerManager unregisterProducer lock timeout");
-            }
-        } catch (InterruptedException e) {
-            log.error("", e);
+        ConcurrentMap<Channel, ClientChannelInfo> channelTable = this.groupChannelTable.get(group);
+        ClientChannelInfo old = channelTable != null ? channelTable.get(clientChannelInfo.getChannel()) : null;
+        if (old != null && this.removeChannel(group, clientChannelInfo.getChannel(), old)) {
+            log.info("unregister a producer[{}] from groupChannelTable {}", group,
+                clientChannelInfo.toString());
         }
     }
 
     public Channel getAvaliableChannel(String groupId) {
-        HashMap<Channel, ClientChannelInfo> channelClientChannelInfoHashMap = groupChannelTable.get(groupId);
+        ConcurrentMap<Channel, ClientChannelInfo> channelClientChannelInfoHashMap =
+            groupId != null ? groupChannelTable.get(groupId) : null;
         List<Channel> channelList = new ArrayList<Channel>();
         if (channelClientChannelInfoHashMap != null) {
             for (Channel channel : channelClientChannelInfoHashMap.keySet()) {
@@ -223,4 +186,31 @@ public class ProducerManager {
         }
         return null;
     }
+
+    /**
+     * Remove {@code info} of {@code channel} from {@code group} unless it was replaced meanwhile, dropping the group
+     * once it has no channel left.
+     */
+    private boolean removeChannel(final String group, final Channel channel, final ClientChannelInfo info) {
+        final boolean[] removed = new boolean[1];
+        this.groupChannelTable.computeIfPresent(group, (key, table) -> {
+            // ClientChannelInfo equals any info of the same channel, only remove this very one
+            table.computeIfPresent(channel, (ch, current) -> {
+                removed[0] = current == info;
+                return removed[0] ? null : current;
+            });
+            if (table.isEmpty()) {
+                log.info("unregister a producer group[{}] from groupChannelTable", group);
+                return null;
+            }
+            return table;
+        });
+        if (removed[0]) {
+            this.channelGroupTable.computeIfPresent(channel, (key, groups) -> {
+                groups.remove(group);
+                return groups.isEmpty() ? null : groups;
+            });
+        }
+        return removed[0];
+    }
 }
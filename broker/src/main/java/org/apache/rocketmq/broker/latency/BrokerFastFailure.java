@@ -71,6 +71,10 @@ public class BrokerFastFailure {
                         break;
                     }
 
+                    if (this.brokerController.getSendThreadPoolQueue() instanceof TenantFairQueue) {
+                        ((TenantFairQueue) this.brokerController.getSendThreadPoolQueue()).complete(runnable);
+                    }
+
                     final RequestTask rt = castRunnable(runnable);
                     rt.returnResponse(RemotingSysResponseCode.SYSTEM_BUSY, String.format("[PCBUSY_CLEAN_QUEUE]broker busy, start flow control for a while, period in queue: %sms, size of queue: %d", System.currentTimeMillis() - rt.getCreateTimestamp(), this.brokerController.getSendThreadPoolQueue().size()));
                 } else {
@@ -97,7 +101,9 @@ public class BrokerFastFailure {
         while (true) {
             try {
                 if (!blockingQueue.isEmpty()) {
-                    final Runnable runnable = blockingQueue.peek();
+                    // the next request of a fair queue may be a young one while older ones wait for their tenant
+                    final Runnable runnable = blockingQueue instanceof TenantFairQueue
+                        ? ((TenantFairQueue) blockingQueue).peekOldest() : blockingQueue.peek();
                     if (null == runnable) {
                         break;
                     }
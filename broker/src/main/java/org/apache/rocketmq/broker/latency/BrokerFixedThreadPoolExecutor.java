@@ -54,4 +54,12 @@ public class BrokerFixedThreadPoolExecutor extends ThreadPoolExecutor {
     protected <T> RunnableFuture<T> newTaskFor(final Runnable runnable, final T value) {
         return new FutureTaskExt<T>(runnable, value);
     }
+
+    @Override
+    protected void afterExecute(final Runnable r, final Throwable t) {
+        super.afterExecute(r, t);
+        if (this.getQueue() instanceof TenantFairQueue) {
+            ((TenantFairQueue) this.getQueue()).complete(r);
+        }
+    }
 }
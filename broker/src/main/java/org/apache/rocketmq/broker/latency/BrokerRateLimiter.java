@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.latency;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+
+/**
+ * Message and byte rate limits of topics, producer groups and consumer groups.
+ * <p>
+ * A request is admitted unless one of the buckets it is charged to is empty, and is then charged with its actual
+ * size, so a pull, whose size is only known after reading the store, can be charged after it is served.
+ */
+public class BrokerRateLimiter {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
+
+    private final BrokerConfig brokerConfig;
+    private final RateLimitTable topicTable = new RateLimitTable();
+    private final RateLimitTable producerGroupTable = new RateLimitTable();
+    private final RateLimitTable consumerGroupTable = new RateLimitTable();
+
+    public BrokerRateLimiter(final BrokerConfig brokerConfig) {
+        this.brokerConfig = brokerConfig;
+    }
+
+    public boolean tryAcquireProduce(final String topic, final String producerGroup, final int messages, final long bytes) {
+        if (!this.brokerConfig.isRateLimitEnable()) {
+            return true;
+        }
+
+        RateLimit topicLimit = this.topicTable.get(this.brokerConfig.getTopicRateLimits(), topic);
+        RateLimit groupLimit = this.producerGroupTable.get(this.brokerConfig.getProducerGroupRateLimits(), producerGroup);
+        if (topicLimit != null && !topicLimit.isAvailable() || groupLimit != null && !groupLimit.isAvailable()) {
+            return false;
+        }
+        if (topicLimit != null) {
+            topicLimit.consume(messages, bytes);
+        }
+        if (groupLimit != null) {
+            groupLimit.consume(messages, bytes);
+        }
+        return true;
+    }
+
+    public boolean tryAcquireConsume(final String consumerGroup) {
+        if (!this.brokerConfig.isRateLimitEnable()) {
+            return true;
+        }
+
+        RateLimit groupLimit = this.consumerGroupTable.get(this.brokerConfig.getConsumerGroupRateLimits(), consumerGroup);
+        return groupLimit == null || groupLimit.isAvailable();
+    }
+
+    public void consumed(final String consumerGroup, final int messages, final long bytes) {
+        if (!this.brokerConfig.isRateLimitEnable()) {
+            return;
+        }
+
+        RateLimit groupLimit = this.consumerGroupTable.get(this.brokerConfig.getConsumerGroupRateLimits(), consumerGroup);
+        if (groupLimit != null) {
+            groupLimit.consume(messages, bytes);
+        }
+    }
+
+    /**
+     * Parse limits in the form of "name:messagesPerSecond:bytesPerSecond;...", 0 means no limit.
+     */
+    static Map<String, RateLimit> parseRateLimits(final String rateLimits) {
+        Map<String, RateLimit> table = new HashMap<String, RateLimit>();
+        if (rateLimits == null) {
+            return table;
+        }
+        for (String item : rateLimits.split(";")) {
+            if (item.trim().isEmpty()) {
+                continue;
+            }
+            String[] fields = item.split(":");
+            if (fields.length != 3) {
+                log.warn("illegal rate limit {}", item);
+                continue;
+            }
+            try {
+                long messagesPerSecond = Long.parseLong(fields[1].trim());
+                long bytesPerSecond = Long.parseLong(fields[2].trim());
+                table.put(fields[0].trim(), new RateLimit(
+                    messagesPerSecond > 0 ? new TokenBucket(messagesPerSecond) : null,
+                    bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond) : null));
+            } catch (NumberFormatException e) {
+                log.warn("illegal rate limit {}", item);
+            }
+        }
+        return table;
+    }
+
+    static class RateLimitTable {
+        private volatile String rateLimits;
+        private volatile Map<String, RateLimit> table = Collections.emptyMap();
+
+        RateLimit get(final String rateLimits, final String key) {
+            if (rateLimits != this.rateLimits) {
+                synchronized (this) {
+                    if (rateLimits != this.rateLimits) {
+                        this.table = parseRateLimits(rateLimits);
+                        this.rateLimits = rateLimits;
+                    }
+                }
+            }
+            return key == null ? null : this.table.get(key);
+        }
+    }
+
+    static class RateLimit {
+        private final TokenBucket messageBucket;
+        private final TokenBucket byteBucket;
+
+        RateLimit(TokenBucket messageBucket, TokenBucket byteBucket) {
+            this.messageBucket = messageBucket;
+            this.byteBucket = byteBucket;
+        }
+
+        boolean isAvailable() {
+            return (this.messageBucket == null || this.messageBucket.tryAcquire(0))
+                && (this.byteBucket == null || this.byteBucket.tryAcquire(0));
+        }
+
+        void consume(int messages, long bytes) {
+            if (this.messageBucket != null) {
+                this.messageBucket.consume(messages);
+            }
+            if (this.byteBucket != null) {
+                this.byteBucket.consume(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.latency;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.protocol.NamespaceUtil;
+import org.apache.rocketmq.common.protocol.RequestCode;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.remoting.netty.RequestTask;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RemotingSysResponseCode;
+
+/**
+ * Work queue of a {@link BrokerFixedThreadPoolExecutor} that schedules requests fairly among tenants.
+ * <p>
+ * A request belongs to the namespace of its group or topic, or to the group or topic itself if they have no
+ * namespace. Tenants are served by weighted fair queuing, each request is tagged with a virtual finish time that
+ * grows by {@code 1 / weight} per request of its tenant, and the request with the smallest tag runs first. A tenant
+ * running {@link BrokerConfig#getTenantMaxRunningThreads()} requests is not served until one of them completes.
+ * <p>
+ * When the queue is full, the newest request of the tenant with the largest backlog per weight is rejected, so that a
+ * burst of one tenant does not push out the requests of others.
+ */
+public class TenantFairQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
+
+    public static final String DEFAULT_TENANT = "";
+
+    private final int capacity;
+    private final BrokerConfig brokerConfig;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+
+    private final HashMap<String/* tenant */, Tenant> tenantTable = new HashMap<String, Tenant>();
+    /**
+     * Tenants that have queued requests and may run more, ordered by the finish tag of their first request.
+     */
+    private final PriorityQueue<Tenant> readyTenants = new PriorityQueue<Tenant>();
+    private final IdentityHashMap<Runnable, Tenant> runningTable = new IdentityHashMap<Runnable, Tenant>();
+    private double virtualTime = 0;
+    private long sequence = 0;
+    private int count = 0;
+
+    private String tenantWeights;
+    private Map<String, Integer> weightTable = Collections.emptyMap();
+
+    public TenantFairQueue(final int capacity, final BrokerConfig brokerConfig) {
+        this.capacity = capacity;
+        this.brokerConfig = brokerConfig;
+    }
+
+    public static String tenantOf(final Runnable runnable) {
+        if (!(runnable instanceof FutureTaskExt) || !(((FutureTaskExt) runnable).getRunnable() instanceof RequestTask)) {
+            return DEFAULT_TENANT;
+        }
+        RemotingCommand request = ((RequestTask) ((FutureTaskExt) runnable).getRunnable()).getRequest();
+        if (request == null || request.getExtFields() == null) {
+            return DEFAULT_TENANT;
+        }
+
+        Map<String, String> extFields = request.getExtFields();
+        String group;
+        String topic;
+        switch (request.getCode()) {
+            case RequestCode.SEND_MESSAGE_V2:
+            case RequestCode.SEND_BATCH_MESSAGE:
+                group = extFields.get("a");
+                topic = extFields.get("b");
+                break;
+            default:
+                group = extFields.containsKey("consumerGroup") ? extFields.get("consumerGroup") : extFields.get("producerGroup");
+                topic = extFields.get("topic");
+                break;
+        }
+
+        String namespace = NamespaceUtil.getNamespaceFromResource(group != null ? group : topic);
+        if (!namespace.isEmpty()) {
+            return namespace;
+        }
+        if (group != null) {
+            return group;
+        }
+        return topic != null ? topic : DEFAULT_TENANT;
+    }
+
+    /**
+     * Called when a request taken from this queue completes, whether it has been run or dropped.
+     */
+    public void complete(final Runnable runnable) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Tenant tenant = this.runningTable.remove(runnable);
+            if (tenant == null) {
+                return;
+            }
+            tenant.running--;
+            if (this.schedule(tenant)) {
+                this.notEmpty.signal();
+            }
+            this.removeIfIdle(tenant);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(final Runnable runnable) {
+        if (runnable == null) {
+            throw new NullPointerException();
+        }
+
+        final String tenantKey = tenantOf(runnable);
+        Runnable shed = null;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Tenant tenant = this.getOrCreateTenant(tenantKey);
+            if (this.count >= this.capacity) {
+                Tenant victim = this.heaviestTenant();
+                if (victim == null || victim == tenant || victim.load() <= tenant.loadAfterOffer()) {
+                    this.removeIfIdle(tenant);
+                    return false;
+                }
+                shed = victim.queue.pollLast().runnable;
+                this.count--;
+                if (victim.queue.isEmpty()) {
+                    this.readyTenants.remove(victim);
+                    this.removeIfIdle(victim);
+                }
+            }
+
+            double finishTag = Math.max(this.virtualTime, tenant.lastFinishTag) + 1.0 / tenant.weight;
+            tenant.lastFinishTag = finishTag;
+            tenant.queue.offer(new Entry(runnable, finishTag, this.sequence++));
+            this.count++;
+            if (tenant.queue.size() == 1 && this.schedule(tenant)) {
+                this.notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (shed != null) {
+            final RequestTask rt = BrokerFastFailure.castRunnable(shed);
+            if (rt != null) {
+                rt.setStopRun(true);
+                rt.returnResponse(RemotingSysResponseCode.SYSTEM_BUSY, String.format(
+                    "[TENANT_SHED_QUEUE]broker busy, start flow control for a while, tenant: %s, size of queue: %d",
+                    tenantOf(shed), this.size()));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void put(final Runnable runnable) {
+        this.offer(runnable);
+    }
+
+    @Override
+    public boolean offer(final Runnable runnable, final long timeout, final TimeUnit unit) {
+        return this.offer(runnable);
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            while (this.readyTenants.isEmpty()) {
+                this.notEmpty.await();
+            }
+            return this.dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            while (this.readyTenants.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = this.notEmpty.awaitNanos(nanos);
+            }
+            return this.dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return this.readyTenants.isEmpty() ? null : this.dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Tenant tenant = this.readyTenants.peek();
+            return tenant == null ? null : tenant.queue.peekFirst().runnable;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Unlike {@link #peek()}, which returns the request to run next, this returns the request queued longest, even
+     * if its tenant runs too many requests to be served now, so that expired requests are found in any tenant.
+     */
+    public Runnable peekOldest() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Entry oldest = null;
+            for (Tenant tenant : this.tenantTable.values()) {
+                Entry first = tenant.queue.peekFirst();
+                if (first != null && (oldest == null || first.sequence < oldest.sequence)) {
+                    oldest = first;
+                }
+            }
+            return oldest == null ? null : oldest.runnable;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        if (!(o instanceof Runnable)) {
+            return false;
+        }
+        final String tenantKey = tenantOf((Runnable) o);
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Tenant tenant = this.tenantTable.get(tenantKey);
+            if (tenant == null) {
+                return false;
+            }
+            Iterator<Entry> it = tenant.queue.iterator();
+            boolean first = true;
+            while (it.hasNext()) {
+                if (it.next().runnable == o) {
+                    it.remove();
+                    this.count--;
+                    if (first && this.readyTenants.remove(tenant)) {
+                        this.schedule(tenant);
+                    }
+                    this.removeIfIdle(tenant);
+                    return true;
+                }
+                first = false;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return this.count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return this.capacity - this.size();
+    }
+
+    @Override
+    public int drainTo(final Collection<? super Runnable> c) {
+        return this.drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super Runnable> c, final int maxElements) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            int n = 0;
+            Iterator<Tenant> tenantIt = this.tenantTable.values().iterator();
+            while (n < maxElements && tenantIt.hasNext()) {
+                Tenant tenant = tenantIt.next();
+                while (n < maxElements && !tenant.queue.isEmpty()) {
+                    c.add(tenant.queue.pollFirst().runnable);
+                    this.count--;
+                    n++;
+                }
+                if (tenant.queue.isEmpty()) {
+                    this.readyTenants.remove(tenant);
+                    if (tenant.running == 0) {
+                        tenantIt.remove();
+                    }
+                } else if (this.readyTenants.remove(tenant)) {
+                    // drained in part, its first request and so its place among the ready tenants changed
+                    this.schedule(tenant);
+                }
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+        final List<Runnable> snapshot = new ArrayList<Runnable>();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            for (Tenant tenant : this.tenantTable.values()) {
+                for (Entry entry : tenant.queue) {
+                    snapshot.add(entry.runnable);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        final Iterator<Runnable> it = snapshot.iterator();
+        return new Iterator<Runnable>() {
+            private Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                this.last = it.next();
+                return this.last;
+            }
+
+            @Override
+            public void remove() {
+                TenantFairQueue.this.remove(this.last);
+            }
+        };
+    }
+
+    private Runnable dequeue() {
+        Tenant tenant = this.readyTenants.poll();
+        Entry entry = tenant.queue.pollFirst();
+        this.count--;
+        this.virtualTime = Math.max(this.virtualTime, entry.finishTag);
+        tenant.running++;
+        this.runningTable.put(entry.runnable, tenant);
+        this.schedule(tenant);
+        this.removeIfIdle(tenant);
+        return entry.runnable;
+    }
+
+    /**
+     * @return true if the tenant is added to the ready tenants
+     */
+    private boolean schedule(final Tenant tenant) {
+        int maxRunning = this.brokerConfig.getTenantMaxRunningThreads();
+        if (tenant.queue.isEmpty() || maxRunning > 0 && tenant.running >= maxRunning || this.readyTenants.contains(tenant)) {
+            return false;
+        }
+        this.readyTenants.offer(tenant);
+        return true;
+    }
+
+    private Tenant heaviestTenant() {
+        Tenant heaviest = null;
+        for (Tenant tenant : this.tenantTable.values()) {
+            if (!tenant.queue.isEmpty() && (heaviest == null || tenant.load() > heaviest.load())) {
+                heaviest = tenant;
+            }
+        }
+        return heaviest;
+    }
+
+    private Tenant getOrCreateTenant(final String tenantKey) {
+        Tenant tenant = this.tenantTable.get(tenantKey);
+        if (tenant == null) {
+            tenant = new Tenant(tenantKey, this.weightOf(tenantKey));
+            this.tenantTable.put(tenantKey, tenant);
+        }
+        return tenant;
+    }
+
+    private void removeIfIdle(final Tenant tenant) {
+        if (tenant.queue.isEmpty() && tenant.running == 0) {
+            this.tenantTable.remove(tenant.key);
+        }
+    }
+
+    private int weightOf(final String tenantKey) {
+        String weights = this.brokerConfig.getTenantWeights();
+        if (weights != this.tenantWeights) {
+            this.weightTable = parseWeights(weights);
+            this.tenantWeights = weights;
+        }
+        Integer weight = this.weightTable.get(tenantKey);
+        return weight != null ? weight : 1;
+    }
+
+    static Map<String, Integer> parseWeights(final String weights) {
+        Map<String, Integer> weightTable = new HashMap<String, Integer>();
+        if (weights == null) {
+            return weightTable;
+        }
+        for (String item : weights.split(";")) {
+            int index = item.lastIndexOf(':');
+            if (index <= 0) {
+                continue;
+            }
+            try {
+                int weight = Integer.parseInt(item.substring(index + 1).trim());
+                if (weight > 0) {
+                    weightTable.put(item.substring(0, index).trim(), weight);
+                }
+            } catch (NumberFormatException e) {
+                log.warn("illegal tenant weight {}", item);
+            }
+        }
+        return weightTable;
+    }
+
+    static class Entry {
+        private final Runnable runnable;
+        private final double finishTag;
+        private final long sequence;
+
+        Entry(Runnable runnable, double finishTag, long sequence) {
+            this.runnable = runnable;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+        }
+    }
+
+    static class Tenant implements Comparable<Tenant> {
+        private final String key;
+        private final int weight;
+        private final ArrayDeque<Entry> queue = new ArrayDeque<Entry>();
+        private double lastFinishTag = 0;
+        private int running = 0;
+
+        Tenant(String key, int weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+
+        double load() {
+            return (double) this.queue.size() / this.weight;
+        }
+
+        double loadAfterOffer() {
+            return (double) (this.queue.size() + 1) / this.weight;
+        }
+
+        @Override
+        public int compareTo(Tenant o) {
+            return Double.compare(this.queue.peekFirst().finishTag, o.queue.peekFirst().finishTag);
+        }
+    }
+}
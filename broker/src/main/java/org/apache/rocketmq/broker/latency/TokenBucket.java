@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.latency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free token bucket holding up to one second of permits.
+ * <p>
+ * The bucket is kept as the time up to which its tokens have been consumed, it is empty while that time is ahead of
+ * the clock. Every permit moves that time {@code 1 / rate} seconds ahead, so taking permits is a single compare and
+ * set.
+ */
+public class TokenBucket {
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long permitsPerSecond;
+    private final double nanosPerPermit;
+    private final AtomicLong consumedUntilNanos;
+
+    public TokenBucket(final long permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.nanosPerPermit = (double) BURST_NANOS / permitsPerSecond;
+        this.consumedUntilNanos = new AtomicLong(System.nanoTime() - BURST_NANOS);
+    }
+
+    /**
+     * Take permits if the bucket is not empty, the bucket may go into debt by the permits beyond its tokens.
+     *
+     * @param permits permits to take, 0 to only check whether the bucket has tokens
+     * @return false if the bucket is empty
+     */
+    public boolean tryAcquire(final long permits) {
+        final long now = System.nanoTime();
+        while (true) {
+            final long consumedUntil = this.consumedUntilNanos.get();
+            final long base = Math.max(consumedUntil, now - BURST_NANOS);
+            if (base - now >= 0) {
+                return false;
+            }
+            if (permits == 0 || this.consumedUntilNanos.compareAndSet(consumedUntil, base + (long) (permits * this.nanosPerPermit))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Take permits unconditionally, e.g. for a request whose size is only known after it is admitted.
+     */
+    public void consume(final long permits) {
+        final long now = System.nanoTime();
+        while (true) {
+            final long consumedUntil = this.consumedUntilNanos.get();
+            final long base = Math.max(consumedUntil, now - BURST_NANOS);
+            if (this.consumedUntilNanos.compareAndSet(consumedUntil, base + (long) (permits * this.nanosPerPermit))) {
+                return;
+            }
+        }
+    }
+
+    public long getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+}
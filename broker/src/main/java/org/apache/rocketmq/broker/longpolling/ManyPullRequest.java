@@ -14,29 +14,50 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package org.apache.rocketmq.broker.longpolling;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
 
+/**
+ * Pull requests suspended on one queue, ordered by the offset they wait for, so that the requests satisfied by a new
+ * max offset are a prefix of the set.
+ */
 public class ManyPullRequest {
-    private final ArrayList<PullRequest> pullRequestList = new ArrayList<>();
+    private static final Comparator<PullRequest> OFFSET_COMPARATOR = new Comparator<PullRequest>() {
+        @Override
+        public int compare(PullRequest o1, PullRequest o2) {
+            int result = Long.compare(o1.getPullFromThisOffset(), o2.getPullFromThisOffset());
+            if (result == 0) {
+                result = Long.compare(o1.getSequence(), o2.getSequence());
+            }
+            return result;
+        }
+    };
 
-    public synchronized void addPullRequest(final PullRequest pullRequest) {
-        this.pullRequestList.add(pullRequest);
+    private final ConcurrentSkipListSet<PullRequest> pullRequestSet =
+        new ConcurrentSkipListSet<PullRequest>(OFFSET_COMPARATOR);
+
+    public void addPullRequest(final PullRequest pullRequest) {
+        this.pullRequestSet.add(pullRequest);
     }
 
-    public synchronized void addPullRequest(final List<PullRequest> many) {
-        this.pullRequestList.addAll(many);
+    public boolean removePullRequest(final PullRequest pullRequest) {
+        return this.pullRequestSet.remove(pullRequest);
     }
 
-    public synchronized List<PullRequest> cloneListAndClear() {
-        if (!this.pullRequestList.isEmpty()) {
-            List<PullRequest> result = (ArrayList<PullRequest>) this.pullRequestList.clone();
-            this.pullRequestList.clear();
-            return result;
-        }
+    /**
+     * @return the request waiting for the smallest offset, or null if there is none
+     */
+    public PullRequest first() {
+        Iterator<PullRequest> it = this.pullRequestSet.iterator();
+        return it.hasNext() ? it.next() : null;
+    }
 
-        return null;
+    public NavigableSet<PullRequest> getPullRequestSet() {
+        return pullRequestSet;
     }
 }
@@ -17,6 +17,7 @@
 package org.apache.rocketmq.broker.longpolling;
 
 import io.netty.channel.Channel;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.apache.rocketmq.store.MessageFilter;
@@ -29,10 +30,25 @@ public class PullRequest {
     private final long pullFromThisOffset;
     private final SubscriptionData subscriptionData;
     private final MessageFilter messageFilter;
+    /**
+     * Orders the requests suspended on the same offset, assigned when the request is suspended.
+     */
+    private long sequence;
+    private final AtomicBoolean completed;
 
     public PullRequest(RemotingCommand requestCommand, Channel clientChannel, long timeoutMillis, long suspendTimestamp,
         long pullFromThisOffset, SubscriptionData subscriptionData,
         MessageFilter messageFilter) {
+        this(requestCommand, clientChannel, timeoutMillis, suspendTimestamp, pullFromThisOffset, subscriptionData,
+            messageFilter, new AtomicBoolean(false));
+    }
+
+    /**
+     * @param completed shared by the requests suspended on several queues for one pull, which is woken up once
+     */
+    public PullRequest(RemotingCommand requestCommand, Channel clientChannel, long timeoutMillis, long suspendTimestamp,
+        long pullFromThisOffset, SubscriptionData subscriptionData,
+        MessageFilter messageFilter, AtomicBoolean completed) {
         this.requestCommand = requestCommand;
         this.clientChannel = clientChannel;
         this.timeoutMillis = timeoutMillis;
@@ -40,6 +56,7 @@ public class PullRequest {
         this.pullFromThisOffset = pullFromThisOffset;
         this.subscriptionData = subscriptionData;
         this.messageFilter = messageFilter;
+        this.completed = completed;
     }
 
     public RemotingCommand getRequestCommand() {
@@ -69,4 +86,29 @@ public class PullRequest {
     public MessageFilter getMessageFilter() {
         return messageFilter;
     }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getDeadline() {
+        return this.suspendTimestamp + this.timeoutMillis;
+    }
+
+    /**
+     * Claim the request, so that it is woken up by either a message arrival or the timeout, not both.
+     *
+     * @return true if the caller should wake up the request
+     */
+    public boolean complete() {
+        return this.completed.compareAndSet(false, true);
+    }
+
+    public boolean isCompleted() {
+        return this.completed.get();
+    }
 }
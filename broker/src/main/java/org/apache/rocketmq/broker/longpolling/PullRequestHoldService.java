@@ -14,13 +14,16 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package org.apache.rocketmq.broker.longpolling;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.common.ServiceThread;
 import org.apache.rocketmq.common.SystemClock;
@@ -29,38 +32,73 @@ import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.store.ConsumeQueueExt;
 
+/**
+ * Holds the suspended pull requests per (topic, queueId).
+ * <p>
+ * The requests of a queue are kept in a concurrent set ordered by offset, a message arrival only visits the requests
+ * it satisfies and wakes them up in place. Timeouts are driven by a timing wheel owned by the service thread, newly
+ * suspended requests are handed over to it through a lock-free queue. The periodic check, which catches up with
+ * arrivals that are not notified (e.g. on slave), only peeks at the first request of each queue.
+ */
 public class PullRequestHoldService extends ServiceThread {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
-    private static final String TOPIC_QUEUEID_SEPARATOR = "@";
+    private static final long WHEEL_TICK_MILLIS = 100;
+    private static final int WHEEL_SLOTS = 512;
     private final BrokerController brokerController;
     private final SystemClock systemClock = new SystemClock();
-    private ConcurrentMap<String/* topic@queueId */, ManyPullRequest> pullRequestTable =
-        new ConcurrentHashMap<String, ManyPullRequest>(1024);
+    private final ConcurrentMap<String/* topic */, ConcurrentMap<Integer/* queueId */, ManyPullRequest>> pullRequestTable =
+        new ConcurrentHashMap<String, ConcurrentMap<Integer, ManyPullRequest>>(1024);
+    private final AtomicLong sequence = new AtomicLong(0);
+    private final AtomicLong suspendedTotal = new AtomicLong(0);
+    private final AtomicLong wokenTotal = new AtomicLong(0);
+    private final AtomicLong expiredTotal = new AtomicLong(0);
+    private final ConcurrentLinkedQueue<ExpireEntry> newlySuspended = new ConcurrentLinkedQueue<ExpireEntry>();
+
+    /**
+     * Only accessed by the service thread.
+     */
+    private final List<List<ExpireEntry>> expireWheel = new ArrayList<List<ExpireEntry>>(WHEEL_SLOTS);
+    private long lastTick = -1;
+    private long lastCheckTimestamp = 0;
 
     public PullRequestHoldService(final BrokerController brokerController) {
         this.brokerController = brokerController;
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            this.expireWheel.add(new ArrayList<ExpireEntry>());
+        }
     }
 
     public void suspendPullRequest(final String topic, final int queueId, final PullRequest pullRequest) {
-        String key = this.buildKey(topic, queueId);
-        ManyPullRequest mpr = this.pullRequestTable.get(key);
+        ConcurrentMap<Integer, ManyPullRequest> queueTable = this.pullRequestTable.get(topic);
+        if (null == queueTable) {
+            queueTable = new ConcurrentHashMap<Integer, ManyPullRequest>(8);
+            ConcurrentMap<Integer, ManyPullRequest> prev = this.pullRequestTable.putIfAbsent(topic, queueTable);
+            if (prev != null) {
+                queueTable = prev;
+            }
+        }
+
+        ManyPullRequest mpr = queueTable.get(queueId);
         if (null == mpr) {
             mpr = new ManyPullRequest();
-            ManyPullRequest prev = this.pullRequestTable.putIfAbsent(key, mpr);
+            ManyPullRequest prev = queueTable.putIfAbsent(queueId, mpr);
             if (prev != null) {
                 mpr = prev;
             }
         }
 
+        pullRequest.setSequence(this.sequence.incrementAndGet());
         mpr.addPullRequest(pullRequest);
+        this.newlySuspended.add(new ExpireEntry(mpr, pullRequest));
+        this.suspendedTotal.incrementAndGet();
     }
 
-    private String buildKey(final String topic, final int queueId) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(topic);
-        sb.append(TOPIC_QUEUEID_SEPARATOR);
-        sb.append(queueId);
-        return sb.toString();
+    private ManyPullRequest getManyPullRequest(final String topic, final int queueId) {
+        ConcurrentMap<Integer, ManyPullRequest> queueTable = this.pullRequestTable.get(topic);
+        if (null == queueTable) {
+            return null;
+        }
+        return queueTable.get(queueId);
     }
 
     @Override
@@ -68,17 +106,20 @@ public class PullRequestHoldService extends ServiceThread {
         log.info("{} service started", this.getServiceName());
         while (!this.isStopped()) {
             try {
-                if (this.brokerController.getBrokerConfig().isLongPollingEnable()) {
-                    this.waitForRunning(5 * 1000);
-                } else {
-                    this.waitForRunning(this.brokerController.getBrokerConfig().getShortPollingTimeMills());
-                }
+                this.waitForRunning(WHEEL_TICK_MILLIS);
 
-                long beginLockTimestamp = this.systemClock.now();
-                this.checkHoldRequest();
-                long costTime = this.systemClock.now() - beginLockTimestamp;
-                if (costTime > 5 * 1000) {
-                    log.info("[NOTIFYME] check hold request cost {} ms.", costTime);
+                long now = this.systemClock.now();
+                this.expireHoldRequest(now);
+
+                long checkInterval = this.brokerController.getBrokerConfig().isLongPollingEnable()
+                    ? 5 * 1000 : this.brokerController.getBrokerConfig().getShortPollingTimeMills();
+                if (now - this.lastCheckTimestamp >= checkInterval) {
+                    this.lastCheckTimestamp = now;
+                    this.checkHoldRequest();
+                    long costTime = this.systemClock.now() - now;
+                    if (costTime > 5 * 1000) {
+                        log.info("[NOTIFYME] check hold request cost {} ms.", costTime);
+                    }
                 }
             } catch (Throwable e) {
                 log.warn(this.getServiceName() + " service has exception. ", e);
@@ -93,14 +134,65 @@ public class PullRequestHoldService extends ServiceThread {
         return PullRequestHoldService.class.getSimpleName();
     }
 
+    private void expireHoldRequest(final long now) {
+        final long nowTick = now / WHEEL_TICK_MILLIS;
+        if (this.lastTick < 0) {
+            this.lastTick = nowTick - 1;
+        }
+
+        ExpireEntry entry;
+        while ((entry = this.newlySuspended.poll()) != null) {
+            // a deadline already passed is handled in this round
+            long tick = Math.max(entry.getPullRequest().getDeadline() / WHEEL_TICK_MILLIS, this.lastTick + 1);
+            this.expireWheel.get((int) (tick % WHEEL_SLOTS)).add(entry);
+        }
+
+        List<PullRequest> expiredList = new ArrayList<PullRequest>();
+        for (long tick = Math.max(this.lastTick + 1, nowTick - WHEEL_SLOTS + 1); tick <= nowTick; tick++) {
+            List<ExpireEntry> slot = this.expireWheel.get((int) (tick % WHEEL_SLOTS));
+            if (slot.isEmpty()) {
+                continue;
+            }
+
+            List<ExpireEntry> remaining = new ArrayList<ExpireEntry>();
+            for (ExpireEntry e : slot) {
+                PullRequest request = e.getPullRequest();
+                if (request.isCompleted()) {
+                    // completed through another queue of the same pull
+                    e.getManyPullRequest().removePullRequest(request);
+                    continue;
+                }
+                // the deadline is in a later round of the wheel
+                if (request.getDeadline() / WHEEL_TICK_MILLIS > tick) {
+                    remaining.add(e);
+                    continue;
+                }
+                if (request.complete()) {
+                    e.getManyPullRequest().removePullRequest(request);
+                    expiredList.add(request);
+                }
+            }
+            if (remaining.isEmpty()) {
+                slot.clear();
+            } else {
+                this.expireWheel.set((int) (tick % WHEEL_SLOTS), remaining);
+            }
+        }
+        this.lastTick = nowTick;
+        this.expiredTotal.addAndGet(expiredList.size());
+        this.wakeupRequests(expiredList);
+    }
+
     private void checkHoldRequest() {
-        for (String key : this.pullRequestTable.keySet()) {
-            String[] kArray = key.split(TOPIC_QUEUEID_SEPARATOR);
-            if (2 == kArray.length) {
-                String topic = kArray[0];
-                int queueId = Integer.parseInt(kArray[1]);
-                final long offset = this.brokerController.getMessageStore().getMaxOffsetInQueue(topic, queueId);
+        for (Map.Entry<String, ConcurrentMap<Integer, ManyPullRequest>> topicEntry : this.pullRequestTable.entrySet()) {
+            String topic = topicEntry.getKey();
+            for (Map.Entry<Integer, ManyPullRequest> queueEntry : topicEntry.getValue().entrySet()) {
+                if (queueEntry.getValue().first() == null) {
+                    continue;
+                }
+                int queueId = queueEntry.getKey();
                 try {
+                    final long offset = this.brokerController.getMessageStore().getMaxOffsetInQueue(topic, queueId);
                     this.notifyMessageArriving(topic, queueId, offset);
                 } catch (Throwable e) {
                     log.error("check hold request failed. topic={}, queueId={}", topic, queueId, e);
@@ -115,55 +207,102 @@ public class PullRequestHoldService extends ServiceThread {
 
     public void notifyMessageArriving(final String topic, final int queueId, final long maxOffset, final Long tagsCode,
         long msgStoreTime, byte[] filterBitMap, Map<String, String> properties) {
-        String key = this.buildKey(topic, queueId);
-        ManyPullRequest mpr = this.pullRequestTable.get(key);
-        if (mpr != null) {
-            List<PullRequest> requestList = mpr.cloneListAndClear();
-            if (requestList != null) {
-                List<PullRequest> replayList = new ArrayList<PullRequest>();
-
-                for (PullRequest request : requestList) {
-                    long newestOffset = maxOffset;
-                    if (newestOffset <= request.getPullFromThisOffset()) {
-                        newestOffset = this.brokerController.getMessageStore().getMaxOffsetInQueue(topic, queueId);
-                    }
+        ManyPullRequest mpr = this.getManyPullRequest(topic, queueId);
+        if (mpr == null) {
+            return;
+        }
+        PullRequest first = mpr.first();
+        if (first == null) {
+            return;
+        }
 
-                    if (newestOffset > request.getPullFromThisOffset()) {
-                        boolean match = request.getMessageFilter().isMatchedByConsumeQueue(tagsCode,
-                            new ConsumeQueueExt.CqExtUnit(tagsCode, msgStoreTime, filterBitMap));
-                        // match by bit map, need eval again when properties is not null.
-                        if (match && properties != null) {
-                            match = request.getMessageFilter().isMatchedByCommitLog(null, properties);
-                        }
-
-                        if (match) {
-                            try {
-                                this.brokerController.getPullMessageProcessor().executeRequestWhenWakeup(request.getClientChannel(),
-                                    request.getRequestCommand());
-                            } catch (Throwable e) {
-                                log.error("execute request when wakeup failed.", e);
-                            }
-                            continue;
-                        }
-                    }
+        long newestOffset = maxOffset;
+        if (newestOffset <= first.getPullFromThisOffset()) {
+            newestOffset = this.brokerController.getMessageStore().getMaxOffsetInQueue(topic, queueId);
+            if (newestOffset <= first.getPullFromThisOffset()) {
+                return;
+            }
+        }
 
-                    if (System.currentTimeMillis() >= (request.getSuspendTimestamp() + request.getTimeoutMillis())) {
-                        try {
-                            this.brokerController.getPullMessageProcessor().executeRequestWhenWakeup(request.getClientChannel(),
-                                request.getRequestCommand());
-                        } catch (Throwable e) {
-                            log.error("execute request when wakeup failed.", e);
-                        }
-                        continue;
-                    }
+        List<PullRequest> wakeupList = null;
+        for (PullRequest request : mpr.getPullRequestSet()) {
+            if (request.getPullFromThisOffset() >= newestOffset) {
+                break;
+            }
+            if (request.isCompleted()) {
+                mpr.removePullRequest(request);
+                continue;
+            }
 
-                    replayList.add(request);
-                }
+            boolean match = request.getMessageFilter().isMatchedByConsumeQueue(tagsCode,
+                new ConsumeQueueExt.CqExtUnit(tagsCode, msgStoreTime, filterBitMap));
+            // match by bit map, need eval again when properties is not null.
+            if (match && properties != null) {
+                match = request.getMessageFilter().isMatchedByCommitLog(null, properties);
+            }
 
-                if (!replayList.isEmpty()) {
-                    mpr.addPullRequest(replayList);
+            if (match && request.complete()) {
+                mpr.removePullRequest(request);
+                if (wakeupList == null) {
+                    wakeupList = new ArrayList<PullRequest>();
                 }
+                wakeupList.add(request);
             }
         }
+
+        if (wakeupList != null) {
+            this.wokenTotal.addAndGet(wakeupList.size());
+            this.wakeupRequests(wakeupList);
+        }
+    }
+
+    /**
+     * @return the pull requests suspended, counted once per queue they wait for
+     */
+    public long getSuspendedTotal() {
+        return suspendedTotal.get();
+    }
+
+    /**
+     * @return the suspended pull requests woken up by messages arriving
+     */
+    public long getWokenTotal() {
+        return wokenTotal.get();
+    }
+
+    /**
+     * @return the suspended pull requests woken up by their deadline
+     */
+    public long getExpiredTotal() {
+        return expiredTotal.get();
+    }
+
+    private void wakeupRequests(final List<PullRequest> requestList) {
+        if (requestList.isEmpty()) {
+            return;
+        }
+        try {
+            this.brokerController.getPullMessageProcessor().executeRequestsWhenWakeup(requestList);
+        } catch (Throwable e) {
+            log.error("execute requests when wakeup failed.", e);
+        }
+    }
+
+    static class ExpireEntry {
+        private final ManyPullRequest manyPullRequest;
+        private final PullRequest pullRequest;
+
+        ExpireEntry(ManyPullRequest manyPullRequest, PullRequest pullRequest) {
+            this.manyPullRequest = manyPullRequest;
+            this.pullRequest = pullRequest;
+        }
+
+        ManyPullRequest getManyPullRequest() {
+            return manyPullRequest;
+        }
+
+        PullRequest getPullRequest() {
+            return pullRequest;
+        }
     }
 }
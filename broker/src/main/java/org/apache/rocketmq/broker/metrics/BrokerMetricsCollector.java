@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.metrics;
+
+import java.util.Map;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.longpolling.PullRequestHoldService;
+import org.apache.rocketmq.common.metrics.MetricsCollector;
+import org.apache.rocketmq.common.metrics.MetricsWriter;
+import org.apache.rocketmq.common.stats.LatencySnapshot;
+import org.apache.rocketmq.common.stats.LatencyStatsItem;
+import org.apache.rocketmq.common.stats.LatencyStatsItemSet;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+
+/**
+ * Metrics of the broker: request thread pool queues, long polling, and the latency percentiles of the last minute
+ * of send and pull requests.
+ */
+public class BrokerMetricsCollector implements MetricsCollector {
+    private static final String PUT_LATENCY = "rocketmq_broker_put_latency_micros";
+    private static final String PUT_REQUESTS = "rocketmq_broker_put_requests_in_minute";
+    private static final String GET_LATENCY = "rocketmq_broker_get_latency_micros";
+    private static final String GET_REQUESTS = "rocketmq_broker_get_requests_in_minute";
+    private static final String QUEUE_SIZE = "rocketmq_broker_thread_pool_queue_size";
+    private static final String QUEUE_HEAD_WAIT = "rocketmq_broker_thread_pool_queue_head_wait_ms";
+
+    private final BrokerController brokerController;
+
+    public BrokerMetricsCollector(BrokerController brokerController) {
+        this.brokerController = brokerController;
+    }
+
+    @Override
+    public void collect(MetricsWriter writer) {
+        this.collectThreadPoolQueues(writer);
+        this.collectLongPolling(writer);
+
+        BrokerStatsManager brokerStatsManager = this.brokerController.getBrokerStatsManager();
+        this.collectLatency(writer, brokerStatsManager.getLatencyStatsItemSet(BrokerStatsManager.TOPIC_PUT_RT),
+            PUT_LATENCY, "Latency percentiles of send requests in the last minute",
+            PUT_REQUESTS, "Send requests in the last minute");
+        this.collectLatency(writer, brokerStatsManager.getLatencyStatsItemSet(BrokerStatsManager.GROUP_GET_RT),
+            GET_LATENCY, "Latency percentiles of pull requests finding messages in the last minute",
+            GET_REQUESTS, "Pull requests finding messages in the last minute");
+    }
+
+    private void collectThreadPoolQueues(MetricsWriter writer) {
+        BrokerController bc = this.brokerController;
+        writer.gauge(QUEUE_SIZE, "Requests waiting in the queue of the thread pool")
+            .sample(QUEUE_SIZE, bc.getSendThreadPoolQueue().size(), "pool", "send")
+            .sample(QUEUE_SIZE, bc.getPutThreadPoolQueue().size(), "pool", "put")
+            .sample(QUEUE_SIZE, bc.getPullThreadPoolQueue().size(), "pool", "pull")
+            .sample(QUEUE_SIZE, bc.getQueryThreadPoolQueue().size(), "pool", "query")
+            .sample(QUEUE_SIZE, bc.getClientManagerThreadPoolQueue().size(), "pool", "client_manager")
+            .sample(QUEUE_SIZE, bc.getHeartbeatThreadPoolQueue().size(), "pool", "heartbeat")
+            .sample(QUEUE_SIZE, bc.getConsumerManagerThreadPoolQueue().size(), "pool", "consumer_manager")
+            .sample(QUEUE_SIZE, bc.getEndTransactionThreadPoolQueue().size(), "pool", "end_transaction");
+        writer.gauge(QUEUE_HEAD_WAIT, "Milliseconds the request at the head of the queue of the thread pool has waited")
+            .sample(QUEUE_HEAD_WAIT, bc.headSlowTimeMills4SendThreadPoolQueue(), "pool", "send")
+            .sample(QUEUE_HEAD_WAIT, bc.headSlowTimeMills4PullThreadPoolQueue(), "pool", "pull")
+            .sample(QUEUE_HEAD_WAIT, bc.headSlowTimeMills4QueryThreadPoolQueue(), "pool", "query")
+            .sample(QUEUE_HEAD_WAIT, bc.headSlowTimeMills4EndTransactionThreadPoolQueue(), "pool", "end_transaction");
+    }
+
+    private void collectLongPolling(MetricsWriter writer) {
+        PullRequestHoldService pullRequestHoldService = this.brokerController.getPullRequestHoldService();
+        if (pullRequestHoldService == null) {
+            return;
+        }
+        writer.counter("rocketmq_broker_long_polling_suspended_total", "Pull requests suspended, once per queue waited for",
+            pullRequestHoldService.getSuspendedTotal());
+        writer.counter("rocketmq_broker_long_polling_woken_total", "Suspended pull requests woken up by messages arriving",
+            pullRequestHoldService.getWokenTotal());
+        writer.counter("rocketmq_broker_long_polling_expired_total", "Suspended pull requests woken up by their deadline",
+            pullRequestHoldService.getExpiredTotal());
+    }
+
+    private void collectLatency(MetricsWriter writer, LatencyStatsItemSet statsItemSet,
+        String latencyName, String latencyHelp, String requestsName, String requestsHelp) {
+        if (statsItemSet == null) {
+            return;
+        }
+        writer.gauge(latencyName, latencyHelp);
+        for (Map.Entry<String, LatencyStatsItem> entry : statsItemSet.getStatsItemTable().entrySet()) {
+            LatencySnapshot snapshot = entry.getValue().getSnapshotInMinute();
+            if (snapshot.getCount() == 0) {
+                continue;
+            }
+            String[] labels = labels(entry.getKey());
+            writer.sample(latencyName, snapshot.getP50(), with(labels, "quantile", "0.5"));
+            writer.sample(latencyName, snapshot.getP99(), with(labels, "quantile", "0.99"));
+            writer.sample(latencyName, snapshot.getP999(), with(labels, "quantile", "0.999"));
+            writer.sample(latencyName, snapshot.getMax(), with(labels, "quantile", "1"));
+        }
+        writer.gauge(requestsName, requestsHelp);
+        for (Map.Entry<String, LatencyStatsItem> entry : statsItemSet.getStatsItemTable().entrySet()) {
+            LatencySnapshot snapshot = entry.getValue().getSnapshotInMinute();
+            if (snapshot.getCount() > 0) {
+                writer.sample(requestsName, snapshot.getCount(), labels(entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Stats keys are either a topic or topic@group.
+     */
+    private static String[] labels(String statsKey) {
+        int index = statsKey.indexOf('@');
+        if (index < 0) {
+            return new String[] {"topic", statsKey};
+        }
+        return new String[] {"topic", statsKey.substring(0, index), "group", statsKey.substring(index + 1)};
+    }
+
+    private static String[] with(String[] labels, String name, String value) {
+        String[] result = new String[labels.length + 2];
+        System.arraycopy(labels, 0, result, 0, labels.length);
+        result[labels.length] = name;
+        result[labels.length + 1] = value;
+        return result;
+    }
+}
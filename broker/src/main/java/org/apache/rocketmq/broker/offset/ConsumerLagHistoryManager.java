@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.offset;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.common.protocol.body.ConsumerLag;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagHistory;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagList;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagSample;
+
+/**
+ * Lag history of the consumer groups of the broker, so that lag trends can be told without polling each group.
+ * <p>
+ * The lag of every group is sampled at once, from the committed offsets and the max offsets of the queues, into rings
+ * of {@code consumerLagHistorySize} samples. The sample times are shared by all groups, a group only keeps its lag and
+ * lag time by sample. A sample stamped with the time of the last one overwrites it, and an older one is skipped.
+ */
+public class ConsumerLagHistoryManager {
+    private static final long UNKNOWN = -1;
+
+    private final BrokerController brokerController;
+    private final int capacity;
+    private final long[] timestamps;
+    private final Map<String/* group */, GroupLagHistory> groupTable = new HashMap<String, GroupLagHistory>(512);
+    private int next;
+    private int size;
+
+    public ConsumerLagHistoryManager(final BrokerController brokerController) {
+        this.brokerController = brokerController;
+        this.capacity = Math.max(brokerController.getBrokerConfig().getConsumerLagHistorySize(), 1);
+        this.timestamps = new long[this.capacity];
+    }
+
+    public void sample(final long timestamp) {
+        ConsumerLagList consumerLagList = this.brokerController.getConsumerLagIndex().computeAllConsumerLag();
+        Map<String, long[]> lagTable = new HashMap<String, long[]>();
+        for (ConsumerLag consumerLag : consumerLagList.getConsumerLagList()) {
+            long[] lag = lagTable.get(consumerLag.getConsumerGroup());
+            if (null == lag) {
+                lag = new long[2];
+                lagTable.put(consumerLag.getConsumerGroup(), lag);
+            }
+            lag[0] += consumerLag.getLag();
+            lag[1] = Math.max(lag[1], consumerLag.getLagMillis());
+        }
+
+        synchronized (this) {
+            final int last = (this.next - 1 + this.capacity) % this.capacity;
+            if (this.size > 0 && timestamp < this.timestamps[last]) {
+                return;
+            }
+            final boolean overwrite = this.size > 0 && timestamp == this.timestamps[last];
+            final int index = overwrite ? last : this.next;
+            for (Map.Entry<String, long[]> entry : lagTable.entrySet()) {
+                GroupLagHistory history = this.groupTable.get(entry.getKey());
+                if (null == history) {
+                    history = new GroupLagHistory(this.capacity);
+                    this.groupTable.put(entry.getKey(), history);
+                }
+                history.put(index, entry.getValue()[0], entry.getValue()[1]);
+            }
+
+            // groups without offsets any more are dropped once all their samples are overwritten
+            Iterator<Map.Entry<String, GroupLagHistory>> it = this.groupTable.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, GroupLagHistory> entry = it.next();
+                if (!lagTable.containsKey(entry.getKey()) && entry.getValue().putUnknown(index, overwrite) >= this.capacity) {
+                    it.remove();
+                }
+            }
+
+            if (!overwrite) {
+                this.timestamps[index] = timestamp;
+                this.next = (index + 1) % this.capacity;
+                this.size = Math.min(this.size + 1, this.capacity);
+            }
+        }
+    }
+
+    /**
+     * @return the samples of {@code group}, oldest first
+     */
+    public synchronized ConsumerLagHistory query(final String group) {
+        ConsumerLagHistory consumerLagHistory = new ConsumerLagHistory();
+        consumerLagHistory.setConsumerGroup(group);
+        GroupLagHistory history = this.groupTable.get(group);
+        if (history != null) {
+            for (int i = this.size; i > 0; i--) {
+                int index = (this.next - i + this.capacity) % this.capacity;
+                if (history.diffTotals[index] != UNKNOWN) {
+                    consumerLagHistory.getSampleList().add(
+                        new ConsumerLagSample(this.timestamps[index], history.diffTotals[index], history.lagMillis[index]));
+                }
+            }
+        }
+        return consumerLagHistory;
+    }
+
+    static class GroupLagHistory {
+        private final long[] diffTotals;
+        private final long[] lagMillis;
+        private int unknownCount;
+
+        GroupLagHistory(final int capacity) {
+            this.diffTotals = new long[capacity];
+            this.lagMillis = new long[capacity];
+            // samples taken before the group had offsets
+            Arrays.fill(this.diffTotals, UNKNOWN);
+        }
+
+        void put(final int index, final long diffTotal, final long lagMillis) {
+            this.diffTotals[index] = diffTotal;
+            this.lagMillis[index] = lagMillis;
+            this.unknownCount = 0;
+        }
+
+        /**
+         * @return the number of the latest samples in a row the group is unknown in
+         */
+        int putUnknown(final int index, final boolean overwrite) {
+            if (overwrite && this.diffTotals[index] == UNKNOWN) {
+                return this.unknownCount;
+            }
+            this.diffTotals[index] = UNKNOWN;
+            this.lagMillis[index] = 0;
+            return ++this.unknownCount;
+        }
+    }
+}
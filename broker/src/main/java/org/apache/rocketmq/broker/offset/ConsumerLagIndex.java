@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.offset;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.offset.ConsumerOffsetTable.QueueOffsets;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.common.protocol.body.ConsumerLag;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagList;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+import org.apache.rocketmq.store.CommitLogDispatcher;
+import org.apache.rocketmq.store.DispatchRequest;
+
+/**
+ * Store timestamps needed to tell how far consumers lag behind, kept in memory so that consume stats do not read the
+ * consume queue and commit log of every queue of every group they report.
+ * <p>
+ * As messages are dispatched, each queue keeps its newest message and a timeline sampling the offsets stored in each
+ * {@link #SAMPLE_INTERVAL_MILLIS}. As offsets are committed, the store timestamp of the last message consumed is
+ * resolved from the timeline: exactly when the consumer caught up, else to the sample at or before it, at most
+ * {@link #SAMPLE_INTERVAL_MILLIS} earlier. Offsets older than the timeline are read from the store once per
+ * committed offset.
+ * <p>
+ * A timeline grows up to {@link BrokerConfig#getConsumerLagTimelineCapacity()} samples as they come. It is evicted
+ * once its queue is neither written nor read for {@link #TIMELINE_IDLE_MILLIS}, or the span of a full timeline if
+ * longer, e.g. when the topic is no longer used; a timeline created again only resolves the offsets dispatched since.
+ */
+public class ConsumerLagIndex implements CommitLogDispatcher {
+    static final long SAMPLE_INTERVAL_MILLIS = 1000;
+    static final long TIMELINE_IDLE_MILLIS = 3600 * 1000;
+
+    private final BrokerController brokerController;
+    private final int timelineCapacity;
+    private final ConcurrentMap<String/* topic */, ConcurrentMap<Integer/* queueId */, QueueTimeline>> timelineTable =
+        new ConcurrentHashMap<String, ConcurrentMap<Integer, QueueTimeline>>(512);
+    private final ConcurrentMap<String/* topic */, ConcurrentMap<String/* group */, ConsumedTimestamps>> consumedTable =
+        new ConcurrentHashMap<String, ConcurrentMap<String, ConsumedTimestamps>>(512);
+
+    public ConsumerLagIndex(final BrokerController brokerController) {
+        this.brokerController = brokerController;
+        this.timelineCapacity = Math.max(1, brokerController.getBrokerConfig().getConsumerLagTimelineCapacity());
+    }
+
+    @Override
+    public void dispatch(final DispatchRequest request) {
+        final int tranType = MessageSysFlag.getTransactionValue(request.getSysFlag());
+        switch (tranType) {
+            case MessageSysFlag.TRANSACTION_NOT_TYPE:
+            case MessageSysFlag.TRANSACTION_COMMIT_TYPE:
+                this.getOrCreateTimeline(request.getTopic(), request.getQueueId())
+                    .append(request.getConsumeQueueOffset(), request.getStoreTimestamp());
+                break;
+            case MessageSysFlag.TRANSACTION_PREPARED_TYPE:
+            case MessageSysFlag.TRANSACTION_ROLLBACK_TYPE:
+                break;
+        }
+    }
+
+    public void onCommit(final String group, final String topic, final int queueId, final long offset) {
+        if (offset <= 0) {
+            return;
+        }
+        QueueTimeline timeline = this.getTimeline(topic, queueId);
+        long timestamp = timeline != null ? timeline.resolve(offset - 1) : -1;
+        this.getOrCreateConsumed(topic, group).put(queueId, offset, timestamp);
+    }
+
+    /**
+     * @return the store timestamp of the last message consumed, the one before {@code consumerOffset}, or 0 if unknown
+     */
+    public long lastConsumedTimestamp(final String group, final String topic, final int queueId,
+        final long consumerOffset) {
+        if (consumerOffset <= 0) {
+            return 0;
+        }
+        ConsumedTimestamps consumed = this.getConsumed(topic, group);
+        long timestamp = consumed != null ? consumed.get(queueId, consumerOffset) : -1;
+        if (timestamp > 0) {
+            return timestamp;
+        }
+
+        QueueTimeline timeline = this.getTimeline(topic, queueId);
+        timestamp = timeline != null ? timeline.resolve(consumerOffset - 1) : -1;
+        if (timestamp <= 0) {
+            timestamp = this.brokerController.getMessageStore().getMessageStoreTimeStamp(topic, queueId, consumerOffset - 1);
+        }
+        if (timestamp > 0) {
+            this.getOrCreateConsumed(topic, group).put(queueId, consumerOffset, timestamp);
+            return timestamp;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the store timestamp of the newest message of the queue, the one before {@code maxOffset}, or 0 if unknown
+     */
+    public long newestStoreTimestamp(final String topic, final int queueId, final long maxOffset) {
+        if (maxOffset <= 0) {
+            return 0;
+        }
+        QueueTimeline timeline = this.getTimeline(topic, queueId);
+        long timestamp = timeline != null ? timeline.resolve(maxOffset - 1) : -1;
+        if (timestamp > 0) {
+            return timestamp;
+        }
+        // nothing dispatched since the broker started
+        timestamp = this.brokerController.getMessageStore().getMessageStoreTimeStamp(topic, queueId, maxOffset - 1);
+        if (timestamp > 0) {
+            this.getOrCreateTimeline(topic, queueId).seed(maxOffset - 1, timestamp);
+            return timestamp;
+        }
+        return 0;
+    }
+
+    /**
+     * @return lag, lag time and consume TPS of each group by the topics it consumes, groups still online but no longer
+     * subscribed to a topic left out
+     */
+    public ConsumerLagList computeAllConsumerLag() {
+        ConsumerLagList consumerLagList = new ConsumerLagList();
+        long totalLag = 0;
+
+        // offsets are read in place by topic, instead of looking up the topics of each group
+        for (Map.Entry<String, ConcurrentMap<String, QueueOffsets>> topicEntry
+            : this.brokerController.getConsumerOffsetManager().getTopicGroupOffsetTable().entrySet()) {
+            String topic = topicEntry.getKey();
+            TopicConfig topicConfig = this.brokerController.getTopicConfigManager().selectTopicConfig(topic);
+            if (null == topicConfig) {
+                continue;
+            }
+
+            int queueNums = topicConfig.getReadQueueNums();
+            long[] brokerOffsets = new long[queueNums];
+            for (int i = 0; i < queueNums; i++) {
+                brokerOffsets[i] = Math.max(this.brokerController.getMessageStore().getMaxOffsetInQueue(topic, i), 0);
+            }
+
+            for (Map.Entry<String, QueueOffsets> groupEntry : topicEntry.getValue().entrySet()) {
+                String group = groupEntry.getKey();
+                if (null == this.brokerController.getConsumerManager().findSubscriptionData(group, topic)
+                    && this.brokerController.getConsumerManager().findSubscriptionDataCount(group) > 0) {
+                    continue;
+                }
+
+                QueueOffsets queueOffsets = groupEntry.getValue();
+                long lag = 0;
+                long lagMillis = 0;
+                for (int i = 0; i < queueNums; i++) {
+                    long consumerOffset = Math.max(queueOffsets.get(i), 0);
+                    if (consumerOffset >= brokerOffsets[i]) {
+                        continue;
+                    }
+                    lag += brokerOffsets[i] - consumerOffset;
+                    long lastTimestamp = this.lastConsumedTimestamp(group, topic, i, consumerOffset);
+                    if (lastTimestamp > 0) {
+                        long newestTimestamp = this.newestStoreTimestamp(topic, i, brokerOffsets[i]);
+                        lagMillis = Math.max(lagMillis, newestTimestamp - lastTimestamp);
+                    }
+                }
+
+                ConsumerLag consumerLag = new ConsumerLag();
+                consumerLag.setConsumerGroup(group);
+                consumerLag.setTopic(topic);
+                consumerLag.setLag(lag);
+                consumerLag.setLagMillis(lagMillis);
+                consumerLag.setConsumeTps(this.brokerController.getBrokerStatsManager().tpsGroupGetNums(group, topic));
+                consumerLagList.getConsumerLagList().add(consumerLag);
+                totalLag += lag;
+            }
+        }
+
+        consumerLagList.setTotalLag(totalLag);
+        return consumerLagList;
+    }
+
+    public void removeConsumed(final String topic, final String group) {
+        ConcurrentMap<String, ConsumedTimestamps> groupTable = this.consumedTable.get(topic);
+        if (groupTable != null) {
+            groupTable.remove(group);
+        }
+    }
+
+    /**
+     * Drop the timelines of the queues neither written nor read for a while.
+     */
+    public void evictIdleTimelines() {
+        this.evictIdleTimelines(Math.max(TIMELINE_IDLE_MILLIS, this.timelineCapacity * SAMPLE_INTERVAL_MILLIS));
+    }
+
+    void evictIdleTimelines(final long idleMillis) {
+        final long now = System.currentTimeMillis();
+        for (ConcurrentMap<Integer, QueueTimeline> queueTable : this.timelineTable.values()) {
+            Iterator<QueueTimeline> it = queueTable.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().touchedMillis > idleMillis) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void removeTopic(final String topic) {
+        this.timelineTable.remove(topic);
+        this.consumedTable.remove(topic);
+    }
+
+    private QueueTimeline getTimeline(final String topic, final int queueId) {
+        ConcurrentMap<Integer, QueueTimeline> queueTable = this.timelineTable.get(topic);
+        return queueTable != null ? queueTable.get(queueId) : null;
+    }
+
+    private QueueTimeline getOrCreateTimeline(final String topic, final int queueId) {
+        ConcurrentMap<Integer, QueueTimeline> queueTable = this.timelineTable.get(topic);
+        if (null == queueTable) {
+            queueTable = new ConcurrentHashMap<Integer, QueueTimeline>(8);
+            ConcurrentMap<Integer, QueueTimeline> prev = this.timelineTable.putIfAbsent(topic, queueTable);
+            if (prev != null) {
+                queueTable = prev;
+            }
+        }
+
+        QueueTimeline timeline = queueTable.get(queueId);
+        if (null == timeline) {
+            timeline = new QueueTimeline(this.timelineCapacity);
+            QueueTimeline prev = queueTable.putIfAbsent(queueId, timeline);
+            if (prev != null) {
+                timeline = prev;
+            }
+        }
+        return timeline;
+    }
+
+    private ConsumedTimestamps getConsumed(final String topic, final String group) {
+        ConcurrentMap<String, ConsumedTimestamps> groupTable = this.consumedTable.get(topic);
+        return groupTable != null ? groupTable.get(group) : null;
+    }
+
+    private ConsumedTimestamps getOrCreateConsumed(final String topic, final String group) {
+        ConcurrentMap<String, ConsumedTimestamps> groupTable = this.consumedTable.get(topic);
+        if (null == groupTable) {
+            groupTable = new ConcurrentHashMap<String, ConsumedTimestamps>(4);
+            ConcurrentMap<String, ConsumedTimestamps> prev = this.consumedTable.putIfAbsent(topic, groupTable);
+            if (prev != null) {
+                groupTable = prev;
+            }
+        }
+
+        ConsumedTimestamps consumed = groupTable.get(group);
+        if (null == consumed) {
+            consumed = new ConsumedTimestamps();
+            ConsumedTimestamps prev = groupTable.putIfAbsent(group, consumed);
+            if (prev != null) {
+                consumed = prev;
+            }
+        }
+        return consumed;
+    }
+
+    /**
+     * Newest message of a queue and a ring of sampled offsets, appended to by the dispatching thread only. The ring
+     * starts small and doubles while full, up to its capacity.
+     */
+    static class QueueTimeline {
+        private static final int INITIAL_CAPACITY = 8;
+
+        private final int capacity;
+        private long[] sampleOffsets;
+        private long[] sampleTimestamps;
+        private int next;
+        private int size;
+        private long lastSampleTimestamp;
+        private volatile long newestTimestamp;
+        private volatile long newestOffset = -1;
+        private volatile long touchedMillis = System.currentTimeMillis();
+
+        QueueTimeline(final int capacity) {
+            this.capacity = capacity;
+            this.sampleOffsets = new long[Math.min(INITIAL_CAPACITY, capacity)];
+            this.sampleTimestamps = new long[this.sampleOffsets.length];
+        }
+
+        void append(final long offset, final long storeTimestamp) {
+            if (offset <= this.newestOffset) {
+                // the consume queue was truncated, the samples may be gone
+                synchronized (this) {
+                    this.size = 0;
+                }
+                this.lastSampleTimestamp = 0;
+            }
+            if (storeTimestamp - this.lastSampleTimestamp >= SAMPLE_INTERVAL_MILLIS) {
+                synchronized (this) {
+                    if (this.size == this.sampleOffsets.length && this.size < this.capacity) {
+                        this.grow();
+                    }
+                    this.sampleOffsets[this.next] = offset;
+                    this.sampleTimestamps[this.next] = storeTimestamp;
+                    this.next = (this.next + 1) % this.sampleOffsets.length;
+                    this.size = Math.min(this.size + 1, this.sampleOffsets.length);
+                }
+                this.lastSampleTimestamp = storeTimestamp;
+                this.touchedMillis = System.currentTimeMillis();
+            }
+            // the timestamp is published by the offset written after it
+            this.newestTimestamp = storeTimestamp;
+            this.newestOffset = offset;
+        }
+
+        void seed(final long offset, final long storeTimestamp) {
+            if (this.newestOffset < 0) {
+                this.newestTimestamp = storeTimestamp;
+                this.newestOffset = offset;
+                this.touchedMillis = System.currentTimeMillis();
+            }
+        }
+
+        private void grow() {
+            int length = this.sampleOffsets.length;
+            long[] newOffsets = new long[Math.min(length * 2, this.capacity)];
+            long[] newTimestamps = new long[newOffsets.length];
+            for (int i = 0; i < this.size; i++) {
+                int index = (this.next - this.size + i + length) % length;
+                newOffsets[i] = this.sampleOffsets[index];
+                newTimestamps[i] = this.sampleTimestamps[index];
+            }
+            this.sampleOffsets = newOffsets;
+            this.sampleTimestamps = newTimestamps;
+            this.next = this.size;
+        }
+
+        /**
+         * @return the store timestamp of the message at {@code offset}, or of the sample before it, or -1 if the
+         * timeline does not reach back to it
+         */
+        long resolve(final long offset) {
+            this.touchedMillis = System.currentTimeMillis();
+            long newest = this.newestOffset;
+            long timestamp = this.newestTimestamp;
+            if (newest < 0 || offset > newest) {
+                return -1;
+            }
+            if (offset == newest) {
+                return timestamp;
+            }
+            synchronized (this) {
+                int length = this.sampleOffsets.length;
+                for (int i = 1; i <= this.size; i++) {
+                    int index = (this.next - i + length) % length;
+                    if (this.sampleOffsets[index] <= offset) {
+                        return this.sampleTimestamps[index];
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Store timestamps of the last messages consumed by a group from the queues of a topic, by queue id.
+     */
+    static class ConsumedTimestamps {
+        private long[] offsets = new long[8];
+        private long[] timestamps = new long[8];
+
+        synchronized void put(final int queueId, final long offset, final long timestamp) {
+            if (queueId >= this.offsets.length) {
+                int capacity = Math.max(queueId + 1, this.offsets.length * 2);
+                long[] newOffsets = new long[capacity];
+                long[] newTimestamps = new long[capacity];
+                System.arraycopy(this.offsets, 0, newOffsets, 0, this.offsets.length);
+                System.arraycopy(this.timestamps, 0, newTimestamps, 0, this.timestamps.length);
+                this.offsets = newOffsets;
+                this.timestamps = newTimestamps;
+            }
+            this.offsets[queueId] = offset;
+            this.timestamps[queueId] = timestamp;
+        }
+
+        /**
+         * @return the timestamp resolved for {@code offset}, or -1 if the queue is at another offset or unresolved
+         */
+        synchronized long get(final int queueId, final long offset) {
+            if (queueId < this.offsets.length && this.offsets[queueId] == offset) {
+                return this.timestamps[queueId];
+            }
+            return -1;
+        }
+    }
+}
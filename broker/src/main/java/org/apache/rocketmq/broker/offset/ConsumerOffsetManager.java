@@ -16,6 +16,9 @@
  */
 package org.apache.rocketmq.broker.offset;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.annotation.JSONField;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -26,57 +29,111 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.BrokerPathConfigHelper;
+import org.apache.rocketmq.broker.offset.ConsumerOffsetTable.QueueOffsets;
 import org.apache.rocketmq.common.ConfigManager;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.protocol.body.ConsumerOffsetSerializeWrapper;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
 
 public class ConsumerOffsetManager extends ConfigManager {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
-    private static final String TOPIC_GROUP_SEPARATOR = "@";
+    private static final String TOPIC_GROUP_SEPARATOR = ConsumerOffsetTable.TOPIC_GROUP_SEPARATOR;
 
-    private ConcurrentMap<String/* topic@group */, ConcurrentMap<Integer, Long>> offsetTable =
-        new ConcurrentHashMap<String, ConcurrentMap<Integer, Long>>(512);
+    private transient volatile ConsumerOffsetTable offsetTable = new ConsumerOffsetTable();
 
     private transient BrokerController brokerController;
 
+    private transient ConsumerOffsetStore offsetStore;
+
     public ConsumerOffsetManager() {
     }
 
     public ConsumerOffsetManager(BrokerController brokerController) {
         this.brokerController = brokerController;
+        if (brokerController.getBrokerConfig().isConsumerOffsetBinaryPersistEnable()) {
+            String rootDir = brokerController.getMessageStoreConfig().getStorePathRootDir();
+            this.offsetStore = new ConsumerOffsetStore(brokerController.getBrokerConfig(),
+                BrokerPathConfigHelper.getConsumerOffsetSnapshotPath(rootDir),
+                BrokerPathConfigHelper.getConsumerOffsetJournalPath(rootDir));
+        }
     }
 
-    public void scanUnsubscribedTopic() {
-        Iterator<Entry<String, ConcurrentMap<Integer, Long>>> it = this.offsetTable.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<String, ConcurrentMap<Integer, Long>> next = it.next();
-            String topicAtGroup = next.getKey();
-            String[] arrays = topicAtGroup.split(TOPIC_GROUP_SEPARATOR);
-            if (arrays.length == 2) {
-                String topic = arrays[0];
-                String group = arrays[1];
+    @Override
+    public boolean load() {
+        if (this.offsetStore != null) {
+            ConsumerOffsetTable table;
+            try {
+                table = this.offsetStore.load();
+            } catch (IOException e) {
+                log.error("load consumer offsets failed", e);
+                return false;
+            }
+            if (table != null) {
+                this.offsetTable = table;
+                return true;
+            }
+            // no binary snapshot yet, migrate from the json file
+            this.offsetStore.requestSnapshot();
+        }
+        return super.load();
+    }
+
+    @Override
+    public synchronized void persist() {
+        if (this.offsetStore != null) {
+            this.offsetStore.persist(this.offsetTable);
+            if (this.brokerController.getBrokerConfig().isConsumerOffsetJsonPersistEnable()) {
+                super.persist();
+            }
+        } else {
+            super.persist();
+        }
+    }
+
+    public void shutdown() {
+        if (this.offsetStore != null) {
+            this.offsetStore.shutdown();
+        }
+    }
 
+    public void scanUnsubscribedTopic() {
+        for (Entry<String, ConcurrentMap<String, QueueOffsets>> topicEntry : this.offsetTable.getTopicTable().entrySet()) {
+            String topic = topicEntry.getKey();
+            Iterator<Entry<String, QueueOffsets>> it = topicEntry.getValue().entrySet().iterator();
+            while (it.hasNext()) {
+                Entry<String, QueueOffsets> next = it.next();
+                String group = next.getKey();
                 if (null == brokerController.getConsumerManager().findSubscriptionData(group, topic)
                     && this.offsetBehindMuchThanData(topic, next.getValue())) {
                     it.remove();
+                    String topicAtGroup = topic + TOPIC_GROUP_SEPARATOR + group;
+                    if (this.offsetStore != null) {
+                        this.offsetStore.markRemoved(topicAtGroup);
+                    }
+                    if (brokerController.getConsumerLagIndex() != null) {
+                        brokerController.getConsumerLagIndex().removeConsumed(topic, group);
+                    }
                     log.warn("remove topic offset, {}", topicAtGroup);
                 }
             }
         }
     }
 
-    private boolean offsetBehindMuchThanData(final String topic, ConcurrentMap<Integer, Long> table) {
-        Iterator<Entry<Integer, Long>> it = table.entrySet().iterator();
-        boolean result = !table.isEmpty();
-
-        while (it.hasNext() && result) {
-            Entry<Integer, Long> next = it.next();
-            long minOffsetInStore = this.brokerController.getMessageStore().getMinOffsetInQueue(topic, next.getKey());
-            long offsetInPersist = next.getValue();
-            result = offsetInPersist <= minOffsetInStore;
+    private boolean offsetBehindMuchThanData(final String topic, QueueOffsets queueOffsets) {
+        boolean result = false;
+        for (int queueId = 0; queueId < queueOffsets.capacity(); queueId++) {
+            long offsetInPersist = queueOffsets.get(queueId);
+            if (offsetInPersist == ConsumerOffsetTable.NO_OFFSET) {
+                continue;
+            }
+            long minOffsetInStore = this.brokerController.getMessageStore().getMinOffsetInQueue(topic, queueId);
+            if (offsetInPersist > minOffsetInStore) {
+                return false;
+            }
+            result = true;
         }
 
         return result;
@@ -85,15 +142,9 @@ public class ConsumerOffsetManager extends ConfigManager {
     public Set<String> whichTopicByConsumer(final String group) {
         Set<String> topics = new HashSet<String>();
 
-        Iterator<Entry<String, ConcurrentMap<Integer, Long>>> it = this.offsetTable.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<String, ConcurrentMap<Integer, Long>> next = it.next();
-            String topicAtGroup = next.getKey();
-            String[] arrays = topicAtGroup.split(TOPIC_GROUP_SEPARATOR);
-            if (arrays.length == 2) {
-                if (group.equals(arrays[1])) {
-                    topics.add(arrays[0]);
-                }
+        for (Entry<String, ConcurrentMap<String, QueueOffsets>> topicEntry : this.offsetTable.getTopicTable().entrySet()) {
+            if (topicEntry.getValue().containsKey(group)) {
+                topics.add(topicEntry.getKey());
             }
         }
 
@@ -103,16 +154,9 @@ public class ConsumerOffsetManager extends ConfigManager {
     public Set<String> whichGroupByTopic(final String topic) {
         Set<String> groups = new HashSet<String>();
 
-        Iterator<Entry<String, ConcurrentMap<Integer, Long>>> it = this.offsetTable.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<String, ConcurrentMap<Integer, Long>> next = it.next();
-            String topicAtGroup = next.getKey();
-            String[] arrays = topicAtGroup.split(TOPIC_GROUP_SEPARATOR);
-            if (arrays.length == 2) {
-                if (topic.equals(arrays[0])) {
-                    groups.add(arrays[1]);
-                }
-            }
+        ConcurrentMap<String, QueueOffsets> groupTable = this.offsetTable.getTopicTable().get(topic);
+        if (groupTable != null) {
+            groups.addAll(groupTable.keySet());
         }
 
         return groups;
@@ -120,36 +164,24 @@ public class ConsumerOffsetManager extends ConfigManager {
 
     public void commitOffset(final String clientHost, final String group, final String topic, final int queueId,
         final long offset) {
-        // topic@group
-        String key = topic + TOPIC_GROUP_SEPARATOR + group;
-        this.commitOffset(clientHost, key, queueId, offset);
-    }
-
-    private void commitOffset(final String clientHost, final String key, final int queueId, final long offset) {
-        ConcurrentMap<Integer, Long> map = this.offsetTable.get(key);
-        if (null == map) {
-            map = new ConcurrentHashMap<Integer, Long>(32);
-            map.put(queueId, offset);
-            this.offsetTable.put(key, map);
-        } else {
-            Long storeOffset = map.put(queueId, offset);
-            if (storeOffset != null && offset < storeOffset) {
-                log.warn("[NOTIFYME]update consumer offset less than store. clientHost={}, key={}, queueId={}, requestOffset={}, storeOffset={}", clientHost, key, queueId, offset, storeOffset);
-            }
+        if (queueId < 0) {
+            log.warn("commit consumer offset of illegal queue. clientHost={}, topic={}, group={}, queueId={}", clientHost, topic, group, queueId);
+            return;
+        }
+        long storeOffset = this.offsetTable.commit(topic, group, queueId, offset);
+        ConsumerLagIndex consumerLagIndex = this.brokerController.getConsumerLagIndex();
+        if (consumerLagIndex != null && offset != storeOffset) {
+            consumerLagIndex.onCommit(group, topic, queueId, offset);
+        }
+        if (storeOffset != ConsumerOffsetTable.NO_OFFSET && offset < storeOffset) {
+            log.warn("[NOTIFYME]update consumer offset less than store. clientHost={}, key={}, queueId={}, requestOffset={}, storeOffset={}",
+                clientHost, topic + TOPIC_GROUP_SEPARATOR + group, queueId, offset, storeOffset);
         }
     }
 
     public long queryOffset(final String group, final String topic, final int queueId) {
-        // topic@group
-        String key = topic + TOPIC_GROUP_SEPARATOR + group;
-        ConcurrentMap<Integer, Long> map = this.offsetTable.get(key);
-        if (null != map) {
-            Long offset = map.get(queueId);
-            if (offset != null)
-                return offset;
-        }
-
-        return -1;
+        long offset = this.offsetTable.query(topic, group, queueId);
+        return offset != ConsumerOffsetTable.NO_OFFSET ? offset : -1;
     }
 
     public String encode() {
@@ -167,68 +199,154 @@ public class ConsumerOffsetManager extends ConfigManager {
             ConsumerOffsetManager obj = RemotingSerializable.fromJson(jsonString, ConsumerOffsetManager.class);
             if (obj != null) {
                 this.offsetTable = obj.offsetTable;
+                if (this.offsetStore != null) {
+                    this.offsetStore.requestSnapshot();
+                }
             }
         }
     }
 
+    /**
+     * Written straight from the offset table, in the shape fastjson writes {@link #getOffsetTable()}, since a boxed
+     * copy of all the offsets on every flush would cost the heap the table saves.
+     */
     public String encode(final boolean prettyFormat) {
-        return RemotingSerializable.toJson(this, prettyFormat);
+        StringBuilder sb = new StringBuilder(Math.max(256, this.offsetTable.size() * 64));
+        sb.append(prettyFormat ? "{\n\t\"offsetTable\":{" : "{\"offsetTable\":{");
+        boolean first = true;
+        for (Entry<String, ConcurrentMap<String, QueueOffsets>> topicEntry : this.offsetTable.getTopicTable().entrySet()) {
+            for (Entry<String, QueueOffsets> groupEntry : topicEntry.getValue().entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                if (prettyFormat) {
+                    sb.append("\n\t\t");
+                }
+                sb.append(JSON.toJSONString(topicEntry.getKey() + TOPIC_GROUP_SEPARATOR + groupEntry.getKey())).append(":{");
+                QueueOffsets queueOffsets = groupEntry.getValue();
+                boolean firstQueue = true;
+                for (int queueId = 0; queueId < queueOffsets.capacity(); queueId++) {
+                    long offset = queueOffsets.get(queueId);
+                    if (offset == ConsumerOffsetTable.NO_OFFSET) {
+                        continue;
+                    }
+                    if (!firstQueue) {
+                        sb.append(',');
+                    }
+                    firstQueue = false;
+                    sb.append(queueId).append(':').append(offset);
+                }
+                sb.append('}');
+            }
+        }
+        sb.append(prettyFormat ? "\n\t}\n}" : "}}");
+        return sb.toString();
     }
 
+    /**
+     * @return a copy of the offsets keyed by topic@group, which is also how they are encoded as json
+     */
     public ConcurrentMap<String, ConcurrentMap<Integer, Long>> getOffsetTable() {
-        return offsetTable;
+        return this.offsetTable.toOffsetMap();
+    }
+
+    /**
+     * @return the live offsets by topic and group, to read without copying them
+     */
+    @JSONField(serialize = false)
+    public ConcurrentMap<String, ConcurrentMap<String, QueueOffsets>> getTopicGroupOffsetTable() {
+        return this.offsetTable.getTopicTable();
     }
 
     public void setOffsetTable(ConcurrentHashMap<String, ConcurrentMap<Integer, Long>> offsetTable) {
-        this.offsetTable = offsetTable;
+        this.replaceAllOffsets(offsetTable);
+    }
+
+    /**
+     * Replace all offsets with ones taken from elsewhere, e.g. the whole table synchronized from the master.
+     */
+    public void replaceAllOffsets(final Map<String, ConcurrentMap<Integer, Long>> offsets) {
+        ConsumerOffsetTable table = new ConsumerOffsetTable();
+        table.putAll(offsets);
+        this.offsetTable = table;
+        if (this.offsetStore != null) {
+            this.offsetStore.requestSnapshot();
+        }
+    }
+
+    /**
+     * Merge offsets taken from elsewhere, e.g. synchronized from the master.
+     */
+    public void putAllOffsets(final Map<String, ConcurrentMap<Integer, Long>> offsets) {
+        this.offsetTable.putAll(offsets);
+    }
+
+    /**
+     * Offsets for a slave to synchronize, only the ones changed since {@code offsetVersion} if the slave synchronized
+     * the current offset table before.
+     */
+    public ConsumerOffsetSerializeWrapper buildOffsetSerializeWrapper(final Long offsetTableId, final Long offsetVersion) {
+        ConsumerOffsetTable table = this.offsetTable;
+        long version = table.nextVersion();
+        ConsumerOffsetSerializeWrapper offsetWrapper = new ConsumerOffsetSerializeWrapper();
+        if (offsetTableId != null && offsetTableId == table.getTableId() && offsetVersion != null) {
+            offsetWrapper.setOffsetTable(table.toOffsetMap(offsetVersion));
+        } else {
+            offsetWrapper.setOffsetTable(table.toOffsetMap());
+        }
+        offsetWrapper.setOffsetTableId(table.getTableId());
+        offsetWrapper.setOffsetVersion(version);
+        return offsetWrapper;
     }
 
     public Map<Integer, Long> queryMinOffsetInAllGroup(final String topic, final String filterGroups) {
 
         Map<Integer, Long> queueMinOffset = new HashMap<Integer, Long>();
-        Set<String> topicGroups = this.offsetTable.keySet();
+        ConcurrentMap<String, QueueOffsets> groupTable = this.offsetTable.getTopicTable().get(topic);
+        if (null == groupTable) {
+            return queueMinOffset;
+        }
+
+        Set<String> skipGroups = new HashSet<String>();
         if (!UtilAll.isBlank(filterGroups)) {
             for (String group : filterGroups.split(",")) {
-                Iterator<String> it = topicGroups.iterator();
-                while (it.hasNext()) {
-                    if (group.equals(it.next().split(TOPIC_GROUP_SEPARATOR)[1])) {
-                        it.remove();
-                    }
-                }
+                skipGroups.add(group);
             }
         }
 
-        for (Map.Entry<String, ConcurrentMap<Integer, Long>> offSetEntry : this.offsetTable.entrySet()) {
-            String topicGroup = offSetEntry.getKey();
-            String[] topicGroupArr = topicGroup.split(TOPIC_GROUP_SEPARATOR);
-            if (topic.equals(topicGroupArr[0])) {
-                for (Entry<Integer, Long> entry : offSetEntry.getValue().entrySet()) {
-                    long minOffset = this.brokerController.getMessageStore().getMinOffsetInQueue(topic, entry.getKey());
-                    if (entry.getValue() >= minOffset) {
-                        Long offset = queueMinOffset.get(entry.getKey());
-                        if (offset == null) {
-                            queueMinOffset.put(entry.getKey(), Math.min(Long.MAX_VALUE, entry.getValue()));
-                        } else {
-                            queueMinOffset.put(entry.getKey(), Math.min(entry.getValue(), offset));
-                        }
+        for (Entry<String, QueueOffsets> groupEntry : groupTable.entrySet()) {
+            if (skipGroups.contains(groupEntry.getKey())) {
+                continue;
+            }
+            QueueOffsets queueOffsets = groupEntry.getValue();
+            for (int queueId = 0; queueId < queueOffsets.capacity(); queueId++) {
+                long offset = queueOffsets.get(queueId);
+                if (offset == ConsumerOffsetTable.NO_OFFSET) {
+                    continue;
+                }
+                long minOffset = this.brokerController.getMessageStore().getMinOffsetInQueue(topic, queueId);
+                if (offset >= minOffset) {
+                    Long prev = queueMinOffset.get(queueId);
+                    if (prev == null || offset < prev) {
+                        queueMinOffset.put(queueId, offset);
                     }
                 }
             }
-
         }
         return queueMinOffset;
     }
 
     public Map<Integer, Long> queryOffset(final String group, final String topic) {
-        // topic@group
-        String key = topic + TOPIC_GROUP_SEPARATOR + group;
-        return this.offsetTable.get(key);
+        QueueOffsets queueOffsets = this.offsetTable.get(topic, group);
+        return queueOffsets != null ? queueOffsets.toMap() : null;
     }
 
     public void cloneOffset(final String srcGroup, final String destGroup, final String topic) {
-        ConcurrentMap<Integer, Long> offsets = this.offsetTable.get(topic + TOPIC_GROUP_SEPARATOR + srcGroup);
+        QueueOffsets offsets = this.offsetTable.get(topic, srcGroup);
         if (offsets != null) {
-            this.offsetTable.put(topic + TOPIC_GROUP_SEPARATOR + destGroup, new ConcurrentHashMap<Integer, Long>(offsets));
+            // the copy is flagged dirty as a whole
+            this.offsetTable.put(topic, destGroup, offsets.copy());
         }
     }
 
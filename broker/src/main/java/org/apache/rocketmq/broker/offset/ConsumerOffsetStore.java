@@ -0,0 +1,439 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.offset;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import org.apache.rocketmq.broker.offset.ConsumerOffsetTable.QueueOffsets;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+
+/**
+ * Binary persistence of consumer offsets.
+ * <p>
+ * The offsets are kept in a snapshot of the whole table plus an append-only journal of the offsets committed since
+ * the snapshot, so a flush only writes the offsets flagged dirty in the {@link ConsumerOffsetTable} since the previous
+ * one. The journal is folded into a
+ * new snapshot once it grows too large or too old. Both files carry a generation and a journal is only replayed over
+ * the snapshot of the same generation, so a crash while replacing the snapshot never replays stale offsets. The
+ * previous snapshot is kept as a backup, it is loaded if the snapshot is missing or corrupt, and the load fails if the
+ * backup can not be read either.
+ * <p>
+ * Snapshot: magic, version, generation, key count, then per topic@group the key, the queue count and the (queueId,
+ * offset) pairs, followed by the CRC32 of all the above. Journal: magic, generation, then blocks of (length, CRC32,
+ * records), a record being (key, queueId, offset) where queueId -1 removes the key. A torn block at the tail of the
+ * journal is dropped on load.
+ */
+public class ConsumerOffsetStore {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
+
+    static final int SNAPSHOT_MAGIC = 0xC0FF5E7A;
+    static final int JOURNAL_MAGIC = 0xC0FF5E7B;
+    private static final int VERSION = 1;
+    private static final int JOURNAL_HEADER_SIZE = 4 + 8;
+    private static final int BLOCK_HEADER_SIZE = 4 + 4;
+    private static final int REMOVED_QUEUE_ID = -1;
+    private static final String BACKUP_SUFFIX = ".bak";
+
+    private final BrokerConfig brokerConfig;
+    private final String snapshotPath;
+    private final String journalPath;
+
+    private final Set<String/* topic@group */> removedKeys = ConcurrentHashMap.newKeySet();
+    private volatile boolean snapshotRequested = false;
+
+    private long generation = 0;
+    private FileChannel journalChannel;
+    private long lastSnapshotTimestamp = System.currentTimeMillis();
+
+    public ConsumerOffsetStore(final BrokerConfig brokerConfig, final String snapshotPath, final String journalPath) {
+        this.brokerConfig = brokerConfig;
+        this.snapshotPath = snapshotPath;
+        this.journalPath = journalPath;
+    }
+
+    public void markRemoved(final String key) {
+        this.removedKeys.add(key);
+    }
+
+    /**
+     * Write the whole table on the next persist, for changes not tracked entry by entry.
+     */
+    public void requestSnapshot() {
+        this.snapshotRequested = true;
+    }
+
+    /**
+     * @return the persisted table, or null if there is no binary snapshot yet
+     * @throws IOException if neither the snapshot nor its backup can be read
+     */
+    public synchronized ConsumerOffsetTable load() throws IOException {
+        File file = new File(this.snapshotPath);
+        File backupFile = new File(this.snapshotPath + BACKUP_SUFFIX);
+        if (!file.exists() && !backupFile.exists()) {
+            return null;
+        }
+
+        ConsumerOffsetTable offsetTable = this.loadSnapshot(file);
+        if (null == offsetTable) {
+            offsetTable = this.loadSnapshot(backupFile);
+            if (null == offsetTable) {
+                throw new IOException("consumer offset snapshot " + this.snapshotPath + " and its backup are both unreadable");
+            }
+            // the journal is replayed only if it still belongs to the backup, the offsets committed after are lost
+            log.warn("consumer offset snapshot {} is unreadable, load its backup, generation: {}", this.snapshotPath,
+                this.generation);
+            this.snapshotRequested = true;
+        }
+        this.replayJournal(offsetTable);
+        clearDirty(offsetTable);
+
+        this.lastSnapshotTimestamp = System.currentTimeMillis();
+        log.info("load consumer offset snapshot {} OK, generation: {}, topic@group count: {}",
+            this.snapshotPath, this.generation, offsetTable.size());
+        return offsetTable;
+    }
+
+    /**
+     * @return the table in the snapshot file, or null if it is missing or corrupt
+     */
+    private ConsumerOffsetTable loadSnapshot(final File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return this.readSnapshot(file.getPath(), Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            log.error("read consumer offset snapshot " + file.getPath() + " failed", e);
+            return null;
+        }
+    }
+
+    public synchronized void persist(final ConsumerOffsetTable offsetTable) {
+        try {
+            if (this.needSnapshot()) {
+                this.writeSnapshot(offsetTable);
+            } else {
+                this.appendJournal(offsetTable);
+            }
+        } catch (IOException e) {
+            log.error("persist consumer offset to " + this.snapshotPath + " failed", e);
+            this.closeJournal();
+            this.snapshotRequested = true;
+        }
+    }
+
+    public synchronized void shutdown() {
+        this.closeJournal();
+    }
+
+    private boolean needSnapshot() throws IOException {
+        return this.snapshotRequested
+            || null == this.journalChannel
+            || this.journalChannel.size() >= this.brokerConfig.getConsumerOffsetJournalMaxSize()
+            || System.currentTimeMillis() - this.lastSnapshotTimestamp >= this.brokerConfig.getConsumerOffsetSnapshotInterval();
+    }
+
+    private void writeSnapshot(final ConsumerOffsetTable offsetTable) throws IOException {
+        // offsets committed from now on are flagged again and go to the new journal
+        this.snapshotRequested = false;
+        this.removedKeys.clear();
+        clearDirty(offsetTable);
+
+        final long newGeneration = this.generation + 1;
+        ByteArrayOutputStream body = new ByteArrayOutputStream(Math.max(1024, offsetTable.size() * 64));
+        DataOutputStream out = new DataOutputStream(body);
+        int keyCount = 0;
+        for (Entry<String, ConcurrentMap<String, QueueOffsets>> topicEntry : offsetTable.getTopicTable().entrySet()) {
+            for (Entry<String, QueueOffsets> groupEntry : topicEntry.getValue().entrySet()) {
+                QueueOffsets queueOffsets = groupEntry.getValue();
+                int capacity = queueOffsets.capacity();
+                long[] offsets = new long[capacity];
+                int queueCount = 0;
+                for (int queueId = 0; queueId < capacity; queueId++) {
+                    offsets[queueId] = queueOffsets.get(queueId);
+                    if (offsets[queueId] != ConsumerOffsetTable.NO_OFFSET) {
+                        queueCount++;
+                    }
+                }
+                out.writeUTF(topicEntry.getKey() + ConsumerOffsetTable.TOPIC_GROUP_SEPARATOR + groupEntry.getKey());
+                out.writeInt(queueCount);
+                for (int queueId = 0; queueId < capacity; queueId++) {
+                    if (offsets[queueId] != ConsumerOffsetTable.NO_OFFSET) {
+                        out.writeInt(queueId);
+                        out.writeLong(offsets[queueId]);
+                    }
+                }
+                keyCount++;
+            }
+        }
+        out.flush();
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 8 + 4 + body.size() + 4);
+        buffer.putInt(SNAPSHOT_MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(newGeneration);
+        buffer.putInt(keyCount);
+        buffer.put(body.toByteArray());
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc32.getValue());
+        buffer.flip();
+
+        File tmpFile = new File(this.snapshotPath + ".tmp");
+        File parent = tmpFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        try (FileOutputStream fileOutputStream = new FileOutputStream(tmpFile)) {
+            FileChannel channel = fileOutputStream.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        File file = new File(this.snapshotPath);
+        if (file.exists()) {
+            Files.move(file.toPath(), new File(this.snapshotPath + BACKUP_SUFFIX).toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        this.resetJournal(newGeneration);
+        this.generation = newGeneration;
+        this.lastSnapshotTimestamp = System.currentTimeMillis();
+        log.info("persist consumer offset snapshot OK, generation: {}, topic@group count: {}, size: {}",
+            newGeneration, keyCount, buffer.limit());
+    }
+
+    private void appendJournal(final ConsumerOffsetTable offsetTable) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(records);
+
+        // removals go first, a key committed again after it was removed is written back by its dirty offsets
+        Iterator<String> removedIt = this.removedKeys.iterator();
+        while (removedIt.hasNext()) {
+            String key = removedIt.next();
+            removedIt.remove();
+            writeRecord(out, key, REMOVED_QUEUE_ID, 0);
+        }
+
+        for (Entry<String, ConcurrentMap<String, QueueOffsets>> topicEntry : offsetTable.getTopicTable().entrySet()) {
+            for (Entry<String, QueueOffsets> groupEntry : topicEntry.getValue().entrySet()) {
+                QueueOffsets queueOffsets = groupEntry.getValue();
+                if (!queueOffsets.isDirty()) {
+                    continue;
+                }
+                String key = null;
+                for (int queueId : queueOffsets.takeDirty()) {
+                    if (null == key) {
+                        key = topicEntry.getKey() + ConsumerOffsetTable.TOPIC_GROUP_SEPARATOR + groupEntry.getKey();
+                    }
+                    writeRecord(out, key, queueId, queueOffsets.get(queueId));
+                }
+            }
+        }
+        out.flush();
+
+        if (records.size() == 0) {
+            return;
+        }
+
+        byte[] data = records.toByteArray();
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, 0, data.length);
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER_SIZE + data.length);
+        buffer.putInt(data.length);
+        buffer.putInt((int) crc32.getValue());
+        buffer.put(data);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            this.journalChannel.write(buffer);
+        }
+    }
+
+    private static void clearDirty(final ConsumerOffsetTable offsetTable) {
+        for (ConcurrentMap<String, QueueOffsets> groupTable : offsetTable.getTopicTable().values()) {
+            for (QueueOffsets queueOffsets : groupTable.values()) {
+                queueOffsets.takeDirty();
+            }
+        }
+    }
+
+    private static void writeRecord(final DataOutputStream out, final String key, final int queueId,
+        final long offset) throws IOException {
+        out.writeUTF(key);
+        out.writeInt(queueId);
+        out.writeLong(offset);
+    }
+
+    private ConsumerOffsetTable readSnapshot(final String path, final byte[] data) throws IOException {
+        if (data.length < 4 + 4 + 8 + 4 + 4) {
+            log.error("consumer offset snapshot {} is truncated, size: {}", path, data.length);
+            return null;
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, 0, data.length - 4);
+        if ((int) crc32.getValue() != ByteBuffer.wrap(data, data.length - 4, 4).getInt()) {
+            log.error("consumer offset snapshot {} checksum mismatch", path);
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+        int magic = in.readInt();
+        int version = in.readInt();
+        if (magic != SNAPSHOT_MAGIC || version != VERSION) {
+            log.error("consumer offset snapshot {} has unknown magic {} or version {}", path, magic, version);
+            return null;
+        }
+        this.generation = in.readLong();
+        int keyCount = in.readInt();
+
+        ConsumerOffsetTable offsetTable = new ConsumerOffsetTable();
+        for (int i = 0; i < keyCount; i++) {
+            QueueOffsets queueOffsets = getOrCreate(offsetTable, in.readUTF());
+            int queueCount = in.readInt();
+            for (int j = 0; j < queueCount; j++) {
+                int queueId = in.readInt();
+                long offset = in.readLong();
+                if (queueOffsets != null) {
+                    queueOffsets.set(queueId, offset);
+                }
+            }
+        }
+        return offsetTable;
+    }
+
+    private static QueueOffsets getOrCreate(final ConsumerOffsetTable offsetTable, final String key) {
+        String[] topicGroup = key.split(ConsumerOffsetTable.TOPIC_GROUP_SEPARATOR);
+        if (topicGroup.length != 2) {
+            log.warn("skip consumer offsets of illegal key {}", key);
+            return null;
+        }
+        return offsetTable.getOrCreate(topicGroup[0], topicGroup[1]);
+    }
+
+    private void replayJournal(final ConsumerOffsetTable offsetTable) throws IOException {
+        File file = new File(this.journalPath);
+        if (!file.exists()) {
+            this.resetJournal(this.generation);
+            return;
+        }
+
+        byte[] data = Files.readAllBytes(file.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (data.length < JOURNAL_HEADER_SIZE || buffer.getInt() != JOURNAL_MAGIC || buffer.getLong() != this.generation) {
+            log.info("consumer offset journal {} does not match snapshot generation {}, ignore it", this.journalPath, this.generation);
+            this.resetJournal(this.generation);
+            return;
+        }
+
+        int position = JOURNAL_HEADER_SIZE;
+        int recordCount = 0;
+        CRC32 crc32 = new CRC32();
+        while (position + BLOCK_HEADER_SIZE <= data.length) {
+            int length = buffer.getInt(position);
+            int checksum = buffer.getInt(position + 4);
+            int start = position + BLOCK_HEADER_SIZE;
+            if (length <= 0 || start + length > data.length) {
+                break;
+            }
+            crc32.reset();
+            crc32.update(data, start, length);
+            if ((int) crc32.getValue() != checksum) {
+                break;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, start, length));
+            while (in.available() > 0) {
+                String key = in.readUTF();
+                int queueId = in.readInt();
+                long offset = in.readLong();
+                if (queueId == REMOVED_QUEUE_ID) {
+                    String[] topicGroup = key.split(ConsumerOffsetTable.TOPIC_GROUP_SEPARATOR);
+                    if (topicGroup.length == 2) {
+                        offsetTable.remove(topicGroup[0], topicGroup[1]);
+                    }
+                } else {
+                    QueueOffsets queueOffsets = getOrCreate(offsetTable, key);
+                    if (queueOffsets != null) {
+                        queueOffsets.set(queueId, offset);
+                    }
+                }
+                recordCount++;
+            }
+            position = start + length;
+        }
+        if (position < data.length) {
+            log.warn("consumer offset journal {} has a torn tail, truncate it from {} to {}", this.journalPath, data.length, position);
+        }
+
+        this.journalChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        this.journalChannel.truncate(position);
+        this.journalChannel.position(position);
+        log.info("replay consumer offset journal {} OK, records: {}", this.journalPath, recordCount);
+    }
+
+    private void resetJournal(final long journalGeneration) throws IOException {
+        this.closeJournal();
+        File file = new File(this.journalPath);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+        header.putInt(JOURNAL_MAGIC);
+        header.putLong(journalGeneration);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(false);
+        this.journalChannel = channel;
+    }
+
+    private void closeJournal() {
+        if (this.journalChannel != null) {
+            try {
+                this.journalChannel.close();
+            } catch (IOException e) {
+                log.warn("close consumer offset journal " + this.journalPath + " failed", e);
+            }
+            this.journalChannel = null;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.offset;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Consumer offsets by topic and group.
+ * <p>
+ * The offsets of one topic@group live in chunks of primitive longs indexed by queue id, so committing an offset
+ * neither boxes nor builds a topic@group key, and the table takes a fraction of the heap of nested maps. Offsets are
+ * updated lock free; chunks are only ever added, never copied, so a concurrent update can not be lost while the
+ * offsets grow. Every update also flags its queue dirty, letting persistence visit only the offsets committed since.
+ * <p>
+ * Updates through the table also stamp the offsets of the topic@group with the current version of the table, so that
+ * slaves can synchronize only the offsets changed since the version they synchronized last, see {@link #nextVersion()}.
+ */
+public class ConsumerOffsetTable {
+    public static final String TOPIC_GROUP_SEPARATOR = "@";
+
+    /**
+     * Offset of a queue that has none.
+     */
+    public static final long NO_OFFSET = Long.MIN_VALUE;
+
+    private final ConcurrentMap<String/* topic */, ConcurrentMap<String/* group */, QueueOffsets>> table =
+        new ConcurrentHashMap<String, ConcurrentMap<String, QueueOffsets>>(512);
+    private final long tableId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final AtomicLong version = new AtomicLong(1);
+
+    /**
+     * @return the previous offset of the queue, or {@link #NO_OFFSET}
+     */
+    public long commit(final String topic, final String group, final int queueId, final long offset) {
+        QueueOffsets queueOffsets = this.getOrCreate(topic, group);
+        long prev = queueOffsets.set(queueId, offset);
+        queueOffsets.touch(this.version.get());
+        return prev;
+    }
+
+    /**
+     * @return the offset of the queue, or {@link #NO_OFFSET}
+     */
+    public long query(final String topic, final String group, final int queueId) {
+        QueueOffsets queueOffsets = this.get(topic, group);
+        return queueOffsets != null ? queueOffsets.get(queueId) : NO_OFFSET;
+    }
+
+    public QueueOffsets get(final String topic, final String group) {
+        ConcurrentMap<String, QueueOffsets> groupTable = this.table.get(topic);
+        return groupTable != null ? groupTable.get(group) : null;
+    }
+
+    public QueueOffsets getOrCreate(final String topic, final String group) {
+        ConcurrentMap<String, QueueOffsets> groupTable = this.table.get(topic);
+        if (null == groupTable) {
+            groupTable = new ConcurrentHashMap<String, QueueOffsets>(4);
+            ConcurrentMap<String, QueueOffsets> prev = this.table.putIfAbsent(topic, groupTable);
+            if (prev != null) {
+                groupTable = prev;
+            }
+        }
+
+        QueueOffsets queueOffsets = groupTable.get(group);
+        if (null == queueOffsets) {
+            queueOffsets = new QueueOffsets();
+            QueueOffsets prev = groupTable.putIfAbsent(group, queueOffsets);
+            if (prev != null) {
+                queueOffsets = prev;
+            }
+        }
+        return queueOffsets;
+    }
+
+    public QueueOffsets remove(final String topic, final String group) {
+        ConcurrentMap<String, QueueOffsets> groupTable = this.table.get(topic);
+        return groupTable != null ? groupTable.remove(group) : null;
+    }
+
+    public void put(final String topic, final String group, final QueueOffsets queueOffsets) {
+        ConcurrentMap<String, QueueOffsets> groupTable = this.table.get(topic);
+        if (null == groupTable) {
+            groupTable = new ConcurrentHashMap<String, QueueOffsets>(4);
+            ConcurrentMap<String, QueueOffsets> prev = this.table.putIfAbsent(topic, groupTable);
+            if (prev != null) {
+                groupTable = prev;
+            }
+        }
+        queueOffsets.touch(this.version.get());
+        groupTable.put(group, queueOffsets);
+    }
+
+    /**
+     * The groups by topic, for iteration.
+     */
+    public ConcurrentMap<String, ConcurrentMap<String, QueueOffsets>> getTopicTable() {
+        return table;
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentMap<String, QueueOffsets> groupTable : this.table.values()) {
+            size += groupTable.size();
+        }
+        return size;
+    }
+
+    /**
+     * Merge offsets keyed by topic@group, keys in other forms are skipped.
+     */
+    public void putAll(final Map<String, ? extends Map<Integer, Long>> offsetMap) {
+        for (Entry<String, ? extends Map<Integer, Long>> entry : offsetMap.entrySet()) {
+            String[] topicGroup = entry.getKey().split(TOPIC_GROUP_SEPARATOR);
+            if (topicGroup.length != 2 || entry.getValue() == null) {
+                continue;
+            }
+            QueueOffsets queueOffsets = this.getOrCreate(topicGroup[0], topicGroup[1]);
+            for (Entry<Integer, Long> queueOffset : entry.getValue().entrySet()) {
+                queueOffsets.set(queueOffset.getKey(), queueOffset.getValue());
+            }
+            queueOffsets.touch(this.version.get());
+        }
+    }
+
+    /**
+     * Identifies this table, versions of another table are meaningless for it.
+     */
+    public long getTableId() {
+        return tableId;
+    }
+
+    /**
+     * Move to the next version, updates from now on are stamped with it.
+     * <p>
+     * An update racing the move may still be stamped with the previous version after the offsets changed since were
+     * collected, so the returned version, not the new one, is where the next synchronization has to start from.
+     *
+     * @return the version before the move
+     */
+    public long nextVersion() {
+        return this.version.getAndIncrement();
+    }
+
+    /**
+     * @return a copy keyed by topic@group, the shape consumer offsets are exchanged and stored as json in
+     */
+    public ConcurrentMap<String, ConcurrentMap<Integer, Long>> toOffsetMap() {
+        return this.toOffsetMap(Long.MIN_VALUE);
+    }
+
+    /**
+     * @return a copy of the offsets of the topic@groups updated at or after {@code sinceVersion}, see
+     * {@link #toOffsetMap()}
+     */
+    public ConcurrentMap<String, ConcurrentMap<Integer, Long>> toOffsetMap(final long sinceVersion) {
+        ConcurrentMap<String, ConcurrentMap<Integer, Long>> offsetMap =
+            new ConcurrentHashMap<String, ConcurrentMap<Integer, Long>>(Math.max(512, this.size() * 4 / 3 + 1));
+        for (Entry<String, ConcurrentMap<String, QueueOffsets>> topicEntry : this.table.entrySet()) {
+            for (Entry<String, QueueOffsets> groupEntry : topicEntry.getValue().entrySet()) {
+                if (groupEntry.getValue().version < sinceVersion) {
+                    continue;
+                }
+                offsetMap.put(topicEntry.getKey() + TOPIC_GROUP_SEPARATOR + groupEntry.getKey(), groupEntry.getValue().toMap());
+            }
+        }
+        return offsetMap;
+    }
+
+    /**
+     * Offsets of the queues of one topic@group.
+     */
+    public static class QueueOffsets {
+        private static final AtomicLongFieldUpdater<QueueOffsets> VERSION_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(QueueOffsets.class, "version");
+        private static final int CHUNK_SHIFT = 4;
+        private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+        private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+        private volatile Chunk[] chunks = new Chunk[0];
+        private volatile boolean dirty = false;
+        private volatile long version = 0;
+
+        public long get(final int queueId) {
+            Chunk[] chunks = this.chunks;
+            int index = queueId >>> CHUNK_SHIFT;
+            if (queueId < 0 || index >= chunks.length) {
+                return NO_OFFSET;
+            }
+            return chunks[index].offsets.get(queueId & CHUNK_MASK);
+        }
+
+        /**
+         * @return the previous offset, or {@link #NO_OFFSET}
+         */
+        public long set(final int queueId, final long offset) {
+            if (queueId < 0) {
+                throw new IllegalArgumentException("illegal queue id " + queueId);
+            }
+            Chunk chunk = this.chunkOf(queueId);
+            long prev = chunk.offsets.getAndSet(queueId & CHUNK_MASK, offset);
+            chunk.markDirty(queueId & CHUNK_MASK);
+            this.dirty = true;
+            return prev;
+        }
+
+        /**
+         * @return the number of queue ids covered, offsets of the queue ids below may still be {@link #NO_OFFSET}
+         */
+        public int capacity() {
+            return this.chunks.length << CHUNK_SHIFT;
+        }
+
+        public int count() {
+            int count = 0;
+            for (int queueId = 0; queueId < this.capacity(); queueId++) {
+                if (this.get(queueId) != NO_OFFSET) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public boolean isDirty() {
+            return dirty;
+        }
+
+        /**
+         * Clear the dirty flags, the queues updated from now on are flagged again.
+         *
+         * @return the queue ids that were dirty, in ascending order
+         */
+        public int[] takeDirty() {
+            if (!this.dirty) {
+                return new int[0];
+            }
+            this.dirty = false;
+
+            Chunk[] chunks = this.chunks;
+            int[] masks = new int[chunks.length];
+            int count = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                masks[i] = chunks[i].takeDirty();
+                count += Integer.bitCount(masks[i]);
+            }
+            int[] queueIds = new int[count];
+            int n = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                int mask = masks[i];
+                while (mask != 0) {
+                    int bit = Integer.numberOfTrailingZeros(mask);
+                    queueIds[n++] = (i << CHUNK_SHIFT) + bit;
+                    mask &= mask - 1;
+                }
+            }
+            return queueIds;
+        }
+
+        public ConcurrentMap<Integer, Long> toMap() {
+            ConcurrentMap<Integer, Long> map = new ConcurrentHashMap<Integer, Long>(32);
+            for (int queueId = 0; queueId < this.capacity(); queueId++) {
+                long offset = this.get(queueId);
+                if (offset != NO_OFFSET) {
+                    map.put(queueId, offset);
+                }
+            }
+            return map;
+        }
+
+        void touch(final long version) {
+            while (true) {
+                long prev = this.version;
+                if (prev >= version || VERSION_UPDATER.compareAndSet(this, prev, version)) {
+                    return;
+                }
+            }
+        }
+
+        public QueueOffsets copy() {
+            QueueOffsets copy = new QueueOffsets();
+            for (int queueId = 0; queueId < this.capacity(); queueId++) {
+                long offset = this.get(queueId);
+                if (offset != NO_OFFSET) {
+                    copy.set(queueId, offset);
+                }
+            }
+            return copy;
+        }
+
+        private Chunk chunkOf(final int queueId) {
+            int index = queueId >>> CHUNK_SHIFT;
+            Chunk[] chunks = this.chunks;
+            if (index < chunks.length) {
+                return chunks[index];
+            }
+            synchronized (this) {
+                chunks = this.chunks;
+                if (index >= chunks.length) {
+                    Chunk[] newChunks = new Chunk[index + 1];
+                    System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+                    for (int i = chunks.length; i < newChunks.length; i++) {
+                        newChunks[i] = new Chunk();
+                    }
+                    this.chunks = newChunks;
+                    chunks = newChunks;
+                }
+                return chunks[index];
+            }
+        }
+    }
+
+    static final class Chunk {
+        private static final AtomicIntegerFieldUpdater<Chunk> DIRTY_MASK_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(Chunk.class, "dirtyMask");
+
+        private final AtomicLongArray offsets = new AtomicLongArray(QueueOffsets.CHUNK_SIZE);
+        private volatile int dirtyMask = 0;
+
+        Chunk() {
+            for (int i = 0; i < QueueOffsets.CHUNK_SIZE; i++) {
+                this.offsets.lazySet(i, NO_OFFSET);
+            }
+        }
+
+        void markDirty(final int index) {
+            final int bit = 1 << index;
+            while (true) {
+                int mask = this.dirtyMask;
+                if ((mask & bit) != 0 || DIRTY_MASK_UPDATER.compareAndSet(this, mask, mask | bit)) {
+                    return;
+                }
+            }
+        }
+
+        int takeDirty() {
+            return this.dirtyMask != 0 ? DIRTY_MASK_UPDATER.getAndSet(this, 0) : 0;
+        }
+    }
+}
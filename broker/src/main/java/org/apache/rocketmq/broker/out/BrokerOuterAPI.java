@@ -16,11 +16,14 @@
  */
 package org.apache.rocketmq.broker.out;
 
-import com.google.common.collect.Lists;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -42,6 +45,8 @@ import org.apache.rocketmq.common.protocol.body.KVTable;
 import org.apache.rocketmq.common.protocol.body.RegisterBrokerBody;
 import org.apache.rocketmq.common.protocol.body.SubscriptionGroupWrapper;
 import org.apache.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
+import org.apache.rocketmq.common.protocol.header.GetAllConfigRequestHeader;
+import org.apache.rocketmq.common.protocol.header.GetAllConsumerOffsetRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.QueryDataVersionRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.QueryDataVersionResponseHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.RegisterBrokerRequestHeader;
@@ -65,6 +70,9 @@ public class BrokerOuterAPI {
     private String nameSrvAddr = null;
     private BrokerFixedThreadPoolExecutor brokerOuterExecutor = new BrokerFixedThreadPoolExecutor(4, 10, 1, TimeUnit.MINUTES,
         new ArrayBlockingQueue<Runnable>(32), new ThreadFactoryImpl("brokerOutApi_thread_", true));
+    private final ConcurrentMap<String/* namesrvAddr */, RegisteredTopicConfig> registeredTopicConfigTable =
+        new ConcurrentHashMap<String, RegisteredTopicConfig>();
+    private volatile RegisteredTopicConfig lastRegisteredTopicConfig;
 
     public BrokerOuterAPI(final NettyClientConfig nettyClientConfig) {
         this(nettyClientConfig, null);
@@ -122,8 +130,47 @@ public class BrokerOuterAPI {
         final boolean oneway,
         final int timeoutMills,
         final boolean compressed) {
+        return this.registerBrokerAll(clusterName, brokerAddr, brokerName, brokerId, haServerAddr, topicConfigWrapper,
+            filterServerList, oneway, timeoutMills, compressed, false);
+    }
+
+    public List<RegisterBrokerResult> registerBrokerAll(
+        final String clusterName,
+        final String brokerAddr,
+        final String brokerName,
+        final long brokerId,
+        final String haServerAddr,
+        final TopicConfigSerializeWrapper topicConfigWrapper,
+        final List<String> filterServerList,
+        final boolean oneway,
+        final int timeoutMills,
+        final boolean compressed,
+        final boolean delta) {
+        return this.registerBrokerAll(clusterName, brokerAddr, brokerName, brokerId, haServerAddr, topicConfigWrapper,
+            filterServerList, oneway, timeoutMills, compressed, delta, false);
+    }
 
-        final List<RegisterBrokerResult> registerBrokerResultList = Lists.newArrayList();
+    /**
+     * @param delta register only the topic configs changed since the ones a name server acknowledged last, name
+     * servers acknowledged nothing yet, rejecting the delta or not supporting it are registered in full
+     * @param increment {@code topicConfigWrapper} only holds the topic configs changed, they are added to the ones
+     * registered before instead of replacing them
+     */
+    public List<RegisterBrokerResult> registerBrokerAll(
+        final String clusterName,
+        final String brokerAddr,
+        final String brokerName,
+        final long brokerId,
+        final String haServerAddr,
+        final TopicConfigSerializeWrapper topicConfigWrapper,
+        final List<String> filterServerList,
+        final boolean oneway,
+        final int timeoutMills,
+        final boolean compressed,
+        final boolean delta,
+        final boolean increment) {
+
+        final List<RegisterBrokerResult> registerBrokerResultList = new CopyOnWriteArrayList<RegisterBrokerResult>();
         List<String> nameServerAddressList = this.remotingClient.getNameServerAddressList();
         if (nameServerAddressList != null && nameServerAddressList.size() > 0) {
 
@@ -135,19 +182,67 @@ public class BrokerOuterAPI {
             requestHeader.setHaServerAddr(haServerAddr);
             requestHeader.setCompressed(compressed);
 
-            RegisterBrokerBody requestBody = new RegisterBrokerBody();
-            requestBody.setTopicConfigSerializeWrapper(topicConfigWrapper);
-            requestBody.setFilterServerList(filterServerList);
-            final byte[] body = requestBody.encode(compressed);
-            final int bodyCrc32 = UtilAll.crc32(body);
-            requestHeader.setBodyCrc32(bodyCrc32);
+            final RegisteredTopicConfig registeringTopicConfig;
+            final TopicConfigSerializeWrapper fullTopicConfigWrapper;
+            if (delta && increment && this.lastRegisteredTopicConfig == null) {
+                // nothing to add the increment to, it is no base for the registrations to come
+                registeringTopicConfig = null;
+                fullTopicConfigWrapper = topicConfigWrapper;
+            } else if (delta) {
+                registeringTopicConfig = increment
+                    ? RegisteredTopicConfig.merge(topicConfigWrapper, this.lastRegisteredTopicConfig)
+                    : RegisteredTopicConfig.of(topicConfigWrapper, this.lastRegisteredTopicConfig);
+                this.lastRegisteredTopicConfig = registeringTopicConfig;
+                this.registeredTopicConfigTable.keySet().retainAll(nameServerAddressList);
+                fullTopicConfigWrapper = registeringTopicConfig.toTopicConfigSerializeWrapper(registeringTopicConfig.getTopicConfigTable());
+            } else {
+                registeringTopicConfig = null;
+                fullTopicConfigWrapper = topicConfigWrapper;
+            }
+
+            // the full body is only encoded if a name server needs it
+            final Supplier<byte[]> fullBody = Suppliers.memoize(new Supplier<byte[]>() {
+                @Override
+                public byte[] get() {
+                    RegisterBrokerBody requestBody = new RegisterBrokerBody();
+                    requestBody.setTopicConfigSerializeWrapper(fullTopicConfigWrapper);
+                    requestBody.setFilterServerList(filterServerList);
+                    return requestBody.encode(compressed);
+                }
+            });
             final CountDownLatch countDownLatch = new CountDownLatch(nameServerAddressList.size());
             for (final String namesrvAddr : nameServerAddressList) {
                 brokerOuterExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
                         try {
-                            RegisterBrokerResult result = registerBroker(namesrvAddr,oneway, timeoutMills,requestHeader,body);
+                            RegisterBrokerResult result = null;
+                            boolean registered = false;
+                            RegisteredTopicConfig registeredTopicConfig =
+                                registeringTopicConfig != null ? registeredTopicConfigTable.get(namesrvAddr) : null;
+                            if (registeredTopicConfig != null) {
+                                try {
+                                    result = registerBrokerDelta(namesrvAddr, oneway, timeoutMills, requestHeader,
+                                        registeringTopicConfig, registeredTopicConfig, filterServerList);
+                                    registered = true;
+                                } catch (MQBrokerException e) {
+                                    if (e.getResponseCode() != ResponseCode.DATA_VERSION_NOT_MATCH
+                                        && e.getResponseCode() != ResponseCode.REQUEST_CODE_NOT_SUPPORTED) {
+                                        throw e;
+                                    }
+                                    log.info("delta registration rejected by name server {}, code: {}, register in full",
+                                        namesrvAddr, e.getResponseCode());
+                                }
+                            }
+                            if (!registered) {
+                                byte[] body = fullBody.get();
+                                RegisterBrokerRequestHeader fullRequestHeader = copyOf(requestHeader);
+                                fullRequestHeader.setBodyCrc32(UtilAll.crc32(body));
+                                result = registerBroker(namesrvAddr, oneway, timeoutMills, fullRequestHeader, body);
+                            }
+                            if (registeringTopicConfig != null && !oneway) {
+                                registeredTopicConfigTable.put(namesrvAddr, registeringTopicConfig);
+                            }
                             if (result != null) {
                                 registerBrokerResultList.add(result);
                             }
@@ -171,6 +266,43 @@ public class BrokerOuterAPI {
         return registerBrokerResultList;
     }
 
+    private RegisterBrokerResult registerBrokerDelta(
+        final String namesrvAddr,
+        final boolean oneway,
+        final int timeoutMills,
+        final RegisterBrokerRequestHeader requestHeader,
+        final RegisteredTopicConfig registeringTopicConfig,
+        final RegisteredTopicConfig registeredTopicConfig,
+        final List<String> filterServerList
+    ) throws RemotingCommandException, MQBrokerException, RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException,
+        InterruptedException {
+        RegisterBrokerBody requestBody = new RegisterBrokerBody();
+        requestBody.setTopicConfigSerializeWrapper(registeringTopicConfig.toTopicConfigSerializeWrapper(
+            registeringTopicConfig.changedSince(registeredTopicConfig)));
+        requestBody.setFilterServerList(filterServerList);
+        byte[] body = requestBody.encode(requestHeader.isCompressed());
+
+        RegisterBrokerRequestHeader deltaRequestHeader = copyOf(requestHeader);
+        deltaRequestHeader.setBodyCrc32(UtilAll.crc32(body));
+        deltaRequestHeader.setBaseDataVersionTimestamp(registeredTopicConfig.getDataVersion().getTimestamp());
+        deltaRequestHeader.setBaseDataVersionCounter(registeredTopicConfig.getDataVersion().getCounter().get());
+
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.REGISTER_BROKER_DELTA, deltaRequestHeader);
+        request.setBody(body);
+        return this.invokeRegisterBroker(namesrvAddr, oneway, timeoutMills, request);
+    }
+
+    private static RegisterBrokerRequestHeader copyOf(final RegisterBrokerRequestHeader requestHeader) {
+        RegisterBrokerRequestHeader copy = new RegisterBrokerRequestHeader();
+        copy.setBrokerAddr(requestHeader.getBrokerAddr());
+        copy.setBrokerId(requestHeader.getBrokerId());
+        copy.setBrokerName(requestHeader.getBrokerName());
+        copy.setClusterName(requestHeader.getClusterName());
+        copy.setHaServerAddr(requestHeader.getHaServerAddr());
+        copy.setCompressed(requestHeader.isCompressed());
+        return copy;
+    }
+
     private RegisterBrokerResult registerBroker(
         final String namesrvAddr,
         final boolean oneway,
@@ -181,7 +313,16 @@ public class BrokerOuterAPI {
         InterruptedException {
         RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.REGISTER_BROKER, requestHeader);
         request.setBody(body);
+        return this.invokeRegisterBroker(namesrvAddr, oneway, timeoutMills, request);
+    }
 
+    private RegisterBrokerResult invokeRegisterBroker(
+        final String namesrvAddr,
+        final boolean oneway,
+        final int timeoutMills,
+        final RemotingCommand request
+    ) throws RemotingCommandException, MQBrokerException, RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException,
+        InterruptedException {
         if (oneway) {
             try {
                 this.remotingClient.invokeOneway(namesrvAddr, request, timeoutMills);
@@ -218,6 +359,7 @@ public class BrokerOuterAPI {
         final String brokerName,
         final long brokerId
     ) {
+        this.registeredTopicConfigTable.clear();
         List<String> nameServerAddressList = this.remotingClient.getNameServerAddressList();
         if (nameServerAddressList != null) {
             for (String namesrvAddr : nameServerAddressList) {
@@ -323,15 +465,22 @@ public class BrokerOuterAPI {
         return changedList;
     }
 
+    /**
+     * @return null if the topic configs of the broker are still of {@code dataVersion}
+     */
     public TopicConfigSerializeWrapper getAllTopicConfig(
-        final String addr) throws RemotingConnectException, RemotingSendRequestException,
+        final String addr, final DataVersion dataVersion) throws RemotingConnectException, RemotingSendRequestException,
         RemotingTimeoutException, InterruptedException, MQBrokerException {
-        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_TOPIC_CONFIG, null);
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_TOPIC_CONFIG,
+            buildGetAllConfigRequestHeader(dataVersion));
 
         RemotingCommand response = this.remotingClient.invokeSync(MixAll.brokerVIPChannel(true, addr), request, 3000);
         assert response != null;
         switch (response.getCode()) {
             case ResponseCode.SUCCESS: {
+                if (null == response.getBody()) {
+                    return null;
+                }
                 return TopicConfigSerializeWrapper.decode(response.getBody(), TopicConfigSerializeWrapper.class);
             }
             default:
@@ -341,10 +490,21 @@ public class BrokerOuterAPI {
         throw new MQBrokerException(response.getCode(), response.getRemark());
     }
 
+    /**
+     * @param offsetTableId offset table of the broker synchronized last, 0 for none
+     * @param offsetVersion version of the offset table synchronized last
+     * @return the offsets changed since {@code offsetVersion} if the broker still serves that offset table, all
+     * offsets otherwise
+     */
     public ConsumerOffsetSerializeWrapper getAllConsumerOffset(
-        final String addr) throws InterruptedException, RemotingTimeoutException,
+        final String addr, final long offsetTableId, final long offsetVersion) throws InterruptedException, RemotingTimeoutException,
         RemotingSendRequestException, RemotingConnectException, MQBrokerException {
-        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_CONSUMER_OFFSET, null);
+        GetAllConsumerOffsetRequestHeader requestHeader = new GetAllConsumerOffsetRequestHeader();
+        if (offsetTableId != 0) {
+            requestHeader.setOffsetTableId(offsetTableId);
+            requestHeader.setOffsetVersion(offsetVersion);
+        }
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_CONSUMER_OFFSET, requestHeader);
         RemotingCommand response = this.remotingClient.invokeSync(addr, request, 3000);
         assert response != null;
         switch (response.getCode()) {
@@ -375,14 +535,21 @@ public class BrokerOuterAPI {
         throw new MQBrokerException(response.getCode(), response.getRemark());
     }
 
+    /**
+     * @return null if the subscription groups of the broker are still of {@code dataVersion}
+     */
     public SubscriptionGroupWrapper getAllSubscriptionGroupConfig(
-        final String addr) throws InterruptedException, RemotingTimeoutException,
+        final String addr, final DataVersion dataVersion) throws InterruptedException, RemotingTimeoutException,
         RemotingSendRequestException, RemotingConnectException, MQBrokerException {
-        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_SUBSCRIPTIONGROUP_CONFIG, null);
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_SUBSCRIPTIONGROUP_CONFIG,
+            buildGetAllConfigRequestHeader(dataVersion));
         RemotingCommand response = this.remotingClient.invokeSync(addr, request, 3000);
         assert response != null;
         switch (response.getCode()) {
             case ResponseCode.SUCCESS: {
+                if (null == response.getBody()) {
+                    return null;
+                }
                 return SubscriptionGroupWrapper.decode(response.getBody(), SubscriptionGroupWrapper.class);
             }
             default:
@@ -392,6 +559,13 @@ public class BrokerOuterAPI {
         throw new MQBrokerException(response.getCode(), response.getRemark());
     }
 
+    private static GetAllConfigRequestHeader buildGetAllConfigRequestHeader(final DataVersion dataVersion) {
+        GetAllConfigRequestHeader requestHeader = new GetAllConfigRequestHeader();
+        requestHeader.setDataVersionTimestamp(dataVersion.getTimestamp());
+        requestHeader.setDataVersionCounter(dataVersion.getCounter().get());
+        return requestHeader;
+    }
+
     public void registerRPCHook(RPCHook rpcHook) {
         remotingClient.registerRPCHook(rpcHook);
     }
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.out;
+
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.rocketmq.common.DataVersion;
+import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
+
+/**
+ * Immutable copy of the topic configs registered to name servers, the base delta registrations are computed from.
+ */
+public class RegisteredTopicConfig {
+    private final DataVersion dataVersion;
+    private final ConcurrentMap<String, TopicConfig> topicConfigTable;
+
+    private RegisteredTopicConfig(final DataVersion dataVersion, final ConcurrentMap<String, TopicConfig> topicConfigTable) {
+        this.dataVersion = dataVersion;
+        this.topicConfigTable = topicConfigTable;
+    }
+
+    /**
+     * Copy the topic configs to register, the copies of the previous registration are reused for the topic configs
+     * unchanged since, so that unchanged topic configs are the same instances in both.
+     */
+    public static RegisteredTopicConfig of(final TopicConfigSerializeWrapper topicConfigWrapper,
+        final RegisteredTopicConfig previous) {
+        DataVersion dataVersion = new DataVersion();
+        dataVersion.assignNewOne(topicConfigWrapper.getDataVersion());
+
+        ConcurrentMap<String, TopicConfig> topicConfigTable = topicConfigWrapper.getTopicConfigTable();
+        ConcurrentMap<String, TopicConfig> copyTable =
+            new ConcurrentHashMap<String, TopicConfig>(Math.max(16, topicConfigTable.size() * 4 / 3 + 1));
+        for (Entry<String, TopicConfig> entry : topicConfigTable.entrySet()) {
+            TopicConfig prev = previous != null ? previous.topicConfigTable.get(entry.getKey()) : null;
+            copyTable.put(entry.getKey(), entry.getValue().equals(prev) ? prev : copy(entry.getValue()));
+        }
+        return new RegisteredTopicConfig(dataVersion, copyTable);
+    }
+
+    /**
+     * Add the topic configs of an increment registration to the previous registration, which stay the base of the
+     * registrations to come together.
+     */
+    public static RegisteredTopicConfig merge(final TopicConfigSerializeWrapper incrementWrapper,
+        final RegisteredTopicConfig previous) {
+        DataVersion dataVersion = new DataVersion();
+        dataVersion.assignNewOne(incrementWrapper.getDataVersion());
+
+        ConcurrentMap<String, TopicConfig> copyTable = new ConcurrentHashMap<String, TopicConfig>(previous.topicConfigTable);
+        for (Entry<String, TopicConfig> entry : incrementWrapper.getTopicConfigTable().entrySet()) {
+            TopicConfig prev = previous.topicConfigTable.get(entry.getKey());
+            copyTable.put(entry.getKey(), entry.getValue().equals(prev) ? prev : copy(entry.getValue()));
+        }
+        return new RegisteredTopicConfig(dataVersion, copyTable);
+    }
+
+    /**
+     * @return the topic configs added or changed since {@code base}
+     */
+    public ConcurrentMap<String, TopicConfig> changedSince(final RegisteredTopicConfig base) {
+        ConcurrentMap<String, TopicConfig> changedTable = new ConcurrentHashMap<String, TopicConfig>();
+        for (Entry<String, TopicConfig> entry : this.topicConfigTable.entrySet()) {
+            TopicConfig prev = base.topicConfigTable.get(entry.getKey());
+            if (prev != entry.getValue() && !entry.getValue().equals(prev)) {
+                changedTable.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return changedTable;
+    }
+
+    public TopicConfigSerializeWrapper toTopicConfigSerializeWrapper(final ConcurrentMap<String, TopicConfig> topicConfigTable) {
+        TopicConfigSerializeWrapper topicConfigWrapper = new TopicConfigSerializeWrapper();
+        topicConfigWrapper.setDataVersion(this.dataVersion);
+        topicConfigWrapper.setTopicConfigTable(topicConfigTable);
+        return topicConfigWrapper;
+    }
+
+    public DataVersion getDataVersion() {
+        return dataVersion;
+    }
+
+    public ConcurrentMap<String, TopicConfig> getTopicConfigTable() {
+        return topicConfigTable;
+    }
+
+    private static TopicConfig copy(final TopicConfig topicConfig) {
+        TopicConfig copy = new TopicConfig(topicConfig.getTopicName(), topicConfig.getReadQueueNums(),
+            topicConfig.getWriteQueueNums(), topicConfig.getPerm());
+        copy.setTopicFilterType(topicConfig.getTopicFilterType());
+        copy.setTopicSysFlag(topicConfig.getTopicSysFlag());
+        copy.setOrder(topicConfig.isOrder());
+        return copy;
+    }
+}
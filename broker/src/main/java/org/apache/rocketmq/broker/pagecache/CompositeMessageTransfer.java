@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.pagecache;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.apache.rocketmq.store.GetMessageResult;
+
+/**
+ * Builds a composite buffer over the header and the mapped message slices of a {@link GetMessageResult}.
+ * <p>
+ * Unlike a {@link io.netty.channel.FileRegion}, which has to be copied into an intermediate buffer before it can pass
+ * the {@link io.netty.handler.ssl.SslHandler}, the composite buffer is encrypted straight from the page cache. The
+ * message slices are not owned by the buffer, the caller releases the {@link GetMessageResult} once the write
+ * completes.
+ */
+public class CompositeMessageTransfer {
+
+    public static ByteBuf toByteBuf(ByteBufAllocator allocator, ByteBuffer byteBufferHeader,
+        GetMessageResult getMessageResult) {
+        List<ByteBuffer> messageBufferList = getMessageResult.getMessageBufferList();
+        ByteBuf[] components = new ByteBuf[messageBufferList.size() + 1];
+
+        ByteBuf header = allocator.directBuffer(byteBufferHeader.remaining());
+        header.writeBytes(byteBufferHeader);
+        components[0] = header;
+        for (int i = 0; i < messageBufferList.size(); i++) {
+            components[i + 1] = Unpooled.wrappedBuffer(messageBufferList.get(i));
+        }
+
+        return Unpooled.wrappedBuffer(components.length, components);
+    }
+}
@@ -38,6 +38,7 @@ import org.apache.rocketmq.broker.client.ConsumerGroupInfo;
 import org.apache.rocketmq.broker.filter.ConsumerFilterData;
 import org.apache.rocketmq.broker.filter.ExpressionMessageFilter;
 import org.apache.rocketmq.broker.transaction.queue.TransactionalMessageUtil;
+import org.apache.rocketmq.common.DataVersion;
 import org.apache.rocketmq.common.MQVersion;
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.PlainAccessConfig;
@@ -65,9 +66,12 @@ import org.apache.rocketmq.common.protocol.ResponseCode;
 import org.apache.rocketmq.common.protocol.body.BrokerStatsData;
 import org.apache.rocketmq.common.protocol.body.BrokerStatsItem;
 import org.apache.rocketmq.common.protocol.body.Connection;
+import org.apache.rocketmq.common.protocol.body.ConsumerOffsetSerializeWrapper;
 import org.apache.rocketmq.common.protocol.body.ConsumeQueueData;
 import org.apache.rocketmq.common.protocol.body.ConsumeStatsList;
 import org.apache.rocketmq.common.protocol.body.ConsumerConnection;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagHistory;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagList;
 import org.apache.rocketmq.common.protocol.body.GroupList;
 import org.apache.rocketmq.common.protocol.body.KVTable;
 import org.apache.rocketmq.common.protocol.body.LockBatchRequestBody;
@@ -84,11 +88,14 @@ import org.apache.rocketmq.common.protocol.header.ConsumeMessageDirectlyResultRe
 import org.apache.rocketmq.common.protocol.header.CreateTopicRequestHeader;
 import org.apache.rocketmq.common.protocol.header.DeleteSubscriptionGroupRequestHeader;
 import org.apache.rocketmq.common.protocol.header.DeleteTopicRequestHeader;
+import org.apache.rocketmq.common.protocol.header.GetAllConfigRequestHeader;
+import org.apache.rocketmq.common.protocol.header.GetAllConsumerOffsetRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetAllTopicConfigResponseHeader;
 import org.apache.rocketmq.common.protocol.header.GetBrokerConfigResponseHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumeStatsInBrokerHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumeStatsRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumerConnectionListRequestHeader;
+import org.apache.rocketmq.common.protocol.header.GetConsumerLagHistoryRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumerRunningInfoRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumerStatusRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetEarliestMsgStoretimeRequestHeader;
@@ -214,6 +221,10 @@ public class AdminBrokerProcessor implements NettyRequestProcessor {
                 return ViewBrokerStatsData(ctx, request);
             case RequestCode.GET_BROKER_CONSUME_STATS:
                 return fetchAllConsumeStatsInBroker(ctx, request);
+            case RequestCode.GET_ALL_CONSUMER_LAG:
+                return getAllConsumerLag(ctx, request);
+            case RequestCode.GET_CONSUMER_LAG_HISTORY:
+                return getConsumerLagHistory(ctx, request);
             case RequestCode.QUERY_CONSUME_QUEUE:
                 return queryConsumeQueue(ctx, request);
             case RequestCode.UPDATE_AND_CREATE_ACL_CONFIG:
@@ -288,6 +299,7 @@ public class AdminBrokerProcessor implements NettyRequestProcessor {
         this.brokerController.getTopicConfigManager().deleteTopicConfig(requestHeader.getTopic());
         this.brokerController.getMessageStore()
             .cleanUnusedTopic(this.brokerController.getTopicConfigManager().getTopicConfigTable().keySet());
+        this.brokerController.getConsumerLagIndex().removeTopic(requestHeader.getTopic());
 
         response.setCode(ResponseCode.SUCCESS);
         response.setRemark(null);
@@ -428,10 +440,19 @@ public class AdminBrokerProcessor implements NettyRequestProcessor {
         return null;
     }
 
-    private RemotingCommand getAllTopicConfig(ChannelHandlerContext ctx, RemotingCommand request) {
+    private RemotingCommand getAllTopicConfig(ChannelHandlerContext ctx, RemotingCommand request)
+        throws RemotingCommandException {
         final RemotingCommand response = RemotingCommand.createResponseCommand(GetAllTopicConfigResponseHeader.class);
         // final GetAllTopicConfigResponseHeader responseHeader =
         // (GetAllTopicConfigResponseHeader) response.readCustomHeader();
+        final GetAllConfigRequestHeader requestHeader =
+            (GetAllConfigRequestHeader) request.decodeCommandCustomHeader(GetAllConfigRequestHeader.class);
+
+        if (isSameDataVersion(requestHeader, this.brokerController.getTopicConfigManager().getDataVersion())) {
+            response.setCode(ResponseCode.SUCCESS);
+            response.setRemark(null);
+            return response;
+        }
 
         String content = this.brokerController.getTopicConfigManager().encode();
         if (content != null && content.length() > 0) {
@@ -649,6 +670,15 @@ public class AdminBrokerProcessor implements NettyRequestProcessor {
     private RemotingCommand getAllSubscriptionGroup(ChannelHandlerContext ctx,
         RemotingCommand request) throws RemotingCommandException {
         final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        final GetAllConfigRequestHeader requestHeader =
+            (GetAllConfigRequestHeader) request.decodeCommandCustomHeader(GetAllConfigRequestHeader.class);
+
+        if (isSameDataVersion(requestHeader, this.brokerController.getSubscriptionGroupManager().getDataVersion())) {
+            response.setCode(ResponseCode.SUCCESS);
+            response.setRemark(null);
+            return response;
+        }
+
         String content = this.brokerController.getSubscriptionGroupManager().encode();
         if (content != null && content.length() > 0) {
             try {
@@ -784,7 +814,7 @@ public class AdminBrokerProcessor implements NettyRequestProcessor {
             (GetProducerConnectionListRequestHeader) request.decodeCommandCustomHeader(GetProducerConnectionListRequestHeader.class);
 
         ProducerConnection bodydata = new ProducerConnection();
-        HashMap<Channel, ClientChannelInfo> channelInfoHashMap =
+        Map<Channel, ClientChannelInfo> channelInfoHashMap =
             this.brokerController.getProducerManager().getGroupChannelTable().get(requestHeader.getProducerGroup());
         if (channelInfoHashMap != null) {
             Iterator<Map.Entry<Channel, ClientChannelInfo>> it = channelInfoHashMap.entrySet().iterator();
@@ -866,12 +896,10 @@ public class AdminBrokerProcessor implements NettyRequestProcessor {
                 offsetWrapper.setBrokerOffset(brokerOffset);
                 offsetWrapper.setConsumerOffset(consumerOffset);
 
-                long timeOffset = consumerOffset - 1;
-                if (timeOffset >= 0) {
-                    long lastTimestamp = this.brokerController.getMessageStore().getMessageStoreTimeStamp(topic, i, timeOffset);
-                    if (lastTimestamp > 0) {
-                        offsetWrapper.setLastTimestamp(lastTimestamp);
-                    }
+                long lastTimestamp = this.brokerController.getConsumerLagIndex().lastConsumedTimestamp(
+                    requestHeader.getConsumerGroup(), topic, i, consumerOffset);
+                if (lastTimestamp > 0) {
+                    offsetWrapper.setLastTimestamp(lastTimestamp);
                 }
 
                 consumeStats.getOffsetTable().put(mq, offsetWrapper);
@@ -890,33 +918,28 @@ public class AdminBrokerProcessor implements NettyRequestProcessor {
         return response;
     }
 
-    private RemotingCommand getAllConsumerOffset(ChannelHandlerContext ctx, RemotingCommand request) {
+    private RemotingCommand getAllConsumerOffset(ChannelHandlerContext ctx, RemotingCommand request)
+        throws RemotingCommandException {
         final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        final GetAllConsumerOffsetRequestHeader requestHeader =
+            (GetAllConsumerOffsetRequestHeader) request.decodeCommandCustomHeader(GetAllConsumerOffsetRequestHeader.class);
 
-        String content = this.brokerController.getConsumerOffsetManager().encode();
-        if (content != null && content.length() > 0) {
-            try {
-                response.setBody(content.getBytes(MixAll.DEFAULT_CHARSET));
-            } catch (UnsupportedEncodingException e) {
-                log.error("get all consumer offset from master error.", e);
-
-                response.setCode(ResponseCode.SYSTEM_ERROR);
-                response.setRemark("UnsupportedEncodingException " + e);
-                return response;
-            }
-        } else {
-            log.error("No consumer offset in this broker, client: {} ", ctx.channel().remoteAddress());
-            response.setCode(ResponseCode.SYSTEM_ERROR);
-            response.setRemark("No consumer offset in this broker");
-            return response;
-        }
-
+        ConsumerOffsetSerializeWrapper offsetWrapper = this.brokerController.getConsumerOffsetManager()
+            .buildOffsetSerializeWrapper(requestHeader.getOffsetTableId(), requestHeader.getOffsetVersion());
+        response.setBody(offsetWrapper.encode());
         response.setCode(ResponseCode.SUCCESS);
         response.setRemark(null);
 
         return response;
     }
 
+    private static boolean isSameDataVersion(final GetAllConfigRequestHeader requestHeader, final DataVersion dataVersion) {
+        return requestHeader.getDataVersionTimestamp() != null
+            && requestHeader.getDataVersionCounter() != null
+            && requestHeader.getDataVersionTimestamp() == dataVersion.getTimestamp()
+            && requestHeader.getDataVersionCounter() == dataVersion.getCounter().get();
+    }
+
     private RemotingCommand getAllDelayOffset(ChannelHandlerContext ctx, RemotingCommand request) {
         final RemotingCommand response = RemotingCommand.createResponseCommand(null);
 
@@ -1321,12 +1344,10 @@ public class AdminBrokerProcessor implements NettyRequestProcessor {
                     offsetWrapper.setBrokerOffset(brokerOffset);
                     offsetWrapper.setConsumerOffset(consumerOffset);
 
-                    long timeOffset = consumerOffset - 1;
-                    if (timeOffset >= 0) {
-                        long lastTimestamp = this.brokerController.getMessageStore().getMessageStoreTimeStamp(topic, i, timeOffset);
-                        if (lastTimestamp > 0) {
-                            offsetWrapper.setLastTimestamp(lastTimestamp);
-                        }
+                    long lastTimestamp = this.brokerController.getConsumerLagIndex().lastConsumedTimestamp(
+                        group, topic, i, consumerOffset);
+                    if (lastTimestamp > 0) {
+                        offsetWrapper.setLastTimestamp(lastTimestamp);
                     }
                     consumeStats.getOffsetTable().put(mq, offsetWrapper);
                 }
@@ -1349,6 +1370,30 @@ public class AdminBrokerProcessor implements NettyRequestProcessor {
         return response;
     }
 
+    private RemotingCommand getAllConsumerLag(ChannelHandlerContext ctx, RemotingCommand request) {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        ConsumerLagList consumerLagList = this.brokerController.getConsumerLagIndex().computeAllConsumerLag();
+        consumerLagList.setBrokerAddr(this.brokerController.getBrokerAddr());
+        response.setBody(consumerLagList.encode());
+        response.setCode(ResponseCode.SUCCESS);
+        response.setRemark(null);
+        return response;
+    }
+
+    private RemotingCommand getConsumerLagHistory(ChannelHandlerContext ctx,
+        RemotingCommand request) throws RemotingCommandException {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        final GetConsumerLagHistoryRequestHeader requestHeader =
+            (GetConsumerLagHistoryRequestHeader) request.decodeCommandCustomHeader(GetConsumerLagHistoryRequestHeader.class);
+
+        ConsumerLagHistory consumerLagHistory =
+            this.brokerController.getConsumerLagHistoryManager().query(requestHeader.getConsumerGroup());
+        response.setBody(consumerLagHistory.encode());
+        response.setCode(ResponseCode.SUCCESS);
+        response.setRemark(null);
+        return response;
+    }
+
     private HashMap<String, String> prepareRuntimeInfo() {
         HashMap<String, String> runtimeInfo = this.brokerController.getMessageStore().getRuntimeInfo();
         runtimeInfo.put("brokerVersionDesc", MQVersion.getVersionDesc(MQVersion.CURRENT_VERSION));
@@ -26,6 +26,7 @@ import org.apache.rocketmq.common.filter.ExpressionType;
 import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
 import org.apache.rocketmq.common.protocol.body.CheckClientRequestBody;
+import org.apache.rocketmq.common.protocol.header.HeartbeatRequestHeader;
 import org.apache.rocketmq.common.protocol.header.UnregisterClientRequestHeader;
 import org.apache.rocketmq.common.protocol.header.UnregisterClientResponseHeader;
 import org.apache.rocketmq.common.protocol.heartbeat.ConsumerData;
@@ -56,6 +57,8 @@ public class ClientManageProcessor implements NettyRequestProcessor {
         switch (request.getCode()) {
             case RequestCode.HEART_BEAT:
                 return this.heartBeat(ctx, request);
+            case RequestCode.HEART_BEAT_LITE:
+                return this.liteHeartBeat(ctx, request);
             case RequestCode.UNREGISTER_CLIENT:
                 return this.unregisterClient(ctx, request);
             case RequestCode.CHECK_CLIENT_CONFIG:
@@ -71,8 +74,11 @@ public class ClientManageProcessor implements NettyRequestProcessor {
         return false;
     }
 
-    public RemotingCommand heartBeat(ChannelHandlerContext ctx, RemotingCommand request) {
+    public RemotingCommand heartBeat(ChannelHandlerContext ctx, RemotingCommand request)
+        throws RemotingCommandException {
         RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        final HeartbeatRequestHeader requestHeader =
+            (HeartbeatRequestHeader) request.decodeCommandCustomHeader(HeartbeatRequestHeader.class);
         HeartbeatData heartbeatData = HeartbeatData.decode(request.getBody(), HeartbeatData.class);
         ClientChannelInfo clientChannelInfo = new ClientChannelInfo(
             ctx.channel(),
@@ -80,6 +86,7 @@ public class ClientManageProcessor implements NettyRequestProcessor {
             request.getLanguage(),
             request.getVersion()
         );
+        clientChannelInfo.setHeartbeatFingerprint(requestHeader.getHeartbeatFingerprint());
 
         for (ConsumerData data : heartbeatData.getConsumerDataSet()) {
             SubscriptionGroupConfig subscriptionGroupConfig =
@@ -126,6 +133,36 @@ public class ClientManageProcessor implements NettyRequestProcessor {
         return response;
     }
 
+    /**
+     * Refresh the registrations of the channel without decoding heartbeat data, the client sends its full heartbeat
+     * data instead if the fingerprint does not match the heartbeat data registered by the channel.
+     */
+    public RemotingCommand liteHeartBeat(ChannelHandlerContext ctx, RemotingCommand request)
+        throws RemotingCommandException {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        final HeartbeatRequestHeader requestHeader =
+            (HeartbeatRequestHeader) request.decodeCommandCustomHeader(HeartbeatRequestHeader.class);
+        final Integer heartbeatFingerprint = requestHeader.getHeartbeatFingerprint();
+
+        int producerGroups = -1;
+        int consumerGroups = -1;
+        if (heartbeatFingerprint != null) {
+            producerGroups = this.brokerController.getProducerManager().refreshChannel(ctx.channel(), heartbeatFingerprint);
+            if (producerGroups >= 0) {
+                consumerGroups = this.brokerController.getConsumerManager().refreshChannel(ctx.channel(), heartbeatFingerprint);
+            }
+        }
+        if (producerGroups < 0 || consumerGroups < 0 || producerGroups + consumerGroups == 0) {
+            response.setCode(ResponseCode.HEARTBEAT_FINGERPRINT_NOT_MATCH);
+            response.setRemark("no heartbeat data of fingerprint " + heartbeatFingerprint + " registered");
+            return response;
+        }
+
+        response.setCode(ResponseCode.SUCCESS);
+        response.setRemark(null);
+        return response;
+    }
+
     public RemotingCommand unregisterClient(ChannelHandlerContext ctx, RemotingCommand request)
         throws RemotingCommandException {
         final RemotingCommand response =
@@ -17,6 +17,8 @@
 package org.apache.rocketmq.broker.processor;
 
 import io.netty.channel.ChannelHandlerContext;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.transaction.OperationResult;
 import org.apache.rocketmq.common.TopicFilterType;
@@ -25,7 +27,9 @@ import org.apache.rocketmq.common.message.MessageAccessor;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.EndTransactionBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.EndTransactionRequestHeader;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.logging.InternalLogger;
@@ -52,6 +56,9 @@ public class EndTransactionProcessor implements NettyRequestProcessor {
     @Override
     public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) throws
         RemotingCommandException {
+        if (request.getCode() == RequestCode.END_TRANSACTION_BATCH) {
+            return this.processBatchRequest(ctx, request);
+        }
         final RemotingCommand response = RemotingCommand.createResponseCommand(null);
         final EndTransactionRequestHeader requestHeader =
             (EndTransactionRequestHeader)request.decodeCommandCustomHeader(EndTransactionRequestHeader.class);
@@ -127,11 +134,7 @@ public class EndTransactionProcessor implements NettyRequestProcessor {
             if (result.getResponseCode() == ResponseCode.SUCCESS) {
                 RemotingCommand res = checkPrepareMessage(result.getPrepareMessage(), requestHeader);
                 if (res.getCode() == ResponseCode.SUCCESS) {
-                    MessageExtBrokerInner msgInner = endMessageTransaction(result.getPrepareMessage());
-                    msgInner.setSysFlag(MessageSysFlag.resetTransactionValue(msgInner.getSysFlag(), requestHeader.getCommitOrRollback()));
-                    msgInner.setQueueOffset(requestHeader.getTranStateTableOffset());
-                    msgInner.setPreparedTransactionOffset(requestHeader.getCommitLogOffset());
-                    msgInner.setStoreTimestamp(result.getPrepareMessage().getStoreTimestamp());
+                    MessageExtBrokerInner msgInner = makeFinalMessage(result.getPrepareMessage(), requestHeader);
                     RemotingCommand sendResult = sendFinalMessage(msgInner);
                     if (sendResult.getCode() == ResponseCode.SUCCESS) {
                         this.brokerController.getTransactionalMessageService().deletePrepareMessage(result.getPrepareMessage());
@@ -155,6 +158,92 @@ public class EndTransactionProcessor implements NettyRequestProcessor {
         return response;
     }
 
+    /**
+     * End the transactions of a batch, the final messages are written one by one while the op messages of all the
+     * ended transactions are written together.
+     */
+    private RemotingCommand processBatchRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        if (BrokerRole.SLAVE == brokerController.getMessageStoreConfig().getBrokerRole()) {
+            response.setCode(ResponseCode.SLAVE_NOT_AVAILABLE);
+            LOGGER.warn("Message store is slave mode, so end transaction is forbidden. ");
+            return response;
+        }
+
+        final EndTransactionBatchRequestBody requestBody = request.getBody() == null ? null
+            : EndTransactionBatchRequestBody.decode(request.getBody(), EndTransactionBatchRequestBody.class);
+        if (requestBody == null) {
+            response.setCode(ResponseCode.SYSTEM_ERROR);
+            response.setRemark("The end transaction batch request body is empty");
+            return response;
+        }
+
+        List<EndTransactionRequestHeader> requestHeaderList = requestBody.getRequestHeaderList();
+        LOGGER.debug("Transaction batch request from {}, size: {}", RemotingHelper.parseChannelRemoteAddr(ctx.channel()),
+            requestHeaderList.size());
+        List<MessageExt> endedMessages = new ArrayList<MessageExt>(requestHeaderList.size());
+        int failed = 0;
+        for (EndTransactionRequestHeader requestHeader : requestHeaderList) {
+            if (!this.endTransaction(requestHeader, endedMessages)) {
+                failed++;
+            }
+        }
+        if (!endedMessages.isEmpty()
+            && !this.brokerController.getTransactionalMessageService().deletePrepareMessages(endedMessages)) {
+            failed += endedMessages.size();
+        }
+
+        if (failed > 0) {
+            response.setCode(ResponseCode.SYSTEM_ERROR);
+            response.setRemark(failed + " of " + requestHeaderList.size() + " transactions failed to end");
+        } else {
+            response.setCode(ResponseCode.SUCCESS);
+        }
+        return response;
+    }
+
+    /**
+     * @param endedMessages The prepare message is added if the transaction is committed or rolled back.
+     * @return false if the transaction failed to end.
+     */
+    private boolean endTransaction(EndTransactionRequestHeader requestHeader, List<MessageExt> endedMessages) {
+        Integer commitOrRollback = requestHeader.getCommitOrRollback();
+        if (commitOrRollback == null || MessageSysFlag.TRANSACTION_NOT_TYPE == commitOrRollback) {
+            LOGGER.warn("End transaction in batch, but it's pending status. RequestHeader: {}", requestHeader);
+            return true;
+        }
+
+        OperationResult result;
+        if (MessageSysFlag.TRANSACTION_COMMIT_TYPE == commitOrRollback) {
+            result = this.brokerController.getTransactionalMessageService().commitMessage(requestHeader);
+        } else if (MessageSysFlag.TRANSACTION_ROLLBACK_TYPE == commitOrRollback) {
+            result = this.brokerController.getTransactionalMessageService().rollbackMessage(requestHeader);
+        } else {
+            LOGGER.warn("Illegal commitOrRollback in batch. RequestHeader: {}", requestHeader);
+            return false;
+        }
+        if (result.getResponseCode() != ResponseCode.SUCCESS) {
+            LOGGER.warn("End transaction in batch failed, {}. RequestHeader: {}", result.getResponseRemark(), requestHeader);
+            return false;
+        }
+
+        RemotingCommand res = checkPrepareMessage(result.getPrepareMessage(), requestHeader);
+        if (res.getCode() != ResponseCode.SUCCESS) {
+            LOGGER.warn("End transaction in batch failed, {}. RequestHeader: {}", res.getRemark(), requestHeader);
+            return false;
+        }
+
+        if (MessageSysFlag.TRANSACTION_COMMIT_TYPE == commitOrRollback) {
+            RemotingCommand sendResult = sendFinalMessage(makeFinalMessage(result.getPrepareMessage(), requestHeader));
+            if (sendResult.getCode() != ResponseCode.SUCCESS) {
+                LOGGER.warn("End transaction in batch failed, {}. RequestHeader: {}", sendResult.getRemark(), requestHeader);
+                return false;
+            }
+        }
+        endedMessages.add(result.getPrepareMessage());
+        return true;
+    }
+
     @Override
     public boolean rejectRequest() {
         return false;
@@ -190,6 +279,15 @@ public class EndTransactionProcessor implements NettyRequestProcessor {
         return response;
     }
 
+    private MessageExtBrokerInner makeFinalMessage(MessageExt prepareMessage, EndTransactionRequestHeader requestHeader) {
+        MessageExtBrokerInner msgInner = endMessageTransaction(prepareMessage);
+        msgInner.setSysFlag(MessageSysFlag.resetTransactionValue(msgInner.getSysFlag(), requestHeader.getCommitOrRollback()));
+        msgInner.setQueueOffset(requestHeader.getTranStateTableOffset());
+        msgInner.setPreparedTransactionOffset(requestHeader.getCommitLogOffset());
+        msgInner.setStoreTimestamp(prepareMessage.getStoreTimestamp());
+        return msgInner;
+    }
+
     private MessageExtBrokerInner endMessageTransaction(MessageExt msgExt) {
         MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
         msgInner.setTopic(msgExt.getUserProperty(MessageConst.PROPERTY_REAL_TOPIC));
@@ -16,13 +16,18 @@
  */
 package org.apache.rocketmq.broker.processor;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.FileRegion;
+import io.netty.handler.ssl.SslHandler;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.client.ConsumerGroupInfo;
 import org.apache.rocketmq.broker.filter.ConsumerFilterData;
@@ -32,6 +37,7 @@ import org.apache.rocketmq.broker.filter.ExpressionMessageFilter;
 import org.apache.rocketmq.broker.longpolling.PullRequest;
 import org.apache.rocketmq.broker.mqtrace.ConsumeMessageContext;
 import org.apache.rocketmq.broker.mqtrace.ConsumeMessageHook;
+import org.apache.rocketmq.broker.pagecache.CompositeMessageTransfer;
 import org.apache.rocketmq.broker.pagecache.ManyMessageTransfer;
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.TopicConfig;
@@ -45,7 +51,9 @@ import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.PullMessageBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.PullMessageRequestHeader;
 import org.apache.rocketmq.common.protocol.header.PullMessageResponseHeader;
 import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
@@ -63,6 +71,7 @@ import org.apache.rocketmq.store.GetMessageResult;
 import org.apache.rocketmq.store.MessageExtBrokerInner;
 import org.apache.rocketmq.store.MessageFilter;
 import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
 import org.apache.rocketmq.store.config.BrokerRole;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
 
@@ -88,10 +97,25 @@ public class PullMessageProcessor implements NettyRequestProcessor {
 
     private RemotingCommand processRequest(final Channel channel, RemotingCommand request, boolean brokerAllowSuspend)
         throws RemotingCommandException {
-        RemotingCommand response = RemotingCommand.createResponseCommand(PullMessageResponseHeader.class);
-        final PullMessageResponseHeader responseHeader = (PullMessageResponseHeader) response.readCustomHeader();
+        if (request.getCode() == RequestCode.PULL_MESSAGE_BATCH) {
+            return this.processBatchRequest(channel, request, brokerAllowSuspend);
+        }
+
         final PullMessageRequestHeader requestHeader =
             (PullMessageRequestHeader) request.decodeCommandCustomHeader(PullMessageRequestHeader.class);
+        return this.processRequest(channel, request, requestHeader, brokerAllowSuspend, null);
+    }
+
+    /**
+     * @param batchEntry not null if the request is part of a batch, the found messages are then left to the batch
+     * and the request is never suspended on its own
+     */
+    private RemotingCommand processRequest(final Channel channel, RemotingCommand request,
+        final PullMessageRequestHeader requestHeader, boolean brokerAllowSuspend, final BatchPullEntry batchEntry)
+        throws RemotingCommandException {
+        final long beginNanos = System.nanoTime();
+        RemotingCommand response = RemotingCommand.createResponseCommand(PullMessageResponseHeader.class);
+        final PullMessageResponseHeader responseHeader = (PullMessageResponseHeader) response.readCustomHeader();
 
         response.setOpaque(request.getOpaque());
 
@@ -232,6 +256,16 @@ public class PullMessageProcessor implements NettyRequestProcessor {
             messageFilter = new ExpressionMessageFilter(subscriptionData, consumerFilterData,
                 this.brokerController.getConsumerFilterManager());
         }
+        if (batchEntry != null) {
+            batchEntry.setSubscriptionData(subscriptionData);
+            batchEntry.setMessageFilter(messageFilter);
+        }
+
+        if (!this.brokerController.getBrokerRateLimiter().tryAcquireConsume(requestHeader.getConsumerGroup())) {
+            response.setCode(ResponseCode.THROTTLED);
+            response.setRemark("[THROTTLED]consume rate limit exceeded, consumer group: " + requestHeader.getConsumerGroup());
+            return response;
+        }
 
         final GetMessageResult getMessageResult =
             this.brokerController.getMessageStore().getMessage(requestHeader.getConsumerGroup(), requestHeader.getTopic(),
@@ -329,7 +363,7 @@ public class PullMessageProcessor implements NettyRequestProcessor {
                 context.setTopic(requestHeader.getTopic());
                 context.setQueueId(requestHeader.getQueueId());
 
-                String owner = request.getExtFields().get(BrokerStatsManager.COMMERCIAL_OWNER);
+                String owner = request.getExtFields() != null ? request.getExtFields().get(BrokerStatsManager.COMMERCIAL_OWNER) : null;
 
                 switch (response.getCode()) {
                     case ResponseCode.SUCCESS:
@@ -375,7 +409,18 @@ public class PullMessageProcessor implements NettyRequestProcessor {
                         getMessageResult.getBufferTotalSize());
 
                     this.brokerController.getBrokerStatsManager().incBrokerGetNums(getMessageResult.getMessageCount());
-                    if (this.brokerController.getBrokerConfig().isTransferMsgByHeap()) {
+                    this.brokerController.getBrokerStatsManager().recordGroupGetRt(requestHeader.getConsumerGroup(),
+                        requestHeader.getTopic(), TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - beginNanos));
+                    this.brokerController.getBrokerRateLimiter().consumed(requestHeader.getConsumerGroup(),
+                        getMessageResult.getMessageCount(), getMessageResult.getBufferTotalSize());
+                    if (batchEntry != null) {
+                        batchEntry.setGetMessageResult(getMessageResult);
+                    } else if (this.brokerController.getBrokerConfig().isTransferMsgByCompositeBuffer()
+                        && channel.pipeline().get(SslHandler.class) != null) {
+                        this.recordDiskFallBehindTime(getMessageResult, requestHeader.getConsumerGroup(), requestHeader.getTopic(), requestHeader.getQueueId());
+                        this.transferByCompositeBuffer(channel, response, getMessageResult);
+                        response = null;
+                    } else if (this.brokerController.getBrokerConfig().isTransferMsgByHeap()) {
                         final long beginTimeMills = this.brokerController.getMessageStore().now();
                         final byte[] r = this.readGetMessageResult(getMessageResult, requestHeader.getConsumerGroup(), requestHeader.getTopic(), requestHeader.getQueueId());
                         this.brokerController.getBrokerStatsManager().incGroupGetLatency(requestHeader.getConsumerGroup(),
@@ -383,29 +428,13 @@ public class PullMessageProcessor implements NettyRequestProcessor {
                             (int) (this.brokerController.getMessageStore().now() - beginTimeMills));
                         response.setBody(r);
                     } else {
-                        try {
-                            FileRegion fileRegion =
-                                new ManyMessageTransfer(response.encodeHeader(getMessageResult.getBufferTotalSize()), getMessageResult);
-                            channel.writeAndFlush(fileRegion).addListener(new ChannelFutureListener() {
-                                @Override
-                                public void operationComplete(ChannelFuture future) throws Exception {
-                                    getMessageResult.release();
-                                    if (!future.isSuccess()) {
-                                        log.error("transfer many message by pagecache failed, {}", channel.remoteAddress(), future.cause());
-                                    }
-                                }
-                            });
-                        } catch (Throwable e) {
-                            log.error("transfer many message by pagecache exception", e);
-                            getMessageResult.release();
-                        }
-
+                        this.transferByFileRegion(channel, response, getMessageResult);
                         response = null;
                     }
                     break;
                 case ResponseCode.PULL_NOT_FOUND:
 
-                    if (brokerAllowSuspend && hasSuspendFlag) {
+                    if (brokerAllowSuspend && hasSuspendFlag && batchEntry == null) {
                         long pollingTimeMills = suspendTimeoutMillisLong;
                         if (!this.brokerController.getBrokerConfig().isLongPollingEnable()) {
                             pollingTimeMills = this.brokerController.getBrokerConfig().getShortPollingTimeMills();
@@ -469,6 +498,132 @@ public class PullMessageProcessor implements NettyRequestProcessor {
         return response;
     }
 
+    private RemotingCommand processBatchRequest(final Channel channel, final RemotingCommand request,
+        final boolean brokerAllowSuspend) throws RemotingCommandException {
+        PullMessageBatchRequestBody requestBody = null;
+        if (request.getBody() != null) {
+            requestBody = PullMessageBatchRequestBody.decode(request.getBody(), PullMessageBatchRequestBody.class);
+        }
+        if (requestBody == null || requestBody.getRequestHeaderList() == null || requestBody.getRequestHeaderList().isEmpty()) {
+            return RemotingCommand.createResponseCommand(ResponseCode.SYSTEM_ERROR, "pull message batch request is empty");
+        }
+
+        final List<PullMessageRequestHeader> requestHeaderList = requestBody.getRequestHeaderList();
+        final List<RemotingCommand> responseList = new ArrayList<RemotingCommand>(requestHeaderList.size());
+        final List<BatchPullEntry> entryList = new ArrayList<BatchPullEntry>(requestHeaderList.size());
+        boolean respondNow = false;
+        boolean suspend = brokerAllowSuspend;
+        long suspendTimeoutMillis = Long.MAX_VALUE;
+        for (PullMessageRequestHeader requestHeader : requestHeaderList) {
+            BatchPullEntry entry = new BatchPullEntry();
+            RemotingCommand response = this.processRequest(channel, request, requestHeader, brokerAllowSuspend, entry);
+            responseList.add(response);
+            entryList.add(entry);
+            if (response.getCode() != ResponseCode.PULL_NOT_FOUND) {
+                respondNow = true;
+            }
+            if (suspend && PullSysFlag.hasSuspendFlag(requestHeader.getSysFlag())) {
+                suspendTimeoutMillis = Math.min(suspendTimeoutMillis, requestHeader.getSuspendTimeoutMillis());
+            } else {
+                suspend = false;
+            }
+        }
+
+        if (!respondNow && suspend) {
+            long pollingTimeMills = suspendTimeoutMillis;
+            if (!this.brokerController.getBrokerConfig().isLongPollingEnable()) {
+                pollingTimeMills = this.brokerController.getBrokerConfig().getShortPollingTimeMills();
+            }
+
+            // the first queue that has new messages wakes up the whole batch
+            final AtomicBoolean completed = new AtomicBoolean(false);
+            final long now = this.brokerController.getMessageStore().now();
+            for (int i = 0; i < requestHeaderList.size(); i++) {
+                PullMessageRequestHeader requestHeader = requestHeaderList.get(i);
+                BatchPullEntry entry = entryList.get(i);
+                PullRequest pullRequest = new PullRequest(request, channel, pollingTimeMills, now,
+                    requestHeader.getQueueOffset(), entry.getSubscriptionData(), entry.getMessageFilter(), completed);
+                this.brokerController.getPullRequestHoldService().suspendPullRequest(requestHeader.getTopic(),
+                    requestHeader.getQueueId(), pullRequest);
+            }
+            return null;
+        }
+
+        RemotingCommand response = RemotingCommand.createResponseCommand(ResponseCode.SUCCESS, null);
+        response.setOpaque(request.getOpaque());
+        final GetMessageResult batchResult = new GetMessageResult();
+        for (int i = 0; i < responseList.size(); i++) {
+            GetMessageResult getMessageResult = entryList.get(i).getGetMessageResult();
+            ByteBuffer frameHeader = responseList.get(i).encodeHeader(getMessageResult != null ? getMessageResult.getBufferTotalSize() : 0);
+            batchResult.addMessage(new SelectMappedBufferResult(0, frameHeader, frameHeader.limit(), null));
+            if (getMessageResult != null) {
+                for (SelectMappedBufferResult selectResult : getMessageResult.getMessageMapedList()) {
+                    batchResult.addMessage(selectResult);
+                }
+            }
+        }
+
+        if (this.brokerController.getBrokerConfig().isTransferMsgByCompositeBuffer()
+            && channel.pipeline().get(SslHandler.class) != null) {
+            this.transferByCompositeBuffer(channel, response, batchResult);
+            response = null;
+        } else if (this.brokerController.getBrokerConfig().isTransferMsgByHeap()) {
+            final ByteBuffer byteBuffer = ByteBuffer.allocate(batchResult.getBufferTotalSize());
+            try {
+                for (ByteBuffer bb : batchResult.getMessageBufferList()) {
+                    byteBuffer.put(bb);
+                }
+            } finally {
+                batchResult.release();
+            }
+            response.setBody(byteBuffer.array());
+        } else {
+            this.transferByFileRegion(channel, response, batchResult);
+            response = null;
+        }
+        return response;
+    }
+
+    private void transferByCompositeBuffer(final Channel channel, final RemotingCommand response,
+        final GetMessageResult getMessageResult) {
+        try {
+            ByteBuf byteBuf = CompositeMessageTransfer.toByteBuf(channel.alloc(),
+                response.encodeHeader(getMessageResult.getBufferTotalSize()), getMessageResult);
+            channel.writeAndFlush(byteBuf).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    getMessageResult.release();
+                    if (!future.isSuccess()) {
+                        log.error("transfer many message by composite buffer failed, {}", channel.remoteAddress(), future.cause());
+                    }
+                }
+            });
+        } catch (Throwable e) {
+            log.error("transfer many message by composite buffer exception", e);
+            getMessageResult.release();
+        }
+    }
+
+    private void transferByFileRegion(final Channel channel, final RemotingCommand response,
+        final GetMessageResult getMessageResult) {
+        try {
+            FileRegion fileRegion =
+                new ManyMessageTransfer(response.encodeHeader(getMessageResult.getBufferTotalSize()), getMessageResult);
+            channel.writeAndFlush(fileRegion).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    getMessageResult.release();
+                    if (!future.isSuccess()) {
+                        log.error("transfer many message by pagecache failed, {}", channel.remoteAddress(), future.cause());
+                    }
+                }
+            });
+        } catch (Throwable e) {
+            log.error("transfer many message by pagecache exception", e);
+            getMessageResult.release();
+        }
+    }
+
     public boolean hasConsumeMessageHook() {
         return consumeMessageHookList != null && !this.consumeMessageHookList.isEmpty();
     }
@@ -504,6 +659,16 @@ public class PullMessageProcessor implements NettyRequestProcessor {
         return byteBuffer.array();
     }
 
+    private void recordDiskFallBehindTime(final GetMessageResult getMessageResult, final String group, final String topic,
+        final int queueId) {
+        List<ByteBuffer> messageBufferList = getMessageResult.getMessageBufferList();
+        if (!messageBufferList.isEmpty()) {
+            ByteBuffer bb = messageBufferList.get(messageBufferList.size() - 1);
+            long storeTimestamp = bb.getLong(bb.position() + MessageDecoder.MESSAGE_STORE_TIMESTAMP_POSTION);
+            this.brokerController.getBrokerStatsManager().recordDiskFallBehindTime(group, topic, queueId, this.brokerController.getMessageStore().now() - storeTimestamp);
+        }
+    }
+
     private void generateOffsetMovedEvent(final OffsetMovedEvent event) {
         try {
             MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
@@ -535,39 +700,107 @@ public class PullMessageProcessor implements NettyRequestProcessor {
         Runnable run = new Runnable() {
             @Override
             public void run() {
-                try {
-                    final RemotingCommand response = PullMessageProcessor.this.processRequest(channel, request, false);
+                PullMessageProcessor.this.processRequestWhenWakeup(channel, request);
+            }
+        };
+        this.brokerController.getPullMessageExecutor().submit(new RequestTask(run, channel, request));
+    }
 
-                    if (response != null) {
-                        response.setOpaque(request.getOpaque());
-                        response.markResponseType();
+    /**
+     * Wake up suspended pull requests, {@code pullWakeupBatchSize} requests are processed by one task of the pull
+     * executor.
+     */
+    public void executeRequestsWhenWakeup(final List<PullRequest> pullRequestList) {
+        final int batchSize = Math.max(1, this.brokerController.getBrokerConfig().getPullWakeupBatchSize());
+        for (int i = 0; i < pullRequestList.size(); i += batchSize) {
+            final List<PullRequest> batch = pullRequestList.subList(i, Math.min(i + batchSize, pullRequestList.size()));
+            Runnable run = new Runnable() {
+                @Override
+                public void run() {
+                    for (PullRequest pullRequest : batch) {
                         try {
-                            channel.writeAndFlush(response).addListener(new ChannelFutureListener() {
-                                @Override
-                                public void operationComplete(ChannelFuture future) throws Exception {
-                                    if (!future.isSuccess()) {
-                                        log.error("processRequestWrapper response to {} failed",
-                                            future.channel().remoteAddress(), future.cause());
-                                        log.error(request.toString());
-                                        log.error(response.toString());
-                                    }
-                                }
-                            });
+                            PullMessageProcessor.this.processRequestWhenWakeup(pullRequest.getClientChannel(),
+                                pullRequest.getRequestCommand());
                         } catch (Throwable e) {
-                            log.error("processRequestWrapper process request over, but response failed", e);
-                            log.error(request.toString());
-                            log.error(response.toString());
+                            log.error("execute request when wakeup failed.", e);
                         }
                     }
-                } catch (RemotingCommandException e1) {
-                    log.error("excuteRequestWhenWakeup run", e1);
                 }
+            };
+            PullRequest first = batch.get(0);
+            try {
+                this.brokerController.getPullMessageExecutor().submit(
+                    new RequestTask(run, first.getClientChannel(), first.getRequestCommand()));
+            } catch (Throwable e) {
+                log.error("execute requests when wakeup failed.", e);
             }
-        };
-        this.brokerController.getPullMessageExecutor().submit(new RequestTask(run, channel, request));
+        }
+    }
+
+    private void processRequestWhenWakeup(final Channel channel, final RemotingCommand request) {
+        try {
+            final RemotingCommand response = PullMessageProcessor.this.processRequest(channel, request, false);
+
+            if (response != null) {
+                response.setOpaque(request.getOpaque());
+                response.markResponseType();
+                try {
+                    channel.writeAndFlush(response).addListener(new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture future) throws Exception {
+                            if (!future.isSuccess()) {
+                                log.error("processRequestWrapper response to {} failed",
+                                    future.channel().remoteAddress(), future.cause());
+                                log.error(request.toString());
+                                log.error(response.toString());
+                            }
+                        }
+                    });
+                } catch (Throwable e) {
+                    log.error("processRequestWrapper process request over, but response failed", e);
+                    log.error(request.toString());
+                    log.error(response.toString());
+                }
+            }
+        } catch (RemotingCommandException e1) {
+            log.error("excuteRequestWhenWakeup run", e1);
+        }
     }
 
     public void registerConsumeMessageHook(List<ConsumeMessageHook> sendMessageHookList) {
         this.consumeMessageHookList = sendMessageHookList;
     }
+
+    /**
+     * State of one queue of a {@link RequestCode#PULL_MESSAGE_BATCH} request.
+     */
+    static class BatchPullEntry {
+        private GetMessageResult getMessageResult;
+        private SubscriptionData subscriptionData;
+        private MessageFilter messageFilter;
+
+        public GetMessageResult getGetMessageResult() {
+            return getMessageResult;
+        }
+
+        public void setGetMessageResult(GetMessageResult getMessageResult) {
+            this.getMessageResult = getMessageResult;
+        }
+
+        public SubscriptionData getSubscriptionData() {
+            return subscriptionData;
+        }
+
+        public void setSubscriptionData(SubscriptionData subscriptionData) {
+            this.subscriptionData = subscriptionData;
+        }
+
+        public MessageFilter getMessageFilter() {
+            return messageFilter;
+        }
+
+        public void setMessageFilter(MessageFilter messageFilter) {
+            this.messageFilter = messageFilter;
+        }
+    }
 }
@@ -19,6 +19,9 @@ package org.apache.rocketmq.broker.processor;
 import java.net.SocketAddress;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import io.netty.channel.ChannelHandlerContext;
 import org.apache.rocketmq.broker.BrokerController;
@@ -47,7 +50,9 @@ import org.apache.rocketmq.common.subscription.SubscriptionGroupConfig;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.common.sysflag.TopicSysFlag;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+import org.apache.rocketmq.remoting.common.RemotingHelper;
 import org.apache.rocketmq.remoting.netty.NettyRequestProcessor;
+import org.apache.rocketmq.remoting.netty.RemotingResponseCallback;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.apache.rocketmq.store.MessageExtBrokerInner;
 import org.apache.rocketmq.store.PutMessageResult;
@@ -65,28 +70,61 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
     @Override
     public RemotingCommand processRequest(ChannelHandlerContext ctx,
                                           RemotingCommand request) throws RemotingCommandException {
-        SendMessageContext mqtraceContext;
+        RemotingCommand response = null;
+        try {
+            response = asyncProcessRequest(ctx, request).get();
+        } catch (InterruptedException | ExecutionException e) {
+            log.error("process SendMessage error, request : " + request.toString(), e);
+        }
+        return response;
+    }
+
+    @Override
+    public void asyncProcessRequest(ChannelHandlerContext ctx, RemotingCommand request, RemotingResponseCallback responseCallback) throws Exception {
+        asyncProcessRequest(ctx, request).whenComplete((response, e) -> {
+            if (e != null) {
+                log.error("process SendMessage error, request : " + request.toString(), e);
+                responseCallback.callback(RemotingCommand.createResponseCommand(ResponseCode.SYSTEM_ERROR,
+                    RemotingHelper.exceptionSimpleDesc(e)));
+            } else {
+                responseCallback.callback(response);
+            }
+        });
+    }
+
+    /**
+     * The returned future completes once the message is stored as required by the flush and replication
+     * configuration, the sending thread is not blocked meanwhile.
+     */
+    public CompletableFuture<RemotingCommand> asyncProcessRequest(ChannelHandlerContext ctx,
+                                                                  RemotingCommand request) throws RemotingCommandException {
+        final SendMessageContext mqtraceContext;
         switch (request.getCode()) {
             case RequestCode.CONSUMER_SEND_MSG_BACK:
-                return this.consumerSendMsgBack(ctx, request);
+                return CompletableFuture.completedFuture(this.consumerSendMsgBack(ctx, request));
             default:
                 SendMessageRequestHeader requestHeader = parseRequestHeader(request);
                 if (requestHeader == null) {
-                    return null;
+                    return CompletableFuture.completedFuture(null);
                 }
 
+                final long beginNanos = System.nanoTime();
                 mqtraceContext = buildMsgContext(ctx, requestHeader);
                 this.executeSendMessageHookBefore(ctx, request, mqtraceContext);
 
-                RemotingCommand response;
+                CompletableFuture<RemotingCommand> responseFuture;
                 if (requestHeader.isBatch()) {
-                    response = this.sendBatchMessage(ctx, request, mqtraceContext, requestHeader);
+                    responseFuture = this.asyncSendBatchMessage(ctx, request, mqtraceContext, requestHeader);
                 } else {
-                    response = this.sendMessage(ctx, request, mqtraceContext, requestHeader);
+                    responseFuture = this.asyncSendMessage(ctx, request, mqtraceContext, requestHeader);
                 }
 
-                this.executeSendMessageHookAfter(response, mqtraceContext);
-                return response;
+                return responseFuture.thenApply(response -> {
+                    this.executeSendMessageHookAfter(response, mqtraceContext);
+                    this.brokerController.getBrokerStatsManager().recordTopicPutRt(requestHeader.getTopic(),
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - beginNanos));
+                    return response;
+                });
         }
     }
 
@@ -295,10 +333,10 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
         return true;
     }
 
-    private RemotingCommand sendMessage(final ChannelHandlerContext ctx,
-                                        final RemotingCommand request,
-                                        final SendMessageContext sendMessageContext,
-                                        final SendMessageRequestHeader requestHeader) throws RemotingCommandException {
+    private CompletableFuture<RemotingCommand> asyncSendMessage(final ChannelHandlerContext ctx,
+                                                                final RemotingCommand request,
+                                                                final SendMessageContext sendMessageContext,
+                                                                final SendMessageRequestHeader requestHeader) throws RemotingCommandException {
 
         final RemotingCommand response = RemotingCommand.createResponseCommand(SendMessageResponseHeader.class);
         final SendMessageResponseHeader responseHeader = (SendMessageResponseHeader)response.readCustomHeader();
@@ -314,16 +352,23 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
         if (this.brokerController.getMessageStore().now() < startTimstamp) {
             response.setCode(ResponseCode.SYSTEM_ERROR);
             response.setRemark(String.format("broker unable to service, until %s", UtilAll.timeMillisToHumanString2(startTimstamp)));
-            return response;
+            return CompletableFuture.completedFuture(response);
         }
 
         response.setCode(-1);
         super.msgCheck(ctx, requestHeader, response);
         if (response.getCode() != -1) {
-            return response;
+            return CompletableFuture.completedFuture(response);
         }
 
         final byte[] body = request.getBody();
+        if (!this.brokerController.getBrokerRateLimiter().tryAcquireProduce(requestHeader.getTopic(),
+            requestHeader.getProducerGroup(), 1, body != null ? body.length : 0)) {
+            response.setCode(ResponseCode.THROTTLED);
+            response.setRemark("[THROTTLED]produce rate limit exceeded, topic: " + requestHeader.getTopic()
+                + ", producer group: " + requestHeader.getProducerGroup());
+            return CompletableFuture.completedFuture(response);
+        }
 
         int queueIdInt = requestHeader.getQueueId();
         TopicConfig topicConfig = this.brokerController.getTopicConfigManager().selectTopicConfig(requestHeader.getTopic());
@@ -337,7 +382,7 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
         msgInner.setQueueId(queueIdInt);
 
         if (!handleRetryAndDLQ(requestHeader, response, request, msgInner, topicConfig)) {
-            return response;
+            return CompletableFuture.completedFuture(response);
         }
 
         msgInner.setBody(body);
@@ -348,7 +393,7 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
         msgInner.setBornHost(ctx.channel().remoteAddress());
         msgInner.setStoreHost(this.getStoreHost());
         msgInner.setReconsumeTimes(requestHeader.getReconsumeTimes() == null ? 0 : requestHeader.getReconsumeTimes());
-        PutMessageResult putMessageResult = null;
+        CompletableFuture<PutMessageResult> putMessageResult = null;
         Map<String, String> oriProps = MessageDecoder.string2messageProperties(requestHeader.getProperties());
         String traFlag = oriProps.get(MessageConst.PROPERTY_TRANSACTION_PREPARED);
         if (traFlag != null && Boolean.parseBoolean(traFlag)) {
@@ -357,15 +402,29 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
                 response.setRemark(
                     "the broker[" + this.brokerController.getBrokerConfig().getBrokerIP1()
                         + "] sending transaction message is forbidden");
-                return response;
+                return CompletableFuture.completedFuture(response);
             }
-            putMessageResult = this.brokerController.getTransactionalMessageService().prepareMessage(msgInner);
+            putMessageResult = this.brokerController.getTransactionalMessageService().asyncPrepareMessage(msgInner);
         } else {
-            putMessageResult = this.brokerController.getMessageStore().putMessage(msgInner);
+            putMessageResult = this.brokerController.getMessageStore().asyncPutMessage(msgInner);
         }
 
-        return handlePutMessageResult(putMessageResult, response, request, msgInner, responseHeader, sendMessageContext, ctx, queueIdInt);
+        return handlePutMessageFuture(putMessageResult, response, request, msgInner, responseHeader, sendMessageContext, ctx, queueIdInt);
+    }
 
+    private CompletableFuture<RemotingCommand> handlePutMessageFuture(CompletableFuture<PutMessageResult> putMessageFuture,
+                                                                      RemotingCommand response, RemotingCommand request,
+                                                                      MessageExt msg, SendMessageResponseHeader responseHeader,
+                                                                      SendMessageContext sendMessageContext, ChannelHandlerContext ctx,
+                                                                      int queueIdInt) {
+        if (putMessageFuture.isDone()) {
+            return putMessageFuture.thenApply(putMessageResult ->
+                handlePutMessageResult(putMessageResult, response, request, msg, responseHeader, sendMessageContext, ctx, queueIdInt));
+        }
+        // keep the flush and HA threads completing the future from building and writing responses
+        return putMessageFuture.thenApplyAsync(putMessageResult ->
+            handlePutMessageResult(putMessageResult, response, request, msg, responseHeader, sendMessageContext, ctx, queueIdInt),
+            this.brokerController.getPutMessageFutureExecutor());
     }
 
     private RemotingCommand handlePutMessageResult(PutMessageResult putMessageResult, RemotingCommand response,
@@ -473,10 +532,10 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
         return response;
     }
 
-    private RemotingCommand sendBatchMessage(final ChannelHandlerContext ctx,
-                                             final RemotingCommand request,
-                                             final SendMessageContext sendMessageContext,
-                                             final SendMessageRequestHeader requestHeader) throws RemotingCommandException {
+    private CompletableFuture<RemotingCommand> asyncSendBatchMessage(final ChannelHandlerContext ctx,
+                                                                     final RemotingCommand request,
+                                                                     final SendMessageContext sendMessageContext,
+                                                                     final SendMessageRequestHeader requestHeader) throws RemotingCommandException {
 
         final RemotingCommand response = RemotingCommand.createResponseCommand(SendMessageResponseHeader.class);
         final SendMessageResponseHeader responseHeader = (SendMessageResponseHeader)response.readCustomHeader();
@@ -492,13 +551,22 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
         if (this.brokerController.getMessageStore().now() < startTimstamp) {
             response.setCode(ResponseCode.SYSTEM_ERROR);
             response.setRemark(String.format("broker unable to service, until %s", UtilAll.timeMillisToHumanString2(startTimstamp)));
-            return response;
+            return CompletableFuture.completedFuture(response);
         }
 
         response.setCode(-1);
         super.msgCheck(ctx, requestHeader, response);
         if (response.getCode() != -1) {
-            return response;
+            return CompletableFuture.completedFuture(response);
+        }
+
+        final byte[] body = request.getBody();
+        if (!this.brokerController.getBrokerRateLimiter().tryAcquireProduce(requestHeader.getTopic(),
+            requestHeader.getProducerGroup(), MessageDecoder.countMessages(body), body != null ? body.length : 0)) {
+            response.setCode(ResponseCode.THROTTLED);
+            response.setRemark("[THROTTLED]produce rate limit exceeded, topic: " + requestHeader.getTopic()
+                + ", producer group: " + requestHeader.getProducerGroup());
+            return CompletableFuture.completedFuture(response);
         }
 
         int queueIdInt = requestHeader.getQueueId();
@@ -511,13 +579,13 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
         if (requestHeader.getTopic().length() > Byte.MAX_VALUE) {
             response.setCode(ResponseCode.MESSAGE_ILLEGAL);
             response.setRemark("message topic length too long " + requestHeader.getTopic().length());
-            return response;
+            return CompletableFuture.completedFuture(response);
         }
 
         if (requestHeader.getTopic() != null && requestHeader.getTopic().startsWith(MixAll.RETRY_GROUP_TOPIC_PREFIX)) {
             response.setCode(ResponseCode.MESSAGE_ILLEGAL);
             response.setRemark("batch request does not support retry group " + requestHeader.getTopic());
-            return response;
+            return CompletableFuture.completedFuture(response);
         }
         MessageExtBatch messageExtBatch = new MessageExtBatch();
         messageExtBatch.setTopic(requestHeader.getTopic());
@@ -537,9 +605,8 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
         messageExtBatch.setStoreHost(this.getStoreHost());
         messageExtBatch.setReconsumeTimes(requestHeader.getReconsumeTimes() == null ? 0 : requestHeader.getReconsumeTimes());
 
-        PutMessageResult putMessageResult = this.brokerController.getMessageStore().putMessages(messageExtBatch);
-
-        return handlePutMessageResult(putMessageResult, response, request, messageExtBatch, responseHeader, sendMessageContext, ctx, queueIdInt);
+        CompletableFuture<PutMessageResult> putMessageResult = this.brokerController.getMessageStore().asyncPutMessages(messageExtBatch);
+        return handlePutMessageFuture(putMessageResult, response, request, messageExtBatch, responseHeader, sendMessageContext, ctx, queueIdInt);
     }
 
     public boolean hasConsumeMessageHook() {
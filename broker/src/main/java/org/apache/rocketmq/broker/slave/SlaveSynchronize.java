@@ -32,6 +32,12 @@ public class SlaveSynchronize {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
     private final BrokerController brokerController;
     private volatile String masterAddr = null;
+    /**
+     * Offset table of the master and its version synchronized last, to synchronize only the offsets changed since.
+     */
+    private long offsetTableId = 0;
+    private long offsetVersion = 0;
+    private String lastDelayOffset = null;
 
     public SlaveSynchronize(BrokerController brokerController) {
         this.brokerController = brokerController;
@@ -56,9 +62,9 @@ public class SlaveSynchronize {
         String masterAddrBak = this.masterAddr;
         if (masterAddrBak != null && !masterAddrBak.equals(brokerController.getBrokerAddr())) {
             try {
-                TopicConfigSerializeWrapper topicWrapper =
-                    this.brokerController.getBrokerOuterAPI().getAllTopicConfig(masterAddrBak);
-                if (!this.brokerController.getTopicConfigManager().getDataVersion()
+                TopicConfigSerializeWrapper topicWrapper = this.brokerController.getBrokerOuterAPI()
+                    .getAllTopicConfig(masterAddrBak, this.brokerController.getTopicConfigManager().getDataVersion());
+                if (topicWrapper != null && !this.brokerController.getTopicConfigManager().getDataVersion()
                     .equals(topicWrapper.getDataVersion())) {
 
                     this.brokerController.getTopicConfigManager().getDataVersion()
@@ -80,12 +86,19 @@ public class SlaveSynchronize {
         String masterAddrBak = this.masterAddr;
         if (masterAddrBak != null && !masterAddrBak.equals(brokerController.getBrokerAddr())) {
             try {
-                ConsumerOffsetSerializeWrapper offsetWrapper =
-                    this.brokerController.getBrokerOuterAPI().getAllConsumerOffset(masterAddrBak);
-                this.brokerController.getConsumerOffsetManager().getOffsetTable()
-                    .putAll(offsetWrapper.getOffsetTable());
+                ConsumerOffsetSerializeWrapper offsetWrapper = this.brokerController.getBrokerOuterAPI()
+                    .getAllConsumerOffset(masterAddrBak, this.offsetTableId, this.offsetVersion);
+                if (offsetWrapper.getOffsetTableId() == 0 || offsetWrapper.getOffsetTableId() != this.offsetTableId) {
+                    // the whole table of the master, drop the topic@groups it no longer has
+                    this.brokerController.getConsumerOffsetManager().replaceAllOffsets(offsetWrapper.getOffsetTable());
+                } else {
+                    this.brokerController.getConsumerOffsetManager().putAllOffsets(offsetWrapper.getOffsetTable());
+                }
                 this.brokerController.getConsumerOffsetManager().persist();
-                log.info("Update slave consumer offset from master, {}", masterAddrBak);
+                this.offsetTableId = offsetWrapper.getOffsetTableId();
+                this.offsetVersion = offsetWrapper.getOffsetVersion();
+                log.info("Update slave consumer offset from master, {}, topic@group count: {}",
+                    masterAddrBak, offsetWrapper.getOffsetTable().size());
             } catch (Exception e) {
                 log.error("SyncConsumerOffset Exception, {}", masterAddrBak, e);
             }
@@ -98,13 +111,14 @@ public class SlaveSynchronize {
             try {
                 String delayOffset =
                     this.brokerController.getBrokerOuterAPI().getAllDelayOffset(masterAddrBak);
-                if (delayOffset != null) {
+                if (delayOffset != null && !delayOffset.equals(this.lastDelayOffset)) {
 
                     String fileName =
                         StorePathConfigHelper.getDelayOffsetStorePath(this.brokerController
                             .getMessageStoreConfig().getStorePathRootDir());
                     try {
                         MixAll.string2File(delayOffset, fileName);
+                        this.lastDelayOffset = delayOffset;
                     } catch (IOException e) {
                         log.error("Persist file Exception, {}", fileName, e);
                     }
@@ -122,9 +136,10 @@ public class SlaveSynchronize {
             try {
                 SubscriptionGroupWrapper subscriptionWrapper =
                     this.brokerController.getBrokerOuterAPI()
-                        .getAllSubscriptionGroupConfig(masterAddrBak);
+                        .getAllSubscriptionGroupConfig(masterAddrBak,
+                            this.brokerController.getSubscriptionGroupManager().getDataVersion());
 
-                if (!this.brokerController.getSubscriptionGroupManager().getDataVersion()
+                if (subscriptionWrapper != null && !this.brokerController.getSubscriptionGroupManager().getDataVersion()
                     .equals(subscriptionWrapper.getDataVersion())) {
                     SubscriptionGroupManager subscriptionGroupManager =
                         this.brokerController.getSubscriptionGroupManager();
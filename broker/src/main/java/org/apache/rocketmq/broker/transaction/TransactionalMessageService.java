@@ -16,6 +16,8 @@
  */
 package org.apache.rocketmq.broker.transaction;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.protocol.header.EndTransactionRequestHeader;
 import org.apache.rocketmq.store.MessageExtBrokerInner;
@@ -31,6 +33,16 @@ public interface TransactionalMessageService {
      */
     PutMessageResult prepareMessage(MessageExtBrokerInner messageInner);
 
+    /**
+     * Process prepare message without waiting for the storage service to flush or replicate it.
+     *
+     * @param messageInner Prepare(Half) message.
+     * @return Future of the prepare message storage result.
+     */
+    default CompletableFuture<PutMessageResult> asyncPrepareMessage(MessageExtBrokerInner messageInner) {
+        return CompletableFuture.completedFuture(prepareMessage(messageInner));
+    }
+
     /**
      * Delete prepare message when this message has been committed or rolled back.
      *
@@ -38,6 +50,14 @@ public interface TransactionalMessageService {
      */
     boolean deletePrepareMessage(MessageExt messageExt);
 
+    /**
+     * Delete many prepare messages at once when they have been committed or rolled back.
+     *
+     * @param messageExtList Prepare messages.
+     * @return true if all of them are deleted.
+     */
+    boolean deletePrepareMessages(List<MessageExt> messageExtList);
+
     /**
      * Invoked to process commit prepare message.
      *
@@ -0,0 +1,497 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.transaction.file;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.BrokerPathConfigHelper;
+import org.apache.rocketmq.broker.transaction.AbstractTransactionalMessageCheckListener;
+import org.apache.rocketmq.broker.transaction.OperationResult;
+import org.apache.rocketmq.broker.transaction.TransactionalMessageService;
+import org.apache.rocketmq.broker.transaction.queue.TransactionalMessageBridge;
+import org.apache.rocketmq.client.consumer.PullResult;
+import org.apache.rocketmq.client.consumer.PullStatus;
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.header.EndTransactionRequestHeader;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.AppendMessageResult;
+import org.apache.rocketmq.store.MessageExtBrokerInner;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.PutMessageStatus;
+
+/**
+ * Transactional message service keeping the transaction states in a local {@link TransactionStateLog} instead of the
+ * op topic of the commit log.
+ * <p>
+ * Half messages are still stored in the half topic, but a commit or rollback only appends a small record to the
+ * state log, and the checker walks the in-memory table of pending transactions of each producer group rather than
+ * scanning the half queue. Half messages found in the half queue without a prepare record, e.g. the ones lost with
+ * the unflushed tail of the state log, are picked up before each check.
+ * <p>
+ * The state log is local to the broker and not replicated to the slave.
+ */
+public class FileTransactionalMessageService implements TransactionalMessageService {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.TRANSACTION_LOGGER_NAME);
+
+    private static final long MAX_PROCESS_TIME_LIMIT = 60000;
+
+    private static final int PULL_MSG_NUMS = 32;
+
+    private final TransactionalMessageBridge transactionalMessageBridge;
+    private final BrokerController brokerController;
+    private final TransactionStateLog stateLog;
+    private final TransactionStateTable stateTable;
+
+    private final ConcurrentHashMap<Integer/* groupId */, ConcurrentSkipListMap<Long/* commitLogOffset */, TransactionStateRecord>> pendingTable =
+        new ConcurrentHashMap<Integer, ConcurrentSkipListMap<Long, TransactionStateRecord>>();
+    /**
+     * For each half queue, the next queue offset whose half message has no prepare record.
+     */
+    private final ConcurrentHashMap<Integer/* queueId */, Long> nextQueueOffsetTable = new ConcurrentHashMap<Integer, Long>();
+
+    private ScheduledExecutorService scheduledExecutorService;
+
+    public FileTransactionalMessageService(final TransactionalMessageBridge transactionalMessageBridge) {
+        this.transactionalMessageBridge = transactionalMessageBridge;
+        this.brokerController = transactionalMessageBridge.getBrokerController();
+        String rootDir = this.brokerController.getMessageStoreConfig().getStorePathRootDir();
+        this.stateLog = new TransactionStateLog(BrokerPathConfigHelper.getTransactionStateLogPath(rootDir),
+            this.brokerController.getBrokerConfig().getTransactionStateLogFileSize());
+        this.stateTable = new TransactionStateTable(BrokerPathConfigHelper.getTransactionStatePath(rootDir));
+    }
+
+    @Override
+    public boolean open() {
+        if (!this.stateTable.load() || !this.stateLog.load()) {
+            return false;
+        }
+        this.nextQueueOffsetTable.putAll(this.stateTable.getQueueOffsetTable());
+        this.stateLog.recover(new TransactionStateLog.RecordHandler() {
+            @Override
+            public void handle(TransactionStateRecord record) {
+                replay(record);
+            }
+        });
+        log.info("Open transaction state log, pending transactions: {}, queue offsets: {}", this.getPendingCount(),
+            this.nextQueueOffsetTable);
+
+        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryImpl("TransactionStateLogFlushThread_"));
+        long flushInterval = this.brokerController.getBrokerConfig().getTransactionStateLogFlushIntervalMs();
+        this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                    cleanExpiredFile();
+                } catch (Throwable e) {
+                    log.error("Flush transaction state log error", e);
+                }
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.scheduledExecutorService != null) {
+            this.scheduledExecutorService.shutdown();
+            this.scheduledExecutorService = null;
+            this.flush();
+            this.stateLog.shutdown();
+        }
+    }
+
+    @Override
+    public PutMessageResult prepareMessage(MessageExtBrokerInner messageInner) {
+        final String producerGroup = messageInner.getProperty(MessageConst.PROPERTY_PRODUCER_GROUP);
+        PutMessageResult putMessageResult = this.transactionalMessageBridge.putHalfMessage(messageInner);
+        return this.recordPrepare(messageInner, producerGroup, putMessageResult);
+    }
+
+    /**
+     * The prepare record is appended once the half message is stored, it only writes to the mapped state log.
+     */
+    @Override
+    public CompletableFuture<PutMessageResult> asyncPrepareMessage(MessageExtBrokerInner messageInner) {
+        final String producerGroup = messageInner.getProperty(MessageConst.PROPERTY_PRODUCER_GROUP);
+        return this.transactionalMessageBridge.asyncPutHalfMessage(messageInner).thenApply(
+            putMessageResult -> this.recordPrepare(messageInner, producerGroup, putMessageResult));
+    }
+
+    private PutMessageResult recordPrepare(MessageExtBrokerInner messageInner, String producerGroup,
+        PutMessageResult putMessageResult) {
+        if (putMessageResult != null && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+            AppendMessageResult appendMessageResult = putMessageResult.getAppendMessageResult();
+            TransactionStateRecord record = new TransactionStateRecord(TransactionStateRecord.TYPE_PREPARE,
+                this.getGroupId(producerGroup), messageInner.getQueueId(), appendMessageResult.getWroteOffset(),
+                appendMessageResult.getLogicsOffset(), appendMessageResult.getStoreTimestamp());
+            if (!this.addPending(Collections.singletonList(record), false)) {
+                log.error("Write prepare record failed, {}", record);
+                return new PutMessageResult(PutMessageStatus.UNKNOWN_ERROR, appendMessageResult);
+            }
+        }
+        return putMessageResult;
+    }
+
+    @Override
+    public boolean deletePrepareMessage(MessageExt messageExt) {
+        return this.deletePrepareMessages(Collections.singletonList(messageExt));
+    }
+
+    @Override
+    public boolean deletePrepareMessages(List<MessageExt> messageExtList) {
+        List<TransactionStateRecord> records = new ArrayList<TransactionStateRecord>(messageExtList.size());
+        for (MessageExt messageExt : messageExtList) {
+            Integer groupId = this.stateTable.getGroupTable().get(
+                producerGroupOf(messageExt.getProperty(MessageConst.PROPERTY_PRODUCER_GROUP)));
+            ConcurrentSkipListMap<Long, TransactionStateRecord> pendingMap = groupId == null ? null : this.pendingTable.get(groupId);
+            TransactionStateRecord record = pendingMap == null ? null : pendingMap.get(messageExt.getCommitLogOffset());
+            if (record == null) {
+                log.warn("No pending transaction of the half message, commitLogOffset={} msgId={}",
+                    messageExt.getCommitLogOffset(), messageExt.getMsgId());
+                continue;
+            }
+            records.add(record);
+        }
+        if (!this.removePending(records)) {
+            log.error("Write remove records failed, size={}", records.size());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public OperationResult commitMessage(EndTransactionRequestHeader requestHeader) {
+        return getHalfMessageByOffset(requestHeader.getCommitLogOffset());
+    }
+
+    @Override
+    public OperationResult rollbackMessage(EndTransactionRequestHeader requestHeader) {
+        return getHalfMessageByOffset(requestHeader.getCommitLogOffset());
+    }
+
+    @Override
+    public void check(long transactionTimeout, int transactionCheckMax,
+        AbstractTransactionalMessageCheckListener listener) {
+        this.check(transactionTimeout, transactionCheckMax, listener, MAX_PROCESS_TIME_LIMIT);
+    }
+
+    void check(long transactionTimeout, int transactionCheckMax, AbstractTransactionalMessageCheckListener listener,
+        long maxProcessTime) {
+        try {
+            long startTime = System.currentTimeMillis();
+            this.catchUp();
+
+            List<TransactionStateRecord> resolved = new ArrayList<TransactionStateRecord>();
+            checkLoop:
+            for (ConcurrentSkipListMap<Long, TransactionStateRecord> pendingMap : this.pendingTable.values()) {
+                for (TransactionStateRecord record : pendingMap.values()) {
+                    long now = System.currentTimeMillis();
+                    if (now - startTime > maxProcessTime) {
+                        log.info("Check process time reach max={}", maxProcessTime);
+                        break checkLoop;
+                    }
+                    // the records are ordered by commit log offset, so are their store timestamps
+                    if (now - record.getStoreTimestamp() < transactionTimeout) {
+                        break;
+                    }
+                    if (now < record.getNextCheckTime()) {
+                        continue;
+                    }
+                    this.check(record, transactionTimeout, transactionCheckMax, listener, resolved);
+                }
+            }
+            this.removePending(resolved);
+        } catch (Exception e) {
+            log.error("Check error", e);
+        }
+    }
+
+    private void check(TransactionStateRecord record, long transactionTimeout, int transactionCheckMax,
+        AbstractTransactionalMessageCheckListener listener, List<TransactionStateRecord> resolved) {
+        MessageExt msgExt = this.transactionalMessageBridge.lookMessageByOffset(record.getCommitLogOffset());
+        if (msgExt == null) {
+            log.info("Half message of {} is missing, remove it", record);
+            resolved.add(record);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        String checkImmunityTimeStr = msgExt.getUserProperty(MessageConst.PROPERTY_CHECK_IMMUNITY_TIME_IN_SECONDS);
+        if (checkImmunityTimeStr != null) {
+            long checkImmunityTime = getImmunityTime(checkImmunityTimeStr, transactionTimeout);
+            if (now - msgExt.getBornTimestamp() < checkImmunityTime) {
+                record.setNextCheckTime(msgExt.getBornTimestamp() + checkImmunityTime);
+                return;
+            }
+        }
+
+        if (record.getCheckTimes() >= transactionCheckMax || needSkip(msgExt)) {
+            listener.resolveDiscardMsg(msgExt);
+            resolved.add(record);
+            return;
+        }
+        record.setCheckTimes(record.getCheckTimes() + 1);
+        record.setNextCheckTime(now + transactionTimeout);
+        msgExt.putUserProperty(MessageConst.PROPERTY_TRANSACTION_CHECK_TIMES, String.valueOf(record.getCheckTimes()));
+        listener.resolveHalfMsg(msgExt);
+    }
+
+    /**
+     * Add prepare records for the half messages stored in the half queues without one.
+     */
+    private void catchUp() {
+        Set<MessageQueue> msgQueues = this.transactionalMessageBridge.fetchMessageQueues(MixAll.RMQ_SYS_TRANS_HALF_TOPIC);
+        if (msgQueues == null) {
+            return;
+        }
+        for (MessageQueue messageQueue : msgQueues) {
+            Long nextQueueOffset = this.nextQueueOffsetTable.get(messageQueue.getQueueId());
+            if (nextQueueOffset == null) {
+                // nothing known about the queue, take over from where the queue based check stopped, so that the
+                // half messages not resolved by it are still checked
+                long consumeOffset = this.transactionalMessageBridge.fetchConsumeOffset(messageQueue);
+                this.nextQueueOffsetTable.putIfAbsent(messageQueue.getQueueId(), consumeOffset);
+                nextQueueOffset = this.nextQueueOffsetTable.get(messageQueue.getQueueId());
+            }
+
+            long offset = nextQueueOffset;
+            while (true) {
+                PullResult pullResult = this.transactionalMessageBridge.getHalfMessage(messageQueue.getQueueId(),
+                    offset, PULL_MSG_NUMS);
+                if (pullResult == null || pullResult.getPullStatus() != PullStatus.FOUND
+                    || pullResult.getMsgFoundList() == null) {
+                    break;
+                }
+                List<TransactionStateRecord> records = new ArrayList<TransactionStateRecord>();
+                for (MessageExt msgExt : pullResult.getMsgFoundList()) {
+                    records.add(new TransactionStateRecord(TransactionStateRecord.TYPE_PREPARE,
+                        this.getGroupId(msgExt.getProperty(MessageConst.PROPERTY_PRODUCER_GROUP)),
+                        messageQueue.getQueueId(), msgExt.getCommitLogOffset(), msgExt.getQueueOffset(),
+                        msgExt.getStoreTimestamp()));
+                }
+                if (!this.addPending(records, true)) {
+                    log.error("Write prepare records of queue={} from offset={} failed", messageQueue, offset);
+                    break;
+                }
+                if (pullResult.getNextBeginOffset() <= offset) {
+                    break;
+                }
+                offset = pullResult.getNextBeginOffset();
+            }
+        }
+    }
+
+    /**
+     * @param catchUp Skip the half messages having prepare records or being recorded by now.
+     */
+    private synchronized boolean addPending(List<TransactionStateRecord> records, boolean catchUp) {
+        List<TransactionStateRecord> toAppend = new ArrayList<TransactionStateRecord>(records.size());
+        for (TransactionStateRecord record : records) {
+            if (this.getPendingMap(record.getGroupId()).containsKey(record.getCommitLogOffset())) {
+                continue;
+            }
+            Long nextQueueOffset = this.nextQueueOffsetTable.get(record.getQueueId());
+            if (catchUp && nextQueueOffset != null && record.getQueueOffset() < nextQueueOffset) {
+                continue;
+            }
+            toAppend.add(record);
+        }
+        if (toAppend.isEmpty()) {
+            return true;
+        }
+        if (!this.stateLog.append(toAppend)) {
+            return false;
+        }
+        for (TransactionStateRecord record : toAppend) {
+            this.replay(record);
+        }
+        return true;
+    }
+
+    private synchronized boolean removePending(List<TransactionStateRecord> records) {
+        List<TransactionStateRecord> toAppend = new ArrayList<TransactionStateRecord>(records.size());
+        for (TransactionStateRecord record : records) {
+            if (this.getPendingMap(record.getGroupId()).get(record.getCommitLogOffset()) != record) {
+                continue;
+            }
+            toAppend.add(new TransactionStateRecord(TransactionStateRecord.TYPE_REMOVE, record.getGroupId(),
+                record.getQueueId(), record.getCommitLogOffset(), record.getQueueOffset(), record.getStoreTimestamp()));
+        }
+        if (toAppend.isEmpty()) {
+            return true;
+        }
+        if (!this.stateLog.append(toAppend)) {
+            return false;
+        }
+        for (TransactionStateRecord record : toAppend) {
+            this.replay(record);
+        }
+        return true;
+    }
+
+    private void replay(TransactionStateRecord record) {
+        ConcurrentSkipListMap<Long, TransactionStateRecord> pendingMap = this.getPendingMap(record.getGroupId());
+        if (record.getType() == TransactionStateRecord.TYPE_PREPARE) {
+            pendingMap.put(record.getCommitLogOffset(), record);
+            Long nextQueueOffset = this.nextQueueOffsetTable.get(record.getQueueId());
+            if (nextQueueOffset == null || record.getQueueOffset() >= nextQueueOffset) {
+                this.nextQueueOffsetTable.put(record.getQueueId(), record.getQueueOffset() + 1);
+            }
+        } else {
+            pendingMap.remove(record.getCommitLogOffset());
+        }
+    }
+
+    private ConcurrentSkipListMap<Long, TransactionStateRecord> getPendingMap(int groupId) {
+        ConcurrentSkipListMap<Long, TransactionStateRecord> pendingMap = this.pendingTable.get(groupId);
+        if (pendingMap == null) {
+            pendingMap = new ConcurrentSkipListMap<Long, TransactionStateRecord>();
+            ConcurrentSkipListMap<Long, TransactionStateRecord> prev = this.pendingTable.putIfAbsent(groupId, pendingMap);
+            if (prev != null) {
+                pendingMap = prev;
+            }
+        }
+        return pendingMap;
+    }
+
+    private int getGroupId(String producerGroup) {
+        final String group = producerGroupOf(producerGroup);
+        Integer groupId = this.stateTable.getGroupTable().get(group);
+        if (groupId != null) {
+            return groupId;
+        }
+        synchronized (this.stateTable) {
+            groupId = this.stateTable.getGroupTable().get(group);
+            if (groupId == null) {
+                groupId = this.stateTable.getGroupTable().size() + 1;
+                this.stateTable.getGroupTable().put(group, groupId);
+                this.stateTable.persist();
+                log.info("New producer group {} of transaction state log, id={}", group, groupId);
+            }
+            return groupId;
+        }
+    }
+
+    private static String producerGroupOf(String producerGroup) {
+        return producerGroup == null ? "" : producerGroup;
+    }
+
+    /**
+     * Flush the log, and then persist the queue offsets taken before flushing.
+     */
+    private void flush() {
+        Map<Integer, Long> queueOffsetTable = new HashMap<Integer, Long>(this.nextQueueOffsetTable);
+        this.stateLog.flush();
+        this.stateTable.getQueueOffsetTable().putAll(queueOffsetTable);
+        this.stateTable.persist();
+    }
+
+    /**
+     * Move the pending records out of the oldest file, then delete it.
+     */
+    private void cleanExpiredFile() {
+        long minOffset = this.stateLog.getMinOffset();
+        if (minOffset < 0) {
+            return;
+        }
+        long firstFileEnd = minOffset + this.stateLog.getMappedFileSize();
+        if (this.stateLog.getMaxOffset() <= firstFileEnd) {
+            return;
+        }
+
+        synchronized (this) {
+            List<TransactionStateRecord> records = new ArrayList<TransactionStateRecord>();
+            for (ConcurrentSkipListMap<Long, TransactionStateRecord> pendingMap : this.pendingTable.values()) {
+                for (TransactionStateRecord record : pendingMap.values()) {
+                    if (record.getLogPos() < firstFileEnd) {
+                        records.add(record);
+                    }
+                }
+            }
+            if (!records.isEmpty() && !this.stateLog.append(records)) {
+                log.error("Move {} pending records out of the file at {} failed", records.size(), minOffset);
+                return;
+            }
+        }
+        this.stateLog.flush();
+        int deleteCount = this.stateLog.deleteExpiredFile(firstFileEnd);
+        log.info("Delete {} transaction state log file before {}", deleteCount, firstFileEnd);
+    }
+
+    private OperationResult getHalfMessageByOffset(long commitLogOffset) {
+        OperationResult response = new OperationResult();
+        MessageExt messageExt = this.transactionalMessageBridge.lookMessageByOffset(commitLogOffset);
+        if (messageExt != null) {
+            response.setPrepareMessage(messageExt);
+            response.setResponseCode(ResponseCode.SUCCESS);
+        } else {
+            response.setResponseCode(ResponseCode.SYSTEM_ERROR);
+            response.setResponseRemark("Find prepared transaction message failed");
+        }
+        return response;
+    }
+
+    private boolean needSkip(MessageExt msgExt) {
+        long valueOfCurrentMinusBorn = System.currentTimeMillis() - msgExt.getBornTimestamp();
+        if (valueOfCurrentMinusBorn
+            > this.brokerController.getMessageStoreConfig().getFileReservedTime() * 3600L * 1000) {
+            log.info("Half message exceed file reserved time ,so skip it.messageId {},bornTime {}",
+                msgExt.getMsgId(), msgExt.getBornTimestamp());
+            return true;
+        }
+        return false;
+    }
+
+    private long getImmunityTime(String checkImmunityTimeStr, long transactionTimeout) {
+        long checkImmunityTime = transactionTimeout;
+        try {
+            checkImmunityTime = Long.parseLong(checkImmunityTimeStr);
+            checkImmunityTime = checkImmunityTime == -1 ? transactionTimeout : checkImmunityTime * 1000;
+        } catch (NumberFormatException e) {
+            log.error("Illegal check immunity time {}", checkImmunityTimeStr);
+        }
+        return checkImmunityTime;
+    }
+
+    public int getPendingCount() {
+        int count = 0;
+        for (ConcurrentSkipListMap<Long, TransactionStateRecord> pendingMap : this.pendingTable.values()) {
+            count += pendingMap.size();
+        }
+        return count;
+    }
+}
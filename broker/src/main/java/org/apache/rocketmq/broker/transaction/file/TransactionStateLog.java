@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.transaction.file;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+import org.apache.rocketmq.store.MappedFileQueue;
+
+/**
+ * Append only log of transaction states, kept apart from the commit log.
+ * <pre>
+ * ┌──────────┬──────────┬─────────────┬─────────────┬──────────────────────┬──────────────────┬─────────────────────┐
+ * │ size(4B) │ type(4B) │ groupId(4B) │ queueId(4B) │ commitLogOffset(8B)  │ queueOffset(8B)  │ storeTimestamp(8B)  │
+ * └──────────┴──────────┴─────────────┴─────────────┴──────────────────────┴──────────────────┴─────────────────────┘
+ * </pre>
+ * Records have a fixed size, so a file never ends with a partial record.
+ */
+public class TransactionStateLog {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.TRANSACTION_LOGGER_NAME);
+
+    public static final int RECORD_SIZE = 4 + 4 + 4 + 4 + 8 + 8 + 8;
+
+    private final MappedFileQueue mappedFileQueue;
+    private final int mappedFileSize;
+
+    public interface RecordHandler {
+        void handle(TransactionStateRecord record);
+    }
+
+    public TransactionStateLog(final String storePath, final int fileSize) {
+        this.mappedFileSize = fileSize - fileSize % RECORD_SIZE;
+        this.mappedFileQueue = new MappedFileQueue(storePath, this.mappedFileSize, null);
+    }
+
+    public boolean load() {
+        boolean result = this.mappedFileQueue.load();
+        log.info("load transaction state log " + (result ? "OK" : "Failed"));
+        return result;
+    }
+
+    /**
+     * Replay every record in the log and truncate the dirty tail.
+     */
+    public void recover(final RecordHandler handler) {
+        final List<MappedFile> mappedFiles = this.mappedFileQueue.getMappedFiles();
+        if (mappedFiles.isEmpty()) {
+            return;
+        }
+
+        long processOffset = mappedFiles.get(0).getFileFromOffset();
+        for (MappedFile mappedFile : mappedFiles) {
+            ByteBuffer byteBuffer = mappedFile.sliceByteBuffer();
+            int mappedFileOffset = 0;
+            while (mappedFileOffset + RECORD_SIZE <= this.mappedFileSize) {
+                byteBuffer.position(mappedFileOffset);
+                if (byteBuffer.getInt() != RECORD_SIZE) {
+                    break;
+                }
+                TransactionStateRecord record = new TransactionStateRecord(byteBuffer.getInt(), byteBuffer.getInt(),
+                    byteBuffer.getInt(), byteBuffer.getLong(), byteBuffer.getLong(), byteBuffer.getLong());
+                record.setLogPos(mappedFile.getFileFromOffset() + mappedFileOffset);
+                handler.handle(record);
+                mappedFileOffset += RECORD_SIZE;
+            }
+            processOffset = mappedFile.getFileFromOffset() + mappedFileOffset;
+            if (mappedFileOffset < this.mappedFileSize) {
+                break;
+            }
+        }
+
+        this.mappedFileQueue.setFlushedWhere(processOffset);
+        this.mappedFileQueue.setCommittedWhere(processOffset);
+        this.mappedFileQueue.truncateDirtyFiles(processOffset);
+        log.info("recover transaction state log over, max offset {}", processOffset);
+    }
+
+    /**
+     * Append the records with as few writes as possible, the log position of each record is set. Not thread safe,
+     * the caller serializes the appends.
+     *
+     * @return false if the log could not be written
+     */
+    public boolean append(final List<TransactionStateRecord> records) {
+        int index = 0;
+        while (index < records.size()) {
+            MappedFile mappedFile = this.mappedFileQueue.getLastMappedFile(0);
+            if (null == mappedFile) {
+                log.error("create transaction state log mapped file failed");
+                return false;
+            }
+
+            int count = Math.min(records.size() - index,
+                (this.mappedFileSize - mappedFile.getWrotePosition()) / RECORD_SIZE);
+            long pos = mappedFile.getFileFromOffset() + mappedFile.getWrotePosition();
+            ByteBuffer byteBuffer = ByteBuffer.allocate(count * RECORD_SIZE);
+            for (int i = index; i < index + count; i++) {
+                TransactionStateRecord record = records.get(i);
+                byteBuffer.putInt(RECORD_SIZE);
+                byteBuffer.putInt(record.getType());
+                byteBuffer.putInt(record.getGroupId());
+                byteBuffer.putInt(record.getQueueId());
+                byteBuffer.putLong(record.getCommitLogOffset());
+                byteBuffer.putLong(record.getQueueOffset());
+                byteBuffer.putLong(record.getStoreTimestamp());
+                record.setLogPos(pos + (long) (i - index) * RECORD_SIZE);
+            }
+            if (!mappedFile.appendMessage(byteBuffer.array())) {
+                log.error("append transaction state records failed, pos={}", pos);
+                return false;
+            }
+            index += count;
+        }
+        return true;
+    }
+
+    public void flush() {
+        this.mappedFileQueue.flush(0);
+    }
+
+    /**
+     * Delete the files wholly before the given position, the records of them must not be needed any more.
+     */
+    public int deleteExpiredFile(final long offset) {
+        return this.mappedFileQueue.deleteExpiredFileBeforeOffset(offset, 1000 * 60);
+    }
+
+    public long getMinOffset() {
+        return this.mappedFileQueue.getMinOffset();
+    }
+
+    public long getMaxOffset() {
+        return this.mappedFileQueue.getMaxOffset();
+    }
+
+    public int getMappedFileSize() {
+        return mappedFileSize;
+    }
+
+    public void shutdown() {
+        this.mappedFileQueue.flush(0);
+        this.mappedFileQueue.shutdown(1000 * 30);
+    }
+
+    public void destroy() {
+        this.mappedFileQueue.destroy();
+    }
+}
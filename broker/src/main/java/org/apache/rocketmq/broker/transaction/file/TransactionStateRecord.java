@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.transaction.file;
+
+/**
+ * A record of the {@link TransactionStateLog}, a prepare record stays in memory until the transaction is removed.
+ */
+public class TransactionStateRecord {
+    public static final int TYPE_PREPARE = 1;
+    public static final int TYPE_REMOVE = 2;
+
+    private final int type;
+    private final int groupId;
+    private final int queueId;
+    private final long commitLogOffset;
+    private final long queueOffset;
+    private final long storeTimestamp;
+
+    /**
+     * Position in the log, set once the record is appended.
+     */
+    private volatile long logPos = -1;
+    private volatile int checkTimes = 0;
+    private volatile long nextCheckTime = 0;
+
+    public TransactionStateRecord(int type, int groupId, int queueId, long commitLogOffset, long queueOffset,
+        long storeTimestamp) {
+        this.type = type;
+        this.groupId = groupId;
+        this.queueId = queueId;
+        this.commitLogOffset = commitLogOffset;
+        this.queueOffset = queueOffset;
+        this.storeTimestamp = storeTimestamp;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public int getQueueId() {
+        return queueId;
+    }
+
+    public long getCommitLogOffset() {
+        return commitLogOffset;
+    }
+
+    public long getQueueOffset() {
+        return queueOffset;
+    }
+
+    public long getStoreTimestamp() {
+        return storeTimestamp;
+    }
+
+    public long getLogPos() {
+        return logPos;
+    }
+
+    public void setLogPos(long logPos) {
+        this.logPos = logPos;
+    }
+
+    public int getCheckTimes() {
+        return checkTimes;
+    }
+
+    public void setCheckTimes(int checkTimes) {
+        this.checkTimes = checkTimes;
+    }
+
+    public long getNextCheckTime() {
+        return nextCheckTime;
+    }
+
+    public void setNextCheckTime(long nextCheckTime) {
+        this.nextCheckTime = nextCheckTime;
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionStateRecord{" +
+            "type=" + type +
+            ", groupId=" + groupId +
+            ", queueId=" + queueId +
+            ", commitLogOffset=" + commitLogOffset +
+            ", queueOffset=" + queueOffset +
+            ", storeTimestamp=" + storeTimestamp +
+            ", logPos=" + logPos +
+            '}';
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.transaction.file;
+
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.rocketmq.common.ConfigManager;
+import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
+
+/**
+ * Persisted side state of the {@link TransactionStateLog}: the ids of the producer groups referred by the records,
+ * and for each half queue the offset up to which every half message has a flushed prepare record.
+ */
+public class TransactionStateTable extends ConfigManager {
+    private transient String configFilePath;
+
+    private ConcurrentHashMap<String/* producerGroup */, Integer> groupTable = new ConcurrentHashMap<String, Integer>();
+    private ConcurrentHashMap<Integer/* queueId */, Long> queueOffsetTable = new ConcurrentHashMap<Integer, Long>();
+
+    public TransactionStateTable() {
+    }
+
+    public TransactionStateTable(String configFilePath) {
+        this.configFilePath = configFilePath;
+    }
+
+    @Override
+    public String encode() {
+        return this.encode(false);
+    }
+
+    @Override
+    public String configFilePath() {
+        return this.configFilePath;
+    }
+
+    @Override
+    public void decode(String jsonString) {
+        if (jsonString != null) {
+            TransactionStateTable obj = RemotingSerializable.fromJson(jsonString, TransactionStateTable.class);
+            if (obj != null) {
+                this.groupTable = obj.groupTable;
+                this.queueOffsetTable = obj.queueOffsetTable;
+            }
+        }
+    }
+
+    @Override
+    public String encode(boolean prettyFormat) {
+        return RemotingSerializable.toJson(this, prettyFormat);
+    }
+
+    public ConcurrentHashMap<String, Integer> getGroupTable() {
+        return groupTable;
+    }
+
+    public void setGroupTable(ConcurrentHashMap<String, Integer> groupTable) {
+        this.groupTable = groupTable;
+    }
+
+    public ConcurrentHashMap<Integer, Long> getQueueOffsetTable() {
+        return queueOffsetTable;
+    }
+
+    public void setQueueOffsetTable(ConcurrentHashMap<Integer, Long> queueOffsetTable) {
+        this.queueOffsetTable = queueOffsetTable;
+    }
+}
@@ -28,6 +28,7 @@ import org.apache.rocketmq.common.message.MessageClientIDSetter;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageExtBatch;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
@@ -44,14 +45,19 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class TransactionalMessageBridge {
     private static final InternalLogger LOGGER = InnerLoggerFactory.getLogger(LoggerName.TRANSACTION_LOGGER_NAME);
 
+    private static final int OP_MESSAGE_BATCH_MAX = 1024;
+
     private final ConcurrentHashMap<MessageQueue, MessageQueue> opQueueMap = new ConcurrentHashMap<>();
     private final BrokerController brokerController;
     private final MessageStore store;
@@ -190,6 +196,10 @@ public class TransactionalMessageBridge {
         return store.putMessage(parseHalfMessageInner(messageInner));
     }
 
+    public CompletableFuture<PutMessageResult> asyncPutHalfMessage(MessageExtBrokerInner messageInner) {
+        return store.asyncPutMessage(parseHalfMessageInner(messageInner));
+    }
+
     private MessageExtBrokerInner parseHalfMessageInner(MessageExtBrokerInner msgInner) {
         MessageAccessor.putProperty(msgInner, MessageConst.PROPERTY_REAL_TOPIC, msgInner.getTopic());
         MessageAccessor.putProperty(msgInner, MessageConst.PROPERTY_REAL_QUEUE_ID,
@@ -211,6 +221,56 @@ public class TransactionalMessageBridge {
         return true;
     }
 
+    /**
+     * Write the remove op messages of many half messages, the op messages of one op queue are written as a single
+     * batch.
+     *
+     * @param halfMessages Half messages committed or rolled back.
+     * @return true if all the op messages are written.
+     */
+    public boolean putOpMessages(List<MessageExt> halfMessages) {
+        Map<Integer, List<Message>> opMessageTable = new HashMap<>();
+        for (MessageExt halfMessage : halfMessages) {
+            List<Message> opMessages = opMessageTable.get(halfMessage.getQueueId());
+            if (opMessages == null) {
+                opMessages = new ArrayList<>();
+                opMessageTable.put(halfMessage.getQueueId(), opMessages);
+            }
+            Message message = new Message(TransactionalMessageUtil.buildOpTopic(), TransactionalMessageUtil.REMOVETAG,
+                String.valueOf(halfMessage.getQueueOffset()).getBytes(TransactionalMessageUtil.charset));
+            MessageClientIDSetter.setUniqID(message);
+            opMessages.add(message);
+        }
+
+        boolean result = true;
+        for (Map.Entry<Integer, List<Message>> entry : opMessageTable.entrySet()) {
+            List<Message> opMessages = entry.getValue();
+            for (int i = 0; i < opMessages.size(); i += OP_MESSAGE_BATCH_MAX) {
+                List<Message> batch = opMessages.subList(i, Math.min(i + OP_MESSAGE_BATCH_MAX, opMessages.size()));
+                MessageExtBatch messageExtBatch = makeOpMessageBatch(batch, entry.getKey());
+                PutMessageResult putMessageResult = store.putMessages(messageExtBatch);
+                if (putMessageResult == null || putMessageResult.getPutMessageStatus() != PutMessageStatus.PUT_OK) {
+                    LOGGER.error("Put op messages failed, queueId: {}, size: {}, result: {}", entry.getKey(),
+                        batch.size(), putMessageResult);
+                    result = false;
+                }
+            }
+        }
+        return result;
+    }
+
+    private MessageExtBatch makeOpMessageBatch(List<Message> opMessages, int queueId) {
+        MessageExtBatch messageExtBatch = new MessageExtBatch();
+        messageExtBatch.setTopic(TransactionalMessageUtil.buildOpTopic());
+        messageExtBatch.setQueueId(queueId);
+        messageExtBatch.setBody(MessageDecoder.encodeMessages(opMessages));
+        messageExtBatch.setSysFlag(0);
+        messageExtBatch.setBornTimestamp(System.currentTimeMillis());
+        messageExtBatch.setBornHost(this.storeHost);
+        messageExtBatch.setStoreHost(this.storeHost);
+        return messageExtBatch;
+    }
+
     public PutMessageResult putMessageReturnResult(MessageExtBrokerInner messageInner) {
         LOGGER.debug("[BUG-TO-FIX] Thread:{} msgID:{}", Thread.currentThread().getName(), messageInner.getMsgId());
         return store.putMessage(messageInner);
@@ -22,6 +22,7 @@ import org.apache.rocketmq.broker.transaction.TransactionalMessageService;
 import org.apache.rocketmq.client.consumer.PullResult;
 import org.apache.rocketmq.client.consumer.PullStatus;
 import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageExt;
@@ -35,12 +36,16 @@ import org.apache.rocketmq.store.PutMessageResult;
 import org.apache.rocketmq.store.PutMessageStatus;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class TransactionalMessageServiceImpl implements TransactionalMessageService {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.TRANSACTION_LOGGER_NAME);
@@ -53,17 +58,28 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
 
     private static final int MAX_RETRY_COUNT_WHEN_HALF_NULL = 1;
 
+    private static final int OP_MSG_PULL_NUMS = 32;
+
     public TransactionalMessageServiceImpl(TransactionalMessageBridge transactionBridge) {
         this.transactionalMessageBridge = transactionBridge;
     }
 
     private ConcurrentHashMap<MessageQueue, MessageQueue> opQueueMap = new ConcurrentHashMap<>();
 
+    private ConcurrentHashMap<MessageQueue, TransactionalOpIndex> opIndexTable = new ConcurrentHashMap<>();
+
+    private ExecutorService checkExecutorService;
+
     @Override
     public PutMessageResult prepareMessage(MessageExtBrokerInner messageInner) {
         return transactionalMessageBridge.putHalfMessage(messageInner);
     }
 
+    @Override
+    public CompletableFuture<PutMessageResult> asyncPrepareMessage(MessageExtBrokerInner messageInner) {
+        return transactionalMessageBridge.asyncPutHalfMessage(messageInner);
+    }
+
     private boolean needDiscard(MessageExt msgExt, int transactionCheckMax) {
         String checkTimes = msgExt.getProperty(MessageConst.PROPERTY_TRANSACTION_CHECK_TIMES);
         int checkTime = 1;
@@ -118,8 +134,8 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
     }
 
     @Override
-    public void check(long transactionTimeout, int transactionCheckMax,
-        AbstractTransactionalMessageCheckListener listener) {
+    public void check(final long transactionTimeout, final int transactionCheckMax,
+        final AbstractTransactionalMessageCheckListener listener) {
         try {
             String topic = MixAll.RMQ_SYS_TRANS_HALF_TOPIC;
             Set<MessageQueue> msgQueues = transactionalMessageBridge.fetchMessageQueues(topic);
@@ -128,122 +144,243 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
                 return;
             }
             log.debug("Check topic={}, queues={}", topic, msgQueues);
-            for (MessageQueue messageQueue : msgQueues) {
-                long startTime = System.currentTimeMillis();
-                MessageQueue opQueue = getOpQueue(messageQueue);
-                long halfOffset = transactionalMessageBridge.fetchConsumeOffset(messageQueue);
-                long opOffset = transactionalMessageBridge.fetchConsumeOffset(opQueue);
-                log.info("Before check, the queue={} msgOffset={} opOffset={}", messageQueue, halfOffset, opOffset);
-                if (halfOffset < 0 || opOffset < 0) {
-                    log.error("MessageQueue: {} illegal offset read: {}, op offset: {},skip this queue", messageQueue,
-                        halfOffset, opOffset);
-                    continue;
+            ExecutorService executorService = this.getCheckExecutorService();
+            if (msgQueues.size() == 1 || executorService == null) {
+                for (MessageQueue messageQueue : msgQueues) {
+                    check(messageQueue, transactionTimeout, transactionCheckMax, listener);
                 }
+                return;
+            }
 
-                List<Long> doneOpOffset = new ArrayList<>();
-                HashMap<Long, Long> removeMap = new HashMap<>();
-                PullResult pullResult = fillOpRemoveMap(removeMap, opQueue, opOffset, halfOffset, doneOpOffset);
-                if (null == pullResult) {
-                    log.error("The queue={} check msgOffset={} with opOffset={} failed, pullResult is null",
-                        messageQueue, halfOffset, opOffset);
-                    continue;
+            List<Callable<Void>> tasks = new ArrayList<>(msgQueues.size());
+            for (final MessageQueue messageQueue : msgQueues) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        check(messageQueue, transactionTimeout, transactionCheckMax, listener);
+                        return null;
+                    }
+                });
+            }
+            executorService.invokeAll(tasks);
+        } catch (Exception e) {
+            log.error("Check error", e);
+        }
+
+    }
+
+    private synchronized ExecutorService getCheckExecutorService() {
+        if (this.checkExecutorService == null && transactionalMessageBridge.getBrokerController() != null) {
+            int threadNum = transactionalMessageBridge.getBrokerController().getBrokerConfig().getTransactionCheckThreadNum();
+            if (threadNum > 1) {
+                this.checkExecutorService = Executors.newFixedThreadPool(threadNum,
+                    new ThreadFactoryImpl("TransactionCheckThread_"));
+            }
+        }
+        return this.checkExecutorService;
+    }
+
+    private void check(MessageQueue messageQueue, long transactionTimeout, int transactionCheckMax,
+        AbstractTransactionalMessageCheckListener listener) {
+        try {
+            long startTime = System.currentTimeMillis();
+            MessageQueue opQueue = getOpQueue(messageQueue);
+            long halfOffset = transactionalMessageBridge.fetchConsumeOffset(messageQueue);
+            long opOffset = transactionalMessageBridge.fetchConsumeOffset(opQueue);
+            log.info("Before check, the queue={} msgOffset={} opOffset={}", messageQueue, halfOffset, opOffset);
+            if (halfOffset < 0 || opOffset < 0) {
+                log.error("MessageQueue: {} illegal offset read: {}, op offset: {},skip this queue", messageQueue,
+                    halfOffset, opOffset);
+                return;
+            }
+
+            TransactionalOpIndex opIndex = opIndexTable.get(messageQueue);
+            if (opIndex == null || opIndex.getBase() != halfOffset) {
+                opIndex = new TransactionalOpIndex(halfOffset, opOffset);
+                opIndexTable.put(messageQueue, opIndex);
+            }
+
+            if (!fillOpIndex(opIndex, opQueue, startTime)) {
+                log.error("The queue={} check msgOffset={} with opOffset={} failed, pullResult is null",
+                    messageQueue, halfOffset, opIndex.getOpReadOffset());
+                return;
+            }
+
+            recheckPendingHalfMsg(messageQueue, opIndex, transactionTimeout, transactionCheckMax, listener);
+            scanHalfMsg(messageQueue, opIndex, startTime, transactionTimeout, transactionCheckMax, listener);
+            opIndex.advance();
+            limitInFlight(messageQueue, opIndex);
+
+            if (opIndex.getBase() != halfOffset) {
+                transactionalMessageBridge.updateConsumeOffset(messageQueue, opIndex.getBase());
+            }
+            long newOpOffset = opIndex.getCommittedOpOffset();
+            if (newOpOffset != opOffset) {
+                transactionalMessageBridge.updateConsumeOffset(opQueue, newOpOffset);
+            }
+            log.info("After check, the queue={} msgOffset={} opOffset={} inFlight={} pendingChecks={}", messageQueue,
+                opIndex.getBase(), newOpOffset, opIndex.getInFlight(), opIndex.getPendingChecks().size());
+        } catch (Exception e) {
+            log.error("Check error, queue=" + messageQueue, e);
+        }
+    }
+
+    /**
+     * Check again the half messages checked in previous passes but still not resolved.
+     */
+    private void recheckPendingHalfMsg(MessageQueue messageQueue, TransactionalOpIndex opIndex,
+        long transactionTimeout, int transactionCheckMax, AbstractTransactionalMessageCheckListener listener) {
+        Iterator<Map.Entry<Long, TransactionalOpIndex.PendingCheck>> it = opIndex.getPendingChecks().entrySet().iterator();
+        List<Long> resolvedOffsets = new ArrayList<>();
+        while (it.hasNext()) {
+            Map.Entry<Long, TransactionalOpIndex.PendingCheck> entry = it.next();
+            long offset = entry.getKey();
+            TransactionalOpIndex.PendingCheck pendingCheck = entry.getValue();
+            if (opIndex.isResolved(offset)) {
+                it.remove();
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            if (now < pendingCheck.getNextCheckTime()) {
+                continue;
+            }
+
+            MessageExt msgExt = getHalfMsg(messageQueue, offset).getMsg();
+            if (msgExt == null) {
+                log.info("Half message of offset={} in={} is missing, skip it", offset, messageQueue);
+                resolvedOffsets.add(offset);
+                continue;
+            }
+            if (pendingCheck.getCheckTimes() > 0) {
+                msgExt.putUserProperty(MessageConst.PROPERTY_TRANSACTION_CHECK_TIMES,
+                    String.valueOf(pendingCheck.getCheckTimes()));
+            }
+            if (needDiscard(msgExt, transactionCheckMax) || needSkip(msgExt)) {
+                listener.resolveDiscardMsg(msgExt);
+                resolvedOffsets.add(offset);
+                continue;
+            }
+            pendingCheck.setCheckTimes(getInt(msgExt.getUserProperty(MessageConst.PROPERTY_TRANSACTION_CHECK_TIMES)));
+            pendingCheck.setNextCheckTime(now + transactionTimeout);
+            listener.resolveHalfMsg(msgExt);
+        }
+        for (Long offset : resolvedOffsets) {
+            opIndex.resolveLocally(offset);
+        }
+    }
+
+    /**
+     * Check the half messages from the scan position on, they are left in place and tracked as pending checks.
+     */
+    private void scanHalfMsg(MessageQueue messageQueue, TransactionalOpIndex opIndex, long startTime,
+        long transactionTimeout, int transactionCheckMax, AbstractTransactionalMessageCheckListener listener) {
+        int getMessageNullCount = 1;
+        while (true) {
+            if (System.currentTimeMillis() - startTime > MAX_PROCESS_TIME_LIMIT) {
+                log.info("Queue={} process time reach max={}", messageQueue, MAX_PROCESS_TIME_LIMIT);
+                break;
+            }
+            long i = opIndex.getScanOffset();
+            if (opIndex.isResolved(i)) {
+                log.debug("Half offset {} has been committed/rolled back", i);
+                opIndex.setScanOffset(i + 1);
+                continue;
+            }
+
+            GetResult getResult = getHalfMsg(messageQueue, i);
+            MessageExt msgExt = getResult.getMsg();
+            if (msgExt == null) {
+                if (getMessageNullCount++ > MAX_RETRY_COUNT_WHEN_HALF_NULL) {
+                    break;
                 }
-                // single thread
-                int getMessageNullCount = 1;
-                long newOffset = halfOffset;
-                long i = halfOffset;
-                while (true) {
-                    if (System.currentTimeMillis() - startTime > MAX_PROCESS_TIME_LIMIT) {
-                        log.info("Queue={} process time reach max={}", messageQueue, MAX_PROCESS_TIME_LIMIT);
-                        break;
+                if (getResult.getPullResult().getPullStatus() == PullStatus.NO_NEW_MSG) {
+                    log.debug("No new msg, the miss offset={} in={}, continue check={}, pull result={}", i,
+                        messageQueue, getMessageNullCount, getResult.getPullResult());
+                    break;
+                } else {
+                    log.info("Illegal offset, the miss offset={} in={}, continue check={}, pull result={}",
+                        i, messageQueue, getMessageNullCount, getResult.getPullResult());
+                    long nextOffset = getResult.getPullResult().getNextBeginOffset();
+                    for (long j = i; j < nextOffset; j++) {
+                        opIndex.resolveLocally(j);
                     }
-                    if (removeMap.containsKey(i)) {
-                        log.info("Half offset {} has been committed/rolled back", i);
-                        removeMap.remove(i);
+                    opIndex.setScanOffset(Math.max(i + 1, nextOffset));
+                    continue;
+                }
+            }
+
+            if (needDiscard(msgExt, transactionCheckMax) || needSkip(msgExt)) {
+                listener.resolveDiscardMsg(msgExt);
+                opIndex.resolveLocally(i);
+                opIndex.setScanOffset(i + 1);
+                continue;
+            }
+            if (msgExt.getStoreTimestamp() >= startTime) {
+                log.debug("Fresh stored. the miss offset={}, check it later, store={}", i,
+                    new Date(msgExt.getStoreTimestamp()));
+                break;
+            }
+
+            long now = System.currentTimeMillis();
+            long valueOfCurrentMinusBorn = now - msgExt.getBornTimestamp();
+            String checkImmunityTimeStr = msgExt.getUserProperty(MessageConst.PROPERTY_CHECK_IMMUNITY_TIME_IN_SECONDS);
+            if (null != checkImmunityTimeStr) {
+                long checkImmunityTime = getImmunityTime(checkImmunityTimeStr, transactionTimeout);
+                if (valueOfCurrentMinusBorn < checkImmunityTime) {
+                    if (isPrepareQueueOffsetResolved(opIndex, msgExt)) {
+                        opIndex.resolveLocally(i);
                     } else {
-                        GetResult getResult = getHalfMsg(messageQueue, i);
-                        MessageExt msgExt = getResult.getMsg();
-                        if (msgExt == null) {
-                            if (getMessageNullCount++ > MAX_RETRY_COUNT_WHEN_HALF_NULL) {
-                                break;
-                            }
-                            if (getResult.getPullResult().getPullStatus() == PullStatus.NO_NEW_MSG) {
-                                log.debug("No new msg, the miss offset={} in={}, continue check={}, pull result={}", i,
-                                    messageQueue, getMessageNullCount, getResult.getPullResult());
-                                break;
-                            } else {
-                                log.info("Illegal offset, the miss offset={} in={}, continue check={}, pull result={}",
-                                    i, messageQueue, getMessageNullCount, getResult.getPullResult());
-                                i = getResult.getPullResult().getNextBeginOffset();
-                                newOffset = i;
-                                continue;
-                            }
-                        }
-
-                        if (needDiscard(msgExt, transactionCheckMax) || needSkip(msgExt)) {
-                            listener.resolveDiscardMsg(msgExt);
-                            newOffset = i + 1;
-                            i++;
-                            continue;
-                        }
-                        if (msgExt.getStoreTimestamp() >= startTime) {
-                            log.debug("Fresh stored. the miss offset={}, check it later, store={}", i,
-                                new Date(msgExt.getStoreTimestamp()));
-                            break;
-                        }
-
-                        long valueOfCurrentMinusBorn = System.currentTimeMillis() - msgExt.getBornTimestamp();
-                        long checkImmunityTime = transactionTimeout;
-                        String checkImmunityTimeStr = msgExt.getUserProperty(MessageConst.PROPERTY_CHECK_IMMUNITY_TIME_IN_SECONDS);
-                        if (null != checkImmunityTimeStr) {
-                            checkImmunityTime = getImmunityTime(checkImmunityTimeStr, transactionTimeout);
-                            if (valueOfCurrentMinusBorn < checkImmunityTime) {
-                                if (checkPrepareQueueOffset(removeMap, doneOpOffset, msgExt)) {
-                                    newOffset = i + 1;
-                                    i++;
-                                    continue;
-                                }
-                            }
-                        } else {
-                            if ((0 <= valueOfCurrentMinusBorn) && (valueOfCurrentMinusBorn < checkImmunityTime)) {
-                                log.debug("New arrived, the miss offset={}, check it later checkImmunity={}, born={}", i,
-                                    checkImmunityTime, new Date(msgExt.getBornTimestamp()));
-                                break;
-                            }
-                        }
-                        List<MessageExt> opMsg = pullResult.getMsgFoundList();
-                        boolean isNeedCheck = (opMsg == null && valueOfCurrentMinusBorn > checkImmunityTime)
-                            || (opMsg != null && (opMsg.get(opMsg.size() - 1).getBornTimestamp() - startTime > transactionTimeout))
-                            || (valueOfCurrentMinusBorn <= -1);
-
-                        if (isNeedCheck) {
-                            if (!putBackHalfMsgQueue(msgExt, i)) {
-                                continue;
-                            }
-                            listener.resolveHalfMsg(msgExt);
-                        } else {
-                            pullResult = fillOpRemoveMap(removeMap, opQueue, pullResult.getNextBeginOffset(), halfOffset, doneOpOffset);
-                            log.info("The miss offset:{} in messageQueue:{} need to get more opMsg, result is:{}", i,
-                                messageQueue, pullResult);
-                            continue;
-                        }
+                        // the checkTimes property was bumped by needDiscard, it is set again when checked
+                        opIndex.getPendingChecks().put(i, new TransactionalOpIndex.PendingCheck(0,
+                            msgExt.getBornTimestamp() + checkImmunityTime));
                     }
-                    newOffset = i + 1;
-                    i++;
+                    opIndex.setScanOffset(i + 1);
+                    continue;
                 }
-                if (newOffset != halfOffset) {
-                    transactionalMessageBridge.updateConsumeOffset(messageQueue, newOffset);
+            } else if ((0 <= valueOfCurrentMinusBorn) && (valueOfCurrentMinusBorn < transactionTimeout)) {
+                log.debug("New arrived, the miss offset={}, check it later checkImmunity={}, born={}", i,
+                    transactionTimeout, new Date(msgExt.getBornTimestamp()));
+                break;
+            }
+
+            opIndex.getPendingChecks().put(i, new TransactionalOpIndex.PendingCheck(
+                getInt(msgExt.getUserProperty(MessageConst.PROPERTY_TRANSACTION_CHECK_TIMES)), now + transactionTimeout));
+            listener.resolveHalfMsg(msgExt);
+            opIndex.setScanOffset(i + 1);
+        }
+    }
+
+    /**
+     * Bound the half messages held by the index, the oldest unresolved ones are put back to the half queue so that
+     * the consume offset can move on.
+     */
+    private void limitInFlight(MessageQueue messageQueue, TransactionalOpIndex opIndex) {
+        long maxInFlight = transactionalMessageBridge.getBrokerController().getBrokerConfig().getTransactionCheckMaxInFlight();
+        while (opIndex.getInFlight() > maxInFlight) {
+            long offset = opIndex.getBase();
+            MessageExt msgExt = getHalfMsg(messageQueue, offset).getMsg();
+            if (msgExt != null) {
+                TransactionalOpIndex.PendingCheck pendingCheck = opIndex.getPendingChecks().get(offset);
+                if (pendingCheck != null && pendingCheck.getCheckTimes() > 0) {
+                    msgExt.putUserProperty(MessageConst.PROPERTY_TRANSACTION_CHECK_TIMES,
+                        String.valueOf(pendingCheck.getCheckTimes()));
                 }
-                long newOpOffset = calculateOpOffset(doneOpOffset, opOffset);
-                if (newOpOffset != opOffset) {
-                    transactionalMessageBridge.updateConsumeOffset(opQueue, newOpOffset);
+                if (!putBackHalfMsgQueue(msgExt, offset)) {
+                    break;
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            log.error("Check error", e);
+            opIndex.resolveLocally(offset);
+            opIndex.advance();
         }
+    }
 
+    private boolean isPrepareQueueOffsetResolved(TransactionalOpIndex opIndex, MessageExt msgExt) {
+        String prepareQueueOffsetStr = msgExt.getUserProperty(MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET);
+        if (null == prepareQueueOffsetStr) {
+            return false;
+        }
+        long prepareQueueOffset = getLong(prepareQueueOffsetStr);
+        return prepareQueueOffset >= opIndex.getBase() && opIndex.isResolved(prepareQueueOffset);
     }
 
     private long getImmunityTime(String checkImmunityTimeStr, long transactionTimeout) {
@@ -259,83 +396,53 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
     }
 
     /**
-     * Read op message, parse op message, and fill removeMap
+     * Read the op messages since the last pass into the index.
      *
-     * @param removeMap Half message to be remove, key:halfOffset, value: opOffset.
+     * @param opIndex Index of the half queue.
      * @param opQueue Op message queue.
-     * @param pullOffsetOfOp The begin offset of op message queue.
-     * @param miniOffset The current minimum offset of half message queue.
-     * @param doneOpOffset Stored op messages that have been processed.
-     * @return Op message result.
-     */
-    private PullResult fillOpRemoveMap(HashMap<Long, Long> removeMap,
-        MessageQueue opQueue, long pullOffsetOfOp, long miniOffset, List<Long> doneOpOffset) {
-        PullResult pullResult = pullOpMsg(opQueue, pullOffsetOfOp, 32);
-        if (null == pullResult) {
-            return null;
-        }
-        if (pullResult.getPullStatus() == PullStatus.OFFSET_ILLEGAL
-            || pullResult.getPullStatus() == PullStatus.NO_MATCHED_MSG) {
-            log.warn("The miss op offset={} in queue={} is illegal, pullResult={}", pullOffsetOfOp, opQueue,
-                pullResult);
-            transactionalMessageBridge.updateConsumeOffset(opQueue, pullResult.getNextBeginOffset());
-            return pullResult;
-        } else if (pullResult.getPullStatus() == PullStatus.NO_NEW_MSG) {
-            log.warn("The miss op offset={} in queue={} is NO_NEW_MSG, pullResult={}", pullOffsetOfOp, opQueue,
-                pullResult);
-            return pullResult;
-        }
-        List<MessageExt> opMsg = pullResult.getMsgFoundList();
-        if (opMsg == null) {
-            log.warn("The miss op offset={} in queue={} is empty, pullResult={}", pullOffsetOfOp, opQueue, pullResult);
-            return pullResult;
-        }
-        for (MessageExt opMessageExt : opMsg) {
-            Long queueOffset = getLong(new String(opMessageExt.getBody(), TransactionalMessageUtil.charset));
-            log.info("Topic: {} tags: {}, OpOffset: {}, HalfOffset: {}", opMessageExt.getTopic(),
-                opMessageExt.getTags(), opMessageExt.getQueueOffset(), queueOffset);
-            if (TransactionalMessageUtil.REMOVETAG.equals(opMessageExt.getTags())) {
-                if (queueOffset < miniOffset) {
-                    doneOpOffset.add(opMessageExt.getQueueOffset());
-                } else {
-                    removeMap.put(queueOffset, opMessageExt.getQueueOffset());
-                }
-            } else {
-                log.error("Found a illegal tag in opMessageExt= {} ", opMessageExt);
-            }
-        }
-        log.debug("Remove map: {}", removeMap);
-        log.debug("Done op list: {}", doneOpOffset);
-        return pullResult;
-    }
-
-    /**
-     * If return true, skip this msg
-     *
-     * @param removeMap Op message map to determine whether a half message was responded by producer.
-     * @param doneOpOffset Op Message which has been checked.
-     * @param msgExt Half message
-     * @return Return true if put success, otherwise return false.
+     * @param startTime Begin time of the check pass.
+     * @return false if the op queue could not be read.
      */
-    private boolean checkPrepareQueueOffset(HashMap<Long, Long> removeMap, List<Long> doneOpOffset,
-        MessageExt msgExt) {
-        String prepareQueueOffsetStr = msgExt.getUserProperty(MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET);
-        if (null == prepareQueueOffsetStr) {
-            return putImmunityMsgBackToHalfQueue(msgExt);
-        } else {
-            long prepareQueueOffset = getLong(prepareQueueOffsetStr);
-            if (-1 == prepareQueueOffset) {
+    private boolean fillOpIndex(TransactionalOpIndex opIndex, MessageQueue opQueue, long startTime) {
+        while (System.currentTimeMillis() - startTime < MAX_PROCESS_TIME_LIMIT) {
+            long pullOffsetOfOp = opIndex.getOpReadOffset();
+            PullResult pullResult = pullOpMsg(opQueue, pullOffsetOfOp, OP_MSG_PULL_NUMS);
+            if (null == pullResult) {
                 return false;
-            } else {
-                if (removeMap.containsKey(prepareQueueOffset)) {
-                    long tmpOpOffset = removeMap.remove(prepareQueueOffset);
-                    doneOpOffset.add(tmpOpOffset);
+            }
+            if (pullResult.getPullStatus() == PullStatus.OFFSET_ILLEGAL
+                || pullResult.getPullStatus() == PullStatus.NO_MATCHED_MSG) {
+                log.warn("The miss op offset={} in queue={} is illegal, pullResult={}", pullOffsetOfOp, opQueue,
+                    pullResult);
+                if (pullResult.getNextBeginOffset() <= pullOffsetOfOp) {
                     return true;
+                }
+                opIndex.setOpReadOffset(pullResult.getNextBeginOffset());
+                continue;
+            } else if (pullResult.getPullStatus() == PullStatus.NO_NEW_MSG) {
+                return true;
+            }
+            List<MessageExt> opMsg = pullResult.getMsgFoundList();
+            if (opMsg == null) {
+                log.warn("The miss op offset={} in queue={} is empty, pullResult={}", pullOffsetOfOp, opQueue, pullResult);
+                return true;
+            }
+            for (MessageExt opMessageExt : opMsg) {
+                Long queueOffset = getLong(new String(opMessageExt.getBody(), TransactionalMessageUtil.charset));
+                log.debug("Topic: {} tags: {}, OpOffset: {}, HalfOffset: {}", opMessageExt.getTopic(),
+                    opMessageExt.getTags(), opMessageExt.getQueueOffset(), queueOffset);
+                if (TransactionalMessageUtil.REMOVETAG.equals(opMessageExt.getTags())) {
+                    opIndex.addOp(opMessageExt.getQueueOffset(), queueOffset);
                 } else {
-                    return putImmunityMsgBackToHalfQueue(msgExt);
+                    log.error("Found a illegal tag in opMessageExt= {} ", opMessageExt);
                 }
             }
+            if (pullResult.getNextBeginOffset() <= pullOffsetOfOp) {
+                return true;
+            }
+            opIndex.setOpReadOffset(pullResult.getNextBeginOffset());
         }
+        return true;
     }
 
     /**
@@ -355,11 +462,6 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
         return putMessageResult;
     }
 
-    private boolean putImmunityMsgBackToHalfQueue(MessageExt messageExt) {
-        MessageExtBrokerInner msgInner = transactionalMessageBridge.renewImmunityHalfMessageInner(messageExt);
-        return transactionalMessageBridge.putMessage(msgInner);
-    }
-
     /**
      * Read half message from Half Topic
      *
@@ -406,20 +508,6 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
 
     }
 
-    private long calculateOpOffset(List<Long> doneOffset, long oldOffset) {
-        Collections.sort(doneOffset);
-        long newOffset = oldOffset;
-        for (int i = 0; i < doneOffset.size(); i++) {
-            if (doneOffset.get(i) == newOffset) {
-                newOffset++;
-            } else {
-                break;
-            }
-        }
-        return newOffset;
-
-    }
-
     private MessageQueue getOpQueue(MessageQueue messageQueue) {
         MessageQueue opQueue = opQueueMap.get(messageQueue);
         if (opQueue == null) {
@@ -468,6 +556,17 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
         }
     }
 
+    @Override
+    public boolean deletePrepareMessages(List<MessageExt> msgExtList) {
+        if (this.transactionalMessageBridge.putOpMessages(msgExtList)) {
+            log.info("Transaction op messages write successfully. size={}", msgExtList.size());
+            return true;
+        } else {
+            log.error("Transaction op messages write failed. size={}", msgExtList.size());
+            return false;
+        }
+    }
+
     @Override
     public OperationResult commitMessage(EndTransactionRequestHeader requestHeader) {
         return getHalfMessageByOffset(requestHeader.getCommitLogOffset());
@@ -484,8 +583,11 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
     }
 
     @Override
-    public void close() {
-
+    public synchronized void close() {
+        if (this.checkExecutorService != null) {
+            this.checkExecutorService.shutdown();
+            this.checkExecutorService = null;
+        }
     }
 
 }
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.transaction.queue;
+
+import java.util.BitSet;
+import java.util.TreeMap;
+
+/**
+ * In-memory state of one half queue kept across check passes.
+ * <p>
+ * Half offsets from {@code base} on are tracked by a bitmap of the resolved ones, which are committed or rolled back
+ * according to the op queue, or discarded by the checker. Unresolved half messages between {@code base} and the scan
+ * position stay in place and are checked again later, instead of being rewritten to the half queue on every pass.
+ * <p>
+ * The op messages read are remembered in order, so that the op consume offset is only advanced over op messages
+ * whose half offsets are behind {@code base}, and the index can be rebuilt from the two consume offsets on restart.
+ * Not thread safe, a half queue is checked by one thread at a time.
+ */
+public class TransactionalOpIndex {
+    private long base;
+    private long scanOffset;
+    private long opReadOffset;
+
+    private long bitBase;
+    private BitSet resolved = new BitSet();
+
+    private long[] opOffsets = new long[64];
+    private long[] opHalfOffsets = new long[64];
+    private int opHead = 0;
+    private int opSize = 0;
+
+    private final TreeMap<Long/* half offset */, PendingCheck> pendingChecks = new TreeMap<Long, PendingCheck>();
+
+    public TransactionalOpIndex(long halfOffset, long opOffset) {
+        this.base = halfOffset;
+        this.bitBase = halfOffset;
+        this.scanOffset = halfOffset;
+        this.opReadOffset = opOffset;
+    }
+
+    /**
+     * Record an op message resolving {@code halfOffset}.
+     */
+    public void addOp(long opOffset, long halfOffset) {
+        if (halfOffset >= this.base) {
+            this.resolved.set((int) (halfOffset - this.bitBase));
+            this.pushOp(opOffset, halfOffset);
+        }
+    }
+
+    /**
+     * Resolve a half message without an op message, e.g. discarded or put back to the half queue.
+     */
+    public void resolveLocally(long halfOffset) {
+        if (halfOffset >= this.base) {
+            this.resolved.set((int) (halfOffset - this.bitBase));
+        }
+        this.pendingChecks.remove(halfOffset);
+    }
+
+    public boolean isResolved(long halfOffset) {
+        return halfOffset < this.base || this.resolved.get((int) (halfOffset - this.bitBase));
+    }
+
+    /**
+     * Move {@code base} over the resolved half messages in front of the scan position.
+     */
+    public void advance() {
+        while (this.base < this.scanOffset && this.isResolved(this.base)) {
+            this.pendingChecks.remove(this.base);
+            this.base++;
+        }
+        while (this.opSize > 0 && this.opHalfOffsets[this.opHead] < this.base) {
+            this.opHead = (this.opHead + 1) % this.opOffsets.length;
+            this.opSize--;
+        }
+        if (this.base - this.bitBase >= 1024) {
+            this.resolved = this.resolved.get((int) (this.base - this.bitBase), Math.max(this.resolved.length(), (int) (this.base - this.bitBase)));
+            this.bitBase = this.base;
+        }
+    }
+
+    /**
+     * @return the op offset that is safe to persist, the op messages from it on may still be needed after restart
+     */
+    public long getCommittedOpOffset() {
+        return this.opSize > 0 ? this.opOffsets[this.opHead] : this.opReadOffset;
+    }
+
+    private void pushOp(long opOffset, long halfOffset) {
+        if (this.opSize == this.opOffsets.length) {
+            long[] newOpOffsets = new long[this.opOffsets.length * 2];
+            long[] newHalfOffsets = new long[this.opOffsets.length * 2];
+            for (int i = 0; i < this.opSize; i++) {
+                newOpOffsets[i] = this.opOffsets[(this.opHead + i) % this.opOffsets.length];
+                newHalfOffsets[i] = this.opHalfOffsets[(this.opHead + i) % this.opOffsets.length];
+            }
+            this.opOffsets = newOpOffsets;
+            this.opHalfOffsets = newHalfOffsets;
+            this.opHead = 0;
+        }
+        int tail = (this.opHead + this.opSize) % this.opOffsets.length;
+        this.opOffsets[tail] = opOffset;
+        this.opHalfOffsets[tail] = halfOffset;
+        this.opSize++;
+    }
+
+    public long getBase() {
+        return base;
+    }
+
+    public long getScanOffset() {
+        return scanOffset;
+    }
+
+    public void setScanOffset(long scanOffset) {
+        this.scanOffset = scanOffset;
+    }
+
+    public long getOpReadOffset() {
+        return opReadOffset;
+    }
+
+    public void setOpReadOffset(long opReadOffset) {
+        this.opReadOffset = opReadOffset;
+    }
+
+    public long getInFlight() {
+        return this.scanOffset - this.base;
+    }
+
+    public TreeMap<Long, PendingCheck> getPendingChecks() {
+        return pendingChecks;
+    }
+
+    public static class PendingCheck {
+        /**
+         * Check times so far, 0 if the half message has not been checked by this index.
+         */
+        private int checkTimes;
+        private long nextCheckTime;
+
+        public PendingCheck(int checkTimes, long nextCheckTime) {
+            this.checkTimes = checkTimes;
+            this.nextCheckTime = nextCheckTime;
+        }
+
+        public int getCheckTimes() {
+            return checkTimes;
+        }
+
+        public void setCheckTimes(int checkTimes) {
+            this.checkTimes = checkTimes;
+        }
+
+        public long getNextCheckTime() {
+            return nextCheckTime;
+        }
+
+        public void setNextCheckTime(long nextCheckTime) {
+            this.nextCheckTime = nextCheckTime;
+        }
+    }
+}
@@ -22,12 +22,17 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import io.netty.channel.ChannelHandlerContext;
 import java.lang.reflect.Field;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.broker.out.BrokerOuterAPI;
 import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.TopicConfig;
 import org.apache.rocketmq.common.namesrv.RegisterBrokerResult;
+import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.RegisterBrokerBody;
 import org.apache.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
 import org.apache.rocketmq.common.protocol.header.namesrv.QueryDataVersionResponseHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.RegisterBrokerResponseHeader;
@@ -182,6 +187,109 @@ public class BrokerOuterAPITest {
         assertEquals(2, registerBrokerResultList.size());
     }
 
+    @Test
+    public void test_register_delta() throws Exception {
+        init();
+        brokerOuterAPI.start();
+
+        final RemotingCommand response = RemotingCommand.createResponseCommand(RegisterBrokerResponseHeader.class);
+        response.setCode(ResponseCode.SUCCESS);
+        final RemotingCommand notMatchResponse = RemotingCommand.createResponseCommand(ResponseCode.DATA_VERSION_NOT_MATCH, null);
+        final List<RemotingCommand> requests = new CopyOnWriteArrayList<RemotingCommand>();
+
+        when(nettyRemotingClient.getNameServerAddressList()).thenReturn(Lists.asList(nameserver1, new String[] {nameserver2}));
+        when(nettyRemotingClient.invokeSync(anyString(), any(RemotingCommand.class), anyLong())).thenAnswer(new Answer<RemotingCommand>() {
+            @Override
+            public RemotingCommand answer(InvocationOnMock invocation) throws Throwable {
+                RemotingCommand request = invocation.getArgument(1);
+                requests.add(request);
+                if (invocation.getArgument(0) == nameserver2 && request.getCode() == RequestCode.REGISTER_BROKER_DELTA) {
+                    return notMatchResponse;
+                }
+                return response;
+            }
+        });
+
+        TopicConfigSerializeWrapper topicConfigSerializeWrapper = new TopicConfigSerializeWrapper();
+        topicConfigSerializeWrapper.getTopicConfigTable().put("TopicA", new TopicConfig("TopicA", 4, 4, 6));
+        topicConfigSerializeWrapper.getTopicConfigTable().put("TopicB", new TopicConfig("TopicB", 4, 4, 6));
+        List<RegisterBrokerResult> registerBrokerResultList = brokerOuterAPI.registerBrokerAll(clusterName, brokerAddr, brokerName, brokerId, "hasServerAddr", topicConfigSerializeWrapper, Lists.<String>newArrayList(), false, timeOut, false, true);
+        assertEquals(2, registerBrokerResultList.size());
+        assertEquals(2, requests.size());
+        for (RemotingCommand request : requests) {
+            assertEquals(RequestCode.REGISTER_BROKER, request.getCode());
+        }
+
+        requests.clear();
+        topicConfigSerializeWrapper.getTopicConfigTable().get("TopicB").setPerm(4);
+        topicConfigSerializeWrapper.getDataVersion().nextVersion();
+        registerBrokerResultList = brokerOuterAPI.registerBrokerAll(clusterName, brokerAddr, brokerName, brokerId, "hasServerAddr", topicConfigSerializeWrapper, Lists.<String>newArrayList(), false, timeOut, false, true);
+        assertEquals(2, registerBrokerResultList.size());
+        // nameserver1 applies the delta, nameserver2 rejects it and is registered in full
+        assertEquals(3, requests.size());
+        int fullRegistrations = 0;
+        for (RemotingCommand request : requests) {
+            RegisterBrokerBody body = RegisterBrokerBody.decode(request.getBody(), false);
+            if (request.getCode() == RequestCode.REGISTER_BROKER_DELTA) {
+                assertEquals(Collections.singleton("TopicB"), body.getTopicConfigSerializeWrapper().getTopicConfigTable().keySet());
+            } else {
+                assertEquals(2, body.getTopicConfigSerializeWrapper().getTopicConfigTable().size());
+                fullRegistrations++;
+            }
+        }
+        assertEquals(1, fullRegistrations);
+    }
+
+    @Test
+    public void test_register_increment_then_all() throws Exception {
+        init();
+        brokerOuterAPI.start();
+
+        final RemotingCommand response = RemotingCommand.createResponseCommand(RegisterBrokerResponseHeader.class);
+        response.setCode(ResponseCode.SUCCESS);
+        final List<RemotingCommand> requests = new CopyOnWriteArrayList<RemotingCommand>();
+
+        when(nettyRemotingClient.getNameServerAddressList()).thenReturn(Lists.asList(nameserver1, new String[] {nameserver2}));
+        when(nettyRemotingClient.invokeSync(anyString(), any(RemotingCommand.class), anyLong())).thenAnswer(new Answer<RemotingCommand>() {
+            @Override
+            public RemotingCommand answer(InvocationOnMock invocation) throws Throwable {
+                requests.add(invocation.<RemotingCommand>getArgument(1));
+                return response;
+            }
+        });
+
+        TopicConfigSerializeWrapper topicConfigSerializeWrapper = new TopicConfigSerializeWrapper();
+        topicConfigSerializeWrapper.getTopicConfigTable().put("TopicA", new TopicConfig("TopicA", 4, 4, 6));
+        topicConfigSerializeWrapper.getTopicConfigTable().put("TopicB", new TopicConfig("TopicB", 4, 4, 6));
+        brokerOuterAPI.registerBrokerAll(clusterName, brokerAddr, brokerName, brokerId, "hasServerAddr", topicConfigSerializeWrapper, Lists.<String>newArrayList(), false, timeOut, false, true);
+
+        // a topic created in between is registered alone
+        TopicConfig topicC = new TopicConfig("TopicC", 4, 4, 6);
+        topicConfigSerializeWrapper.getTopicConfigTable().put("TopicC", topicC);
+        topicConfigSerializeWrapper.getDataVersion().nextVersion();
+        TopicConfigSerializeWrapper incrementWrapper = new TopicConfigSerializeWrapper();
+        incrementWrapper.getTopicConfigTable().put("TopicC", topicC);
+        incrementWrapper.setDataVersion(topicConfigSerializeWrapper.getDataVersion());
+        requests.clear();
+        brokerOuterAPI.registerBrokerAll(clusterName, brokerAddr, brokerName, brokerId, "hasServerAddr", incrementWrapper, Lists.<String>newArrayList(), false, timeOut, false, true, true);
+        assertEquals(2, requests.size());
+        for (RemotingCommand request : requests) {
+            assertEquals(RequestCode.REGISTER_BROKER_DELTA, request.getCode());
+            RegisterBrokerBody body = RegisterBrokerBody.decode(request.getBody(), false);
+            assertEquals(Collections.singleton("TopicC"), body.getTopicConfigSerializeWrapper().getTopicConfigTable().keySet());
+        }
+
+        // the periodic registration finds nothing changed since the increment
+        requests.clear();
+        brokerOuterAPI.registerBrokerAll(clusterName, brokerAddr, brokerName, brokerId, "hasServerAddr", topicConfigSerializeWrapper, Lists.<String>newArrayList(), false, timeOut, false, true);
+        assertEquals(2, requests.size());
+        for (RemotingCommand request : requests) {
+            assertEquals(RequestCode.REGISTER_BROKER_DELTA, request.getCode());
+            RegisterBrokerBody body = RegisterBrokerBody.decode(request.getBody(), false);
+            assertTrue(body.getTopicConfigSerializeWrapper().getTopicConfigTable().isEmpty());
+        }
+    }
+
     private RemotingCommand buildResponse(Boolean changed) {
         final RemotingCommand response = RemotingCommand.createResponseCommand(QueryDataVersionResponseHeader.class);
         final QueryDataVersionResponseHeader responseHeader = (QueryDataVersionResponseHeader) response.readCustomHeader();
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.client;
+
+import io.netty.channel.Channel;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ClientChannelTimeoutWheelTest {
+    private static final long TIMEOUT_MILLIS = 10000;
+    private static final long TICK_MILLIS = 1000;
+
+    @Test
+    public void testExpire() {
+        ClientChannelTimeoutWheel wheel = new ClientChannelTimeoutWheel(TIMEOUT_MILLIS, TICK_MILLIS);
+        long now = System.currentTimeMillis();
+        ClientChannelInfo info = new ClientChannelInfo(mock(Channel.class));
+        info.setLastUpdateTimestamp(now);
+        wheel.schedule("FooBar", info);
+
+        assertThat(wheel.expire(now + TIMEOUT_MILLIS - TICK_MILLIS)).isEmpty();
+
+        // a heartbeat meanwhile postpones the expiration
+        info.setLastUpdateTimestamp(now + 5000);
+        assertThat(wheel.expire(now + TIMEOUT_MILLIS + TICK_MILLIS)).isEmpty();
+
+        assertThat(wheel.expire(now + 5000 + TIMEOUT_MILLIS + TICK_MILLIS)).hasSize(1);
+        assertThat(wheel.expire(now + 5000 + TIMEOUT_MILLIS * 3)).isEmpty();
+    }
+
+    @Test
+    public void testExpireAlreadyDue() {
+        ClientChannelTimeoutWheel wheel = new ClientChannelTimeoutWheel(TIMEOUT_MILLIS, TICK_MILLIS);
+        long now = System.currentTimeMillis();
+        ClientChannelInfo info = new ClientChannelInfo(mock(Channel.class));
+        info.setLastUpdateTimestamp(now - TIMEOUT_MILLIS - 10);
+        wheel.schedule("FooBar", info);
+
+        assertThat(wheel.expire(now)).hasSize(1);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.client;
+
+import io.netty.channel.Channel;
+import java.util.Collections;
+import java.util.HashSet;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.apache.rocketmq.common.protocol.heartbeat.ConsumeType;
+import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
+import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConsumerManagerTest {
+    private ConsumerManager consumerManager;
+    private String group = "FooBar";
+
+    @Mock
+    private ConsumerIdsChangeListener consumerIdsChangeListener;
+    @Mock
+    private Channel channel;
+
+    @Before
+    public void init() {
+        consumerManager = new ConsumerManager(consumerIdsChangeListener);
+    }
+
+    @Test
+    public void doChannelCloseEvent() {
+        register(group, new ClientChannelInfo(channel));
+        register("OtherGroup", new ClientChannelInfo(channel));
+
+        consumerManager.doChannelCloseEvent("127.0.0.1", channel);
+        assertThat(consumerManager.getConsumerGroupInfo(group)).isNull();
+        assertThat(consumerManager.getConsumerGroupInfo("OtherGroup")).isNull();
+    }
+
+    @Test
+    public void scanNotActiveChannel() {
+        register(group, new ClientChannelInfo(channel));
+        consumerManager.scanNotActiveChannel();
+        assertThat(consumerManager.getConsumerGroupInfo(group).getAllChannel()).containsExactly(channel);
+    }
+
+    private void register(String group, ClientChannelInfo clientChannelInfo) {
+        consumerManager.registerConsumer(group, clientChannelInfo, ConsumeType.CONSUME_PASSIVELY,
+            MessageModel.CLUSTERING, ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET,
+            new HashSet<SubscriptionData>(Collections.singleton(new SubscriptionData("TopicA", "*"))), false);
+    }
+}
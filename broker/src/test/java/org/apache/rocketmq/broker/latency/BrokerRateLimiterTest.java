@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.latency;
+
+import java.util.Map;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BrokerRateLimiterTest {
+    private BrokerConfig brokerConfig;
+    private BrokerRateLimiter rateLimiter;
+
+    @Before
+    public void init() {
+        brokerConfig = new BrokerConfig();
+        brokerConfig.setRateLimitEnable(true);
+        rateLimiter = new BrokerRateLimiter(brokerConfig);
+    }
+
+    @Test
+    public void testParseRateLimits() {
+        Map<String, BrokerRateLimiter.RateLimit> table = BrokerRateLimiter.parseRateLimits("topicA:100:0; topicB : 0 : 1024;bad;topicC:x:1");
+        assertThat(table).containsOnlyKeys("topicA", "topicB");
+    }
+
+    @Test
+    public void testProduceRateLimit() {
+        brokerConfig.setTopicRateLimits("topicA:10:0");
+        assertThat(rateLimiter.tryAcquireProduce("topicA", "group", 30, 100)).isTrue();
+        // 2 seconds of debt
+        assertThat(rateLimiter.tryAcquireProduce("topicA", "group", 1, 100)).isFalse();
+        assertThat(rateLimiter.tryAcquireProduce("topicB", "group", 30, 100)).isTrue();
+
+        brokerConfig.setRateLimitEnable(false);
+        assertThat(rateLimiter.tryAcquireProduce("topicA", "group", 1, 100)).isTrue();
+    }
+
+    @Test
+    public void testConsumeRateLimit() throws InterruptedException {
+        brokerConfig.setConsumerGroupRateLimits("group:0:1000");
+        assertThat(rateLimiter.tryAcquireConsume("group")).isTrue();
+        rateLimiter.consumed("group", 1, 1100);
+        assertThat(rateLimiter.tryAcquireConsume("group")).isFalse();
+        assertThat(rateLimiter.tryAcquireConsume("other")).isTrue();
+
+        Thread.sleep(200);
+        assertThat(rateLimiter.tryAcquireConsume("group")).isTrue();
+    }
+
+    @Test
+    public void testReloadRateLimits() {
+        brokerConfig.setProducerGroupRateLimits("group:1:0");
+        assertThat(rateLimiter.tryAcquireProduce("topic", "group", 5, 1)).isTrue();
+        assertThat(rateLimiter.tryAcquireProduce("topic", "group", 1, 1)).isFalse();
+
+        brokerConfig.setProducerGroupRateLimits("");
+        assertThat(rateLimiter.tryAcquireProduce("topic", "group", 1, 1)).isTrue();
+    }
+}
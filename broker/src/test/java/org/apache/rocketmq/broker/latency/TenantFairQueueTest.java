@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.latency;
+
+import io.netty.channel.Channel;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.protocol.RequestCode;
+import org.apache.rocketmq.remoting.netty.RequestTask;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RemotingSysResponseCode;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class TenantFairQueueTest {
+    private final Runnable noop = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+    private BrokerConfig brokerConfig;
+    private Channel channel;
+
+    @Before
+    public void init() {
+        brokerConfig = new BrokerConfig();
+        channel = mock(Channel.class);
+    }
+
+    @Test
+    public void testTenantOf() {
+        assertThat(TenantFairQueue.tenantOf(createTask("groupA"))).isEqualTo("groupA");
+        assertThat(TenantFairQueue.tenantOf(createTask("ns%groupA"))).isEqualTo("ns");
+
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SEND_MESSAGE_V2, null);
+        request.addExtField("b", "topicA");
+        assertThat(TenantFairQueue.tenantOf(new FutureTaskExt<Void>(new RequestTask(noop, channel, request), null))).isEqualTo("topicA");
+        assertThat(TenantFairQueue.tenantOf(noop)).isEqualTo(TenantFairQueue.DEFAULT_TENANT);
+    }
+
+    @Test
+    public void testWeightedFairOrder() {
+        brokerConfig.setTenantWeights("a:4;b:3");
+        TenantFairQueue queue = new TenantFairQueue(100, brokerConfig);
+        List<Runnable> tasksA = new ArrayList<Runnable>();
+        for (int i = 0; i < 4; i++) {
+            tasksA.add(createTask("a"));
+            queue.offer(tasksA.get(i));
+        }
+        Runnable b1 = createTask("b");
+        Runnable b2 = createTask("b");
+        queue.offer(b1);
+        queue.offer(b2);
+
+        assertThat(queue.size()).isEqualTo(6);
+        assertThat(queue.poll()).isSameAs(tasksA.get(0));
+        assertThat(queue.poll()).isSameAs(b1);
+        assertThat(queue.poll()).isSameAs(tasksA.get(1));
+        assertThat(queue.poll()).isSameAs(b2);
+        assertThat(queue.poll()).isSameAs(tasksA.get(2));
+        assertThat(queue.poll()).isSameAs(tasksA.get(3));
+        assertThat(queue.poll()).isNull();
+    }
+
+    @Test
+    public void testBurstDoesNotDelayOthers() {
+        TenantFairQueue queue = new TenantFairQueue(100, brokerConfig);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(createTask("burst"));
+        }
+        Runnable other = createTask("other");
+        queue.offer(other);
+
+        List<Runnable> firstTwo = new ArrayList<Runnable>();
+        firstTwo.add(queue.poll());
+        firstTwo.add(queue.poll());
+        assertThat(firstTwo).contains(other);
+    }
+
+    @Test
+    public void testMaxRunningThreads() {
+        brokerConfig.setTenantMaxRunningThreads(1);
+        TenantFairQueue queue = new TenantFairQueue(100, brokerConfig);
+        Runnable a1 = createTask("a");
+        Runnable a2 = createTask("a");
+        Runnable b1 = createTask("b");
+        queue.offer(a1);
+        queue.offer(a2);
+        queue.offer(b1);
+
+        assertThat(queue.poll()).isSameAs(a1);
+        assertThat(queue.poll()).isSameAs(b1);
+        assertThat(queue.poll()).isNull();
+        assertThat(queue.size()).isEqualTo(1);
+
+        queue.complete(a1);
+        assertThat(queue.poll()).isSameAs(a2);
+    }
+
+    @Test
+    public void testPeekOldest() {
+        brokerConfig.setTenantMaxRunningThreads(1);
+        TenantFairQueue queue = new TenantFairQueue(100, brokerConfig);
+        Runnable a1 = createTask("a");
+        Runnable a2 = createTask("a");
+        Runnable b1 = createTask("b");
+        Runnable b2 = createTask("b");
+        queue.offer(a1);
+        queue.offer(b1);
+        queue.offer(a2);
+        queue.offer(b2);
+        assertThat(queue.peekOldest()).isSameAs(a1);
+
+        assertThat(queue.poll()).isSameAs(a1);
+        assertThat(queue.poll()).isSameAs(b1);
+        // both tenants are at the running cap, nothing can be served but the queued requests may still expire
+        assertThat(queue.peek()).isNull();
+        assertThat(queue.peekOldest()).isSameAs(a2);
+
+        new BrokerFastFailure(null).cleanExpiredRequestInQueue(queue, 0);
+        assertThat(queue.size()).isEqualTo(0);
+        assertThat(queue.peekOldest()).isNull();
+    }
+
+    @Test
+    public void testShedHeaviestTenant() {
+        TenantFairQueue queue = new TenantFairQueue(4, brokerConfig);
+        List<Runnable> tasksA = new ArrayList<Runnable>();
+        for (int i = 0; i < 4; i++) {
+            tasksA.add(createTask("a"));
+            assertThat(queue.offer(tasksA.get(i))).isTrue();
+        }
+
+        Runnable b1 = createTask("b");
+        assertThat(queue.offer(b1)).isTrue();
+        assertThat(queue.size()).isEqualTo(4);
+        assertThat(queue.contains(tasksA.get(3))).isFalse();
+        assertThat(queue.contains(b1)).isTrue();
+        ArgumentCaptor<RemotingCommand> response = ArgumentCaptor.forClass(RemotingCommand.class);
+        verify(channel).writeAndFlush(response.capture());
+        assertThat(response.getValue().getCode()).isEqualTo(RemotingSysResponseCode.SYSTEM_BUSY);
+
+        // the heaviest tenant itself is rejected
+        assertThat(queue.offer(createTask("a"))).isFalse();
+        assertThat(queue.remove(tasksA.get(0))).isTrue();
+        assertThat(queue.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void testPartialDrainKeepsFairOrder() {
+        TenantFairQueue queue = new TenantFairQueue(100, brokerConfig);
+        List<Runnable> tasksA = new ArrayList<Runnable>();
+        for (int i = 0; i < 4; i++) {
+            tasksA.add(createTask("a"));
+            queue.offer(tasksA.get(i));
+        }
+        Runnable b1 = createTask("b");
+        queue.offer(b1);
+
+        List<Runnable> drained = new ArrayList<Runnable>();
+        assertThat(queue.drainTo(drained, 3)).isEqualTo(3);
+        assertThat(drained).containsExactlyElementsOf(tasksA.subList(0, 3));
+        assertThat(queue.size()).isEqualTo(2);
+
+        // the first request of b is due before the last one of a
+        assertThat(queue.poll()).isSameAs(b1);
+        assertThat(queue.poll()).isSameAs(tasksA.get(3));
+        assertThat(queue.poll()).isNull();
+    }
+
+    private Runnable createTask(String group) {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SEND_MESSAGE, null);
+        request.addExtField("producerGroup", group);
+        return new FutureTaskExt<Void>(new RequestTask(noop, channel, request), null);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.longpolling;
+
+import io.netty.channel.Channel;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.processor.PullMessageProcessor;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.store.ConsumeQueueExt;
+import org.apache.rocketmq.store.MessageFilter;
+import org.apache.rocketmq.store.MessageStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PullRequestHoldServiceTest {
+    private static final String TOPIC = "HoldTopic";
+
+    private PullRequestHoldService pullRequestHoldService;
+    private PullMessageProcessor pullMessageProcessor;
+    private MessageStore messageStore;
+    private MessageFilter messageFilter;
+
+    @Before
+    public void init() {
+        BrokerController brokerController = mock(BrokerController.class);
+        pullMessageProcessor = mock(PullMessageProcessor.class);
+        messageStore = mock(MessageStore.class);
+        messageFilter = mock(MessageFilter.class);
+        when(brokerController.getBrokerConfig()).thenReturn(new BrokerConfig());
+        when(brokerController.getPullMessageProcessor()).thenReturn(pullMessageProcessor);
+        when(brokerController.getMessageStore()).thenReturn(messageStore);
+        when(messageFilter.isMatchedByConsumeQueue(nullable(Long.class), any(ConsumeQueueExt.CqExtUnit.class))).thenReturn(true);
+        pullRequestHoldService = new PullRequestHoldService(brokerController);
+    }
+
+    @After
+    public void destroy() {
+        pullRequestHoldService.shutdown();
+    }
+
+    @Test
+    public void testNotifyMessageArriving() throws Exception {
+        PullRequest caughtUp = createPullRequest(10, 60 * 1000);
+        PullRequest ahead = createPullRequest(12, 60 * 1000);
+        pullRequestHoldService.suspendPullRequest(TOPIC, 0, caughtUp);
+        pullRequestHoldService.suspendPullRequest(TOPIC, 0, ahead);
+        when(messageStore.getMaxOffsetInQueue(anyString(), anyInt())).thenReturn(10L);
+
+        pullRequestHoldService.notifyMessageArriving(TOPIC, 1, 11);
+        pullRequestHoldService.notifyMessageArriving(TOPIC, 0, 10);
+        verify(pullMessageProcessor, never()).executeRequestsWhenWakeup(ArgumentMatchers.<PullRequest>anyList());
+
+        pullRequestHoldService.notifyMessageArriving(TOPIC, 0, 11);
+        verify(pullMessageProcessor).executeRequestsWhenWakeup(Collections.singletonList(caughtUp));
+        // woken up only once
+        pullRequestHoldService.notifyMessageArriving(TOPIC, 0, 11);
+        verify(pullMessageProcessor, times(1)).executeRequestsWhenWakeup(ArgumentMatchers.<PullRequest>anyList());
+
+        // several requests satisfied by one arrival are woken up together
+        PullRequest another = createPullRequest(11, 60 * 1000);
+        pullRequestHoldService.suspendPullRequest(TOPIC, 0, another);
+        pullRequestHoldService.notifyMessageArriving(TOPIC, 0, 13);
+        verify(pullMessageProcessor).executeRequestsWhenWakeup(Arrays.asList(another, ahead));
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        when(messageStore.getMaxOffsetInQueue(anyString(), anyInt())).thenReturn(10L);
+        PullRequest expiring = createPullRequest(10, 300);
+        PullRequest waiting = createPullRequest(10, 60 * 1000);
+        pullRequestHoldService.suspendPullRequest(TOPIC, 0, expiring);
+        pullRequestHoldService.suspendPullRequest(TOPIC, 0, waiting);
+        pullRequestHoldService.start();
+
+        verify(pullMessageProcessor, timeout(3000)).executeRequestsWhenWakeup(Collections.singletonList(expiring));
+        Thread.sleep(500);
+        verify(pullMessageProcessor, times(1)).executeRequestsWhenWakeup(ArgumentMatchers.<PullRequest>anyList());
+
+        pullRequestHoldService.notifyMessageArriving(TOPIC, 0, 11);
+        verify(pullMessageProcessor).executeRequestsWhenWakeup(Collections.singletonList(waiting));
+        verify(pullMessageProcessor, times(2)).executeRequestsWhenWakeup(ArgumentMatchers.<PullRequest>anyList());
+    }
+
+    private PullRequest createPullRequest(long offset, long timeoutMillis) {
+        return new PullRequest(RemotingCommand.createRequestCommand(0, null), mock(Channel.class), timeoutMillis,
+            System.currentTimeMillis(), offset, null, messageFilter);
+    }
+}
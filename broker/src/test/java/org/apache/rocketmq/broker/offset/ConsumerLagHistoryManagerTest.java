@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.offset;
+
+import java.util.List;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.protocol.body.ConsumerLag;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagList;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagSample;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConsumerLagHistoryManagerTest {
+    @Mock
+    private BrokerController brokerController;
+    @Mock
+    private ConsumerLagIndex consumerLagIndex;
+
+    private ConsumerLagHistoryManager consumerLagHistoryManager;
+
+    @Before
+    public void init() {
+        BrokerConfig brokerConfig = new BrokerConfig();
+        brokerConfig.setConsumerLagHistorySize(3);
+        when(brokerController.getBrokerConfig()).thenReturn(brokerConfig);
+        when(brokerController.getConsumerLagIndex()).thenReturn(consumerLagIndex);
+        consumerLagHistoryManager = new ConsumerLagHistoryManager(brokerController);
+    }
+
+    @Test
+    public void testSampleAndQuery() {
+        when(consumerLagIndex.computeAllConsumerLag()).thenReturn(
+            consumerLagList(consumerLag("GroupA", "TopicA", 10, 1000), consumerLag("GroupA", "TopicB", 5, 3000)),
+            consumerLagList(consumerLag("GroupA", "TopicA", 20, 2000), consumerLag("GroupB", "TopicA", 1, 0)),
+            consumerLagList(consumerLag("GroupB", "TopicA", 2, 0)),
+            consumerLagList(consumerLag("GroupA", "TopicA", 30, 4000), consumerLag("GroupB", "TopicA", 3, 0)));
+
+        consumerLagHistoryManager.sample(60000);
+        List<ConsumerLagSample> samples = consumerLagHistoryManager.query("GroupA").getSampleList();
+        assertThat(samples).hasSize(1);
+        assertThat(samples.get(0).getTimestamp()).isEqualTo(60000);
+        assertThat(samples.get(0).getDiffTotal()).isEqualTo(15);
+        assertThat(samples.get(0).getLagMillis()).isEqualTo(3000);
+
+        consumerLagHistoryManager.sample(120000);
+        consumerLagHistoryManager.sample(180000);
+        consumerLagHistoryManager.sample(240000);
+
+        // the oldest sample is overwritten, GroupA had no offsets at 180000
+        samples = consumerLagHistoryManager.query("GroupA").getSampleList();
+        assertThat(samples).hasSize(2);
+        assertThat(samples.get(0).getTimestamp()).isEqualTo(120000);
+        assertThat(samples.get(0).getDiffTotal()).isEqualTo(20);
+        assertThat(samples.get(1).getTimestamp()).isEqualTo(240000);
+        assertThat(samples.get(1).getDiffTotal()).isEqualTo(30);
+
+        samples = consumerLagHistoryManager.query("GroupB").getSampleList();
+        assertThat(samples).extracting("diffTotal").containsExactly(1L, 2L, 3L);
+        assertThat(consumerLagHistoryManager.query("GroupC").getSampleList()).isEmpty();
+    }
+
+    @Test
+    public void testGroupRemoved() {
+        when(consumerLagIndex.computeAllConsumerLag()).thenReturn(
+            consumerLagList(consumerLag("GroupA", "TopicA", 10, 1000)),
+            consumerLagList());
+
+        consumerLagHistoryManager.sample(60000);
+        consumerLagHistoryManager.sample(120000);
+        consumerLagHistoryManager.sample(180000);
+        assertThat(consumerLagHistoryManager.query("GroupA").getSampleList()).hasSize(1);
+
+        consumerLagHistoryManager.sample(240000);
+        assertThat(consumerLagHistoryManager.query("GroupA").getSampleList()).isEmpty();
+    }
+
+    @Test
+    public void testSameTimestampOverwrites() {
+        when(consumerLagIndex.computeAllConsumerLag()).thenReturn(
+            consumerLagList(consumerLag("GroupA", "TopicA", 10, 1000)),
+            consumerLagList(consumerLag("GroupA", "TopicA", 20, 2000)),
+            consumerLagList(consumerLag("GroupA", "TopicA", 30, 3000)));
+
+        consumerLagHistoryManager.sample(60000);
+        consumerLagHistoryManager.sample(60000);
+        // older than the last sample
+        consumerLagHistoryManager.sample(0);
+
+        List<ConsumerLagSample> samples = consumerLagHistoryManager.query("GroupA").getSampleList();
+        assertThat(samples).hasSize(1);
+        assertThat(samples.get(0).getTimestamp()).isEqualTo(60000);
+        assertThat(samples.get(0).getDiffTotal()).isEqualTo(20);
+    }
+
+    private static ConsumerLagList consumerLagList(ConsumerLag... consumerLags) {
+        ConsumerLagList consumerLagList = new ConsumerLagList();
+        for (ConsumerLag consumerLag : consumerLags) {
+            consumerLagList.getConsumerLagList().add(consumerLag);
+        }
+        return consumerLagList;
+    }
+
+    private static ConsumerLag consumerLag(String group, String topic, long lag, long lagMillis) {
+        ConsumerLag consumerLag = new ConsumerLag();
+        consumerLag.setConsumerGroup(group);
+        consumerLag.setTopic(topic);
+        consumerLag.setLag(lag);
+        consumerLag.setLagMillis(lagMillis);
+        return consumerLag;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.offset;
+
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+import org.apache.rocketmq.store.DispatchRequest;
+import org.apache.rocketmq.store.MessageStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConsumerLagIndexTest {
+    private static final String TOPIC = "TopicA";
+    private static final String GROUP = "GroupA";
+
+    @Mock
+    private BrokerController brokerController;
+    @Mock
+    private MessageStore messageStore;
+
+    private BrokerConfig brokerConfig;
+    private ConsumerLagIndex consumerLagIndex;
+
+    @Before
+    public void init() {
+        brokerConfig = new BrokerConfig();
+        when(brokerController.getBrokerConfig()).thenReturn(brokerConfig);
+        consumerLagIndex = new ConsumerLagIndex(brokerController);
+    }
+
+    @Test
+    public void testResolveFromTimeline() {
+        // one message every 100ms, offsets 0..99 stored from 10000 to 19900
+        for (int i = 0; i < 100; i++) {
+            consumerLagIndex.dispatch(dispatchRequest(i, 10000 + i * 100, MessageSysFlag.TRANSACTION_NOT_TYPE));
+        }
+        consumerLagIndex.dispatch(dispatchRequest(100, 30000, MessageSysFlag.TRANSACTION_PREPARED_TYPE));
+
+        assertThat(consumerLagIndex.newestStoreTimestamp(TOPIC, 0, 100)).isEqualTo(19900);
+
+        // caught up, exact
+        consumerLagIndex.onCommit(GROUP, TOPIC, 0, 100);
+        assertThat(consumerLagIndex.lastConsumedTimestamp(GROUP, TOPIC, 0, 100)).isEqualTo(19900);
+
+        // lagging, resolved to the sample at or before offset 54
+        consumerLagIndex.onCommit(GROUP, TOPIC, 0, 55);
+        assertThat(consumerLagIndex.lastConsumedTimestamp(GROUP, TOPIC, 0, 55)).isEqualTo(15000);
+        consumerLagIndex.onCommit(GROUP, TOPIC, 0, 51);
+        assertThat(consumerLagIndex.lastConsumedTimestamp(GROUP, TOPIC, 0, 51)).isEqualTo(15000);
+    }
+
+    @Test
+    public void testFallbackToStore() {
+        when(brokerController.getMessageStore()).thenReturn(messageStore);
+        when(messageStore.getMessageStoreTimeStamp(TOPIC, 0, 9)).thenReturn(5000L);
+        when(messageStore.getMessageStoreTimeStamp(TOPIC, 0, 99)).thenReturn(9000L);
+
+        assertThat(consumerLagIndex.newestStoreTimestamp(TOPIC, 0, 100)).isEqualTo(9000);
+        assertThat(consumerLagIndex.newestStoreTimestamp(TOPIC, 0, 100)).isEqualTo(9000);
+
+        assertThat(consumerLagIndex.lastConsumedTimestamp(GROUP, TOPIC, 0, 10)).isEqualTo(5000);
+        assertThat(consumerLagIndex.lastConsumedTimestamp(GROUP, TOPIC, 0, 10)).isEqualTo(5000);
+
+        // read once, then cached
+        verify(messageStore).getMessageStoreTimeStamp(TOPIC, 0, 9);
+        verify(messageStore).getMessageStoreTimeStamp(TOPIC, 0, 99);
+    }
+
+    @Test
+    public void testTruncatedQueue() {
+        when(brokerController.getMessageStore()).thenReturn(messageStore);
+        for (int i = 0; i < 10; i++) {
+            consumerLagIndex.dispatch(dispatchRequest(i, 10000 + i * 1000, MessageSysFlag.TRANSACTION_NOT_TYPE));
+        }
+        // offsets dispatched again from 5 on
+        consumerLagIndex.dispatch(dispatchRequest(5, 50000, MessageSysFlag.TRANSACTION_NOT_TYPE));
+
+        assertThat(consumerLagIndex.newestStoreTimestamp(TOPIC, 0, 6)).isEqualTo(50000);
+        assertThat(consumerLagIndex.newestStoreTimestamp(TOPIC, 0, 10)).isEqualTo(0);
+        assertThat(consumerLagIndex.lastConsumedTimestamp(GROUP, TOPIC, 0, 3)).isEqualTo(0);
+    }
+
+    @Test
+    public void testTimelineCapacity() {
+        ConsumerLagIndex.QueueTimeline timeline = new ConsumerLagIndex.QueueTimeline(20);
+        // one sample a second, offsets 0..39, only the last 20 are kept
+        for (int i = 0; i < 40; i++) {
+            timeline.append(i, 10000 + i * 1000);
+        }
+        assertThat(timeline.resolve(39)).isEqualTo(49000);
+        assertThat(timeline.resolve(20)).isEqualTo(30000);
+        assertThat(timeline.resolve(19)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testEvictIdleTimelines() throws Exception {
+        brokerConfig.setConsumerLagTimelineCapacity(1);
+        consumerLagIndex = new ConsumerLagIndex(brokerController);
+        when(brokerController.getMessageStore()).thenReturn(messageStore);
+        consumerLagIndex.dispatch(dispatchRequest(0, 10000, MessageSysFlag.TRANSACTION_NOT_TYPE));
+
+        consumerLagIndex.evictIdleTimelines(1000);
+        assertThat(consumerLagIndex.newestStoreTimestamp(TOPIC, 0, 1)).isEqualTo(10000);
+
+        // read but not written, it is kept
+        Thread.sleep(600);
+        assertThat(consumerLagIndex.newestStoreTimestamp(TOPIC, 0, 1)).isEqualTo(10000);
+        Thread.sleep(600);
+        consumerLagIndex.evictIdleTimelines(1000);
+        assertThat(consumerLagIndex.newestStoreTimestamp(TOPIC, 0, 1)).isEqualTo(10000);
+
+        Thread.sleep(1100);
+        consumerLagIndex.evictIdleTimelines(1000);
+        assertThat(consumerLagIndex.newestStoreTimestamp(TOPIC, 0, 1)).isEqualTo(0);
+        verify(messageStore).getMessageStoreTimeStamp(TOPIC, 0, 0);
+    }
+
+    @Test
+    public void testRemove() {
+        consumerLagIndex.dispatch(dispatchRequest(0, 10000, MessageSysFlag.TRANSACTION_NOT_TYPE));
+        consumerLagIndex.onCommit(GROUP, TOPIC, 0, 1);
+        assertThat(consumerLagIndex.lastConsumedTimestamp(GROUP, TOPIC, 0, 1)).isEqualTo(10000);
+
+        when(brokerController.getMessageStore()).thenReturn(messageStore);
+        consumerLagIndex.removeTopic(TOPIC);
+        assertThat(consumerLagIndex.lastConsumedTimestamp(GROUP, TOPIC, 0, 1)).isEqualTo(0);
+    }
+
+    private static DispatchRequest dispatchRequest(long consumeQueueOffset, long storeTimestamp, int sysFlag) {
+        return new DispatchRequest(TOPIC, 0, consumeQueueOffset * 100, 100, 0, storeTimestamp, consumeQueueOffset,
+            null, null, sysFlag, 0, null);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.offset;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ConsumerOffsetStoreTest {
+    private String rootDir;
+    private String snapshotPath;
+    private String journalPath;
+    private BrokerConfig brokerConfig;
+
+    @Before
+    public void init() {
+        rootDir = System.getProperty("java.io.tmpdir") + File.separator + "offset-store-" + UUID.randomUUID();
+        snapshotPath = rootDir + File.separator + "consumerOffset.dat";
+        journalPath = rootDir + File.separator + "consumerOffset.journal";
+        brokerConfig = new BrokerConfig();
+    }
+
+    @After
+    public void destroy() {
+        UtilAll.deleteFile(new File(rootDir));
+    }
+
+    @Test
+    public void testSnapshotAndJournal() throws Exception {
+        ConsumerOffsetStore store = new ConsumerOffsetStore(brokerConfig, snapshotPath, journalPath);
+        assertThat(store.load()).isNull();
+
+        ConsumerOffsetTable table = new ConsumerOffsetTable();
+        table.commit("TopicA", "GroupA", 0, 100L);
+        table.commit("TopicA", "GroupA", 1, 200L);
+        table.commit("TopicB", "GroupB", 0, 300L);
+        store.persist(table);
+        long snapshotSize = new File(snapshotPath).length();
+        long journalSize = new File(journalPath).length();
+
+        table.commit("TopicA", "GroupA", 1, 250L);
+        table.commit("TopicC", "GroupC", 3, 400L);
+        table.remove("TopicB", "GroupB");
+        store.markRemoved("TopicB@GroupB");
+        store.persist(table);
+        // only the journal grows
+        assertThat(new File(snapshotPath).length()).isEqualTo(snapshotSize);
+        assertThat(new File(journalPath).length()).isGreaterThan(journalSize);
+        store.shutdown();
+
+        ConsumerOffsetStore reloaded = new ConsumerOffsetStore(brokerConfig, snapshotPath, journalPath);
+        assertThat(reloaded.load().toOffsetMap()).isEqualTo(table.toOffsetMap());
+
+        table.commit("TopicA", "GroupA", 0, 150L);
+        reloaded.requestSnapshot();
+        reloaded.persist(table);
+        reloaded.shutdown();
+        assertThat(new ConsumerOffsetStore(brokerConfig, snapshotPath, journalPath).load().toOffsetMap()).isEqualTo(table.toOffsetMap());
+    }
+
+    @Test
+    public void testTornJournalTail() throws Exception {
+        ConsumerOffsetStore store = new ConsumerOffsetStore(brokerConfig, snapshotPath, journalPath);
+        ConsumerOffsetTable table = new ConsumerOffsetTable();
+        table.commit("TopicA", "GroupA", 0, 100L);
+        store.persist(table);
+        table.commit("TopicA", "GroupA", 0, 200L);
+        store.persist(table);
+        long validSize = new File(journalPath).length();
+        table.commit("TopicA", "GroupA", 0, 300L);
+        store.persist(table);
+        store.shutdown();
+
+        try (RandomAccessFile file = new RandomAccessFile(journalPath, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        ConsumerOffsetTable loaded = new ConsumerOffsetStore(brokerConfig, snapshotPath, journalPath).load();
+        assertThat(loaded.query("TopicA", "GroupA", 0)).isEqualTo(200L);
+        assertThat(new File(journalPath).length()).isEqualTo(validSize);
+    }
+
+    @Test
+    public void testStaleJournalIgnored() throws Exception {
+        ConsumerOffsetStore store = new ConsumerOffsetStore(brokerConfig, snapshotPath, journalPath);
+        ConsumerOffsetTable table = new ConsumerOffsetTable();
+        table.commit("TopicA", "GroupA", 0, 100L);
+        store.persist(table);
+        table.commit("TopicA", "GroupA", 0, 50L);
+        store.persist(table);
+        store.shutdown();
+
+        // a crash after the new snapshot is in place but before its journal is reset
+        File staleJournal = new File(rootDir, "stale.journal");
+        assertThat(new File(journalPath).renameTo(staleJournal)).isTrue();
+        ConsumerOffsetStore snapshotter = new ConsumerOffsetStore(brokerConfig, snapshotPath, journalPath);
+        snapshotter.load();
+        table.commit("TopicA", "GroupA", 0, 500L);
+        snapshotter.requestSnapshot();
+        snapshotter.persist(table);
+        snapshotter.shutdown();
+        assertThat(staleJournal.renameTo(new File(journalPath))).isTrue();
+
+        ConsumerOffsetTable loaded = new ConsumerOffsetStore(brokerConfig, snapshotPath, journalPath).load();
+        assertThat(loaded.query("TopicA", "GroupA", 0)).isEqualTo(500L);
+    }
+
+    @Test
+    public void testCorruptSnapshot() throws Exception {
+        ConsumerOffsetStore store = new ConsumerOffsetStore(brokerConfig, snapshotPath, journalPath);
+        ConsumerOffsetTable table = new ConsumerOffsetTable();
+        table.commit("TopicA", "GroupA", 0, 100L);
+        store.persist(table);
+        table.commit("TopicA", "GroupA", 0, 200L);
+        store.requestSnapshot();
+        store.persist(table);
+        store.shutdown();
+        assertThat(new File(snapshotPath + ".bak").exists()).isTrue();
+
+        corrupt(snapshotPath);
+        ConsumerOffsetStore reloaded = new ConsumerOffsetStore(brokerConfig, snapshotPath, journalPath);
+        assertThat(reloaded.load().query("TopicA", "GroupA", 0)).isEqualTo(100L);
+        reloaded.shutdown();
+
+        corrupt(snapshotPath + ".bak");
+        try {
+            new ConsumerOffsetStore(brokerConfig, snapshotPath, journalPath).load();
+            fail("load must fail when the snapshot and its backup are corrupt");
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void corrupt(String path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.seek(file.length() / 2);
+            int b = file.read();
+            file.seek(file.length() / 2);
+            file.write(b ^ 0xFF);
+        }
+    }
+}
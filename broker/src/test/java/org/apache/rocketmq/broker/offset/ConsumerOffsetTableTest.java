@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.offset;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.rocketmq.broker.offset.ConsumerOffsetTable.QueueOffsets;
+import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsumerOffsetTableTest {
+
+    @Test
+    public void testCommitAndQuery() {
+        ConsumerOffsetTable table = new ConsumerOffsetTable();
+        assertThat(table.query("TopicA", "GroupA", 0)).isEqualTo(ConsumerOffsetTable.NO_OFFSET);
+
+        assertThat(table.commit("TopicA", "GroupA", 0, 100L)).isEqualTo(ConsumerOffsetTable.NO_OFFSET);
+        assertThat(table.commit("TopicA", "GroupA", 0, 120L)).isEqualTo(100L);
+        table.commit("TopicA", "GroupA", 37, 300L);
+
+        assertThat(table.query("TopicA", "GroupA", 0)).isEqualTo(120L);
+        assertThat(table.query("TopicA", "GroupA", 37)).isEqualTo(300L);
+        assertThat(table.query("TopicA", "GroupA", 1)).isEqualTo(ConsumerOffsetTable.NO_OFFSET);
+        assertThat(table.get("TopicA", "GroupA").count()).isEqualTo(2);
+        assertThat(table.get("TopicA", "GroupA").capacity()).isGreaterThan(37);
+    }
+
+    @Test
+    public void testTakeDirty() {
+        QueueOffsets queueOffsets = new QueueOffsets();
+        assertThat(queueOffsets.isDirty()).isFalse();
+
+        queueOffsets.set(20, 1L);
+        queueOffsets.set(3, 1L);
+        queueOffsets.set(3, 2L);
+        assertThat(queueOffsets.isDirty()).isTrue();
+        assertThat(queueOffsets.takeDirty()).containsExactly(3, 20);
+        assertThat(queueOffsets.isDirty()).isFalse();
+        assertThat(queueOffsets.takeDirty()).isEmpty();
+
+        queueOffsets.set(20, 5L);
+        assertThat(queueOffsets.takeDirty()).containsExactly(20);
+    }
+
+    @Test
+    public void testOffsetMapRoundTrip() {
+        ConcurrentMap<String, ConcurrentMap<Integer, Long>> offsetMap = new ConcurrentHashMap<String, ConcurrentMap<Integer, Long>>();
+        ConcurrentMap<Integer, Long> queueOffsets = new ConcurrentHashMap<Integer, Long>();
+        queueOffsets.put(0, 10L);
+        queueOffsets.put(5, 50L);
+        offsetMap.put("TopicA@GroupA", queueOffsets);
+        offsetMap.put("illegal", new ConcurrentHashMap<Integer, Long>());
+
+        ConsumerOffsetTable table = new ConsumerOffsetTable();
+        table.putAll(offsetMap);
+        offsetMap.remove("illegal");
+
+        assertThat(table.size()).isEqualTo(1);
+        assertThat(table.toOffsetMap()).isEqualTo(offsetMap);
+    }
+
+    @Test
+    public void testEncodeLikeOffsetMap() {
+        ConcurrentMap<String, ConcurrentMap<Integer, Long>> offsetMap = new ConcurrentHashMap<String, ConcurrentMap<Integer, Long>>();
+        ConcurrentMap<Integer, Long> queueOffsets = new ConcurrentHashMap<Integer, Long>();
+        queueOffsets.put(0, 10L);
+        queueOffsets.put(17, 170L);
+        offsetMap.put("TopicA@GroupA", queueOffsets);
+        offsetMap.put("TopicB@Group\"B", new ConcurrentHashMap<Integer, Long>());
+
+        ConsumerOffsetManager manager = new ConsumerOffsetManager();
+        manager.putAllOffsets(offsetMap);
+        for (boolean prettyFormat : new boolean[] {false, true}) {
+            String json = manager.encode(prettyFormat);
+            assertThat(RemotingSerializable.fromJson(json, ConsumerOffsetManager.class).getOffsetTable()).isEqualTo(offsetMap);
+
+            ConsumerOffsetManager decoded = new ConsumerOffsetManager();
+            decoded.decode(json);
+            assertThat(decoded.getOffsetTable()).isEqualTo(offsetMap);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.pagecache;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.store.GetMessageResult;
+import org.apache.rocketmq.store.MappedFile;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class CompositeMessageTransferTest {
+
+    @Test
+    public void testToByteBuf() {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        header.putInt(8);
+        header.flip();
+
+        GetMessageResult getMessageResult = new GetMessageResult();
+        for (int i = 0; i < 2; i++) {
+            ByteBuffer msg = ByteBuffer.allocateDirect(4);
+            msg.putInt(i);
+            msg.flip();
+            getMessageResult.addMessage(new SelectMappedBufferResult(0, msg, 4, mock(MappedFile.class)));
+        }
+
+        ByteBuf byteBuf = CompositeMessageTransfer.toByteBuf(UnpooledByteBufAllocator.DEFAULT, header, getMessageResult);
+        assertThat(byteBuf.readableBytes()).isEqualTo(12);
+        assertThat(byteBuf.readInt()).isEqualTo(8);
+        assertThat(byteBuf.readInt()).isEqualTo(0);
+        assertThat(byteBuf.readInt()).isEqualTo(1);
+        // the mapped slices are not copied
+        assertThat(getMessageResult.getMessageBufferList().get(0).remaining()).isEqualTo(4);
+        assertThat(byteBuf.release()).isTrue();
+    }
+}
@@ -20,19 +20,30 @@ import io.netty.channel.ChannelHandlerContext;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.offset.ConsumerLagIndex;
+import org.apache.rocketmq.broker.offset.ConsumerOffsetManager;
 import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.DataVersion;
+import org.apache.rocketmq.common.TopicConfig;
 import org.apache.rocketmq.common.message.MessageAccessor;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.ConsumerLag;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagList;
+import org.apache.rocketmq.common.protocol.body.ConsumerOffsetSerializeWrapper;
+import org.apache.rocketmq.common.protocol.header.GetAllConfigRequestHeader;
+import org.apache.rocketmq.common.protocol.header.GetAllConsumerOffsetRequestHeader;
 import org.apache.rocketmq.common.protocol.header.ResumeCheckHalfMessageRequestHeader;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 import org.apache.rocketmq.remoting.netty.NettyClientConfig;
 import org.apache.rocketmq.remoting.netty.NettyServerConfig;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.apache.rocketmq.store.AppendMessageResult;
 import org.apache.rocketmq.store.AppendMessageStatus;
+import org.apache.rocketmq.store.DispatchRequest;
 import org.apache.rocketmq.store.MappedFile;
 import org.apache.rocketmq.store.MessageExtBrokerInner;
 import org.apache.rocketmq.store.MessageStore;
@@ -94,6 +105,94 @@ public class AdminBrokerProcessorTest {
         assertThat(response.getCode()).isEqualTo(ResponseCode.SYSTEM_ERROR);
     }
 
+    @Test
+    public void testGetAllTopicConfig_unchanged() throws Exception {
+        DataVersion dataVersion = brokerController.getTopicConfigManager().getDataVersion();
+        GetAllConfigRequestHeader requestHeader = new GetAllConfigRequestHeader();
+        requestHeader.setDataVersionTimestamp(dataVersion.getTimestamp());
+        requestHeader.setDataVersionCounter(dataVersion.getCounter().get());
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_TOPIC_CONFIG, requestHeader);
+        request.makeCustomHeaderToNet();
+        RemotingCommand response = adminBrokerProcessor.processRequest(handlerContext, request);
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
+        assertThat(response.getBody()).isNull();
+
+        requestHeader.setDataVersionCounter(dataVersion.getCounter().get() + 1);
+        request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_TOPIC_CONFIG, requestHeader);
+        request.makeCustomHeaderToNet();
+        response = adminBrokerProcessor.processRequest(handlerContext, request);
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
+        assertThat(response.getBody()).isNotNull();
+    }
+
+    @Test
+    public void testGetAllConsumerOffset_changedSince() throws Exception {
+        ConsumerOffsetManager consumerOffsetManager = brokerController.getConsumerOffsetManager();
+        consumerOffsetManager.commitOffset("127.0.0.1", "GroupA", "TopicA", 0, 100L);
+        ConsumerOffsetSerializeWrapper offsetWrapper = getAllConsumerOffset(null);
+        assertThat(offsetWrapper.getOffsetTable()).containsOnlyKeys("TopicA@GroupA");
+
+        // offsets changed right before a synchronization are synchronized once more by the next one
+        consumerOffsetManager.commitOffset("127.0.0.1", "GroupB", "TopicA", 0, 200L);
+        offsetWrapper = getAllConsumerOffset(offsetWrapper);
+        assertThat(offsetWrapper.getOffsetTable()).containsOnlyKeys("TopicA@GroupA", "TopicA@GroupB");
+
+        consumerOffsetManager.commitOffset("127.0.0.1", "GroupC", "TopicA", 0, 300L);
+        offsetWrapper = getAllConsumerOffset(offsetWrapper);
+        assertThat(offsetWrapper.getOffsetTable()).containsOnlyKeys("TopicA@GroupB", "TopicA@GroupC");
+        assertThat(offsetWrapper.getOffsetTable().get("TopicA@GroupC").get(0)).isEqualTo(300L);
+
+        // another offset table, all offsets
+        offsetWrapper.setOffsetTableId(offsetWrapper.getOffsetTableId() + 1);
+        offsetWrapper = getAllConsumerOffset(offsetWrapper);
+        assertThat(offsetWrapper.getOffsetTable()).hasSize(3);
+    }
+
+    @Test
+    public void testGetAllConsumerLag() throws Exception {
+        brokerController.getTopicConfigManager().getTopicConfigTable().put("TopicA", new TopicConfig("TopicA", 2, 2, 6));
+        when(messageStore.getMaxOffsetInQueue("TopicA", 0)).thenReturn(10L);
+        when(messageStore.getMaxOffsetInQueue("TopicA", 1)).thenReturn(0L);
+        // bound to the spy, to read the mocked store
+        ConsumerLagIndex consumerLagIndex = new ConsumerLagIndex(brokerController);
+        when(brokerController.getConsumerLagIndex()).thenReturn(consumerLagIndex);
+        for (int i = 0; i < 10; i++) {
+            consumerLagIndex.dispatch(new DispatchRequest("TopicA", 0, i * 100, 100, 0,
+                10000 + i * 1000, i, null, null, MessageSysFlag.TRANSACTION_NOT_TYPE, 0, null));
+        }
+        brokerController.getConsumerOffsetManager().commitOffset("127.0.0.1", "GroupA", "TopicA", 0, 4L);
+        brokerController.getConsumerOffsetManager().commitOffset("127.0.0.1", "GroupB", "TopicA", 0, 10L);
+
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_CONSUMER_LAG, null);
+        RemotingCommand response = adminBrokerProcessor.processRequest(handlerContext, request);
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
+        ConsumerLagList consumerLagList = ConsumerLagList.decode(response.getBody(), ConsumerLagList.class);
+        assertThat(consumerLagList.getTotalLag()).isEqualTo(6);
+        assertThat(consumerLagList.getConsumerLagList()).hasSize(2);
+        for (ConsumerLag consumerLag : consumerLagList.getConsumerLagList()) {
+            if ("GroupA".equals(consumerLag.getConsumerGroup())) {
+                assertThat(consumerLag.getLag()).isEqualTo(6);
+                assertThat(consumerLag.getLagMillis()).isEqualTo(6000);
+            } else {
+                assertThat(consumerLag.getLag()).isEqualTo(0);
+                assertThat(consumerLag.getLagMillis()).isEqualTo(0);
+            }
+        }
+    }
+
+    private ConsumerOffsetSerializeWrapper getAllConsumerOffset(ConsumerOffsetSerializeWrapper last) throws Exception {
+        GetAllConsumerOffsetRequestHeader requestHeader = new GetAllConsumerOffsetRequestHeader();
+        if (last != null) {
+            requestHeader.setOffsetTableId(last.getOffsetTableId());
+            requestHeader.setOffsetVersion(last.getOffsetVersion());
+        }
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_CONSUMER_OFFSET, requestHeader);
+        request.makeCustomHeaderToNet();
+        RemotingCommand response = adminBrokerProcessor.processRequest(handlerContext, request);
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
+        return ConsumerOffsetSerializeWrapper.decode(response.getBody(), ConsumerOffsetSerializeWrapper.class);
+    }
+
     private MessageExt createDefaultMessageExt() {
         MessageExt messageExt = new MessageExt();
         messageExt.setMsgId("12345678");
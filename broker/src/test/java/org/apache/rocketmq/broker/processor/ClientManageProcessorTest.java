@@ -18,7 +18,7 @@ package org.apache.rocketmq.broker.processor;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.client.ClientChannelInfo;
@@ -26,8 +26,11 @@ import org.apache.rocketmq.broker.client.ConsumerGroupInfo;
 import org.apache.rocketmq.common.BrokerConfig;
 import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.header.HeartbeatRequestHeader;
 import org.apache.rocketmq.common.protocol.header.UnregisterClientRequestHeader;
 import org.apache.rocketmq.common.protocol.heartbeat.ConsumerData;
+import org.apache.rocketmq.common.protocol.heartbeat.HeartbeatData;
+import org.apache.rocketmq.common.protocol.heartbeat.ProducerData;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 import org.apache.rocketmq.remoting.netty.NettyClientConfig;
 import org.apache.rocketmq.remoting.netty.NettyServerConfig;
@@ -81,7 +84,7 @@ public class ClientManageProcessorTest {
     @Test
     public void processRequest_UnRegisterProducer() throws Exception {
         brokerController.getProducerManager().registerProducer(group, clientChannelInfo);
-        HashMap<Channel, ClientChannelInfo> channelMap = brokerController.getProducerManager().getGroupChannelTable().get(group);
+        Map<Channel, ClientChannelInfo> channelMap = brokerController.getProducerManager().getGroupChannelTable().get(group);
         assertThat(channelMap).isNotNull();
         assertThat(channelMap.get(channel)).isEqualTo(clientChannelInfo);
 
@@ -108,6 +111,50 @@ public class ClientManageProcessorTest {
         assertThat(consumerGroupInfo).isNull();
     }
 
+    @Test
+    public void processRequest_LiteHeartbeat() throws RemotingCommandException {
+        brokerController.getConsumerManager().unregisterConsumer(group, clientChannelInfo, false);
+        HeartbeatData heartbeatData = new HeartbeatData();
+        heartbeatData.setClientID(clientId);
+        ProducerData producerData = new ProducerData();
+        producerData.setGroupName(group);
+        heartbeatData.getProducerDataSet().add(producerData);
+        int heartbeatFingerprint = heartbeatData.computeHeartbeatFingerprint();
+
+        // no heartbeat data of the fingerprint registered yet
+        RemotingCommand response = clientManageProcessor.processRequest(handlerContext,
+            createHeartbeatCommand(RequestCode.HEART_BEAT_LITE, heartbeatFingerprint, null));
+        assertThat(response.getCode()).isEqualTo(ResponseCode.HEARTBEAT_FINGERPRINT_NOT_MATCH);
+
+        response = clientManageProcessor.processRequest(handlerContext,
+            createHeartbeatCommand(RequestCode.HEART_BEAT, heartbeatFingerprint, heartbeatData));
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
+
+        long lastUpdateTimestamp = clientChannelInfo.getLastUpdateTimestamp();
+        clientChannelInfo.setLastUpdateTimestamp(lastUpdateTimestamp - 1000);
+        response = clientManageProcessor.processRequest(handlerContext,
+            createHeartbeatCommand(RequestCode.HEART_BEAT_LITE, heartbeatFingerprint, null));
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
+        assertThat(clientChannelInfo.getLastUpdateTimestamp()).isGreaterThanOrEqualTo(lastUpdateTimestamp);
+
+        response = clientManageProcessor.processRequest(handlerContext,
+            createHeartbeatCommand(RequestCode.HEART_BEAT_LITE, heartbeatFingerprint + 1, null));
+        assertThat(response.getCode()).isEqualTo(ResponseCode.HEARTBEAT_FINGERPRINT_NOT_MATCH);
+    }
+
+    private RemotingCommand createHeartbeatCommand(int code, int heartbeatFingerprint, HeartbeatData heartbeatData) {
+        HeartbeatRequestHeader requestHeader = new HeartbeatRequestHeader();
+        requestHeader.setHeartbeatFingerprint(heartbeatFingerprint);
+        RemotingCommand request = RemotingCommand.createRequestCommand(code, requestHeader);
+        request.setLanguage(LanguageCode.JAVA);
+        request.setVersion(100);
+        if (heartbeatData != null) {
+            request.setBody(heartbeatData.encode());
+        }
+        request.makeCustomHeaderToNet();
+        return request;
+    }
+
     private RemotingCommand createUnRegisterProducerCommand() {
         UnregisterClientRequestHeader requestHeader = new UnregisterClientRequestHeader();
         requestHeader.setClientID(clientId);
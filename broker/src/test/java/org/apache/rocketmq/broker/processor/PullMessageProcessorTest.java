@@ -16,9 +16,15 @@
  */
 package org.apache.rocketmq.broker.processor;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.ssl.SslHandler;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -33,6 +39,7 @@ import org.apache.rocketmq.common.TopicConfig;
 import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
 import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.PullMessageBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.PullMessageRequestHeader;
 import org.apache.rocketmq.common.protocol.heartbeat.ConsumeType;
 import org.apache.rocketmq.common.protocol.heartbeat.ConsumerData;
@@ -59,6 +66,7 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -70,6 +78,7 @@ public class PullMessageProcessorTest {
     private ChannelHandlerContext handlerContext;
     @Mock
     private MessageStore messageStore;
+    private Channel mockChannel;
     private ClientChannelInfo clientChannelInfo;
     private String group = "FooBarGroup";
     private String topic = "FooBar";
@@ -78,7 +87,7 @@ public class PullMessageProcessorTest {
     public void init() {
         brokerController.setMessageStore(messageStore);
         pullMessageProcessor = new PullMessageProcessor(brokerController);
-        Channel mockChannel = mock(Channel.class);
+        mockChannel = mock(Channel.class);
         when(mockChannel.remoteAddress()).thenReturn(new InetSocketAddress(1024));
         when(handlerContext.channel()).thenReturn(mockChannel);
         brokerController.getTopicConfigManager().getTopicConfigTable().put(topic, new TopicConfig());
@@ -128,6 +137,7 @@ public class PullMessageProcessorTest {
     public void testProcessRequest_Found() throws RemotingCommandException {
         GetMessageResult getMessageResult = createGetMessageResult();
         when(messageStore.getMessage(anyString(), anyString(), anyInt(), anyLong(), anyInt(), any(ExpressionMessageFilter.class))).thenReturn(getMessageResult);
+        when(mockChannel.pipeline()).thenReturn(mock(ChannelPipeline.class));
 
         final RemotingCommand request = createPullMsgCommand(RequestCode.PULL_MESSAGE);
         RemotingCommand response = pullMessageProcessor.processRequest(handlerContext, request);
@@ -139,6 +149,7 @@ public class PullMessageProcessorTest {
     public void testProcessRequest_FoundWithHook() throws RemotingCommandException {
         GetMessageResult getMessageResult = createGetMessageResult();
         when(messageStore.getMessage(anyString(), anyString(), anyInt(), anyLong(), anyInt(), any(ExpressionMessageFilter.class))).thenReturn(getMessageResult);
+        when(mockChannel.pipeline()).thenReturn(mock(ChannelPipeline.class));
         List<ConsumeMessageHook> consumeMessageHookList = new ArrayList<>();
         final ConsumeMessageContext[] messageContext = new ConsumeMessageContext[1];
         ConsumeMessageHook consumeMessageHook = new ConsumeMessageHook() {
@@ -168,6 +179,56 @@ public class PullMessageProcessorTest {
         assertThat(messageContext[0].getQueueId()).isEqualTo(1);
     }
 
+    @Test
+    public void testProcessRequest_FoundOverTls() throws RemotingCommandException {
+        GetMessageResult getMessageResult = createGetMessageResult();
+        when(messageStore.getMessage(anyString(), anyString(), anyInt(), anyLong(), anyInt(), any(ExpressionMessageFilter.class))).thenReturn(getMessageResult);
+        ChannelPipeline pipeline = mock(ChannelPipeline.class);
+        when(pipeline.get(SslHandler.class)).thenReturn(mock(SslHandler.class));
+        when(mockChannel.pipeline()).thenReturn(pipeline);
+        when(mockChannel.alloc()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(mockChannel.writeAndFlush(any(ByteBuf.class))).thenReturn(mock(ChannelFuture.class));
+
+        final RemotingCommand request = createPullMsgCommand(RequestCode.PULL_MESSAGE);
+        RemotingCommand response = pullMessageProcessor.processRequest(handlerContext, request);
+        assertThat(response).isNull();
+        verify(mockChannel).writeAndFlush(any(ByteBuf.class));
+    }
+
+    @Test
+    public void testProcessRequest_Batch() throws RemotingCommandException {
+        GetMessageResult getMessageResult = createGetMessageResult();
+        when(messageStore.getMessage(anyString(), anyString(), anyInt(), anyLong(), anyInt(), any(ExpressionMessageFilter.class))).thenReturn(getMessageResult);
+        when(mockChannel.pipeline()).thenReturn(mock(ChannelPipeline.class));
+
+        PullMessageBatchRequestBody requestBody = new PullMessageBatchRequestBody();
+        List<PullMessageRequestHeader> requestHeaderList = new ArrayList<>();
+        requestHeaderList.add(createPullMsgRequestHeader(1));
+        requestHeaderList.add(createPullMsgRequestHeader(2));
+        requestBody.setRequestHeaderList(requestHeaderList);
+        final RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.PULL_MESSAGE_BATCH, null);
+        request.setBody(requestBody.encode());
+
+        RemotingCommand response = pullMessageProcessor.processRequest(handlerContext, request);
+        assertThat(response).isNotNull();
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
+
+        ByteBuffer body = ByteBuffer.wrap(response.getBody());
+        List<RemotingCommand> responseList = new ArrayList<>();
+        while (body.hasRemaining()) {
+            int length = body.getInt();
+            ByteBuffer frame = body.slice();
+            frame.limit(length);
+            responseList.add(RemotingCommand.decode(frame));
+            body.position(body.position() + length);
+        }
+        assertThat(responseList).hasSize(2);
+        for (RemotingCommand frame : responseList) {
+            assertThat(frame.getCode()).isEqualTo(ResponseCode.SUCCESS);
+            assertThat(frame.getExtFields().get("nextBeginOffset")).isEqualTo("516");
+        }
+    }
+
     @Test
     public void testProcessRequest_MsgWasRemoving() throws RemotingCommandException {
         GetMessageResult getMessageResult = createGetMessageResult();
@@ -193,19 +254,23 @@ public class PullMessageProcessorTest {
     }
 
     private RemotingCommand createPullMsgCommand(int requestCode) {
+        RemotingCommand request = RemotingCommand.createRequestCommand(requestCode, createPullMsgRequestHeader(1));
+        request.makeCustomHeaderToNet();
+        return request;
+    }
+
+    private PullMessageRequestHeader createPullMsgRequestHeader(int queueId) {
         PullMessageRequestHeader requestHeader = new PullMessageRequestHeader();
         requestHeader.setCommitOffset(123L);
         requestHeader.setConsumerGroup(group);
         requestHeader.setMaxMsgNums(100);
-        requestHeader.setQueueId(1);
+        requestHeader.setQueueId(queueId);
         requestHeader.setQueueOffset(456L);
         requestHeader.setSubscription("*");
         requestHeader.setTopic(topic);
         requestHeader.setSysFlag(0);
         requestHeader.setSubVersion(100L);
-        RemotingCommand request = RemotingCommand.createRequestCommand(requestCode, requestHeader);
-        request.makeCustomHeaderToNet();
-        return request;
+        return requestHeader;
     }
 
     static ConsumerData createConsumerData(String group, String topic) {
@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.transaction.file;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.BrokerPathConfigHelper;
+import org.apache.rocketmq.broker.transaction.AbstractTransactionalMessageCheckListener;
+import org.apache.rocketmq.broker.transaction.queue.TransactionalMessageBridge;
+import org.apache.rocketmq.client.consumer.PullResult;
+import org.apache.rocketmq.client.consumer.PullStatus;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.remoting.netty.NettyClientConfig;
+import org.apache.rocketmq.remoting.netty.NettyServerConfig;
+import org.apache.rocketmq.store.AppendMessageResult;
+import org.apache.rocketmq.store.AppendMessageStatus;
+import org.apache.rocketmq.store.MessageExtBrokerInner;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.PutMessageStatus;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FileTransactionalMessageServiceTest {
+    private final String storePath = System.getProperty("user.home") + File.separator + "transaction_state_test#" + UUID.randomUUID();
+    private final AtomicLong commitLogOffset = new AtomicLong(0);
+    private final AtomicLong queueOffset = new AtomicLong(0);
+
+    private BrokerController brokerController;
+    private TransactionalMessageBridge bridge;
+    private AbstractTransactionalMessageCheckListener listener;
+    private FileTransactionalMessageService service;
+
+    @Before
+    public void init() {
+        BrokerConfig brokerConfig = new BrokerConfig();
+        brokerConfig.setTransactionStateLogEnable(true);
+        // 4 records a file
+        brokerConfig.setTransactionStateLogFileSize(TransactionStateLog.RECORD_SIZE * 4);
+        brokerConfig.setTransactionStateLogFlushIntervalMs(50);
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathRootDir(storePath);
+        brokerController = new BrokerController(brokerConfig, new NettyServerConfig(), new NettyClientConfig(),
+            messageStoreConfig);
+
+        bridge = mock(TransactionalMessageBridge.class);
+        listener = mock(AbstractTransactionalMessageCheckListener.class);
+        when(bridge.getBrokerController()).thenReturn(brokerController);
+        when(bridge.fetchMessageQueues(MixAll.RMQ_SYS_TRANS_HALF_TOPIC)).thenReturn(Collections.emptySet());
+        when(bridge.putHalfMessage(any(MessageExtBrokerInner.class))).thenAnswer(new Answer<PutMessageResult>() {
+            @Override
+            public PutMessageResult answer(InvocationOnMock invocation) {
+                MessageExtBrokerInner msgInner = invocation.getArgument(0);
+                msgInner.setQueueId(0);
+                return new PutMessageResult(PutMessageStatus.PUT_OK, new AppendMessageResult(AppendMessageStatus.PUT_OK,
+                    commitLogOffset.getAndAdd(100), 100, "", System.currentTimeMillis() - 10000,
+                    queueOffset.getAndIncrement(), 0));
+            }
+        });
+        when(bridge.lookMessageByOffset(anyLong())).thenAnswer(new Answer<MessageExt>() {
+            @Override
+            public MessageExt answer(InvocationOnMock invocation) {
+                MessageExt msgExt = new MessageExt();
+                msgExt.setCommitLogOffset((Long) invocation.getArgument(0));
+                msgExt.setBornTimestamp(System.currentTimeMillis() - 10000);
+                MessageAccessor.putProperty(msgExt, MessageConst.PROPERTY_PRODUCER_GROUP, "group");
+                return msgExt;
+            }
+        });
+        service = createService();
+    }
+
+    @After
+    public void destroy() {
+        service.close();
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    private FileTransactionalMessageService createService() {
+        FileTransactionalMessageService service = new FileTransactionalMessageService(bridge);
+        assertThat(service.open()).isTrue();
+        return service;
+    }
+
+    @Test
+    public void testPrepareAndDelete() {
+        List<MessageExt> halfMessages = new ArrayList<MessageExt>();
+        for (int i = 0; i < 3; i++) {
+            halfMessages.add(prepare(i == 2 ? "group" : "otherGroup"));
+        }
+        assertThat(service.getPendingCount()).isEqualTo(3);
+
+        assertThat(service.deletePrepareMessages(halfMessages.subList(0, 2))).isTrue();
+        assertThat(service.getPendingCount()).isEqualTo(1);
+
+        service.close();
+        service = createService();
+        assertThat(service.getPendingCount()).isEqualTo(1);
+        assertThat(service.deletePrepareMessage(halfMessages.get(2))).isTrue();
+        assertThat(service.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAsyncPrepare() throws Exception {
+        CompletableFuture<PutMessageResult> putFuture = new CompletableFuture<PutMessageResult>();
+        when(bridge.asyncPutHalfMessage(any(MessageExtBrokerInner.class))).thenReturn(putFuture);
+        MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
+        msgInner.setTopic("TransactionTopic");
+        msgInner.setBody("transaction".getBytes());
+        MessageAccessor.putProperty(msgInner, MessageConst.PROPERTY_PRODUCER_GROUP, "group");
+
+        CompletableFuture<PutMessageResult> prepareFuture = service.asyncPrepareMessage(msgInner);
+        verify(bridge, never()).putHalfMessage(any(MessageExtBrokerInner.class));
+        assertThat(prepareFuture.isDone()).isFalse();
+        assertThat(service.getPendingCount()).isEqualTo(0);
+
+        putFuture.complete(new PutMessageResult(PutMessageStatus.PUT_OK, new AppendMessageResult(AppendMessageStatus.PUT_OK,
+            0, 100, "", System.currentTimeMillis(), 0, 0)));
+        assertThat(prepareFuture.get().isOk()).isTrue();
+        assertThat(service.getPendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCatchUpFromConsumeOffset() {
+        MessageQueue mq = new MessageQueue(MixAll.RMQ_SYS_TRANS_HALF_TOPIC, "broker", 0);
+        when(bridge.fetchMessageQueues(MixAll.RMQ_SYS_TRANS_HALF_TOPIC)).thenReturn(Collections.singleton(mq));
+        // the half messages before the offset are resolved by the queue based check
+        when(bridge.fetchConsumeOffset(mq)).thenReturn(2L);
+        List<MessageExt> msgFoundList = new ArrayList<MessageExt>();
+        for (long offset = 2; offset < 4; offset++) {
+            MessageExt msgExt = new MessageExt();
+            msgExt.setQueueId(0);
+            msgExt.setQueueOffset(offset);
+            msgExt.setCommitLogOffset(offset * 100);
+            msgExt.setStoreTimestamp(System.currentTimeMillis());
+            MessageAccessor.putProperty(msgExt, MessageConst.PROPERTY_PRODUCER_GROUP, "group");
+            msgFoundList.add(msgExt);
+        }
+        when(bridge.getHalfMessage(0, 2, 32)).thenReturn(new PullResult(PullStatus.FOUND, 4, 0, 4, msgFoundList));
+
+        service.check(6000, 15, listener);
+        assertThat(service.getPendingCount()).isEqualTo(2);
+        verify(listener, never()).resolveHalfMsg(any(MessageExt.class));
+    }
+
+    @Test
+    public void testCheck() {
+        prepare("group");
+        prepare("group");
+
+        service.check(6000, 15, listener);
+        verify(listener, times(2)).resolveHalfMsg(any(MessageExt.class));
+        // not checked again before the timeout
+        service.check(6000, 15, listener);
+        verify(listener, times(2)).resolveHalfMsg(any(MessageExt.class));
+
+        verify(listener, never()).resolveDiscardMsg(any(MessageExt.class));
+    }
+
+    @Test
+    public void testCheckStopsAtMaxProcessTime() {
+        prepare("group");
+        prepare("group");
+        prepare("otherGroup");
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(100);
+                return null;
+            }
+        }).when(listener).resolveHalfMsg(any(MessageExt.class));
+
+        // the first check takes longer than the limit, none of the other records of any group is checked
+        service.check(6000, 15, listener, 50);
+        verify(listener, times(1)).resolveHalfMsg(any(MessageExt.class));
+
+        // the records skipped are checked by the next round
+        service.check(6000, 15, listener, 60000);
+        verify(listener, times(3)).resolveHalfMsg(any(MessageExt.class));
+        assertThat(service.getPendingCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testCheckDiscard() throws Exception {
+        prepare("group");
+        prepare("group");
+
+        service.check(0, 1, listener);
+        verify(listener, times(2)).resolveHalfMsg(any(MessageExt.class));
+        Thread.sleep(10);
+        service.check(0, 1, listener);
+        verify(listener, times(2)).resolveDiscardMsg(any(MessageExt.class));
+        assertThat(service.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCleanExpiredFile() throws Exception {
+        MessageExt pending = prepare("group");
+        for (int i = 0; i < 10; i++) {
+            assertThat(service.deletePrepareMessage(prepare("group"))).isTrue();
+        }
+        File logDir = new File(BrokerPathConfigHelper.getTransactionStateLogPath(storePath));
+        long begin = System.currentTimeMillis();
+        while (logDir.list().length > 2 && System.currentTimeMillis() - begin < 5000) {
+            Thread.sleep(50);
+        }
+        assertThat(logDir.list().length).isLessThanOrEqualTo(2);
+
+        service.close();
+        service = createService();
+        assertThat(service.getPendingCount()).isEqualTo(1);
+        service.check(0, 15, listener);
+        verify(listener, never()).resolveDiscardMsg(any(MessageExt.class));
+        verify(listener).resolveHalfMsg(any(MessageExt.class));
+        assertThat(service.deletePrepareMessage(pending)).isTrue();
+        assertThat(service.getPendingCount()).isEqualTo(0);
+    }
+
+    private MessageExt prepare(String producerGroup) {
+        MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
+        msgInner.setTopic("TransactionTopic");
+        msgInner.setBody("transaction".getBytes());
+        MessageAccessor.putProperty(msgInner, MessageConst.PROPERTY_PRODUCER_GROUP, producerGroup);
+        PutMessageResult result = service.prepareMessage(msgInner);
+        assertThat(result.isOk()).isTrue();
+
+        MessageExt halfMessage = new MessageExt();
+        halfMessage.setCommitLogOffset(result.getAppendMessageResult().getWroteOffset());
+        halfMessage.setQueueOffset(result.getAppendMessageResult().getLogicsOffset());
+        MessageAccessor.putProperty(halfMessage, MessageConst.PROPERTY_PRODUCER_GROUP, producerGroup);
+        return halfMessage;
+    }
+}
@@ -24,6 +24,7 @@ import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.message.MessageAccessor;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageExtBatch;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.remoting.netty.NettyClientConfig;
 import org.apache.rocketmq.remoting.netty.NettyServerConfig;
@@ -45,6 +46,8 @@ import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -53,6 +56,8 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -79,6 +84,22 @@ public class TransactionalMessageBridgeTest {
         assertThat(isSuccess).isTrue();
     }
 
+    @Test
+    public void testPutOpMessages() {
+        when(messageStore.putMessages(any(MessageExtBatch.class))).thenReturn(new PutMessageResult
+            (PutMessageStatus.PUT_OK, new AppendMessageResult(AppendMessageStatus.PUT_OK)));
+        List<MessageExt> halfMessages = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            MessageExt halfMessage = createMessageBrokerInner();
+            halfMessage.setQueueId(i % 2);
+            halfMessage.setQueueOffset(i);
+            halfMessages.add(halfMessage);
+        }
+        assertThat(transactionBridge.putOpMessages(halfMessages)).isTrue();
+        // one batch for each op queue
+        verify(messageStore, times(2)).putMessages(any(MessageExtBatch.class));
+    }
+
     @Test
     public void testPutHalfMessage() {
         when(messageStore.putMessage(any(MessageExtBrokerInner.class))).thenReturn(new PutMessageResult
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.transaction.queue;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransactionalOpIndexTest {
+
+    @Test
+    public void testAdvance() {
+        TransactionalOpIndex opIndex = new TransactionalOpIndex(10, 100);
+        opIndex.addOp(100, 11);
+        opIndex.addOp(101, 10);
+        opIndex.addOp(102, 13);
+        opIndex.setOpReadOffset(103);
+        opIndex.setScanOffset(14);
+        opIndex.getPendingChecks().put(12L, new TransactionalOpIndex.PendingCheck(1, 0));
+
+        opIndex.advance();
+        assertThat(opIndex.getBase()).isEqualTo(12);
+        assertThat(opIndex.isResolved(11)).isTrue();
+        assertThat(opIndex.isResolved(12)).isFalse();
+        assertThat(opIndex.isResolved(13)).isTrue();
+        assertThat(opIndex.getInFlight()).isEqualTo(2);
+        // op 102 is still needed to rebuild the index from base 12
+        assertThat(opIndex.getCommittedOpOffset()).isEqualTo(102);
+
+        opIndex.resolveLocally(12);
+        assertThat(opIndex.getPendingChecks()).isEmpty();
+        opIndex.advance();
+        assertThat(opIndex.getBase()).isEqualTo(14);
+        assertThat(opIndex.getCommittedOpOffset()).isEqualTo(103);
+    }
+
+    @Test
+    public void testAdvanceOverManyOffsets() {
+        TransactionalOpIndex opIndex = new TransactionalOpIndex(0, 0);
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            if (i != 3000) {
+                opIndex.addOp(i, i);
+            }
+        }
+        opIndex.setOpReadOffset(count);
+        opIndex.setScanOffset(count);
+        opIndex.advance();
+        assertThat(opIndex.getBase()).isEqualTo(3000);
+        assertThat(opIndex.isResolved(2999)).isTrue();
+        assertThat(opIndex.isResolved(3000)).isFalse();
+        assertThat(opIndex.isResolved(3001)).isTrue();
+        assertThat(opIndex.getCommittedOpOffset()).isEqualTo(3001);
+
+        opIndex.resolveLocally(3000);
+        opIndex.advance();
+        assertThat(opIndex.getBase()).isEqualTo(count);
+        assertThat(opIndex.getCommittedOpOffset()).isEqualTo(count);
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.rocketmq.broker.util;
 
+import java.util.List;
 import org.apache.rocketmq.broker.transaction.AbstractTransactionalMessageCheckListener;
 import org.apache.rocketmq.broker.transaction.OperationResult;
 import org.apache.rocketmq.broker.transaction.TransactionalMessageService;
@@ -40,6 +41,11 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
         return false;
     }
 
+    @Override
+    public boolean deletePrepareMessages(List<MessageExt> messageExtList) {
+        return false;
+    }
+
     @Override
     public OperationResult commitMessage(EndTransactionRequestHeader requestHeader) {
         return null;
@@ -59,6 +59,11 @@ public class ClientConfig {
 
     private LanguageCode language = LanguageCode.JAVA;
 
+    /**
+     * Send brokers only the fingerprint of the heartbeat data while it is unchanged
+     */
+    private boolean liteHeartbeatEnable = false;
+
     public String buildMQClientId() {
         StringBuilder sb = new StringBuilder();
         sb.append(this.getClientIP());
@@ -141,6 +146,7 @@ public class ClientConfig {
         this.useTLS = cc.useTLS;
         this.namespace = cc.namespace;
         this.language = cc.language;
+        this.liteHeartbeatEnable = cc.liteHeartbeatEnable;
     }
 
     public ClientConfig cloneClientConfig() {
@@ -158,6 +164,7 @@ public class ClientConfig {
         cc.useTLS = useTLS;
         cc.namespace = namespace;
         cc.language = language;
+        cc.liteHeartbeatEnable = liteHeartbeatEnable;
         return cc;
     }
 
@@ -248,6 +255,14 @@ public class ClientConfig {
         this.language = language;
     }
 
+    public boolean isLiteHeartbeatEnable() {
+        return liteHeartbeatEnable;
+    }
+
+    public void setLiteHeartbeatEnable(boolean liteHeartbeatEnable) {
+        this.liteHeartbeatEnable = liteHeartbeatEnable;
+    }
+
     public String getNamespace() {
         if (StringUtils.isNotEmpty(namespace)) {
             return namespace;
@@ -279,6 +294,7 @@ public class ClientConfig {
             + ", clientCallbackExecutorThreads=" + clientCallbackExecutorThreads + ", pollNameServerInterval=" + pollNameServerInterval
             + ", heartbeatBrokerInterval=" + heartbeatBrokerInterval + ", persistConsumerOffsetInterval="
             + persistConsumerOffsetInterval + ", unitMode=" + unitMode + ", unitName=" + unitName + ", vipChannelEnabled="
-            + vipChannelEnabled + ", useTLS=" + useTLS + ", language=" + language.name() + ", namespace=" + namespace + "]";
+            + vipChannelEnabled + ", useTLS=" + useTLS + ", language=" + language.name() + ", namespace=" + namespace
+            + ", liteHeartbeatEnable=" + liteHeartbeatEnable + "]";
     }
 }
@@ -225,6 +225,21 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
      */
     private int pullBatchSize = 32;
 
+    /**
+     * Whether to pull the queues on the same broker in one request
+     */
+    private boolean pullMultiQueueEnable = false;
+
+    /**
+     * Max number of queues pulled in one request
+     */
+    private int pullMultiQueueMaxNums = 32;
+
+    /**
+     * Max time in milliseconds a pull waits for other queues of the same broker
+     */
+    private long pullMultiQueueIntervalMillis = 1;
+
     /**
      * Whether update subscription relationship when every pull
      */
@@ -577,6 +592,30 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
         this.pullBatchSize = pullBatchSize;
     }
 
+    public boolean isPullMultiQueueEnable() {
+        return pullMultiQueueEnable;
+    }
+
+    public void setPullMultiQueueEnable(boolean pullMultiQueueEnable) {
+        this.pullMultiQueueEnable = pullMultiQueueEnable;
+    }
+
+    public int getPullMultiQueueMaxNums() {
+        return pullMultiQueueMaxNums;
+    }
+
+    public void setPullMultiQueueMaxNums(int pullMultiQueueMaxNums) {
+        this.pullMultiQueueMaxNums = pullMultiQueueMaxNums;
+    }
+
+    public long getPullMultiQueueIntervalMillis() {
+        return pullMultiQueueIntervalMillis;
+    }
+
+    public void setPullMultiQueueIntervalMillis(long pullMultiQueueIntervalMillis) {
+        this.pullMultiQueueIntervalMillis = pullMultiQueueIntervalMillis;
+    }
+
     public long getPullInterval() {
         return pullInterval;
     }
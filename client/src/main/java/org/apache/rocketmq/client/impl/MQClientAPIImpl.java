@@ -18,6 +18,7 @@ package org.apache.rocketmq.client.impl;
 
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -70,13 +71,17 @@ import org.apache.rocketmq.common.protocol.body.ClusterInfo;
 import org.apache.rocketmq.common.protocol.body.ConsumeMessageDirectlyResult;
 import org.apache.rocketmq.common.protocol.body.ConsumeStatsList;
 import org.apache.rocketmq.common.protocol.body.ConsumerConnection;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagHistory;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagList;
 import org.apache.rocketmq.common.protocol.body.ConsumerRunningInfo;
+import org.apache.rocketmq.common.protocol.body.EndTransactionBatchRequestBody;
 import org.apache.rocketmq.common.protocol.body.GetConsumerStatusBody;
 import org.apache.rocketmq.common.protocol.body.GroupList;
 import org.apache.rocketmq.common.protocol.body.KVTable;
 import org.apache.rocketmq.common.protocol.body.LockBatchRequestBody;
 import org.apache.rocketmq.common.protocol.body.LockBatchResponseBody;
 import org.apache.rocketmq.common.protocol.body.ProducerConnection;
+import org.apache.rocketmq.common.protocol.body.PullMessageBatchRequestBody;
 import org.apache.rocketmq.common.protocol.body.QueryConsumeQueueResponseBody;
 import org.apache.rocketmq.common.protocol.body.QueryConsumeTimeSpanBody;
 import org.apache.rocketmq.common.protocol.body.QueryCorrectionOffsetBody;
@@ -99,6 +104,7 @@ import org.apache.rocketmq.common.protocol.header.GetBrokerAclConfigResponseHead
 import org.apache.rocketmq.common.protocol.header.GetConsumeStatsInBrokerHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumeStatsRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumerConnectionListRequestHeader;
+import org.apache.rocketmq.common.protocol.header.GetConsumerLagHistoryRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumerListByGroupRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumerListByGroupResponseBody;
 import org.apache.rocketmq.common.protocol.header.GetConsumerRunningInfoRequestHeader;
@@ -112,6 +118,7 @@ import org.apache.rocketmq.common.protocol.header.GetMinOffsetResponseHeader;
 import org.apache.rocketmq.common.protocol.header.GetProducerConnectionListRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetTopicStatsInfoRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetTopicsByClusterRequestHeader;
+import org.apache.rocketmq.common.protocol.header.HeartbeatRequestHeader;
 import org.apache.rocketmq.common.protocol.header.PullMessageRequestHeader;
 import org.apache.rocketmq.common.protocol.header.PullMessageResponseHeader;
 import org.apache.rocketmq.common.protocol.header.QueryConsumeQueueRequestHeader;
@@ -729,6 +736,105 @@ public class MQClientAPIImpl {
         });
     }
 
+    /**
+     * Pull many queues of a broker in one request, each callback gets the result of the request header at the same
+     * index. Falls back to pulling the queues one by one if the broker does not support it.
+     */
+    public void pullMessageBatchAsync(
+        final String addr,
+        final List<PullMessageRequestHeader> requestHeaderList,
+        final long timeoutMillis,
+        final List<PullCallback> pullCallbackList
+    ) throws RemotingException, InterruptedException {
+        PullMessageBatchRequestBody requestBody = new PullMessageBatchRequestBody();
+        requestBody.setRequestHeaderList(requestHeaderList);
+        final RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.PULL_MESSAGE_BATCH, null);
+        request.setBody(requestBody.encode());
+
+        this.remotingClient.invokeAsync(addr, request, timeoutMillis, new InvokeCallback() {
+            @Override
+            public void operationComplete(ResponseFuture responseFuture) {
+                RemotingCommand response = responseFuture.getResponseCommand();
+                if (response == null) {
+                    MQClientException exception;
+                    if (!responseFuture.isSendRequestOK()) {
+                        exception = new MQClientException("send request failed to " + addr + ". Request: " + request, responseFuture.getCause());
+                    } else if (responseFuture.isTimeout()) {
+                        exception = new MQClientException("wait response from " + addr + " timeout :" + responseFuture.getTimeoutMillis() + "ms" + ". Request: " + request,
+                            responseFuture.getCause());
+                    } else {
+                        exception = new MQClientException("unknown reason. addr: " + addr + ", timeoutMillis: " + timeoutMillis + ". Request: " + request, responseFuture.getCause());
+                    }
+                    for (PullCallback pullCallback : pullCallbackList) {
+                        pullCallback.onException(exception);
+                    }
+                    return;
+                }
+
+                if (response.getCode() == ResponseCode.REQUEST_CODE_NOT_SUPPORTED) {
+                    for (int i = 0; i < requestHeaderList.size(); i++) {
+                        try {
+                            MQClientAPIImpl.this.pullMessage(addr, requestHeaderList.get(i), timeoutMillis,
+                                CommunicationMode.ASYNC, pullCallbackList.get(i));
+                        } catch (Exception e) {
+                            pullCallbackList.get(i).onException(e);
+                        }
+                    }
+                    return;
+                }
+
+                List<RemotingCommand> responseList = null;
+                Exception exception = null;
+                if (response.getCode() != ResponseCode.SUCCESS) {
+                    exception = new MQBrokerException(response.getCode(), response.getRemark());
+                } else {
+                    try {
+                        responseList = decodePullMessageBatchResponse(response.getBody());
+                        if (responseList.size() != requestHeaderList.size()) {
+                            exception = new MQClientException("pull message batch response size " + responseList.size()
+                                + " does not match request size " + requestHeaderList.size(), null);
+                        }
+                    } catch (Exception e) {
+                        exception = e;
+                    }
+                }
+                if (exception != null) {
+                    for (PullCallback pullCallback : pullCallbackList) {
+                        pullCallback.onException(exception);
+                    }
+                    return;
+                }
+
+                for (int i = 0; i < responseList.size(); i++) {
+                    PullCallback pullCallback = pullCallbackList.get(i);
+                    try {
+                        PullResult pullResult = MQClientAPIImpl.this.processPullResponse(responseList.get(i));
+                        assert pullResult != null;
+                        pullCallback.onSuccess(pullResult);
+                    } catch (Exception e) {
+                        pullCallback.onException(e);
+                    }
+                }
+            }
+        });
+    }
+
+    private static List<RemotingCommand> decodePullMessageBatchResponse(final byte[] body) {
+        List<RemotingCommand> responseList = new ArrayList<RemotingCommand>();
+        if (body == null) {
+            return responseList;
+        }
+        ByteBuffer byteBuffer = ByteBuffer.wrap(body);
+        while (byteBuffer.hasRemaining()) {
+            int length = byteBuffer.getInt();
+            ByteBuffer frame = byteBuffer.slice();
+            frame.limit(length);
+            responseList.add(RemotingCommand.decode(frame));
+            byteBuffer.position(byteBuffer.position() + length);
+        }
+        return responseList;
+    }
+
     private PullResult pullMessageSync(
         final String addr,
         final RemotingCommand request,
@@ -979,7 +1085,18 @@ public class MQClientAPIImpl {
         final HeartbeatData heartbeatData,
         final long timeoutMillis
     ) throws RemotingException, MQBrokerException, InterruptedException {
-        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.HEART_BEAT, null);
+        return this.sendHearbeat(addr, heartbeatData, null, timeoutMillis);
+    }
+
+    public int sendHearbeat(
+        final String addr,
+        final HeartbeatData heartbeatData,
+        final Integer heartbeatFingerprint,
+        final long timeoutMillis
+    ) throws RemotingException, MQBrokerException, InterruptedException {
+        HeartbeatRequestHeader requestHeader = new HeartbeatRequestHeader();
+        requestHeader.setHeartbeatFingerprint(heartbeatFingerprint);
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.HEART_BEAT, requestHeader);
         request.setLanguage(clientConfig.getLanguage());
         request.setBody(heartbeatData.encode());
         RemotingCommand response = this.remotingClient.invokeSync(addr, request, timeoutMillis);
@@ -995,6 +1112,32 @@ public class MQClientAPIImpl {
         throw new MQBrokerException(response.getCode(), response.getRemark());
     }
 
+    /**
+     * Send only the fingerprint of the heartbeat data last sent by {@link #sendHearbeat(String, HeartbeatData, Integer,
+     * long)}, the broker answers {@link ResponseCode#HEARTBEAT_FINGERPRINT_NOT_MATCH} if it holds other heartbeat data.
+     */
+    public int sendLiteHeartbeat(
+        final String addr,
+        final int heartbeatFingerprint,
+        final long timeoutMillis
+    ) throws RemotingException, MQBrokerException, InterruptedException {
+        HeartbeatRequestHeader requestHeader = new HeartbeatRequestHeader();
+        requestHeader.setHeartbeatFingerprint(heartbeatFingerprint);
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.HEART_BEAT_LITE, requestHeader);
+        request.setLanguage(clientConfig.getLanguage());
+        RemotingCommand response = this.remotingClient.invokeSync(addr, request, timeoutMillis);
+        assert response != null;
+        switch (response.getCode()) {
+            case ResponseCode.SUCCESS: {
+                return response.getVersion();
+            }
+            default:
+                break;
+        }
+
+        throw new MQBrokerException(response.getCode(), response.getRemark());
+    }
+
     public void unregisterClient(
         final String addr,
         final String clientID,
@@ -1033,6 +1176,17 @@ public class MQClientAPIImpl {
         this.remotingClient.invokeOneway(addr, request, timeoutMillis);
     }
 
+    public void endTransactionBatchOneway(
+        final String addr,
+        final EndTransactionBatchRequestBody requestBody,
+        final long timeoutMillis
+    ) throws RemotingException, InterruptedException {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.END_TRANSACTION_BATCH, null);
+
+        request.setBody(requestBody.encode());
+        this.remotingClient.invokeOneway(addr, request, timeoutMillis);
+    }
+
     public void queryMessage(
         final String addr,
         final QueryMessageRequestHeader requestHeader,
@@ -1188,6 +1342,28 @@ public class MQClientAPIImpl {
         throw new MQBrokerException(response.getCode(), response.getRemark());
     }
 
+    public ConsumerLagHistory getConsumerLagHistory(final String addr, final String consumerGroup,
+        final long timeoutMillis)
+        throws InterruptedException, RemotingTimeoutException, RemotingSendRequestException, RemotingConnectException,
+        MQBrokerException {
+        GetConsumerLagHistoryRequestHeader requestHeader = new GetConsumerLagHistoryRequestHeader();
+        requestHeader.setConsumerGroup(consumerGroup);
+
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_CONSUMER_LAG_HISTORY, requestHeader);
+
+        RemotingCommand response = this.remotingClient.invokeSync(MixAll.brokerVIPChannel(this.clientConfig.isVipChannelEnabled(), addr),
+            request, timeoutMillis);
+        switch (response.getCode()) {
+            case ResponseCode.SUCCESS: {
+                return ConsumerLagHistory.decode(response.getBody(), ConsumerLagHistory.class);
+            }
+            default:
+                break;
+        }
+
+        throw new MQBrokerException(response.getCode(), response.getRemark());
+    }
+
     public ProducerConnection getProducerConnectionList(final String addr, final String producerGroup,
         final long timeoutMillis)
         throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException, InterruptedException,
@@ -2062,6 +2238,28 @@ public class MQClientAPIImpl {
         throw new MQClientException(response.getCode(), response.getRemark());
     }
 
+    public ConsumerLagList getAllConsumerLag(final String brokerAddr, final long timeoutMillis)
+        throws MQClientException, RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException,
+        InterruptedException {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_CONSUMER_LAG, null);
+
+        RemotingCommand response = this.remotingClient
+            .invokeSync(MixAll.brokerVIPChannel(this.clientConfig.isVipChannelEnabled(), brokerAddr), request, timeoutMillis);
+        assert response != null;
+        switch (response.getCode()) {
+            case ResponseCode.SUCCESS: {
+                byte[] body = response.getBody();
+                if (body != null) {
+                    return ConsumerLagList.decode(body, ConsumerLagList.class);
+                }
+            }
+            default:
+                break;
+        }
+
+        throw new MQClientException(response.getCode(), response.getRemark());
+    }
+
     public SubscriptionGroupWrapper getAllSubscriptionGroup(final String brokerAddr,
         long timeoutMillis) throws InterruptedException,
         RemotingTimeoutException, RemotingSendRequestException, RemotingConnectException, MQBrokerException {
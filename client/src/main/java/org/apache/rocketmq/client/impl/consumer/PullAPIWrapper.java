@@ -60,6 +60,7 @@ public class PullAPIWrapper {
     private volatile long defaultBrokerId = MixAll.MASTER_ID;
     private Random random = new Random(System.currentTimeMillis());
     private ArrayList<FilterMessageHook> filterMessageHookList = new ArrayList<FilterMessageHook>();
+    private volatile PullMessageBatchService pullMessageBatchService;
 
     public PullAPIWrapper(MQClientInstance mQClientFactory, String consumerGroup, boolean unitMode) {
         this.mQClientFactory = mQClientFactory;
@@ -196,6 +197,12 @@ public class PullAPIWrapper {
                 brokerAddr = computPullFromWhichFilterServer(mq.getTopic(), brokerAddr);
             }
 
+            if (this.pullMessageBatchService != null && communicationMode == CommunicationMode.ASYNC
+                && !PullSysFlag.hasClassFilterFlag(sysFlagInner)) {
+                this.pullMessageBatchService.putRequest(brokerAddr, requestHeader, timeoutMillis, pullCallback);
+                return null;
+            }
+
             PullResult pullResult = this.mQClientFactory.getMQClientAPIImpl().pullMessage(
                 brokerAddr,
                 requestHeader,
@@ -268,4 +275,8 @@ public class PullAPIWrapper {
     public void setDefaultBrokerId(long defaultBrokerId) {
         this.defaultBrokerId = defaultBrokerId;
     }
+
+    public void setPullMessageBatchService(PullMessageBatchService pullMessageBatchService) {
+        this.pullMessageBatchService = pullMessageBatchService;
+    }
 }
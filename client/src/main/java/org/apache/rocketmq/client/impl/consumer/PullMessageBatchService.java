@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.client.consumer.PullCallback;
+import org.apache.rocketmq.client.impl.CommunicationMode;
+import org.apache.rocketmq.client.impl.MQClientAPIImpl;
+import org.apache.rocketmq.client.log.ClientLogger;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.protocol.header.PullMessageRequestHeader;
+import org.apache.rocketmq.logging.InternalLogger;
+
+/**
+ * Collect the asynchronous pulls of a consumer and send the pulls of each broker in one request, a request is sent
+ * once it holds the max number of queues or the batch interval elapses.
+ */
+public class PullMessageBatchService extends ServiceThread {
+    private static final long IDLE_WAIT_MILLIS = 1000;
+    private final InternalLogger log = ClientLogger.getLog();
+    private final ConcurrentHashMap<String/* brokerAddr */, LinkedBlockingQueue<PullEntry>> requestTable =
+        new ConcurrentHashMap<String, LinkedBlockingQueue<PullEntry>>();
+    private final MQClientAPIImpl mQClientAPIImpl;
+    private final int batchSize;
+    private final long batchIntervalMs;
+    private final AtomicInteger pendingCount = new AtomicInteger(0);
+
+    public PullMessageBatchService(MQClientAPIImpl mQClientAPIImpl, int batchSize, long batchIntervalMs) {
+        this.mQClientAPIImpl = mQClientAPIImpl;
+        this.batchSize = batchSize;
+        this.batchIntervalMs = batchIntervalMs;
+    }
+
+    public void putRequest(final String brokerAddr, final PullMessageRequestHeader requestHeader,
+        final long timeoutMillis, final PullCallback pullCallback) {
+        LinkedBlockingQueue<PullEntry> requestQueue = this.requestTable.get(brokerAddr);
+        if (requestQueue == null) {
+            requestQueue = new LinkedBlockingQueue<PullEntry>();
+            LinkedBlockingQueue<PullEntry> prev = this.requestTable.putIfAbsent(brokerAddr, requestQueue);
+            if (prev != null) {
+                requestQueue = prev;
+            }
+        }
+        // counted before offered so the count never falls below zero, the first pending request ends the idle wait
+        boolean wasIdle = this.pendingCount.getAndIncrement() == 0;
+        requestQueue.offer(new PullEntry(requestHeader, timeoutMillis, pullCallback));
+        if (wasIdle || requestQueue.size() >= this.batchSize) {
+            this.wakeup();
+        }
+    }
+
+    private void sendRequests() {
+        for (Map.Entry<String, LinkedBlockingQueue<PullEntry>> entry : this.requestTable.entrySet()) {
+            LinkedBlockingQueue<PullEntry> requestQueue = entry.getValue();
+            while (!requestQueue.isEmpty()) {
+                List<PullEntry> pullEntryList = new ArrayList<PullEntry>(this.batchSize);
+                requestQueue.drainTo(pullEntryList, this.batchSize);
+                if (pullEntryList.isEmpty()) {
+                    break;
+                }
+                this.pendingCount.addAndGet(-pullEntryList.size());
+                this.sendRequest(entry.getKey(), pullEntryList);
+            }
+        }
+    }
+
+    private void sendRequest(final String brokerAddr, final List<PullEntry> pullEntryList) {
+        try {
+            if (pullEntryList.size() == 1) {
+                PullEntry pullEntry = pullEntryList.get(0);
+                this.mQClientAPIImpl.pullMessage(brokerAddr, pullEntry.getRequestHeader(), pullEntry.getTimeoutMillis(),
+                    CommunicationMode.ASYNC, pullEntry.getPullCallback());
+                return;
+            }
+
+            List<PullMessageRequestHeader> requestHeaderList = new ArrayList<PullMessageRequestHeader>(pullEntryList.size());
+            List<PullCallback> pullCallbackList = new ArrayList<PullCallback>(pullEntryList.size());
+            long timeoutMillis = 0;
+            for (PullEntry pullEntry : pullEntryList) {
+                requestHeaderList.add(pullEntry.getRequestHeader());
+                pullCallbackList.add(pullEntry.getPullCallback());
+                timeoutMillis = Math.max(timeoutMillis, pullEntry.getTimeoutMillis());
+            }
+            this.mQClientAPIImpl.pullMessageBatchAsync(brokerAddr, requestHeaderList, timeoutMillis, pullCallbackList);
+        } catch (Exception e) {
+            log.warn("pull message batch from broker {} failed, size: {}", brokerAddr, pullEntryList.size(), e);
+            for (PullEntry pullEntry : pullEntryList) {
+                pullEntry.getPullCallback().onException(e);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        log.info(this.getServiceName() + " service started");
+
+        while (!this.isStopped()) {
+            if (this.pendingCount.get() == 0) {
+                this.waitForRunning(IDLE_WAIT_MILLIS);
+                continue;
+            }
+            this.waitForRunning(this.batchIntervalMs);
+            this.sendRequests();
+        }
+
+        log.info(this.getServiceName() + " service end");
+    }
+
+    @Override
+    public String getServiceName() {
+        return PullMessageBatchService.class.getSimpleName();
+    }
+
+    static class PullEntry {
+        private final PullMessageRequestHeader requestHeader;
+        private final long timeoutMillis;
+        private final PullCallback pullCallback;
+
+        PullEntry(PullMessageRequestHeader requestHeader, long timeoutMillis, PullCallback pullCallback) {
+            this.requestHeader = requestHeader;
+            this.timeoutMillis = timeoutMillis;
+            this.pullCallback = pullCallback;
+        }
+
+        PullMessageRequestHeader getRequestHeader() {
+            return requestHeader;
+        }
+
+        long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        PullCallback getPullCallback() {
+            return pullCallback;
+        }
+    }
+}
@@ -66,6 +66,7 @@ import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.constant.PermName;
 import org.apache.rocketmq.common.filter.ExpressionType;
 import org.apache.rocketmq.common.protocol.NamespaceUtil;
+import org.apache.rocketmq.common.protocol.ResponseCode;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageQueue;
@@ -117,6 +118,9 @@ public class MQClientInstance {
     private final DefaultMQProducer defaultMQProducer;
     private final ConsumerStatsManager consumerStatsManager;
     private final AtomicLong sendHeartbeatTimesTotal = new AtomicLong(0);
+    private final ConcurrentMap<String/* address */, Integer/* heartbeat fingerprint */> brokerHeartbeatFingerprintTable =
+        new ConcurrentHashMap<String, Integer>();
+    private final Set<String/* address */> liteHeartbeatUnsupportedBrokers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     private ServiceState serviceState = ServiceState.CREATE_JUST;
     private DatagramSocket datagramSocket;
     private Random random = new Random();
@@ -542,6 +546,8 @@ public class MQClientInstance {
             return;
         }
 
+        final Integer heartbeatFingerprint =
+            this.clientConfig.isLiteHeartbeatEnable() ? heartbeatData.computeHeartbeatFingerprint() : null;
         if (!this.brokerAddrTable.isEmpty()) {
             long times = this.sendHeartbeatTimesTotal.getAndIncrement();
             Iterator<Entry<String, HashMap<Long, String>>> it = this.brokerAddrTable.entrySet().iterator();
@@ -560,7 +566,7 @@ public class MQClientInstance {
                             }
 
                             try {
-                                int version = this.mQClientAPIImpl.sendHearbeat(addr, heartbeatData, 3000);
+                                int version = this.sendHeartbeat(addr, heartbeatData, heartbeatFingerprint);
                                 if (!this.brokerVersionTable.containsKey(brokerName)) {
                                     this.brokerVersionTable.put(brokerName, new HashMap<String, Integer>(4));
                                 }
@@ -693,6 +699,33 @@ public class MQClientInstance {
         return false;
     }
 
+    /**
+     * Send only the fingerprint of the heartbeat data if the broker holds heartbeat data of the same fingerprint, or
+     * the full heartbeat data otherwise.
+     */
+    private int sendHeartbeat(final String addr, final HeartbeatData heartbeatData,
+        final Integer heartbeatFingerprint) throws RemotingException, MQBrokerException, InterruptedException {
+        if (heartbeatFingerprint != null && heartbeatFingerprint.equals(this.brokerHeartbeatFingerprintTable.get(addr))) {
+            try {
+                return this.mQClientAPIImpl.sendLiteHeartbeat(addr, heartbeatFingerprint, 3000);
+            } catch (MQBrokerException e) {
+                if (e.getResponseCode() == ResponseCode.REQUEST_CODE_NOT_SUPPORTED) {
+                    log.info("broker[{}] does not support lite heartbeat, send full heartbeat data", addr);
+                    this.liteHeartbeatUnsupportedBrokers.add(addr);
+                } else if (e.getResponseCode() != ResponseCode.HEARTBEAT_FINGERPRINT_NOT_MATCH) {
+                    throw e;
+                }
+                this.brokerHeartbeatFingerprintTable.remove(addr);
+            }
+        }
+
+        int version = this.mQClientAPIImpl.sendHearbeat(addr, heartbeatData, heartbeatFingerprint, 3000);
+        if (heartbeatFingerprint != null && !this.liteHeartbeatUnsupportedBrokers.contains(addr)) {
+            this.brokerHeartbeatFingerprintTable.put(addr, heartbeatFingerprint);
+        }
+        return version;
+    }
+
     private HeartbeatData prepareHeartbeatData() {
         HeartbeatData heartbeatData = new HeartbeatData();
 
@@ -88,6 +88,11 @@ import org.apache.rocketmq.remoting.exception.RemotingTimeoutException;
 import org.apache.rocketmq.remoting.exception.RemotingTooMuchRequestException;
 
 public class DefaultMQProducerImpl implements MQProducerInner {
+    /**
+     * Back off before sending to a broker that throttled the send again, doubled each time it throttles up to the max
+     */
+    private static final long SEND_BACKOFF_MILLS_WHEN_THROTTLED = 100;
+    private static final long SEND_MAX_BACKOFF_MILLS_WHEN_THROTTLED = 1000;
     private final InternalLogger log = ClientLogger.getLog();
     private final Random random = new Random();
     private final DefaultMQProducer defaultMQProducer;
@@ -97,6 +102,7 @@ public class DefaultMQProducerImpl implements MQProducerInner {
     private final RPCHook rpcHook;
     protected BlockingQueue<Runnable> checkRequestQueue;
     protected ExecutorService checkExecutor;
+    private EndTransactionBatchService endTransactionBatchService;
     private ServiceState serviceState = ServiceState.CREATE_JUST;
     private MQClientInstance mQClientFactory;
     private ArrayList<CheckForbiddenHook> checkForbiddenHookList = new ArrayList<CheckForbiddenHook>();
@@ -196,6 +202,15 @@ public class DefaultMQProducerImpl implements MQProducerInner {
                     mQClientFactory.start();
                 }
 
+                if (this.defaultMQProducer instanceof TransactionMQProducer
+                    && ((TransactionMQProducer) this.defaultMQProducer).isEndTransactionBatchEnable()) {
+                    TransactionMQProducer producer = (TransactionMQProducer) this.defaultMQProducer;
+                    this.endTransactionBatchService = new EndTransactionBatchService(this.mQClientFactory.getMQClientAPIImpl(),
+                        producer.getEndTransactionBatchSize(), producer.getEndTransactionBatchIntervalMs(),
+                        producer.getSendMsgTimeout());
+                    this.endTransactionBatchService.start();
+                }
+
                 log.info("the producer [{}] start OK. sendMessageWithVIPChannel={}", this.defaultMQProducer.getProducerGroup(),
                     this.defaultMQProducer.isSendMessageWithVIPChannel());
                 this.serviceState = ServiceState.RUNNING;
@@ -236,6 +251,9 @@ public class DefaultMQProducerImpl implements MQProducerInner {
             case CREATE_JUST:
                 break;
             case RUNNING:
+                if (this.endTransactionBatchService != null) {
+                    this.endTransactionBatchService.shutdown();
+                }
                 this.mQClientFactory.unregisterProducer(this.defaultMQProducer.getProducerGroup());
                 this.defaultAsyncSenderExecutor.shutdown();
                 if (shutdownFactory) {
@@ -536,6 +554,8 @@ public class DefaultMQProducerImpl implements MQProducerInner {
             int timesTotal = communicationMode == CommunicationMode.SYNC ? 1 + this.defaultMQProducer.getRetryTimesWhenSendFailed() : 1;
             int times = 0;
             String[] brokersSent = new String[timesTotal];
+            String throttledBrokerName = null;
+            int throttledTimes = 0;
             for (; times < timesTotal; times++) {
                 String lastBrokerName = null == mq ? null : mq.getBrokerName();
                 MessageQueue mqSelected = this.selectOneMessageQueue(topicPublishInfo, lastBrokerName);
@@ -548,6 +568,13 @@ public class DefaultMQProducerImpl implements MQProducerInner {
                             //Reset topic with namespace during resend.
                             msg.setTopic(this.defaultMQProducer.withNamespace(msg.getTopic()));
                         }
+                        if (mq.getBrokerName().equals(throttledBrokerName)) {
+                            // no other broker to move to, give the throttled one time to refill
+                            long backoff = Math.min(SEND_BACKOFF_MILLS_WHEN_THROTTLED << Math.min(throttledTimes - 1, 10),
+                                SEND_MAX_BACKOFF_MILLS_WHEN_THROTTLED);
+                            Thread.sleep(Math.max(0, Math.min(backoff, timeout - (beginTimestampPrev - beginTimestampFirst))));
+                            beginTimestampPrev = System.currentTimeMillis();
+                        }
                         long costTime = beginTimestampPrev - beginTimestampFirst;
                         if (timeout < costTime) {
                             callTimeout = true;
@@ -601,6 +628,10 @@ public class DefaultMQProducerImpl implements MQProducerInner {
                             case ResponseCode.NO_BUYER_ID:
                             case ResponseCode.NOT_IN_CURRENT_UNIT:
                                 continue;
+                            case ResponseCode.THROTTLED:
+                                throttledBrokerName = mq.getBrokerName();
+                                throttledTimes++;
+                                continue;
                             default:
                                 if (sendResult != null) {
                                     return sendResult;
@@ -1289,6 +1320,11 @@ public class DefaultMQProducerImpl implements MQProducerInner {
         requestHeader.setTranStateTableOffset(sendResult.getQueueOffset());
         requestHeader.setMsgId(sendResult.getMsgId());
         String remark = localException != null ? ("executeLocalTransactionBranch exception: " + localException.toString()) : null;
+        if (this.endTransactionBatchService != null) {
+            // the remark is not carried by a batch
+            this.endTransactionBatchService.putRequest(brokerAddr, requestHeader);
+            return;
+        }
         this.mQClientFactory.getMQClientAPIImpl().endTransactionOneway(brokerAddr, requestHeader, remark,
             this.defaultMQProducer.getSendMsgTimeout());
     }
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.apache.rocketmq.client.impl.MQClientAPIImpl;
+import org.apache.rocketmq.client.log.ClientLogger;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.protocol.body.EndTransactionBatchRequestBody;
+import org.apache.rocketmq.common.protocol.header.EndTransactionRequestHeader;
+import org.apache.rocketmq.logging.InternalLogger;
+
+/**
+ * Collect the end transaction requests of a producer and send them to each broker in batches, a batch is sent once
+ * it is full or the batch interval elapses.
+ */
+public class EndTransactionBatchService extends ServiceThread {
+    private final InternalLogger log = ClientLogger.getLog();
+    private final ConcurrentHashMap<String/* brokerAddr */, LinkedBlockingQueue<EndTransactionRequestHeader>> requestTable =
+        new ConcurrentHashMap<String, LinkedBlockingQueue<EndTransactionRequestHeader>>();
+    private final MQClientAPIImpl mQClientAPIImpl;
+    private final int batchSize;
+    private final long batchIntervalMs;
+    private final long timeoutMillis;
+
+    public EndTransactionBatchService(MQClientAPIImpl mQClientAPIImpl, int batchSize, long batchIntervalMs,
+        long timeoutMillis) {
+        this.mQClientAPIImpl = mQClientAPIImpl;
+        this.batchSize = batchSize;
+        this.batchIntervalMs = batchIntervalMs;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public void putRequest(final String brokerAddr, final EndTransactionRequestHeader requestHeader) {
+        LinkedBlockingQueue<EndTransactionRequestHeader> requestQueue = this.requestTable.get(brokerAddr);
+        if (requestQueue == null) {
+            requestQueue = new LinkedBlockingQueue<EndTransactionRequestHeader>();
+            LinkedBlockingQueue<EndTransactionRequestHeader> prev = this.requestTable.putIfAbsent(brokerAddr, requestQueue);
+            if (prev != null) {
+                requestQueue = prev;
+            }
+        }
+        requestQueue.offer(requestHeader);
+        if (requestQueue.size() >= this.batchSize) {
+            this.wakeup();
+        }
+    }
+
+    private void sendRequests() {
+        for (Map.Entry<String, LinkedBlockingQueue<EndTransactionRequestHeader>> entry : this.requestTable.entrySet()) {
+            LinkedBlockingQueue<EndTransactionRequestHeader> requestQueue = entry.getValue();
+            while (!requestQueue.isEmpty()) {
+                List<EndTransactionRequestHeader> requestHeaderList = new ArrayList<EndTransactionRequestHeader>(this.batchSize);
+                requestQueue.drainTo(requestHeaderList, this.batchSize);
+                if (requestHeaderList.isEmpty()) {
+                    break;
+                }
+                EndTransactionBatchRequestBody requestBody = new EndTransactionBatchRequestBody();
+                requestBody.setRequestHeaderList(requestHeaderList);
+                try {
+                    this.mQClientAPIImpl.endTransactionBatchOneway(entry.getKey(), requestBody, this.timeoutMillis);
+                } catch (Exception e) {
+                    log.warn("end transaction batch to broker {} failed, size: {}", entry.getKey(), requestHeaderList.size(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        log.info(this.getServiceName() + " service started");
+
+        while (!this.isStopped()) {
+            this.waitForRunning(this.batchIntervalMs);
+            this.sendRequests();
+        }
+        this.sendRequests();
+
+        log.info(this.getServiceName() + " service end");
+    }
+
+    @Override
+    public String getServiceName() {
+        return EndTransactionBatchService.class.getSimpleName();
+    }
+}
@@ -28,6 +28,14 @@ public class TransactionMQProducer extends DefaultMQProducer {
     private int checkThreadPoolMaxSize = 1;
     private int checkRequestHoldMax = 2000;
 
+    /**
+     * Send the end transaction requests to the broker in batches, the broker must support
+     * {@code END_TRANSACTION_BATCH}.
+     */
+    private boolean endTransactionBatchEnable = false;
+    private int endTransactionBatchSize = 256;
+    private long endTransactionBatchIntervalMs = 5;
+
     private ExecutorService executorService;
 
     private TransactionListener transactionListener;
@@ -138,6 +146,30 @@ public class TransactionMQProducer extends DefaultMQProducer {
         this.checkRequestHoldMax = checkRequestHoldMax;
     }
 
+    public boolean isEndTransactionBatchEnable() {
+        return endTransactionBatchEnable;
+    }
+
+    public void setEndTransactionBatchEnable(boolean endTransactionBatchEnable) {
+        this.endTransactionBatchEnable = endTransactionBatchEnable;
+    }
+
+    public int getEndTransactionBatchSize() {
+        return endTransactionBatchSize;
+    }
+
+    public void setEndTransactionBatchSize(int endTransactionBatchSize) {
+        this.endTransactionBatchSize = endTransactionBatchSize;
+    }
+
+    public long getEndTransactionBatchIntervalMs() {
+        return endTransactionBatchIntervalMs;
+    }
+
+    public void setEndTransactionBatchIntervalMs(long endTransactionBatchIntervalMs) {
+        this.endTransactionBatchIntervalMs = endTransactionBatchIntervalMs;
+    }
+
     public ExecutorService getExecutorService() {
         return executorService;
     }
@@ -60,6 +60,10 @@ public class BrokerConfig {
      * value is 1.
      */
     private int sendMessageThreadPoolNums = 1; //16 + Runtime.getRuntime().availableProcessors() * 4;
+    /**
+     * Thread numbers completing send requests once their messages are flushed or replicated.
+     */
+    private int putMessageFutureThreadPoolNums = Math.min(4, Runtime.getRuntime().availableProcessors());
     private int pullMessageThreadPoolNums = 16 + Runtime.getRuntime().availableProcessors() * 2;
     private int queryMessageThreadPoolNums = 8 + Runtime.getRuntime().availableProcessors();
 
@@ -77,11 +81,31 @@ public class BrokerConfig {
 
     private int flushConsumerOffsetHistoryInterval = 1000 * 60;
 
+    /**
+     * Persist consumer offsets as a binary snapshot plus a journal of the offsets updated since, instead of rewriting
+     * consumerOffset.json on every flush. consumerOffset.json is then only read once to migrate.
+     */
+    private boolean consumerOffsetBinaryPersistEnable = false;
+    /**
+     * Keep rewriting consumerOffset.json along with the binary offsets, so that the broker can be rolled back to a
+     * version without them. Disable it once no rollback is needed, then a flush only appends to the journal.
+     */
+    private boolean consumerOffsetJsonPersistEnable = true;
+    /**
+     * Fold the consumer offset journal into a new snapshot once it is larger than this.
+     */
+    private long consumerOffsetJournalMaxSize = 1024 * 1024 * 64;
+    /**
+     * Fold the consumer offset journal into a new snapshot at least at this interval.
+     */
+    private long consumerOffsetSnapshotInterval = 1000 * 60 * 10;
+
     @ImportantField
     private boolean rejectTransactionMessage = false;
     @ImportantField
     private boolean fetchNamesrvAddrByAddressServer = false;
     private int sendThreadPoolQueueCapacity = 10000;
+    private int putThreadPoolQueueCapacity = 10000;
     private int pullThreadPoolQueueCapacity = 100000;
     private int queryThreadPoolQueueCapacity = 20000;
     private int clientManagerThreadPoolQueueCapacity = 1000000;
@@ -95,6 +119,11 @@ public class BrokerConfig {
 
     private long shortPollingTimeMills = 1000;
 
+    /**
+     * Number of woken up pull requests processed by one task of the pull executor.
+     */
+    private int pullWakeupBatchSize = 16;
+
     private boolean notifyConsumerIdsChangedEnable = true;
 
     private boolean highSpeedMode = false;
@@ -106,6 +135,11 @@ public class BrokerConfig {
     private int commercialBaseCount = 1;
 
     private boolean transferMsgByHeap = true;
+    /**
+     * Write pulled messages to TLS channels as a composite buffer over the mapped message slices, so they are
+     * encrypted straight from the page cache instead of being copied to the heap first.
+     */
+    private boolean transferMsgByCompositeBuffer = true;
     private int maxDelayTime = 40;
 
     private String regionId = MixAll.DEFAULT_TRACE_REGION_ID;
@@ -122,6 +156,29 @@ public class BrokerConfig {
     private long waitTimeMillsInHeartbeatQueue = 31 * 1000;
     private long waitTimeMillsInTransactionQueue = 3 * 1000;
 
+    /**
+     * Schedule the requests of the send, pull and query thread pools fairly among tenants, see tenantWeights.
+     */
+    private boolean tenantFairQueueEnable = false;
+    /**
+     * Weights of tenants, e.g. "namespaceA:4;groupB:2", a tenant is the namespace of the request, or its group or
+     * topic if it has no namespace. Tenants not listed weigh 1.
+     */
+    private String tenantWeights = "";
+    /**
+     * Max requests of one tenant running at the same time in a thread pool, 0 means no limit.
+     */
+    private int tenantMaxRunningThreads = 0;
+
+    /**
+     * Throttle produce and consume requests by the rate limits below, in the form of
+     * "name:messagesPerSecond:bytesPerSecond;...", 0 means no limit.
+     */
+    private boolean rateLimitEnable = false;
+    private String topicRateLimits = "";
+    private String producerGroupRateLimits = "";
+    private String consumerGroupRateLimits = "";
+
     private long startAcceptSendRequestTimeStamp = 0L;
 
     private boolean traceOn = true;
@@ -149,6 +206,36 @@ public class BrokerConfig {
 
     private boolean forceRegister = true;
 
+    /**
+     * Register only the topic configs changed since the ones a name server acknowledged last, falling back to a full
+     * registration when the name server can not apply the delta. Name servers have to support it.
+     */
+    private boolean deltaRegister = false;
+
+    /**
+     * Topics, or topic and consumer group pairs, latency percentiles are kept for at most, the latencies of the others
+     * are recorded together
+     */
+    private int maxLatencyStatsKeys = 10000;
+
+    /**
+     * Expose broker and store metrics over HTTP at /metrics, in the Prometheus text format
+     */
+    private boolean metricsExporterEnable = false;
+    private int metricsExporterPort = 5557;
+
+    /**
+     * Sample the lag of each consumer group every interval, keeping the latest samples as its lag history. 0 disables
+     * the sampling.
+     */
+    private long consumerLagSampleInterval = 1000 * 60;
+    private int consumerLagHistorySize = 360;
+    /**
+     * Most offsets sampled per queue, one a second at most, to tell when the messages consumers stopped at were stored.
+     * A queue neither written nor read for an hour, or longer than its samples cover, drops them.
+     */
+    private int consumerLagTimelineCapacity = 128;
+
     /**
      * This configurable item defines interval of topics registration of broker to name server. Allowing values are
      * between 10, 000 and 60, 000 milliseconds.
@@ -174,6 +261,26 @@ public class BrokerConfig {
     @ImportantField
     private long transactionCheckInterval = 60 * 1000;
 
+    /**
+     * Threads checking the half queues in parallel.
+     */
+    private int transactionCheckThreadNum = 4;
+
+    /**
+     * Max half messages of a queue held in memory between the consume offset and the check position, beyond it the
+     * oldest unresolved half messages are put back to the half queue.
+     */
+    private long transactionCheckMaxInFlight = 100000;
+
+    /**
+     * Keep the transaction states in a local append only log instead of the op topic of the commit log.
+     */
+    private boolean transactionStateLogEnable = false;
+
+    private int transactionStateLogFileSize = 1024 * 1024 * 40;
+
+    private long transactionStateLogFlushIntervalMs = 500;
+
     /**
      * Acl feature switch
      */
@@ -198,6 +305,62 @@ public class BrokerConfig {
         this.traceOn = traceOn;
     }
 
+    public boolean isTenantFairQueueEnable() {
+        return tenantFairQueueEnable;
+    }
+
+    public void setTenantFairQueueEnable(boolean tenantFairQueueEnable) {
+        this.tenantFairQueueEnable = tenantFairQueueEnable;
+    }
+
+    public String getTenantWeights() {
+        return tenantWeights;
+    }
+
+    public void setTenantWeights(String tenantWeights) {
+        this.tenantWeights = tenantWeights;
+    }
+
+    public int getTenantMaxRunningThreads() {
+        return tenantMaxRunningThreads;
+    }
+
+    public void setTenantMaxRunningThreads(int tenantMaxRunningThreads) {
+        this.tenantMaxRunningThreads = tenantMaxRunningThreads;
+    }
+
+    public boolean isRateLimitEnable() {
+        return rateLimitEnable;
+    }
+
+    public void setRateLimitEnable(boolean rateLimitEnable) {
+        this.rateLimitEnable = rateLimitEnable;
+    }
+
+    public String getTopicRateLimits() {
+        return topicRateLimits;
+    }
+
+    public void setTopicRateLimits(String topicRateLimits) {
+        this.topicRateLimits = topicRateLimits;
+    }
+
+    public String getProducerGroupRateLimits() {
+        return producerGroupRateLimits;
+    }
+
+    public void setProducerGroupRateLimits(String producerGroupRateLimits) {
+        this.producerGroupRateLimits = producerGroupRateLimits;
+    }
+
+    public String getConsumerGroupRateLimits() {
+        return consumerGroupRateLimits;
+    }
+
+    public void setConsumerGroupRateLimits(String consumerGroupRateLimits) {
+        this.consumerGroupRateLimits = consumerGroupRateLimits;
+    }
+
     public long getStartAcceptSendRequestTimeStamp() {
         return startAcceptSendRequestTimeStamp;
     }
@@ -278,6 +441,14 @@ public class BrokerConfig {
         this.transferMsgByHeap = transferMsgByHeap;
     }
 
+    public boolean isTransferMsgByCompositeBuffer() {
+        return transferMsgByCompositeBuffer;
+    }
+
+    public void setTransferMsgByCompositeBuffer(final boolean transferMsgByCompositeBuffer) {
+        this.transferMsgByCompositeBuffer = transferMsgByCompositeBuffer;
+    }
+
     public String getMessageStorePlugIn() {
         return messageStorePlugIn;
     }
@@ -366,6 +537,14 @@ public class BrokerConfig {
         this.sendMessageThreadPoolNums = sendMessageThreadPoolNums;
     }
 
+    public int getPutMessageFutureThreadPoolNums() {
+        return putMessageFutureThreadPoolNums;
+    }
+
+    public void setPutMessageFutureThreadPoolNums(int putMessageFutureThreadPoolNums) {
+        this.putMessageFutureThreadPoolNums = putMessageFutureThreadPoolNums;
+    }
+
     public int getPullMessageThreadPoolNums() {
         return pullMessageThreadPoolNums;
     }
@@ -406,6 +585,38 @@ public class BrokerConfig {
         this.flushConsumerOffsetHistoryInterval = flushConsumerOffsetHistoryInterval;
     }
 
+    public boolean isConsumerOffsetBinaryPersistEnable() {
+        return consumerOffsetBinaryPersistEnable;
+    }
+
+    public void setConsumerOffsetBinaryPersistEnable(boolean consumerOffsetBinaryPersistEnable) {
+        this.consumerOffsetBinaryPersistEnable = consumerOffsetBinaryPersistEnable;
+    }
+
+    public boolean isConsumerOffsetJsonPersistEnable() {
+        return consumerOffsetJsonPersistEnable;
+    }
+
+    public void setConsumerOffsetJsonPersistEnable(boolean consumerOffsetJsonPersistEnable) {
+        this.consumerOffsetJsonPersistEnable = consumerOffsetJsonPersistEnable;
+    }
+
+    public long getConsumerOffsetJournalMaxSize() {
+        return consumerOffsetJournalMaxSize;
+    }
+
+    public void setConsumerOffsetJournalMaxSize(long consumerOffsetJournalMaxSize) {
+        this.consumerOffsetJournalMaxSize = consumerOffsetJournalMaxSize;
+    }
+
+    public long getConsumerOffsetSnapshotInterval() {
+        return consumerOffsetSnapshotInterval;
+    }
+
+    public void setConsumerOffsetSnapshotInterval(long consumerOffsetSnapshotInterval) {
+        this.consumerOffsetSnapshotInterval = consumerOffsetSnapshotInterval;
+    }
+
     public boolean isClusterTopicEnable() {
         return clusterTopicEnable;
     }
@@ -462,6 +673,14 @@ public class BrokerConfig {
         this.sendThreadPoolQueueCapacity = sendThreadPoolQueueCapacity;
     }
 
+    public int getPutThreadPoolQueueCapacity() {
+        return putThreadPoolQueueCapacity;
+    }
+
+    public void setPutThreadPoolQueueCapacity(int putThreadPoolQueueCapacity) {
+        this.putThreadPoolQueueCapacity = putThreadPoolQueueCapacity;
+    }
+
     public int getPullThreadPoolQueueCapacity() {
         return pullThreadPoolQueueCapacity;
     }
@@ -518,6 +737,14 @@ public class BrokerConfig {
         this.shortPollingTimeMills = shortPollingTimeMills;
     }
 
+    public int getPullWakeupBatchSize() {
+        return pullWakeupBatchSize;
+    }
+
+    public void setPullWakeupBatchSize(int pullWakeupBatchSize) {
+        this.pullWakeupBatchSize = pullWakeupBatchSize;
+    }
+
     public int getClientManageThreadPoolNums() {
         return clientManageThreadPoolNums;
     }
@@ -662,6 +889,62 @@ public class BrokerConfig {
         this.forceRegister = forceRegister;
     }
 
+    public boolean isDeltaRegister() {
+        return deltaRegister;
+    }
+
+    public void setDeltaRegister(boolean deltaRegister) {
+        this.deltaRegister = deltaRegister;
+    }
+
+    public int getMaxLatencyStatsKeys() {
+        return maxLatencyStatsKeys;
+    }
+
+    public void setMaxLatencyStatsKeys(int maxLatencyStatsKeys) {
+        this.maxLatencyStatsKeys = maxLatencyStatsKeys;
+    }
+
+    public boolean isMetricsExporterEnable() {
+        return metricsExporterEnable;
+    }
+
+    public void setMetricsExporterEnable(boolean metricsExporterEnable) {
+        this.metricsExporterEnable = metricsExporterEnable;
+    }
+
+    public int getMetricsExporterPort() {
+        return metricsExporterPort;
+    }
+
+    public void setMetricsExporterPort(int metricsExporterPort) {
+        this.metricsExporterPort = metricsExporterPort;
+    }
+
+    public long getConsumerLagSampleInterval() {
+        return consumerLagSampleInterval;
+    }
+
+    public void setConsumerLagSampleInterval(long consumerLagSampleInterval) {
+        this.consumerLagSampleInterval = consumerLagSampleInterval;
+    }
+
+    public int getConsumerLagTimelineCapacity() {
+        return consumerLagTimelineCapacity;
+    }
+
+    public void setConsumerLagTimelineCapacity(int consumerLagTimelineCapacity) {
+        this.consumerLagTimelineCapacity = consumerLagTimelineCapacity;
+    }
+
+    public int getConsumerLagHistorySize() {
+        return consumerLagHistorySize;
+    }
+
+    public void setConsumerLagHistorySize(int consumerLagHistorySize) {
+        this.consumerLagHistorySize = consumerLagHistorySize;
+    }
+
     public int getHeartbeatThreadPoolQueueCapacity() {
         return heartbeatThreadPoolQueueCapacity;
     }
@@ -718,6 +1001,46 @@ public class BrokerConfig {
         this.transactionCheckInterval = transactionCheckInterval;
     }
 
+    public int getTransactionCheckThreadNum() {
+        return transactionCheckThreadNum;
+    }
+
+    public void setTransactionCheckThreadNum(int transactionCheckThreadNum) {
+        this.transactionCheckThreadNum = transactionCheckThreadNum;
+    }
+
+    public long getTransactionCheckMaxInFlight() {
+        return transactionCheckMaxInFlight;
+    }
+
+    public void setTransactionCheckMaxInFlight(long transactionCheckMaxInFlight) {
+        this.transactionCheckMaxInFlight = transactionCheckMaxInFlight;
+    }
+
+    public boolean isTransactionStateLogEnable() {
+        return transactionStateLogEnable;
+    }
+
+    public void setTransactionStateLogEnable(boolean transactionStateLogEnable) {
+        this.transactionStateLogEnable = transactionStateLogEnable;
+    }
+
+    public int getTransactionStateLogFileSize() {
+        return transactionStateLogFileSize;
+    }
+
+    public void setTransactionStateLogFileSize(int transactionStateLogFileSize) {
+        this.transactionStateLogFileSize = transactionStateLogFileSize;
+    }
+
+    public long getTransactionStateLogFlushIntervalMs() {
+        return transactionStateLogFlushIntervalMs;
+    }
+
+    public void setTransactionStateLogFlushIntervalMs(long transactionStateLogFlushIntervalMs) {
+        this.transactionStateLogFlushIntervalMs = transactionStateLogFlushIntervalMs;
+    }
+
     public int getEndTransactionThreadPoolNums() {
         return endTransactionThreadPoolNums;
     }
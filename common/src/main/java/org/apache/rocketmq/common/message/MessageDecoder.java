@@ -41,6 +41,7 @@ public class MessageDecoder {
     public final static int MESSAGE_MAGIC_CODE = -626843481;
     public static final char NAME_VALUE_SEPARATOR = 1;
     public static final char PROPERTY_SEPARATOR = 2;
+    public static final int QUEUE_OFFSET_POSITION = 4 + 4 + 4 + 4 + 4;
     public static final int PHY_POS_POSITION =  4 + 4 + 4 + 4 + 4 + 8;
     public static final int BODY_SIZE_POSITION = 4 // 1 TOTALSIZE
         + 4 // 2 MAGICCODE
@@ -501,6 +502,26 @@ public class MessageDecoder {
         return allBytes;
     }
 
+    /**
+     * Count the messages encoded by {@link #encodeMessages(List)} by walking their total sizes.
+     */
+    public static int countMessages(byte[] bytes) {
+        if (bytes == null) {
+            return 0;
+        }
+        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+        int count = 0;
+        while (byteBuffer.remaining() >= 4) {
+            int storeSize = byteBuffer.getInt(byteBuffer.position());
+            if (storeSize <= 0 || storeSize > byteBuffer.remaining()) {
+                break;
+            }
+            byteBuffer.position(byteBuffer.position() + storeSize);
+            count++;
+        }
+        return count;
+    }
+
     public static List<Message> decodeMessages(ByteBuffer byteBuffer) throws Exception {
         //TO DO add a callback for processing,  avoid creating lists
         List<Message> msgs = new ArrayList<Message>();
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+
+/**
+ * Collectors of the metrics of a server. Metrics are read from the server internals on each scrape, so nothing is
+ * computed or kept for them between scrapes.
+ */
+public class MetricsRegistry {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.COMMON_LOGGER_NAME);
+
+    private final List<MetricsCollector> collectorList = new CopyOnWriteArrayList<MetricsCollector>();
+
+    public void register(final MetricsCollector collector) {
+        this.collectorList.add(collector);
+    }
+
+    public String scrape() {
+        MetricsWriter writer = new MetricsWriter();
+        for (MetricsCollector collector : this.collectorList) {
+            try {
+                collector.collect(writer);
+            } catch (Throwable e) {
+                log.warn("collect metrics failed, collector={}", collector.getClass().getSimpleName(), e);
+            }
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.metrics;
+
+/**
+ * Writes metrics in the Prometheus text exposition format. The samples of a metric family follow its {@link #gauge}
+ * or {@link #counter} header, labels are given as name value pairs.
+ */
+public class MetricsWriter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder sb = new StringBuilder(4096);
+
+    public MetricsWriter gauge(final String name, final String help) {
+        return this.family(name, "gauge", help);
+    }
+
+    public MetricsWriter counter(final String name, final String help) {
+        return this.family(name, "counter", help);
+    }
+
+    public MetricsWriter gauge(final String name, final String help, final double value) {
+        return this.gauge(name, help).sample(name, value);
+    }
+
+    public MetricsWriter counter(final String name, final String help, final double value) {
+        return this.counter(name, help).sample(name, value);
+    }
+
+    public MetricsWriter sample(final String name, final double value, final String... labels) {
+        this.sb.append(name);
+        if (labels.length > 0) {
+            this.sb.append('{');
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (i > 0) {
+                    this.sb.append(',');
+                }
+                this.sb.append(labels[i]).append("=\"");
+                appendEscaped(this.sb, labels[i + 1]);
+                this.sb.append('"');
+            }
+            this.sb.append('}');
+        }
+        this.sb.append(' ');
+        appendValue(this.sb, value);
+        this.sb.append('\n');
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return this.sb.toString();
+    }
+
+    private MetricsWriter family(final String name, final String type, final String help) {
+        this.sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        this.sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    private static void appendValue(final StringBuilder sb, final double value) {
+        if (Double.isNaN(value)) {
+            sb.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            sb.append(value > 0 ? "+Inf" : "-Inf");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+    }
+
+    private static void appendEscaped(final StringBuilder sb, final String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+}
@@ -35,6 +35,11 @@ public class NamesrvConfig {
     private String productEnvName = "center";
     private boolean clusterTest = false;
     private boolean orderMessageEnable = false;
+    /**
+     * Expose name server metrics over HTTP at /metrics, in the Prometheus text format
+     */
+    private boolean metricsExporterEnable = false;
+    private int metricsExporterPort = 5556;
 
     public boolean isOrderMessageEnable() {
         return orderMessageEnable;
@@ -83,4 +88,20 @@ public class NamesrvConfig {
     public void setConfigStorePath(final String configStorePath) {
         this.configStorePath = configStorePath;
     }
+
+    public boolean isMetricsExporterEnable() {
+        return metricsExporterEnable;
+    }
+
+    public void setMetricsExporterEnable(boolean metricsExporterEnable) {
+        this.metricsExporterEnable = metricsExporterEnable;
+    }
+
+    public int getMetricsExporterPort() {
+        return metricsExporterPort;
+    }
+
+    public void setMetricsExporterPort(int metricsExporterPort) {
+        this.metricsExporterPort = metricsExporterPort;
+    }
 }
@@ -90,6 +90,16 @@ public class RequestCode {
     public static final int GET_ROUTEINTO_BY_TOPIC = 105;
 
     public static final int GET_BROKER_CLUSTER_INFO = 106;
+
+    /**
+     * register only the topic configs changed since the data version the name server acknowledged last, see
+     * {@link #REGISTER_BROKER}
+     */
+    public static final int REGISTER_BROKER_DELTA = 107;
+    /**
+     * heartbeat carrying only the fingerprint of the heartbeat data the broker already holds, see {@link #HEART_BEAT}
+     */
+    public static final int HEART_BEAT_LITE = 108;
     public static final int UPDATE_AND_CREATE_SUBSCRIPTIONGROUP = 200;
     public static final int GET_ALL_SUBSCRIPTIONGROUP_CONFIG = 201;
     public static final int GET_TOPIC_STATS_INFO = 202;
@@ -180,4 +190,24 @@ public class RequestCode {
      * resume logic of checking half messages that have been put in TRANS_CHECK_MAXTIME_TOPIC before
      */
     public static final int RESUME_CHECK_HALF_MESSAGE = 323;
+
+    /**
+     * end many transactions of a producer in one request, see {@link #END_TRANSACTION}
+     */
+    public static final int END_TRANSACTION_BATCH = 324;
+
+    /**
+     * pull messages of many queues in one request, see {@link #PULL_MESSAGE}
+     */
+    public static final int PULL_MESSAGE_BATCH = 325;
+
+    /**
+     * lag of every consumer group of a broker by topic, see {@link #GET_BROKER_CONSUME_STATS} for the lag by queue
+     */
+    public static final int GET_ALL_CONSUMER_LAG = 326;
+
+    /**
+     * lag of a consumer group sampled over time, see {@link #GET_ALL_CONSUMER_LAG} for the lag as of now
+     */
+    public static final int GET_CONSUMER_LAG_HISTORY = 327;
 }
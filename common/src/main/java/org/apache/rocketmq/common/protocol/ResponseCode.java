@@ -80,4 +80,10 @@ public class ResponseCode extends RemotingSysResponseCode {
 
     public static final int UPDATE_GLOBAL_WHITE_ADDRS_CONFIG_FAILED = 211;
 
+    public static final int THROTTLED = 212;
+
+    public static final int DATA_VERSION_NOT_MATCH = 213;
+
+    public static final int HEARTBEAT_FINGERPRINT_NOT_MATCH = 214;
+
 }
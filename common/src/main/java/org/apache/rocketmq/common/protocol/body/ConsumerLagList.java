@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.protocol.body;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
+
+public class ConsumerLagList extends RemotingSerializable {
+    private List<ConsumerLag> consumerLagList = new ArrayList<ConsumerLag>();
+    private String brokerAddr;
+    private long totalLag;
+
+    public List<ConsumerLag> getConsumerLagList() {
+        return consumerLagList;
+    }
+
+    public void setConsumerLagList(List<ConsumerLag> consumerLagList) {
+        this.consumerLagList = consumerLagList;
+    }
+
+    public String getBrokerAddr() {
+        return brokerAddr;
+    }
+
+    public void setBrokerAddr(String brokerAddr) {
+        this.brokerAddr = brokerAddr;
+    }
+
+    public long getTotalLag() {
+        return totalLag;
+    }
+
+    public void setTotalLag(long totalLag) {
+        this.totalLag = totalLag;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.protocol.body;
+
+/**
+ * Lag of a consumer group on all the topics it consumes, as of a point in time.
+ */
+public class ConsumerLagSample {
+    private long timestamp;
+    /**
+     * messages not consumed yet
+     */
+    private long diffTotal;
+    /**
+     * store time between the last message consumed and the newest message, of the queue lagging the most
+     */
+    private long lagMillis;
+
+    public ConsumerLagSample() {
+    }
+
+    public ConsumerLagSample(long timestamp, long diffTotal, long lagMillis) {
+        this.timestamp = timestamp;
+        this.diffTotal = diffTotal;
+        this.lagMillis = lagMillis;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public long getDiffTotal() {
+        return diffTotal;
+    }
+
+    public void setDiffTotal(long diffTotal) {
+        this.diffTotal = diffTotal;
+    }
+
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    public void setLagMillis(long lagMillis) {
+        this.lagMillis = lagMillis;
+    }
+}
@@ -24,6 +24,11 @@ import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
 public class ConsumerOffsetSerializeWrapper extends RemotingSerializable {
     private ConcurrentMap<String/* topic@group */, ConcurrentMap<Integer, Long>> offsetTable =
         new ConcurrentHashMap<String, ConcurrentMap<Integer, Long>>(512);
+    /**
+     * Offset table and version to synchronize the next offsets changed since, 0 if the broker does not support it.
+     */
+    private long offsetTableId = 0;
+    private long offsetVersion = 0;
 
     public ConcurrentMap<String, ConcurrentMap<Integer, Long>> getOffsetTable() {
         return offsetTable;
@@ -32,4 +37,20 @@ public class ConsumerOffsetSerializeWrapper extends RemotingSerializable {
     public void setOffsetTable(ConcurrentMap<String, ConcurrentMap<Integer, Long>> offsetTable) {
         this.offsetTable = offsetTable;
     }
+
+    public long getOffsetTableId() {
+        return offsetTableId;
+    }
+
+    public void setOffsetTableId(long offsetTableId) {
+        this.offsetTableId = offsetTableId;
+    }
+
+    public long getOffsetVersion() {
+        return offsetVersion;
+    }
+
+    public void setOffsetVersion(long offsetVersion) {
+        this.offsetVersion = offsetVersion;
+    }
 }
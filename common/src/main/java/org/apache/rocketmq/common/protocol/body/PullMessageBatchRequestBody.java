@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.common.protocol.body;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.rocketmq.common.protocol.header.PullMessageRequestHeader;
+import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
+
+/**
+ * Pull requests of many queues sent in one {@link org.apache.rocketmq.common.protocol.RequestCode#PULL_MESSAGE_BATCH}
+ * request. The response body holds one encoded pull response per request header, in the same order, each framed as
+ * on the wire: total length, header length, header data and the messages.
+ */
+public class PullMessageBatchRequestBody extends RemotingSerializable {
+    private List<PullMessageRequestHeader> requestHeaderList = new ArrayList<PullMessageRequestHeader>();
+
+    public List<PullMessageRequestHeader> getRequestHeaderList() {
+        return requestHeaderList;
+    }
+
+    public void setRequestHeaderList(List<PullMessageRequestHeader> requestHeaderList) {
+        this.requestHeaderList = requestHeaderList;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.protocol.header;
+
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+
+/**
+ * Data version of the topic configs or subscription groups the requester already holds, a broker answers without a
+ * body if its data version is the same.
+ */
+public class GetAllConfigRequestHeader implements CommandCustomHeader {
+    private Long dataVersionTimestamp;
+    private Long dataVersionCounter;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public Long getDataVersionTimestamp() {
+        return dataVersionTimestamp;
+    }
+
+    public void setDataVersionTimestamp(Long dataVersionTimestamp) {
+        this.dataVersionTimestamp = dataVersionTimestamp;
+    }
+
+    public Long getDataVersionCounter() {
+        return dataVersionCounter;
+    }
+
+    public void setDataVersionCounter(Long dataVersionCounter) {
+        this.dataVersionCounter = dataVersionCounter;
+    }
+}
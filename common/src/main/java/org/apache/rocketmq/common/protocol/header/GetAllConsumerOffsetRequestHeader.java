@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.protocol.header;
+
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+
+/**
+ * Offset table and version the requester synchronized last, a broker answers with the offsets changed since if it
+ * still serves the same offset table, with all offsets otherwise.
+ */
+public class GetAllConsumerOffsetRequestHeader implements CommandCustomHeader {
+    private Long offsetTableId;
+    private Long offsetVersion;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public Long getOffsetTableId() {
+        return offsetTableId;
+    }
+
+    public void setOffsetTableId(Long offsetTableId) {
+        this.offsetTableId = offsetTableId;
+    }
+
+    public Long getOffsetVersion() {
+        return offsetVersion;
+    }
+
+    public void setOffsetVersion(Long offsetVersion) {
+        this.offsetVersion = offsetVersion;
+    }
+}
@@ -20,6 +20,7 @@
  */
 package org.apache.rocketmq.common.protocol.header.namesrv;
 
+import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.remoting.CommandCustomHeader;
 import org.apache.rocketmq.remoting.annotation.CFNotNull;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
@@ -40,6 +41,12 @@ public class RegisterBrokerRequestHeader implements CommandCustomHeader {
 
     private Integer bodyCrc32 = 0;
 
+    /**
+     * Data version a delta registration is based on, only set for {@link RequestCode#REGISTER_BROKER_DELTA}.
+     */
+    private Long baseDataVersionTimestamp;
+    private Long baseDataVersionCounter;
+
     public void checkFields() throws RemotingCommandException {
     }
 
@@ -98,4 +105,20 @@ public class RegisterBrokerRequestHeader implements CommandCustomHeader {
     public void setBodyCrc32(Integer bodyCrc32) {
         this.bodyCrc32 = bodyCrc32;
     }
+
+    public Long getBaseDataVersionTimestamp() {
+        return baseDataVersionTimestamp;
+    }
+
+    public void setBaseDataVersionTimestamp(Long baseDataVersionTimestamp) {
+        this.baseDataVersionTimestamp = baseDataVersionTimestamp;
+    }
+
+    public Long getBaseDataVersionCounter() {
+        return baseDataVersionCounter;
+    }
+
+    public void setBaseDataVersionCounter(Long baseDataVersionCounter) {
+        this.baseDataVersionCounter = baseDataVersionCounter;
+    }
 }
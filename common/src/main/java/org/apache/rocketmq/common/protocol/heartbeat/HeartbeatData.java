@@ -20,11 +20,19 @@
  */
 package org.apache.rocketmq.common.protocol.heartbeat;
 
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
 
 public class HeartbeatData extends RemotingSerializable {
+    private static final Charset FINGERPRINT_CHARSET = Charset.forName(MixAll.DEFAULT_CHARSET);
+
     private String clientID;
     private Set<ProducerData> producerDataSet = new HashSet<ProducerData>();
     private Set<ConsumerData> consumerDataSet = new HashSet<ConsumerData>();
@@ -53,6 +61,26 @@ public class HeartbeatData extends RemotingSerializable {
         this.consumerDataSet = consumerDataSet;
     }
 
+    /**
+     * @return a fingerprint of this heartbeat data independent of the iteration order of its sets
+     */
+    public int computeHeartbeatFingerprint() {
+        List<String> entries = new ArrayList<String>(this.producerDataSet.size() + this.consumerDataSet.size());
+        for (ProducerData producerData : this.producerDataSet) {
+            entries.add(toJson(producerData, false));
+        }
+        for (ConsumerData consumerData : this.consumerDataSet) {
+            entries.add(toJson(consumerData, false));
+        }
+        Collections.sort(entries);
+
+        StringBuilder sb = new StringBuilder(String.valueOf(this.clientID));
+        for (String entry : entries) {
+            sb.append('\n').append(entry);
+        }
+        return UtilAll.crc32(sb.toString().getBytes(FINGERPRINT_CHARSET));
+    }
+
     @Override
     public String toString() {
         return "HeartbeatData [clientID=" + clientID + ", producerDataSet=" + producerDataSet
@@ -22,4 +22,10 @@ public enum RunningStats {
     commitLogDiskRatio,
     consumeQueueDiskRatio,
     scheduleMessageOffset,
+    scheduleMessageLag,
+    haSlaveLag,
+    haQuorumAckOffset,
+    haTransferCompress,
+    timerReadTimeMs,
+    timerEnqueueOffset,
 }
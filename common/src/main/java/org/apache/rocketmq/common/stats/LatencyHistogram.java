@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in microseconds with fixed memory. Like in HdrHistogram the buckets grow log-linearly, each
+ * power of two is split into 32 buckets, so a latency is counted within about 3% of its value. Recording neither locks
+ * nor allocates, concurrent recording threads mostly count into different buckets.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * latencies are capped at 2^32 microseconds, a bit more than an hour
+     */
+    private static final int MAX_MAGNITUDE = 32;
+    public static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+    private static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    public void record(final long latencyMicros) {
+        long value = Math.min(Math.max(latencyMicros, 0), MAX_VALUE);
+        this.counts.incrementAndGet(bucketIndex(value));
+        this.sum.addAndGet(value);
+        long prevMax = this.max.get();
+        while (value > prevMax && !this.max.compareAndSet(prevMax, value)) {
+            prevMax = this.max.get();
+        }
+    }
+
+    /**
+     * Drain the latencies recorded since the previous snapshot.
+     *
+     * @param drained array of {@link #BUCKET_COUNT} counts to drain into, reused between snapshots
+     */
+    public LatencySnapshot takeSnapshot(final long[] drained) {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            drained[i] = this.counts.getAndSet(i, 0);
+            count += drained[i];
+        }
+        long sumMicros = this.sum.getAndSet(0);
+        long maxMicros = this.max.getAndSet(0);
+        if (count == 0) {
+            return new LatencySnapshot(0, 0, 0, 0, 0, 0);
+        }
+        return new LatencySnapshot(count, (double) sumMicros / count,
+            percentile(drained, count, 0.5), percentile(drained, count, 0.99), percentile(drained, count, 0.999),
+            maxMicros);
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the highest value counted in the bucket
+     */
+    static long highestValue(final int bucketIndex) {
+        if (bucketIndex < 2 * SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+        int shift = (bucketIndex >> SUB_BUCKET_BITS) - 1;
+        long subBucket = (bucketIndex & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static long percentile(final long[] counts, final long count, final double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(count * percentile));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.stats;
+
+public class LatencyStatsItem {
+    private static final LatencySnapshot EMPTY = new LatencySnapshot(0, 0, 0, 0, 0, 0);
+
+    private final String statsName;
+    private final String statsKey;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private volatile LatencySnapshot snapshotInMinute = EMPTY;
+    private int idleMinutes;
+
+    public LatencyStatsItem(String statsName, String statsKey) {
+        this.statsName = statsName;
+        this.statsKey = statsKey;
+    }
+
+    public void record(final long latencyMicros) {
+        this.histogram.record(latencyMicros);
+    }
+
+    /**
+     * Take the snapshot of the latencies recorded in the last minute.
+     *
+     * @return the number of minutes since the last latency recorded
+     */
+    int samplingInMinutes(final long[] drained) {
+        this.snapshotInMinute = this.histogram.takeSnapshot(drained);
+        this.idleMinutes = this.snapshotInMinute.getCount() > 0 ? 0 : this.idleMinutes + 1;
+        return this.idleMinutes;
+    }
+
+    public LatencySnapshot getSnapshotInMinute() {
+        return snapshotInMinute;
+    }
+
+    public String getStatsName() {
+        return statsName;
+    }
+
+    public String getStatsKey() {
+        return statsKey;
+    }
+}
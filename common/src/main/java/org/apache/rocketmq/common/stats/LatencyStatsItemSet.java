@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.stats;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.logging.InternalLogger;
+
+/**
+ * Latency percentiles by stats key, in fixed memory per key. The keys are bounded: the latencies of new keys beyond
+ * {@code maxStatsKeys} are recorded under {@link #OTHERS_STATS_KEY}, and keys without latencies recorded for
+ * {@link #EVICT_IDLE_MINUTES} are evicted.
+ */
+public class LatencyStatsItemSet {
+    public static final String OTHERS_STATS_KEY = "%OTHERS%";
+    private static final int EVICT_IDLE_MINUTES = 10;
+
+    private final ConcurrentMap<String/* key */, LatencyStatsItem> statsItemTable =
+        new ConcurrentHashMap<String, LatencyStatsItem>(128);
+
+    private final String statsName;
+    private final int maxStatsKeys;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final InternalLogger log;
+    /**
+     * only used by the sampling task
+     */
+    private final long[] drained = new long[LatencyHistogram.BUCKET_COUNT];
+
+    public LatencyStatsItemSet(String statsName, int maxStatsKeys, ScheduledExecutorService scheduledExecutorService,
+        InternalLogger log) {
+        this.statsName = statsName;
+        this.maxStatsKeys = maxStatsKeys;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.log = log;
+        this.init();
+    }
+
+    public void init() {
+        this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    samplingInMinutes();
+                } catch (Throwable ignored) {
+                }
+            }
+        }, Math.abs(UtilAll.computeNextMinutesTimeMillis() - System.currentTimeMillis()), 1000 * 60, TimeUnit.MILLISECONDS);
+    }
+
+    void samplingInMinutes() {
+        Iterator<Entry<String, LatencyStatsItem>> it = this.statsItemTable.entrySet().iterator();
+        while (it.hasNext()) {
+            LatencyStatsItem statsItem = it.next().getValue();
+            int idleMinutes = statsItem.samplingInMinutes(this.drained);
+            if (idleMinutes >= EVICT_IDLE_MINUTES) {
+                it.remove();
+            } else if (idleMinutes == 0 && this.log != null) {
+                this.log.info(String.format("[%s] [%s] Latency In One Minute, %s",
+                    this.statsName, statsItem.getStatsKey(), statsItem.getSnapshotInMinute()));
+            }
+        }
+    }
+
+    public void record(final String statsKey, final long latencyMicros) {
+        this.getAndCreateStatsItem(statsKey).record(latencyMicros);
+    }
+
+    public LatencyStatsItem getAndCreateStatsItem(final String statsKey) {
+        LatencyStatsItem statsItem = this.statsItemTable.get(statsKey);
+        if (null == statsItem) {
+            String key = this.statsItemTable.size() < this.maxStatsKeys ? statsKey : OTHERS_STATS_KEY;
+            statsItem = new LatencyStatsItem(this.statsName, key);
+            LatencyStatsItem prev = this.statsItemTable.putIfAbsent(key, statsItem);
+            if (null != prev) {
+                statsItem = prev;
+            }
+        }
+
+        return statsItem;
+    }
+
+    public LatencySnapshot getSnapshotInMinute(final String statsKey) {
+        LatencyStatsItem statsItem = this.statsItemTable.get(statsKey);
+        if (null != statsItem) {
+            return statsItem.getSnapshotInMinute();
+        }
+        return new LatencySnapshot(0, 0, 0, 0, 0, 0);
+    }
+
+    public LatencyStatsItem getStatsItem(final String statsKey) {
+        return this.statsItemTable.get(statsKey);
+    }
+
+    public ConcurrentMap<String, LatencyStatsItem> getStatsItemTable() {
+        return statsItemTable;
+    }
+}
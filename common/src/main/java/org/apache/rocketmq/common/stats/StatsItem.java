@@ -17,7 +17,6 @@
 
 package org.apache.rocketmq.common.stats;
 
-import java.util.LinkedList;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -30,11 +29,11 @@ public class StatsItem {
 
     private final AtomicLong times = new AtomicLong(0);
 
-    private final LinkedList<CallSnapshot> csListMinute = new LinkedList<CallSnapshot>();
+    private final CallSnapshotRing csListMinute = new CallSnapshotRing(7);
 
-    private final LinkedList<CallSnapshot> csListHour = new LinkedList<CallSnapshot>();
+    private final CallSnapshotRing csListHour = new CallSnapshotRing(7);
 
-    private final LinkedList<CallSnapshot> csListDay = new LinkedList<CallSnapshot>();
+    private final CallSnapshotRing csListDay = new CallSnapshotRing(25);
 
     private final String statsName;
     private final String statsKey;
@@ -49,30 +48,8 @@ public class StatsItem {
         this.log = log;
     }
 
-    private static StatsSnapshot computeStatsData(final LinkedList<CallSnapshot> csList) {
-        StatsSnapshot statsSnapshot = new StatsSnapshot();
-        synchronized (csList) {
-            double tps = 0;
-            double avgpt = 0;
-            long sum = 0;
-            if (!csList.isEmpty()) {
-                CallSnapshot first = csList.getFirst();
-                CallSnapshot last = csList.getLast();
-                sum = last.getValue() - first.getValue();
-                tps = (sum * 1000.0d) / (last.getTimestamp() - first.getTimestamp());
-
-                long timesDiff = last.getTimes() - first.getTimes();
-                if (timesDiff > 0) {
-                    avgpt = (sum * 1.0d) / timesDiff;
-                }
-            }
-
-            statsSnapshot.setSum(sum);
-            statsSnapshot.setTps(tps);
-            statsSnapshot.setAvgpt(avgpt);
-        }
-
-        return statsSnapshot;
+    private static StatsSnapshot computeStatsData(final CallSnapshotRing csList) {
+        return csList.computeStatsData();
     }
 
     public StatsSnapshot getStatsDataInMinute() {
@@ -151,33 +128,15 @@ public class StatsItem {
     }
 
     public void samplingInSeconds() {
-        synchronized (this.csListMinute) {
-            this.csListMinute.add(new CallSnapshot(System.currentTimeMillis(), this.times.get(), this.value
-                .get()));
-            if (this.csListMinute.size() > 7) {
-                this.csListMinute.removeFirst();
-            }
-        }
+        this.csListMinute.add(System.currentTimeMillis(), this.times.get(), this.value.get());
     }
 
     public void samplingInMinutes() {
-        synchronized (this.csListHour) {
-            this.csListHour.add(new CallSnapshot(System.currentTimeMillis(), this.times.get(), this.value
-                .get()));
-            if (this.csListHour.size() > 7) {
-                this.csListHour.removeFirst();
-            }
-        }
+        this.csListHour.add(System.currentTimeMillis(), this.times.get(), this.value.get());
     }
 
     public void samplingInHour() {
-        synchronized (this.csListDay) {
-            this.csListDay.add(new CallSnapshot(System.currentTimeMillis(), this.times.get(), this.value
-                .get()));
-            if (this.csListDay.size() > 25) {
-                this.csListDay.removeFirst();
-            }
-        }
+        this.csListDay.add(System.currentTimeMillis(), this.times.get(), this.value.get());
     }
 
     public void printAtMinutes() {
@@ -227,28 +186,50 @@ public class StatsItem {
     }
 }
 
-class CallSnapshot {
-    private final long timestamp;
-    private final long times;
-
-    private final long value;
+/**
+ * The latest call snapshots kept in preallocated arrays, so that sampling does not allocate.
+ */
+class CallSnapshotRing {
+    private final long[] timestamps;
+    private final long[] times;
+    private final long[] values;
+    private int next;
+    private int size;
 
-    public CallSnapshot(long timestamp, long times, long value) {
-        super();
-        this.timestamp = timestamp;
-        this.times = times;
-        this.value = value;
+    CallSnapshotRing(final int capacity) {
+        this.timestamps = new long[capacity];
+        this.times = new long[capacity];
+        this.values = new long[capacity];
     }
 
-    public long getTimestamp() {
-        return timestamp;
+    synchronized void add(final long timestamp, final long times, final long value) {
+        this.timestamps[this.next] = timestamp;
+        this.times[this.next] = times;
+        this.values[this.next] = value;
+        this.next = (this.next + 1) % this.timestamps.length;
+        this.size = Math.min(this.size + 1, this.timestamps.length);
     }
 
-    public long getTimes() {
-        return times;
-    }
+    synchronized StatsSnapshot computeStatsData() {
+        StatsSnapshot statsSnapshot = new StatsSnapshot();
+        double tps = 0;
+        double avgpt = 0;
+        long sum = 0;
+        if (this.size > 0) {
+            int first = (this.next - this.size + this.timestamps.length) % this.timestamps.length;
+            int last = (this.next - 1 + this.timestamps.length) % this.timestamps.length;
+            sum = this.values[last] - this.values[first];
+            tps = (sum * 1000.0d) / (this.timestamps[last] - this.timestamps[first]);
+
+            long timesDiff = this.times[last] - this.times[first];
+            if (timesDiff > 0) {
+                avgpt = (sum * 1.0d) / timesDiff;
+            }
+        }
 
-    public long getValue() {
-        return value;
+        statsSnapshot.setSum(sum);
+        statsSnapshot.setTps(tps);
+        statsSnapshot.setAvgpt(avgpt);
+        return statsSnapshot;
     }
 }
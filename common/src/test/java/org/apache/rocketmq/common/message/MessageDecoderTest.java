@@ -23,6 +23,8 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -77,4 +79,15 @@ public class MessageDecoderTest {
         assertThat("hello").isEqualTo(properties.get("b"));
         assertThat("3.14").isEqualTo(properties.get("c"));
     }
+
+    @Test
+    public void testCountMessages() {
+        List<Message> messages = new ArrayList<Message>();
+        for (int i = 0; i < 3; i++) {
+            messages.add(new Message("topic", ("body" + i).getBytes()));
+        }
+        byte[] bytes = MessageDecoder.encodeMessages(messages);
+        assertThat(MessageDecoder.countMessages(bytes)).isEqualTo(3);
+        assertThat(MessageDecoder.countMessages(null)).isEqualTo(0);
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsHttpServerTest {
+    private MetricsRegistry metricsRegistry;
+    private MetricsHttpServer metricsHttpServer;
+
+    @Before
+    public void init() throws Exception {
+        metricsRegistry = new MetricsRegistry();
+        metricsRegistry.register(new MetricsCollector() {
+            @Override
+            public void collect(MetricsWriter writer) {
+                writer.gauge("test_queue_size", "Queue size")
+                    .sample("test_queue_size", 3, "pool", "send")
+                    .sample("test_queue_size", 0.5, "pool", "quoted \"pull\"");
+                writer.counter("test_total", "Total", 42);
+            }
+        });
+        metricsRegistry.register(new MetricsCollector() {
+            @Override
+            public void collect(MetricsWriter writer) {
+                throw new IllegalStateException("broken collector");
+            }
+        });
+        metricsHttpServer = new MetricsHttpServer(metricsRegistry, 0);
+        metricsHttpServer.start();
+    }
+
+    @After
+    public void destroy() {
+        metricsHttpServer.shutdown();
+    }
+
+    @Test
+    public void testScrape() throws Exception {
+        HttpURLConnection connection = open(MetricsHttpServer.METRICS_PATH);
+        assertThat(connection.getResponseCode()).isEqualTo(200);
+        assertThat(connection.getContentType()).isEqualTo(MetricsWriter.CONTENT_TYPE);
+        assertThat(read(connection.getInputStream())).isEqualTo(
+            "# HELP test_queue_size Queue size\n"
+                + "# TYPE test_queue_size gauge\n"
+                + "test_queue_size{pool=\"send\"} 3\n"
+                + "test_queue_size{pool=\"quoted \\\"pull\\\"\"} 0.5\n"
+                + "# HELP test_total Total\n"
+                + "# TYPE test_total counter\n"
+                + "test_total 42\n");
+    }
+
+    @Test
+    public void testNotFound() throws Exception {
+        assertThat(open("/other").getResponseCode()).isEqualTo(404);
+    }
+
+    private HttpURLConnection open(String path) throws Exception {
+        return (HttpURLConnection) new URL("http://127.0.0.1:" + metricsHttpServer.localPort() + path).openConnection();
+    }
+
+    private static String read(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.protocol.heartbeat;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HeartbeatDataTest {
+
+    @Test
+    public void testComputeHeartbeatFingerprint() {
+        SubscriptionData subscriptionData = new SubscriptionData("FooBar", "*");
+        HeartbeatData heartbeatData = createHeartbeatData(subscriptionData);
+        // recreated heartbeat data of the same content, iterated in another order
+        assertThat(createHeartbeatData(subscriptionData).computeHeartbeatFingerprint())
+            .isEqualTo(heartbeatData.computeHeartbeatFingerprint());
+
+        SubscriptionData resubscribed = new SubscriptionData("FooBar", "TagA");
+        resubscribed.setSubVersion(subscriptionData.getSubVersion() + 1);
+        assertThat(createHeartbeatData(resubscribed).computeHeartbeatFingerprint())
+            .isNotEqualTo(heartbeatData.computeHeartbeatFingerprint());
+    }
+
+    private static HeartbeatData createHeartbeatData(SubscriptionData subscriptionData) {
+        HeartbeatData heartbeatData = new HeartbeatData();
+        heartbeatData.setClientID("127.0.0.1@DEFAULT");
+        for (int i = 0; i < 8; i++) {
+            ProducerData producerData = new ProducerData();
+            producerData.setGroupName("ProducerGroup" + i);
+            heartbeatData.getProducerDataSet().add(producerData);
+
+            ConsumerData consumerData = new ConsumerData();
+            consumerData.setGroupName("ConsumerGroup" + i);
+            consumerData.getSubscriptionDataSet().add(subscriptionData);
+            heartbeatData.getConsumerDataSet().add(consumerData);
+        }
+        return heartbeatData;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.stats;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+
+    @After
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testBucketIndex() {
+        long previousHighest = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long highest = LatencyHistogram.highestValue(i);
+            assertThat(LatencyHistogram.bucketIndex(previousHighest + 1)).isEqualTo(i);
+            assertThat(LatencyHistogram.bucketIndex(highest)).isEqualTo(i);
+            // within about 3% of the value
+            assertThat(highest - previousHighest - 1).isLessThanOrEqualTo(Math.max(0, (previousHighest + 1) / 32));
+            previousHighest = highest;
+        }
+        assertThat(previousHighest).isEqualTo((1L << 32) - 1);
+    }
+
+    @Test
+    public void testTakeSnapshot() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        long[] drained = new long[LatencyHistogram.BUCKET_COUNT];
+        LatencySnapshot snapshot = histogram.takeSnapshot(drained);
+        assertThat(snapshot.getCount()).isEqualTo(10000);
+        assertThat(snapshot.getAvg()).isEqualTo(5000.5);
+        assertThat((double) snapshot.getP50()).isCloseTo(5000, within(5000 / 32.0));
+        assertThat((double) snapshot.getP99()).isCloseTo(9900, within(9900 / 32.0));
+        assertThat((double) snapshot.getP999()).isCloseTo(9990, within(9990 / 32.0));
+        assertThat(snapshot.getMax()).isEqualTo(10000);
+
+        // drained
+        assertThat(histogram.takeSnapshot(drained).getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testStatsKeysBounded() {
+        LatencyStatsItemSet statsItemSet = new LatencyStatsItemSet("TOPIC_PUT_RT", 2, scheduler, null);
+        statsItemSet.record("TopicA", 100);
+        statsItemSet.record("TopicB", 200);
+        statsItemSet.record("TopicC", 300);
+        statsItemSet.record("TopicD", 400);
+        assertThat(statsItemSet.getStatsItem("TopicC")).isNull();
+
+        statsItemSet.samplingInMinutes();
+        assertThat(statsItemSet.getSnapshotInMinute("TopicA").getMax()).isEqualTo(100);
+        assertThat(statsItemSet.getSnapshotInMinute(LatencyStatsItemSet.OTHERS_STATS_KEY).getCount()).isEqualTo(2);
+
+        // evicted once idle
+        for (int i = 0; i < 10; i++) {
+            statsItemSet.samplingInMinutes();
+        }
+        assertThat(statsItemSet.getStatsItem("TopicA")).isNull();
+    }
+}
@@ -23,10 +23,13 @@ import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.common.Configuration;
 import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.metrics.MetricsHttpServer;
+import org.apache.rocketmq.common.metrics.MetricsRegistry;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.common.namesrv.NamesrvConfig;
 import org.apache.rocketmq.namesrv.kvconfig.KVConfigManager;
+import org.apache.rocketmq.namesrv.metrics.NamesrvMetricsCollector;
 import org.apache.rocketmq.namesrv.processor.ClusterTestRequestProcessor;
 import org.apache.rocketmq.namesrv.processor.DefaultRequestProcessor;
 import org.apache.rocketmq.namesrv.routeinfo.BrokerHousekeepingService;
@@ -59,6 +62,8 @@ public class NamesrvController {
 
     private Configuration configuration;
     private FileWatchService fileWatchService;
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+    private MetricsHttpServer metricsHttpServer;
 
     public NamesrvController(NamesrvConfig namesrvConfig, NettyServerConfig nettyServerConfig) {
         this.namesrvConfig = namesrvConfig;
@@ -84,6 +89,8 @@ public class NamesrvController {
 
         this.registerProcessor();
 
+        this.metricsRegistry.register(new NamesrvMetricsCollector(this));
+
         this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
 
             @Override
@@ -158,9 +165,17 @@ public class NamesrvController {
         if (this.fileWatchService != null) {
             this.fileWatchService.start();
         }
+
+        if (this.namesrvConfig.isMetricsExporterEnable()) {
+            this.metricsHttpServer = new MetricsHttpServer(this.metricsRegistry, this.namesrvConfig.getMetricsExporterPort());
+            this.metricsHttpServer.start();
+        }
     }
 
     public void shutdown() {
+        if (this.metricsHttpServer != null) {
+            this.metricsHttpServer.shutdown();
+        }
         this.remotingServer.shutdown();
         this.remotingExecutor.shutdown();
         this.scheduledExecutorService.shutdown();
@@ -194,6 +209,14 @@ public class NamesrvController {
         this.remotingServer = remotingServer;
     }
 
+    public ExecutorService getRemotingExecutor() {
+        return remotingExecutor;
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
     public Configuration getConfiguration() {
         return configuration;
     }
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.namesrv.metrics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.apache.rocketmq.common.metrics.MetricsCollector;
+import org.apache.rocketmq.common.metrics.MetricsWriter;
+import org.apache.rocketmq.namesrv.NamesrvController;
+
+/**
+ * Metrics of the name server: the routes it keeps and the requests waiting to be processed.
+ */
+public class NamesrvMetricsCollector implements MetricsCollector {
+    private final NamesrvController namesrvController;
+
+    public NamesrvMetricsCollector(NamesrvController namesrvController) {
+        this.namesrvController = namesrvController;
+    }
+
+    @Override
+    public void collect(MetricsWriter writer) {
+        writer.gauge("rocketmq_namesrv_brokers_live", "Brokers registered and alive",
+            this.namesrvController.getRouteInfoManager().getBrokerLiveCount());
+        writer.gauge("rocketmq_namesrv_topics", "Topics routed",
+            this.namesrvController.getRouteInfoManager().getTopicCount());
+
+        ExecutorService remotingExecutor = this.namesrvController.getRemotingExecutor();
+        if (remotingExecutor instanceof ThreadPoolExecutor) {
+            writer.gauge("rocketmq_namesrv_thread_pool_queue_size", "Requests waiting in the queue of the thread pool",
+                ((ThreadPoolExecutor) remotingExecutor).getQueue().size());
+        }
+    }
+}
@@ -94,6 +94,8 @@ public class DefaultRequestProcessor implements NettyRequestProcessor {
                 } else {
                     return this.registerBroker(ctx, request);
                 }
+            case RequestCode.REGISTER_BROKER_DELTA:
+                return this.registerBrokerDelta(ctx, request);
             case RequestCode.UNREGISTER_BROKER:
                 return this.unregisterBroker(ctx, request);
             case RequestCode.GET_ROUTEINTO_BY_TOPIC:
@@ -237,6 +239,66 @@ public class DefaultRequestProcessor implements NettyRequestProcessor {
         return response;
     }
 
+    public RemotingCommand registerBrokerDelta(ChannelHandlerContext ctx, RemotingCommand request)
+        throws RemotingCommandException {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(RegisterBrokerResponseHeader.class);
+        final RegisterBrokerResponseHeader responseHeader = (RegisterBrokerResponseHeader) response.readCustomHeader();
+        final RegisterBrokerRequestHeader requestHeader =
+            (RegisterBrokerRequestHeader) request.decodeCommandCustomHeader(RegisterBrokerRequestHeader.class);
+
+        if (!checksum(ctx, request, requestHeader)) {
+            response.setCode(ResponseCode.SYSTEM_ERROR);
+            response.setRemark("crc32 not match");
+            return response;
+        }
+
+        if (null == request.getBody()
+            || null == requestHeader.getBaseDataVersionTimestamp()
+            || null == requestHeader.getBaseDataVersionCounter()) {
+            response.setCode(ResponseCode.DATA_VERSION_NOT_MATCH);
+            response.setRemark("no base data version");
+            return response;
+        }
+
+        RegisterBrokerBody registerBrokerBody;
+        try {
+            registerBrokerBody = RegisterBrokerBody.decode(request.getBody(), requestHeader.isCompressed());
+        } catch (Exception e) {
+            throw new RemotingCommandException("Failed to decode RegisterBrokerBody", e);
+        }
+
+        DataVersion baseDataVersion = new DataVersion();
+        baseDataVersion.setTimestamp(requestHeader.getBaseDataVersionTimestamp());
+        baseDataVersion.setCounter(new AtomicLong(requestHeader.getBaseDataVersionCounter()));
+
+        RegisterBrokerResult result = this.namesrvController.getRouteInfoManager().registerBrokerDelta(
+            requestHeader.getClusterName(),
+            requestHeader.getBrokerAddr(),
+            requestHeader.getBrokerName(),
+            requestHeader.getBrokerId(),
+            requestHeader.getHaServerAddr(),
+            baseDataVersion,
+            registerBrokerBody.getTopicConfigSerializeWrapper(),
+            registerBrokerBody.getFilterServerList(),
+            ctx.channel());
+
+        if (null == result) {
+            response.setCode(ResponseCode.DATA_VERSION_NOT_MATCH);
+            response.setRemark("base data version " + baseDataVersion + " not match, register in full");
+            return response;
+        }
+
+        responseHeader.setHaServerAddr(result.getHaServerAddr());
+        responseHeader.setMasterAddr(result.getMasterAddr());
+
+        byte[] jsonValue = this.namesrvController.getKvConfigManager().getKVListByNamespace(NamesrvUtil.NAMESPACE_ORDER_TOPIC_CONFIG);
+        response.setBody(jsonValue);
+
+        response.setCode(ResponseCode.SUCCESS);
+        response.setRemark(null);
+        return response;
+    }
+
     private boolean checksum(ChannelHandlerContext ctx, RemotingCommand request,
         RegisterBrokerRequestHeader requestHeader) {
         if (requestHeader.getBodyCrc32() != 0) {
@@ -70,6 +70,36 @@ public class RouteInfoManager {
         return clusterInfoSerializeWrapper.encode();
     }
 
+    public int getTopicCount() {
+        try {
+            try {
+                this.lock.readLock().lockInterruptibly();
+                return this.topicQueueTable.size();
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        } catch (Exception e) {
+            log.error("getTopicCount Exception", e);
+        }
+
+        return 0;
+    }
+
+    public int getBrokerLiveCount() {
+        try {
+            try {
+                this.lock.readLock().lockInterruptibly();
+                return this.brokerLiveTable.size();
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        } catch (Exception e) {
+            log.error("getBrokerLiveCount Exception", e);
+        }
+
+        return 0;
+    }
+
     public void deleteTopic(final String topic) {
         try {
             try {
@@ -166,34 +196,106 @@ public class RouteInfoManager {
                     log.info("new broker registered, {} HAServer: {}", brokerAddr, haServerAddr);
                 }
 
-                if (filterServerList != null) {
-                    if (filterServerList.isEmpty()) {
-                        this.filterServerTable.remove(brokerAddr);
-                    } else {
-                        this.filterServerTable.put(brokerAddr, filterServerList);
-                    }
+                this.updateFilterServerList(brokerAddr, filterServerList);
+                this.fillMasterAddr(result, brokerData, brokerId);
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            log.error("registerBroker Exception", e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Register the topic configs of a broker changed since {@code baseDataVersion}.
+     * <p>
+     * The delta is only applied if the broker is registered with the base data version, either as its current data
+     * version or as the base of the delta applied last, as deltas are cumulative since the version the broker got
+     * acknowledged.
+     *
+     * @return null if the broker has to register in full
+     */
+    public RegisterBrokerResult registerBrokerDelta(
+        final String clusterName,
+        final String brokerAddr,
+        final String brokerName,
+        final long brokerId,
+        final String haServerAddr,
+        final DataVersion baseDataVersion,
+        final TopicConfigSerializeWrapper topicConfigWrapper,
+        final List<String> filterServerList,
+        final Channel channel) {
+        RegisterBrokerResult result = null;
+        try {
+            try {
+                this.lock.writeLock().lockInterruptibly();
+
+                Set<String> brokerNames = this.clusterAddrTable.get(clusterName);
+                BrokerData brokerData = this.brokerAddrTable.get(brokerName);
+                BrokerLiveInfo prevBrokerLiveInfo = this.brokerLiveTable.get(brokerAddr);
+                if (null == brokerNames || !brokerNames.contains(brokerName)
+                    || null == brokerData || !brokerAddr.equals(brokerData.getBrokerAddrs().get(brokerId))
+                    || null == prevBrokerLiveInfo
+                    || !baseDataVersion.equals(prevBrokerLiveInfo.getDataVersion())
+                    && !baseDataVersion.equals(prevBrokerLiveInfo.getDeltaBaseDataVersion())) {
+                    log.info("delta registration of broker {} based on {} does not match, expect a full one",
+                        brokerAddr, baseDataVersion);
+                    return null;
                 }
 
-                if (MixAll.MASTER_ID != brokerId) {
-                    String masterAddr = brokerData.getBrokerAddrs().get(MixAll.MASTER_ID);
-                    if (masterAddr != null) {
-                        BrokerLiveInfo brokerLiveInfo = this.brokerLiveTable.get(masterAddr);
-                        if (brokerLiveInfo != null) {
-                            result.setHaServerAddr(brokerLiveInfo.getHaServerAddr());
-                            result.setMasterAddr(masterAddr);
-                        }
+                ConcurrentMap<String, TopicConfig> tcTable = topicConfigWrapper.getTopicConfigTable();
+                if (MixAll.MASTER_ID == brokerId && tcTable != null) {
+                    for (Map.Entry<String, TopicConfig> entry : tcTable.entrySet()) {
+                        this.createAndUpdateQueueData(brokerName, entry.getValue());
                     }
                 }
+
+                BrokerLiveInfo brokerLiveInfo = new BrokerLiveInfo(
+                    System.currentTimeMillis(),
+                    topicConfigWrapper.getDataVersion(),
+                    channel,
+                    haServerAddr);
+                brokerLiveInfo.setDeltaBaseDataVersion(baseDataVersion);
+                this.brokerLiveTable.put(brokerAddr, brokerLiveInfo);
+
+                this.updateFilterServerList(brokerAddr, filterServerList);
+                result = new RegisterBrokerResult();
+                this.fillMasterAddr(result, brokerData, brokerId);
             } finally {
                 this.lock.writeLock().unlock();
             }
         } catch (Exception e) {
-            log.error("registerBroker Exception", e);
+            log.error("registerBrokerDelta Exception", e);
         }
 
         return result;
     }
 
+    private void updateFilterServerList(final String brokerAddr, final List<String> filterServerList) {
+        if (filterServerList != null) {
+            if (filterServerList.isEmpty()) {
+                this.filterServerTable.remove(brokerAddr);
+            } else {
+                this.filterServerTable.put(brokerAddr, filterServerList);
+            }
+        }
+    }
+
+    private void fillMasterAddr(final RegisterBrokerResult result, final BrokerData brokerData, final long brokerId) {
+        if (MixAll.MASTER_ID != brokerId) {
+            String masterAddr = brokerData.getBrokerAddrs().get(MixAll.MASTER_ID);
+            if (masterAddr != null) {
+                BrokerLiveInfo brokerLiveInfo = this.brokerLiveTable.get(masterAddr);
+                if (brokerLiveInfo != null) {
+                    result.setHaServerAddr(brokerLiveInfo.getHaServerAddr());
+                    result.setMasterAddr(masterAddr);
+                }
+            }
+        }
+    }
+
     public boolean isBrokerTopicConfigChanged(final String brokerAddr, final DataVersion dataVersion) {
         DataVersion prev = queryBrokerTopicConfig(brokerAddr);
         return null == prev || !prev.equals(dataVersion);
@@ -755,6 +857,7 @@ public class RouteInfoManager {
 class BrokerLiveInfo {
     private long lastUpdateTimestamp;
     private DataVersion dataVersion;
+    private DataVersion deltaBaseDataVersion;
     private Channel channel;
     private String haServerAddr;
 
@@ -782,6 +885,14 @@ class BrokerLiveInfo {
         this.dataVersion = dataVersion;
     }
 
+    public DataVersion getDeltaBaseDataVersion() {
+        return deltaBaseDataVersion;
+    }
+
+    public void setDeltaBaseDataVersion(DataVersion deltaBaseDataVersion) {
+        this.deltaBaseDataVersion = deltaBaseDataVersion;
+    }
+
     public Channel getChannel() {
         return channel;
     }
@@ -19,6 +19,7 @@ package org.apache.rocketmq.namesrv.routeinfo;
 import io.netty.channel.Channel;
 import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
+import org.apache.rocketmq.common.DataVersion;
 import org.apache.rocketmq.common.TopicConfig;
 import org.apache.rocketmq.common.namesrv.RegisterBrokerResult;
 import org.apache.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
@@ -78,6 +79,38 @@ public class RouteInfoManagerTest {
         assertThat(registerBrokerResult).isNotNull();
     }
 
+    @Test
+    public void testRegisterBrokerDelta() {
+        TopicConfigSerializeWrapper topicConfigWrapper = new TopicConfigSerializeWrapper();
+        topicConfigWrapper.getTopicConfigTable().put("delta-a", new TopicConfig("delta-a", 4, 4, 6));
+        DataVersion baseDataVersion = new DataVersion();
+        baseDataVersion.assignNewOne(topicConfigWrapper.getDataVersion());
+        Channel channel = mock(Channel.class);
+        routeInfoManager.registerBroker("default-cluster", "127.0.0.1:10921", "delta-broker", 0, "127.0.0.1:10922",
+            topicConfigWrapper, null, channel);
+
+        TopicConfigSerializeWrapper deltaWrapper = new TopicConfigSerializeWrapper();
+        deltaWrapper.getTopicConfigTable().put("delta-b", new TopicConfig("delta-b", 8, 8, 6));
+        deltaWrapper.getDataVersion().assignNewOne(baseDataVersion);
+        deltaWrapper.getDataVersion().nextVersion();
+        assertThat(routeInfoManager.registerBrokerDelta("default-cluster", "127.0.0.1:10921", "delta-broker", 0,
+            "127.0.0.1:10922", baseDataVersion, deltaWrapper, null, channel)).isNotNull();
+        assertThat(routeInfoManager.pickupTopicRouteData("delta-a")).isNotNull();
+        assertThat(routeInfoManager.pickupTopicRouteData("delta-b").getQueueDatas().get(0).getReadQueueNums()).isEqualTo(8);
+
+        // a delta cumulative since the same base is applied again, one on an unknown base is rejected
+        deltaWrapper.getTopicConfigTable().put("delta-c", new TopicConfig("delta-c", 2, 2, 6));
+        assertThat(routeInfoManager.registerBrokerDelta("default-cluster", "127.0.0.1:10921", "delta-broker", 0,
+            "127.0.0.1:10922", baseDataVersion, deltaWrapper, null, channel)).isNotNull();
+        assertThat(routeInfoManager.pickupTopicRouteData("delta-c")).isNotNull();
+        assertThat(routeInfoManager.registerBrokerDelta("default-cluster", "127.0.0.1:10921", "delta-broker", 0,
+            "127.0.0.1:10922", new DataVersion(), deltaWrapper, null, channel)).isNull();
+
+        routeInfoManager.unregisterBroker("default-cluster", "127.0.0.1:10921", "delta-broker", 0);
+        assertThat(routeInfoManager.registerBrokerDelta("default-cluster", "127.0.0.1:10921", "delta-broker", 0,
+            "127.0.0.1:10922", deltaWrapper.getDataVersion(), deltaWrapper, null, channel)).isNull();
+    }
+
     @Test
     public void testWipeWritePermOfBrokerByLock() {
         int result = routeInfoManager.wipeWritePermOfBrokerByLock("default-broker");
@@ -200,23 +200,33 @@ public abstract class NettyRemotingAbstract {
                 public void run() {
                     try {
                         doBeforeRpcHooks(RemotingHelper.parseChannelRemoteAddr(ctx.channel()), cmd);
-                        final RemotingCommand response = pair.getObject1().processRequest(ctx, cmd);
-                        doAfterRpcHooks(RemotingHelper.parseChannelRemoteAddr(ctx.channel()), cmd, response);
-
-                        if (!cmd.isOnewayRPC()) {
-                            if (response != null) {
-                                response.setOpaque(opaque);
-                                response.markResponseType();
-                                try {
-                                    ctx.writeAndFlush(response);
-                                } catch (Throwable e) {
-                                    log.error("process request over, but response failed", e);
-                                    log.error(cmd.toString());
-                                    log.error(response.toString());
+                        final RemotingResponseCallback callback = new RemotingResponseCallback() {
+                            @Override
+                            public void callback(RemotingCommand response) {
+                                doAfterRpcHooks(RemotingHelper.parseChannelRemoteAddr(ctx.channel()), cmd, response);
+                                if (!cmd.isOnewayRPC()) {
+                                    if (response != null) {
+                                        response.setOpaque(opaque);
+                                        response.markResponseType();
+                                        try {
+                                            ctx.writeAndFlush(response);
+                                        } catch (Throwable e) {
+                                            log.error("process request over, but response failed", e);
+                                            log.error(cmd.toString());
+                                            log.error(response.toString());
+                                        }
+                                    } else {
+                                    }
                                 }
-                            } else {
-
                             }
+                        };
+                        if (pair.getObject1() instanceof AsyncNettyRequestProcessor) {
+                            AsyncNettyRequestProcessor processor = (AsyncNettyRequestProcessor) pair.getObject1();
+                            processor.asyncProcessRequest(ctx, cmd, callback);
+                        } else {
+                            NettyRequestProcessor processor = pair.getObject1();
+                            RemotingCommand response = processor.processRequest(ctx, cmd);
+                            callback.callback(response);
                         }
                     } catch (Throwable e) {
                         log.error("process request exception", e);
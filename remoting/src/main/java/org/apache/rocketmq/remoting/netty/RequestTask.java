@@ -62,6 +62,10 @@ public class RequestTask implements Runnable {
 
     }
 
+    public RemotingCommand getRequest() {
+        return request;
+    }
+
     public long getCreateTimestamp() {
         return createTimestamp;
     }
@@ -22,13 +22,18 @@ import java.io.RandomAccessFile;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
@@ -57,6 +62,7 @@ import org.apache.rocketmq.store.ha.HAService;
 import org.apache.rocketmq.store.index.IndexService;
 import org.apache.rocketmq.store.index.QueryOffsetResult;
 import org.apache.rocketmq.store.schedule.ScheduleMessageService;
+import org.apache.rocketmq.store.timer.TimerMessageStore;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
 
 public class DefaultMessageStore implements MessageStore {
@@ -84,6 +90,8 @@ public class DefaultMessageStore implements MessageStore {
 
     private final ScheduleMessageService scheduleMessageService;
 
+    private final TimerMessageStore timerMessageStore;
+
     private final StoreStatsService storeStatsService;
 
     private final TransientStorePool transientStorePool;
@@ -139,6 +147,12 @@ public class DefaultMessageStore implements MessageStore {
 
         this.scheduleMessageService = new ScheduleMessageService(this);
 
+        if (messageStoreConfig.isTimerWheelEnable()) {
+            this.timerMessageStore = new TimerMessageStore(this);
+        } else {
+            this.timerMessageStore = null;
+        }
+
         this.transientStorePool = new TransientStorePool(messageStoreConfig);
 
         if (messageStoreConfig.isTransientStorePoolEnable()) {
@@ -182,6 +196,10 @@ public class DefaultMessageStore implements MessageStore {
                 result = result && this.scheduleMessageService.load();
             }
 
+            if (null != timerMessageStore) {
+                result = result && this.timerMessageStore.load();
+            }
+
             // load Commit Log
             result = result && this.commitLog.load();
 
@@ -303,6 +321,10 @@ public class DefaultMessageStore implements MessageStore {
             if (this.scheduleMessageService != null) {
                 this.scheduleMessageService.shutdown();
             }
+            if (this.timerMessageStore != null) {
+                this.timerMessageStore.shutdown();
+                this.timerMessageStore.close();
+            }
             if (this.haService != null) {
                 this.haService.shutdown();
             }
@@ -339,6 +361,9 @@ public class DefaultMessageStore implements MessageStore {
         this.destroyLogics();
         this.commitLog.destroy();
         this.indexService.destroy();
+        if (this.timerMessageStore != null) {
+            this.timerMessageStore.destroy();
+        }
         this.deleteFile(StorePathConfigHelper.getAbortFile(this.messageStoreConfig.getStorePathRootDir()));
         this.deleteFile(StorePathConfigHelper.getStoreCheckpoint(this.messageStoreConfig.getStorePathRootDir()));
     }
@@ -352,29 +377,64 @@ public class DefaultMessageStore implements MessageStore {
     }
 
     public PutMessageResult putMessage(MessageExtBrokerInner msg) {
-        if (this.shutdown) {
-            log.warn("message store has shutdown, so putMessage is forbidden");
-            return new PutMessageResult(PutMessageStatus.SERVICE_NOT_AVAILABLE, null);
+        PutMessageResult checkResult = this.checkBeforePutMessage(msg);
+        if (checkResult != null) {
+            return checkResult;
         }
 
-        if (BrokerRole.SLAVE == this.messageStoreConfig.getBrokerRole()) {
-            long value = this.printTimes.getAndIncrement();
-            if ((value % 50000) == 0) {
-                log.warn("message store is slave mode, so putMessage is forbidden ");
-            }
+        long beginTime = this.getSystemClock().now();
+        PutMessageResult result = this.commitLog.putMessage(msg);
+        this.recordPutMessageResult(result, beginTime, msg.getBody());
+        return result;
+    }
 
-            return new PutMessageResult(PutMessageStatus.SERVICE_NOT_AVAILABLE, null);
+    @Override
+    public CompletableFuture<PutMessageResult> asyncPutMessage(MessageExtBrokerInner msg) {
+        PutMessageResult checkResult = this.checkBeforePutMessage(msg);
+        if (checkResult != null) {
+            return CompletableFuture.completedFuture(checkResult);
         }
 
-        if (!this.runningFlags.isWriteable()) {
-            long value = this.printTimes.getAndIncrement();
-            if ((value % 50000) == 0) {
-                log.warn("message store is not writeable, so putMessage is forbidden " + this.runningFlags.getFlagBits());
-            }
+        final long beginTime = this.getSystemClock().now();
+        return this.commitLog.asyncPutMessage(msg).thenApply(result -> {
+            this.recordPutMessageResult(result, beginTime, msg.getBody());
+            return result;
+        });
+    }
 
-            return new PutMessageResult(PutMessageStatus.SERVICE_NOT_AVAILABLE, null);
-        } else {
-            this.printTimes.set(0);
+    public PutMessageResult putMessages(MessageExtBatch messageExtBatch) {
+        PutMessageResult checkResult = this.checkBeforePutMessages(messageExtBatch);
+        if (checkResult != null) {
+            return checkResult;
+        }
+
+        long beginTime = this.getSystemClock().now();
+        PutMessageResult result = this.commitLog.putMessages(messageExtBatch);
+        this.recordPutMessageResult(result, beginTime, messageExtBatch.getBody());
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<PutMessageResult> asyncPutMessages(MessageExtBatch messageExtBatch) {
+        PutMessageResult checkResult = this.checkBeforePutMessages(messageExtBatch);
+        if (checkResult != null) {
+            return CompletableFuture.completedFuture(checkResult);
+        }
+
+        final long beginTime = this.getSystemClock().now();
+        return this.commitLog.asyncPutMessages(messageExtBatch).thenApply(result -> {
+            this.recordPutMessageResult(result, beginTime, messageExtBatch.getBody());
+            return result;
+        });
+    }
+
+    /**
+     * @return the result to reject the message with, or null if it can be put
+     */
+    private PutMessageResult checkBeforePutMessage(MessageExtBrokerInner msg) {
+        PutMessageResult storeStatus = this.checkStoreStatus();
+        if (storeStatus != null) {
+            return storeStatus;
         }
 
         if (msg.getTopic().length() > Byte.MAX_VALUE) {
@@ -391,32 +451,45 @@ public class DefaultMessageStore implements MessageStore {
             return new PutMessageResult(PutMessageStatus.OS_PAGECACHE_BUSY, null);
         }
 
-        long beginTime = this.getSystemClock().now();
-        PutMessageResult result = this.commitLog.putMessage(msg);
+        if (this.timerMessageStore != null && TimerMessageStore.isTimerMessage(msg)
+            && !this.timerMessageStore.transformTimerMessage(msg)) {
+            return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
+        }
+        return null;
+    }
 
-        long elapsedTime = this.getSystemClock().now() - beginTime;
-        if (elapsedTime > 500) {
-            log.warn("putMessage not in lock elapsed time(ms)={}, bodyLength={}", elapsedTime, msg.getBody().length);
+    private PutMessageResult checkBeforePutMessages(MessageExtBatch messageExtBatch) {
+        PutMessageResult storeStatus = this.checkStoreStatus();
+        if (storeStatus != null) {
+            return storeStatus;
         }
-        this.storeStatsService.setPutMessageEntireTimeMax(elapsedTime);
 
-        if (null == result || !result.isOk()) {
-            this.storeStatsService.getPutMessageFailedTimes().incrementAndGet();
+        if (messageExtBatch.getTopic().length() > Byte.MAX_VALUE) {
+            log.warn("PutMessages topic length too long " + messageExtBatch.getTopic().length());
+            return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
         }
 
-        return result;
+        if (messageExtBatch.getBody().length > messageStoreConfig.getMaxMessageSize()) {
+            log.warn("PutMessages body length too long " + messageExtBatch.getBody().length);
+            return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
+        }
+
+        if (this.isOSPageCacheBusy()) {
+            return new PutMessageResult(PutMessageStatus.OS_PAGECACHE_BUSY, null);
+        }
+        return null;
     }
 
-    public PutMessageResult putMessages(MessageExtBatch messageExtBatch) {
+    private PutMessageResult checkStoreStatus() {
         if (this.shutdown) {
-            log.warn("DefaultMessageStore has shutdown, so putMessages is forbidden");
+            log.warn("message store has shutdown, so putMessage is forbidden");
             return new PutMessageResult(PutMessageStatus.SERVICE_NOT_AVAILABLE, null);
         }
 
         if (BrokerRole.SLAVE == this.messageStoreConfig.getBrokerRole()) {
             long value = this.printTimes.getAndIncrement();
             if ((value % 50000) == 0) {
-                log.warn("DefaultMessageStore is in slave mode, so putMessages is forbidden ");
+                log.warn("message store is slave mode, so putMessage is forbidden ");
             }
 
             return new PutMessageResult(PutMessageStatus.SERVICE_NOT_AVAILABLE, null);
@@ -425,42 +498,26 @@ public class DefaultMessageStore implements MessageStore {
         if (!this.runningFlags.isWriteable()) {
             long value = this.printTimes.getAndIncrement();
             if ((value % 50000) == 0) {
-                log.warn("DefaultMessageStore is not writable, so putMessages is forbidden " + this.runningFlags.getFlagBits());
+                log.warn("message store is not writeable, so putMessage is forbidden " + this.runningFlags.getFlagBits());
             }
 
             return new PutMessageResult(PutMessageStatus.SERVICE_NOT_AVAILABLE, null);
         } else {
             this.printTimes.set(0);
         }
+        return null;
+    }
 
-        if (messageExtBatch.getTopic().length() > Byte.MAX_VALUE) {
-            log.warn("PutMessages topic length too long " + messageExtBatch.getTopic().length());
-            return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
-        }
-
-        if (messageExtBatch.getBody().length > messageStoreConfig.getMaxMessageSize()) {
-            log.warn("PutMessages body length too long " + messageExtBatch.getBody().length);
-            return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
-        }
-
-        if (this.isOSPageCacheBusy()) {
-            return new PutMessageResult(PutMessageStatus.OS_PAGECACHE_BUSY, null);
-        }
-
-        long beginTime = this.getSystemClock().now();
-        PutMessageResult result = this.commitLog.putMessages(messageExtBatch);
-
+    private void recordPutMessageResult(PutMessageResult result, long beginTime, byte[] body) {
         long elapsedTime = this.getSystemClock().now() - beginTime;
         if (elapsedTime > 500) {
-            log.warn("not in lock elapsed time(ms)={}, bodyLength={}", elapsedTime, messageExtBatch.getBody().length);
+            log.warn("putMessage not in lock elapsed time(ms)={}, bodyLength={}", elapsedTime, body.length);
         }
         this.storeStatsService.setPutMessageEntireTimeMax(elapsedTime);
 
         if (null == result || !result.isOk()) {
             this.storeStatsService.getPutMessageFailedTimes().incrementAndGet();
         }
-
-        return result;
     }
 
     @Override
@@ -762,6 +819,18 @@ public class DefaultMessageStore implements MessageStore {
             }
         }
 
+        {
+            if (this.timerMessageStore != null) {
+                this.timerMessageStore.buildRunningStats(result);
+            }
+        }
+
+        {
+            if (this.haService != null) {
+                this.haService.buildRunningStats(result);
+            }
+        }
+
         result.put(RunningStats.commitLogMinOffset.name(), String.valueOf(DefaultMessageStore.this.getMinPhyOffset()));
         result.put(RunningStats.commitLogMaxOffset.name(), String.valueOf(DefaultMessageStore.this.getMaxPhyOffset()));
 
@@ -954,7 +1023,8 @@ public class DefaultMessageStore implements MessageStore {
             Entry<String, ConcurrentMap<Integer, ConsumeQueue>> next = it.next();
             String topic = next.getKey();
 
-            if (!topics.contains(topic) && !topic.equals(ScheduleMessageService.SCHEDULE_TOPIC)) {
+            if (!topics.contains(topic) && !topic.equals(ScheduleMessageService.SCHEDULE_TOPIC)
+                && !topic.equals(TimerMessageStore.TIMER_TOPIC)) {
                 ConcurrentMap<Integer, ConsumeQueue> queueTable = next.getValue();
                 for (ConsumeQueue cq : queueTable.values()) {
                     cq.destroy();
@@ -981,7 +1051,7 @@ public class DefaultMessageStore implements MessageStore {
         while (it.hasNext()) {
             Entry<String, ConcurrentMap<Integer, ConsumeQueue>> next = it.next();
             String topic = next.getKey();
-            if (!topic.equals(ScheduleMessageService.SCHEDULE_TOPIC)) {
+            if (!topic.equals(ScheduleMessageService.SCHEDULE_TOPIC) && !topic.equals(TimerMessageStore.TIMER_TOPIC)) {
                 ConcurrentMap<Integer, ConsumeQueue> queueTable = next.getValue();
                 Iterator<Entry<Integer, ConsumeQueue>> itQT = queueTable.entrySet().iterator();
                 while (itQT.hasNext()) {
@@ -1412,6 +1482,10 @@ public class DefaultMessageStore implements MessageStore {
         return scheduleMessageService;
     }
 
+    public TimerMessageStore getTimerMessageStore() {
+        return timerMessageStore;
+    }
+
     public RunningFlags getRunningFlags() {
         return runningFlags;
     }
@@ -1442,6 +1516,13 @@ public class DefaultMessageStore implements MessageStore {
             }
         }
 
+        if (this.timerMessageStore != null) {
+            if (brokerRole == BrokerRole.SLAVE) {
+                this.timerMessageStore.shutdown();
+            } else {
+                this.timerMessageStore.start();
+            }
+        }
     }
 
     public int remainTransientStoreBufferNumbs() {
@@ -1776,6 +1857,12 @@ public class DefaultMessageStore implements MessageStore {
 
         private volatile long reputFromOffset = 0;
 
+        /**
+         * Arrivals of the current batch, notified once per queue and filter data when the batch is dispatched.
+         */
+        private final Map<String/* topic */, Map<Integer/* queueId */, List<ArrivingNotice>>> arrivingTable =
+            new HashMap<String, Map<Integer, List<ArrivingNotice>>>();
+
         public long getReputFromOffset() {
             return reputFromOffset;
         }
@@ -1838,10 +1925,7 @@ public class DefaultMessageStore implements MessageStore {
 
                                     if (BrokerRole.SLAVE != DefaultMessageStore.this.getMessageStoreConfig().getBrokerRole()
                                         && DefaultMessageStore.this.brokerConfig.isLongPollingEnable()) {
-                                        DefaultMessageStore.this.messageArrivingListener.arriving(dispatchRequest.getTopic(),
-                                            dispatchRequest.getQueueId(), dispatchRequest.getConsumeQueueOffset() + 1,
-                                            dispatchRequest.getTagsCode(), dispatchRequest.getStoreTimestamp(),
-                                            dispatchRequest.getBitMap(), dispatchRequest.getPropertiesMap());
+                                        this.addArriving(dispatchRequest);
                                     }
 
                                     this.reputFromOffset += size;
@@ -1876,6 +1960,7 @@ public class DefaultMessageStore implements MessageStore {
                             }
                         }
                     } finally {
+                        this.notifyArriving();
                         result.release();
                     }
                 } else {
@@ -1884,6 +1969,49 @@ public class DefaultMessageStore implements MessageStore {
             }
         }
 
+        private void addArriving(final DispatchRequest dispatchRequest) {
+            Map<Integer, List<ArrivingNotice>> queueTable = this.arrivingTable.get(dispatchRequest.getTopic());
+            if (null == queueTable) {
+                queueTable = new HashMap<Integer, List<ArrivingNotice>>();
+                this.arrivingTable.put(dispatchRequest.getTopic(), queueTable);
+            }
+            List<ArrivingNotice> notices = queueTable.get(dispatchRequest.getQueueId());
+            if (null == notices) {
+                notices = new ArrayList<ArrivingNotice>(2);
+                queueTable.put(dispatchRequest.getQueueId(), notices);
+            }
+
+            // properties are only matched by SQL92 filters
+            Map<String, String> propertiesMap =
+                DefaultMessageStore.this.brokerConfig.isEnablePropertyFilter() ? dispatchRequest.getPropertiesMap() : null;
+            for (int i = notices.size() - 1; i >= Math.max(0, notices.size() - ArrivingNotice.MAX_MERGE_CANDIDATES); i--) {
+                if (notices.get(i).merge(dispatchRequest, propertiesMap)) {
+                    return;
+                }
+            }
+            notices.add(new ArrivingNotice(dispatchRequest, propertiesMap));
+        }
+
+        private void notifyArriving() {
+            if (this.arrivingTable.isEmpty()) {
+                return;
+            }
+            for (Map.Entry<String, Map<Integer, List<ArrivingNotice>>> topicEntry : this.arrivingTable.entrySet()) {
+                for (Map.Entry<Integer, List<ArrivingNotice>> queueEntry : topicEntry.getValue().entrySet()) {
+                    for (ArrivingNotice notice : queueEntry.getValue()) {
+                        try {
+                            DefaultMessageStore.this.messageArrivingListener.arriving(topicEntry.getKey(), queueEntry.getKey(),
+                                notice.getMaxOffset(), notice.getTagsCode(), notice.getStoreTimestamp(),
+                                notice.getBitMap(), notice.getPropertiesMap());
+                        } catch (Throwable e) {
+                            log.warn("notify message arriving failed, topic={} queueId={}", topicEntry.getKey(), queueEntry.getKey(), e);
+                        }
+                    }
+                }
+            }
+            this.arrivingTable.clear();
+        }
+
         @Override
         public void run() {
             DefaultMessageStore.log.info(this.getServiceName() + " service started");
@@ -1906,4 +2034,62 @@ public class DefaultMessageStore implements MessageStore {
         }
 
     }
+
+    /**
+     * Coalesced arrivals of one queue the suspended requests match alike, i.e. with the same tags code, filter bit map
+     * and properties, notified once with the max offset.
+     */
+    static class ArrivingNotice {
+        /**
+         * Notices of a queue an arrival is tried to be merged into, the latest ones.
+         */
+        static final int MAX_MERGE_CANDIDATES = 16;
+
+        private final long tagsCode;
+        private final byte[] bitMap;
+        private final Map<String, String> propertiesMap;
+        private long maxOffset;
+        private long storeTimestamp;
+
+        ArrivingNotice(final DispatchRequest dispatchRequest, final Map<String, String> propertiesMap) {
+            this.tagsCode = dispatchRequest.getTagsCode();
+            this.bitMap = dispatchRequest.getBitMap();
+            this.propertiesMap = propertiesMap;
+            this.maxOffset = dispatchRequest.getConsumeQueueOffset() + 1;
+            this.storeTimestamp = dispatchRequest.getStoreTimestamp();
+        }
+
+        /**
+         * @return false if the arrival has other filter data, it is not merged then
+         */
+        boolean merge(final DispatchRequest dispatchRequest, final Map<String, String> propertiesMap) {
+            if (this.tagsCode != dispatchRequest.getTagsCode() || !Arrays.equals(this.bitMap, dispatchRequest.getBitMap())
+                || !Objects.equals(this.propertiesMap, propertiesMap)) {
+                return false;
+            }
+            this.maxOffset = Math.max(this.maxOffset, dispatchRequest.getConsumeQueueOffset() + 1);
+            this.storeTimestamp = dispatchRequest.getStoreTimestamp();
+            return true;
+        }
+
+        long getMaxOffset() {
+            return maxOffset;
+        }
+
+        long getStoreTimestamp() {
+            return storeTimestamp;
+        }
+
+        long getTagsCode() {
+            return tagsCode;
+        }
+
+        byte[] getBitMap() {
+            return bitMap;
+        }
+
+        Map<String, String> getPropertiesMap() {
+            return propertiesMap;
+        }
+    }
 }
@@ -422,6 +422,28 @@ public class MappedFileQueue {
         return deleteCount;
     }
 
+    /**
+     * Delete the files lying wholly before the given offset, the last file is always kept.
+     */
+    public int deleteExpiredFileBeforeOffset(final long offset, final long intervalForcibly) {
+        Object[] mfs = this.copyMappedFiles(0);
+
+        List<MappedFile> files = new ArrayList<MappedFile>();
+        if (null != mfs) {
+            for (int i = 0; i < mfs.length - 1; i++) {
+                MappedFile mappedFile = (MappedFile) mfs[i];
+                if (mappedFile.getFileFromOffset() + this.mappedFileSize > offset || !mappedFile.destroy(intervalForcibly)) {
+                    break;
+                }
+                files.add(mappedFile);
+            }
+        }
+
+        deleteExpiredFile(files);
+
+        return files.size();
+    }
+
     public boolean flush(final int flushLeastPages) {
         boolean result = true;
         MappedFile mappedFile = this.findMappedFileByOffset(this.flushedWhere, this.flushedWhere == 0);
@@ -51,6 +51,9 @@ public class StoreStatsService extends ServiceThread {
     private final AtomicLong getMessageTimesTotalFound = new AtomicLong(0);
     private final AtomicLong getMessageTransferedMsgCount = new AtomicLong(0);
     private final AtomicLong getMessageTimesTotalMiss = new AtomicLong(0);
+    private final AtomicLong flushTimesTotal = new AtomicLong(0);
+    private final AtomicLong flushTimeMillisTotal = new AtomicLong(0);
+    private volatile long flushTimeMillisLast = 0;
     private final LinkedList<CallSnapshot> putTimesList = new LinkedList<CallSnapshot>();
 
     private final LinkedList<CallSnapshot> getTimesFoundList = new LinkedList<CallSnapshot>();
@@ -542,6 +545,24 @@ public class StoreStatsService extends ServiceThread {
         return putMessageFailedTimes;
     }
 
+    public void recordFlushTime(final long costMillis) {
+        this.flushTimesTotal.incrementAndGet();
+        this.flushTimeMillisTotal.addAndGet(costMillis);
+        this.flushTimeMillisLast = costMillis;
+    }
+
+    public long getFlushTimesTotal() {
+        return flushTimesTotal.get();
+    }
+
+    public long getFlushTimeMillisTotal() {
+        return flushTimeMillisTotal.get();
+    }
+
+    public long getFlushTimeMillisLast() {
+        return flushTimeMillisLast;
+    }
+
     public AtomicLong getSinglePutMessageTopicSizeTotal(String topic) {
         AtomicLong rs = putMessageTopicSizeTotal.get(topic);
         if (null == rs) {
@@ -121,6 +121,16 @@ public class MessageStoreConfig {
     @ImportantField
     private String haMasterAddress = null;
     private int haSlaveFallbehindMax = 1024 * 1024 * 256;
+    /**
+     * Number of slaves that must acknowledge a message before SYNC_MASTER returns to the producer.
+     */
+    private int haSyncReplicaQuorum = 1;
+    /**
+     * Compress the HA transfer stream with LZ4. A master enabling it compresses the stream to every slave, a slave
+     * enabling it accepts a compressed stream and still replicates from a master sending a plain one. So enable it on
+     * all the slaves, upgraded first, before the master; a slave with it off drops a compressing master.
+     */
+    private boolean haTransferCompressEnable = false;
     @ImportantField
     private BrokerRole brokerRole = BrokerRole.ASYNC_MASTER;
     @ImportantField
@@ -128,6 +138,27 @@ public class MessageStoreConfig {
     private int syncFlushTimeout = 1000 * 5;
     private String messageDelayLevel = "1s 5s 10s 30s 1m 2m 3m 4m 5m 6m 7m 8m 9m 10m 20m 30m 1h 2h";
     private long flushDelayOffsetInterval = 1000 * 10;
+    /**
+     * Threads delivering the due delayed messages, the levels are scheduled and delivered concurrently.
+     */
+    private int scheduleDeliverThreadNum = 4;
+    private int scheduleDeliverBatchSize = 32;
+    /**
+     * Accept messages carrying an arbitrary delivery timestamp and schedule them on the timer wheel.
+     */
+    private boolean timerWheelEnable = false;
+    private int timerPrecisionMs = 1000;
+    /**
+     * Slots of the timer wheel, delays beyond slots * precision are rolled over the wheel again.
+     */
+    private int timerWheelSlots = 2 * 24 * 3600;
+    /**
+     * Capped an hour below fileReservedTime, a message due after its commit log is deleted could not be delivered.
+     */
+    private long timerMaxDelaySec = 2 * 24 * 3600;
+    // TimerLog file size, rounded down to a multiple of the timer unit size
+    private int mappedFileSizeTimerLog = 100 * 1024 * 1024;
+    private int timerDeliverThreadNum = 4;
     @ImportantField
     private boolean cleanFileForciblyEnable = true;
     private boolean warmMapedFileEnable = false;
@@ -147,6 +178,10 @@ public class MessageStoreConfig {
     private String dLegerGroup;
     private String dLegerPeers;
     private String dLegerSelfId;
+    /**
+     * Append the messages of concurrent senders as one dledger entry.
+     */
+    private boolean dLegerCoalescePutEnable = false;
 
     public boolean isDebugLockEnable() {
         return debugLockEnable;
@@ -508,6 +543,22 @@ public class MessageStoreConfig {
         this.haSlaveFallbehindMax = haSlaveFallbehindMax;
     }
 
+    public int getHaSyncReplicaQuorum() {
+        return haSyncReplicaQuorum;
+    }
+
+    public void setHaSyncReplicaQuorum(int haSyncReplicaQuorum) {
+        this.haSyncReplicaQuorum = haSyncReplicaQuorum;
+    }
+
+    public boolean isHaTransferCompressEnable() {
+        return haTransferCompressEnable;
+    }
+
+    public void setHaTransferCompressEnable(boolean haTransferCompressEnable) {
+        this.haTransferCompressEnable = haTransferCompressEnable;
+    }
+
     public FlushDiskType getFlushDiskType() {
         return flushDiskType;
     }
@@ -552,6 +603,70 @@ public class MessageStoreConfig {
         this.flushDelayOffsetInterval = flushDelayOffsetInterval;
     }
 
+    public int getScheduleDeliverThreadNum() {
+        return scheduleDeliverThreadNum;
+    }
+
+    public void setScheduleDeliverThreadNum(int scheduleDeliverThreadNum) {
+        this.scheduleDeliverThreadNum = scheduleDeliverThreadNum;
+    }
+
+    public int getScheduleDeliverBatchSize() {
+        return scheduleDeliverBatchSize;
+    }
+
+    public void setScheduleDeliverBatchSize(int scheduleDeliverBatchSize) {
+        this.scheduleDeliverBatchSize = scheduleDeliverBatchSize;
+    }
+
+    public boolean isTimerWheelEnable() {
+        return timerWheelEnable;
+    }
+
+    public void setTimerWheelEnable(boolean timerWheelEnable) {
+        this.timerWheelEnable = timerWheelEnable;
+    }
+
+    public int getTimerPrecisionMs() {
+        return timerPrecisionMs;
+    }
+
+    public void setTimerPrecisionMs(int timerPrecisionMs) {
+        this.timerPrecisionMs = timerPrecisionMs;
+    }
+
+    public int getTimerWheelSlots() {
+        return timerWheelSlots;
+    }
+
+    public void setTimerWheelSlots(int timerWheelSlots) {
+        this.timerWheelSlots = timerWheelSlots;
+    }
+
+    public long getTimerMaxDelaySec() {
+        return timerMaxDelaySec;
+    }
+
+    public void setTimerMaxDelaySec(long timerMaxDelaySec) {
+        this.timerMaxDelaySec = timerMaxDelaySec;
+    }
+
+    public int getMappedFileSizeTimerLog() {
+        return mappedFileSizeTimerLog;
+    }
+
+    public void setMappedFileSizeTimerLog(int mappedFileSizeTimerLog) {
+        this.mappedFileSizeTimerLog = mappedFileSizeTimerLog;
+    }
+
+    public int getTimerDeliverThreadNum() {
+        return timerDeliverThreadNum;
+    }
+
+    public void setTimerDeliverThreadNum(int timerDeliverThreadNum) {
+        this.timerDeliverThreadNum = timerDeliverThreadNum;
+    }
+
     public boolean isCleanFileForciblyEnable() {
         return cleanFileForciblyEnable;
     }
@@ -695,6 +810,14 @@ public class MessageStoreConfig {
         this.dLegerSelfId = dLegerSelfId;
     }
 
+    public boolean isdLegerCoalescePutEnable() {
+        return dLegerCoalescePutEnable;
+    }
+
+    public void setdLegerCoalescePutEnable(boolean dLegerCoalescePutEnable) {
+        this.dLegerCoalescePutEnable = dLegerCoalescePutEnable;
+    }
+
     public boolean isEnableDLegerCommitLog() {
         return enableDLegerCommitLog;
     }
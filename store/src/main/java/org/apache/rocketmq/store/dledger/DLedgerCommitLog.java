@@ -28,8 +28,14 @@ import io.openmessaging.storage.dledger.store.file.MmapFile;
 import io.openmessaging.storage.dledger.store.file.MmapFileList;
 import io.openmessaging.storage.dledger.store.file.SelectMmapBufferResult;
 import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.message.MessageAccessor;
@@ -71,6 +77,11 @@ public class DLedgerCommitLog extends CommitLog {
 
     private boolean isInrecoveringOldCommitlog = false;
 
+    //Single puts waiting to be appended by whichever sender holds the put lock
+    private final ConcurrentLinkedQueue<CoalescedPut> coalescedPuts = new ConcurrentLinkedQueue<>();
+    //Guarded by putMessageLock, a put which did not fit into the previous entry
+    private CoalescedPut carriedOverPut;
+
     public DLedgerCommitLog(final DefaultMessageStore defaultMessageStore) {
         super(defaultMessageStore);
         dLedgerConfig =  new DLedgerConfig();
@@ -88,8 +99,14 @@ public class DLedgerCommitLog extends CommitLog {
         dLedgerFileStore = (DLedgerMmapFileStore) dLedgerServer.getdLedgerStore();
         DLedgerMmapFileStore.AppendHook appendHook = (entry, buffer, bodyOffset) -> {
             assert bodyOffset == DLedgerEntry.BODY_OFFSET;
-            buffer.position(buffer.position() + bodyOffset + MessageDecoder.PHY_POS_POSITION);
-            buffer.putLong(entry.getPos() + bodyOffset);
+            // An entry may carry several messages, fill in the physical offset of each of them
+            int bodyPos = buffer.position() + bodyOffset;
+            int bodyLength = entry.getBody().length;
+            for (int msgPos = 0; msgPos < bodyLength; ) {
+                int msgLen = buffer.getInt(bodyPos + msgPos);
+                buffer.putLong(bodyPos + msgPos + MessageDecoder.PHY_POS_POSITION, entry.getPos() + bodyOffset + msgPos);
+                msgPos += msgLen;
+            }
         };
         dLedgerFileStore.addAppendHook(appendHook);
         dLedgerFileList = dLedgerFileStore.getDataFileList();
@@ -366,14 +383,33 @@ public class DLedgerCommitLog extends CommitLog {
 
     @Override
     public PutMessageResult putMessage(final MessageExtBrokerInner msg) {
+        PendingAppend append = this.beginPutMessage(msg);
+        if (append.failedResult != null) {
+            return append.failedResult;
+        }
+        return this.finishAppend(append, this.waitForAppend(append.dledgerFuture));
+    }
+
+    /**
+     * Append the message to dledger without waiting for the quorum, the returned future completes from the dledger
+     * append future.
+     */
+    @Override
+    public CompletableFuture<PutMessageResult> asyncPutMessage(final MessageExtBrokerInner msg) {
+        PendingAppend append = this.beginPutMessage(msg);
+        if (append.failedResult != null) {
+            return CompletableFuture.completedFuture(append.failedResult);
+        }
+        return this.completeAppend(append);
+    }
+
+    private PendingAppend beginPutMessage(final MessageExtBrokerInner msg) {
         // Set the storage time
         msg.setStoreTimestamp(System.currentTimeMillis());
         // Set the message body BODY CRC (consider the most appropriate setting
         // on the client)
         msg.setBodyCRC(UtilAll.crc32(msg.getBody()));
 
-        StoreStatsService storeStatsService = this.defaultMessageStore.getStoreStatsService();
-
         String topic = msg.getTopic();
         int queueId = msg.getQueueId();
 
@@ -400,6 +436,10 @@ public class DLedgerCommitLog extends CommitLog {
             }
         }
 
+        if (this.defaultMessageStore.getMessageStoreConfig().isdLegerCoalescePutEnable()) {
+            return this.putMessageCoalesced(msg, tranType, topic);
+        }
+
         // Back to Results
         AppendMessageResult appendResult;
         AppendFuture<AppendEntryResponse> dledgerFuture;
@@ -413,15 +453,11 @@ public class DLedgerCommitLog extends CommitLog {
             encodeResult = this.messageSerializer.serialize(msg);
             queueOffset = topicQueueTable.get(encodeResult.queueOffsetKey);
             if (encodeResult.status  != AppendMessageStatus.PUT_OK) {
-                return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, new AppendMessageResult(encodeResult.status));
+                return PendingAppend.failed(PutMessageStatus.MESSAGE_ILLEGAL, new AppendMessageResult(encodeResult.status));
             }
-            AppendEntryRequest request = new AppendEntryRequest();
-            request.setGroup(dLedgerConfig.getGroup());
-            request.setRemoteId(dLedgerServer.getMemberState().getSelfId());
-            request.setBody(encodeResult.data);
-            dledgerFuture = (AppendFuture<AppendEntryResponse>) dLedgerServer.handleAppend(request);
+            dledgerFuture = this.appendEntry(encodeResult.data);
             if (dledgerFuture.getPos() == -1) {
-                return new PutMessageResult(PutMessageStatus.OS_PAGECACHE_BUSY, new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR));
+                return PendingAppend.failed(PutMessageStatus.OS_PAGECACHE_BUSY, new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR));
             }
             long wroteOffset =  dledgerFuture.getPos() + DLedgerEntry.BODY_OFFSET;
             ByteBuffer buffer = ByteBuffer.allocate(MessageDecoder.MSG_ID_LENGTH);
@@ -442,7 +478,7 @@ public class DLedgerCommitLog extends CommitLog {
             }
         } catch (Exception e) {
             log.error("Put message error", e);
-            return new PutMessageResult(PutMessageStatus.UNKNOWN_ERROR, new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR));
+            return PendingAppend.failed(PutMessageStatus.UNKNOWN_ERROR, new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR));
         } finally {
             beginTimeInDledgerLock = 0;
             putMessageLock.unlock();
@@ -452,46 +488,315 @@ public class DLedgerCommitLog extends CommitLog {
             log.warn("[NOTIFYME]putMessage in lock cost time(ms)={}, bodyLength={} AppendMessageResult={}", elapsedTimeInLock, msg.getBody().length, appendResult);
         }
 
-        PutMessageStatus putMessageStatus = PutMessageStatus.UNKNOWN_ERROR;
+        return new PendingAppend(topic, 1, appendResult, dledgerFuture);
+    }
+
+    private PutMessageStatus waitForAppend(final AppendFuture<AppendEntryResponse> dledgerFuture) {
         try {
-            AppendEntryResponse appendEntryResponse = dledgerFuture.get(3, TimeUnit.SECONDS);
-            switch (DLedgerResponseCode.valueOf(appendEntryResponse.getCode())) {
-                case SUCCESS:
-                    putMessageStatus = PutMessageStatus.PUT_OK;
-                    break;
-                case INCONSISTENT_LEADER:
-                case NOT_LEADER:
-                case LEADER_NOT_READY:
-                case DISK_FULL:
-                    putMessageStatus = PutMessageStatus.SERVICE_NOT_AVAILABLE;
-                    break;
-                case WAIT_QUORUM_ACK_TIMEOUT:
-                    //Do not return flush_slave_timeout to the client, for the ons client will ignore it.
-                    putMessageStatus = PutMessageStatus.OS_PAGECACHE_BUSY;
-                    break;
-                case LEADER_PENDING_FULL:
-                    putMessageStatus = PutMessageStatus.OS_PAGECACHE_BUSY;
-                    break;
-            }
+            return toPutMessageStatus(dledgerFuture.get(3, TimeUnit.SECONDS));
         } catch (Throwable t) {
             log.error("Failed to get dledger append result", t);
+            return PutMessageStatus.UNKNOWN_ERROR;
         }
+    }
 
-        PutMessageResult putMessageResult = new PutMessageResult(putMessageStatus, appendResult);
+    private CompletableFuture<PutMessageResult> completeAppend(final PendingAppend append) {
+        return append.dledgerFuture.handle((appendEntryResponse, t) -> {
+            PutMessageStatus putMessageStatus;
+            if (t != null) {
+                log.error("Failed to get dledger append result", t);
+                putMessageStatus = PutMessageStatus.UNKNOWN_ERROR;
+            } else {
+                putMessageStatus = toPutMessageStatus(appendEntryResponse);
+            }
+            return this.finishAppend(append, putMessageStatus);
+        });
+    }
+
+    private PutMessageResult finishAppend(final PendingAppend append, final PutMessageStatus putMessageStatus) {
+        PutMessageResult putMessageResult = new PutMessageResult(putMessageStatus, append.appendResult);
         if (putMessageStatus == PutMessageStatus.PUT_OK) {
             // Statistics
-            storeStatsService.getSinglePutMessageTopicTimesTotal(msg.getTopic()).incrementAndGet();
-            storeStatsService.getSinglePutMessageTopicSizeTotal(topic).addAndGet(appendResult.getWroteBytes());
+            StoreStatsService storeStatsService = this.defaultMessageStore.getStoreStatsService();
+            storeStatsService.getSinglePutMessageTopicTimesTotal(append.topic).addAndGet(append.msgNum);
+            storeStatsService.getSinglePutMessageTopicSizeTotal(append.topic).addAndGet(append.appendResult.getWroteBytes());
         }
         return putMessageResult;
     }
 
+    private static PutMessageStatus toPutMessageStatus(final AppendEntryResponse appendEntryResponse) {
+        PutMessageStatus putMessageStatus = PutMessageStatus.UNKNOWN_ERROR;
+        switch (DLedgerResponseCode.valueOf(appendEntryResponse.getCode())) {
+            case SUCCESS:
+                putMessageStatus = PutMessageStatus.PUT_OK;
+                break;
+            case INCONSISTENT_LEADER:
+            case NOT_LEADER:
+            case LEADER_NOT_READY:
+            case DISK_FULL:
+                putMessageStatus = PutMessageStatus.SERVICE_NOT_AVAILABLE;
+                break;
+            case WAIT_QUORUM_ACK_TIMEOUT:
+                //Do not return flush_slave_timeout to the client, for the ons client will ignore it.
+                putMessageStatus = PutMessageStatus.OS_PAGECACHE_BUSY;
+                break;
+            case LEADER_PENDING_FULL:
+                putMessageStatus = PutMessageStatus.OS_PAGECACHE_BUSY;
+                break;
+        }
+        return putMessageStatus;
+    }
+
+    private AppendFuture<AppendEntryResponse> appendEntry(final byte[] body) throws IOException {
+        AppendEntryRequest request = new AppendEntryRequest();
+        request.setGroup(dLedgerConfig.getGroup());
+        request.setRemoteId(dLedgerServer.getMemberState().getSelfId());
+        request.setBody(body);
+        return (AppendFuture<AppendEntryResponse>) dLedgerServer.handleAppend(request);
+    }
+
+    /**
+     * A dledger entry must fit into one data file, so it is bounded by the file size as well as the max message size.
+     */
+    private int maxEntryBodySize() {
+        return Math.min(this.defaultMessageStore.getMessageStoreConfig().getMaxMessageSize(),
+            this.dLedgerConfig.getMappedFileSizeForEntryData() / 2);
+    }
+
+    /**
+     * Flat combining of concurrent single puts: every sender enqueues its message, and whichever sender holds the put
+     * lock drains the queue into one dledger entry. The senders then wait for, or chain on, the shared entry future
+     * outside the lock, while dledger keeps replicating the following entries in a pipeline.
+     */
+    private PendingAppend putMessageCoalesced(final MessageExtBrokerInner msg, final int tranType, final String topic) {
+        CoalescedPut put = new CoalescedPut(msg, tranType);
+        this.coalescedPuts.offer(put);
+
+        putMessageLock.lock();
+        try {
+            while (!put.done) {
+                this.appendCoalescedPuts();
+            }
+        } finally {
+            putMessageLock.unlock();
+        }
+
+        if (put.failedStatus != null) {
+            return PendingAppend.failed(put.failedStatus, put.appendResult);
+        }
+        return new PendingAppend(topic, 1, put.appendResult, put.dledgerFuture);
+    }
+
+    /**
+     * Must be called with the put lock held.
+     */
+    private void appendCoalescedPuts() {
+        final long beginTime = this.defaultMessageStore.getSystemClock().now();
+        beginTimeInDledgerLock = beginTime;
+
+        final int maxBodySize = this.maxEntryBodySize();
+        List<CoalescedPut> batch = new ArrayList<>();
+        Map<String, Long> originalQueueOffsets = new HashMap<>();
+        int totalSize = 0;
+        try {
+            while (true) {
+                CoalescedPut put = this.carriedOverPut;
+                this.carriedOverPut = null;
+                if (null == put) {
+                    put = this.coalescedPuts.poll();
+                }
+                if (null == put) {
+                    break;
+                }
+
+                EncodeResult encodeResult;
+                try {
+                    encodeResult = this.messageSerializer.serialize(put.msg);
+                } catch (Exception e) {
+                    log.error("Serialize message error", e);
+                    put.fail(PutMessageStatus.UNKNOWN_ERROR, new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR));
+                    continue;
+                }
+                if (encodeResult.status != AppendMessageStatus.PUT_OK) {
+                    put.fail(PutMessageStatus.MESSAGE_ILLEGAL, new AppendMessageResult(encodeResult.status));
+                    continue;
+                }
+                if (!batch.isEmpty() && totalSize + encodeResult.data.length > maxBodySize) {
+                    this.carriedOverPut = put;
+                    break;
+                }
+
+                long queueOffset = topicQueueTable.get(encodeResult.queueOffsetKey);
+                if (put.tranType == MessageSysFlag.TRANSACTION_NOT_TYPE || put.tranType == MessageSysFlag.TRANSACTION_COMMIT_TYPE) {
+                    if (!originalQueueOffsets.containsKey(encodeResult.queueOffsetKey)) {
+                        originalQueueOffsets.put(encodeResult.queueOffsetKey, queueOffset);
+                    }
+                    // The next message of the same queue in this entry takes the following offset
+                    topicQueueTable.put(encodeResult.queueOffsetKey, queueOffset + 1);
+                }
+                put.queueOffset = queueOffset;
+                put.data = encodeResult.data;
+                batch.add(put);
+                totalSize += encodeResult.data.length;
+            }
+
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            byte[] body = new byte[totalSize];
+            int bodyPos = 0;
+            for (CoalescedPut put : batch) {
+                System.arraycopy(put.data, 0, body, bodyPos, put.data.length);
+                bodyPos += put.data.length;
+            }
+
+            AppendFuture<AppendEntryResponse> dledgerFuture = this.appendEntry(body);
+            if (dledgerFuture.getPos() == -1) {
+                topicQueueTable.putAll(originalQueueOffsets);
+                for (CoalescedPut put : batch) {
+                    put.fail(PutMessageStatus.OS_PAGECACHE_BUSY, new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR));
+                }
+                return;
+            }
+
+            long elapsedTimeInLock = this.defaultMessageStore.getSystemClock().now() - beginTime;
+            long wroteOffset = dledgerFuture.getPos() + DLedgerEntry.BODY_OFFSET;
+            ByteBuffer buffer = ByteBuffer.allocate(MessageDecoder.MSG_ID_LENGTH);
+            for (CoalescedPut put : batch) {
+                String msgId = MessageDecoder.createMessageId(buffer, put.msg.getStoreHostBytes(), wroteOffset);
+                put.appendResult = new AppendMessageResult(AppendMessageStatus.PUT_OK, wroteOffset, put.data.length, msgId,
+                    System.currentTimeMillis(), put.queueOffset, elapsedTimeInLock);
+                put.dledgerFuture = dledgerFuture;
+                put.data = null;
+                put.done = true;
+                wroteOffset += put.appendResult.getWroteBytes();
+            }
+
+            if (elapsedTimeInLock > 500) {
+                log.warn("[NOTIFYME]putMessage in lock cost time(ms)={}, coalesced messages={}, bodyLength={}", elapsedTimeInLock, batch.size(), totalSize);
+            }
+        } catch (Exception e) {
+            log.error("Put message error", e);
+            topicQueueTable.putAll(originalQueueOffsets);
+            for (CoalescedPut put : batch) {
+                put.fail(PutMessageStatus.UNKNOWN_ERROR, new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR));
+            }
+        } finally {
+            beginTimeInDledgerLock = 0;
+        }
+    }
+
+    /**
+     * The messages of a batch are appended as one dledger entry, the consume queue dispatch splits them apart again.
+     */
     @Override
     public PutMessageResult putMessages(final MessageExtBatch messageExtBatch) {
-        return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
+        PendingAppend append = this.beginPutMessages(messageExtBatch);
+        if (append.failedResult != null) {
+            return append.failedResult;
+        }
+        return this.finishAppend(append, this.waitForAppend(append.dledgerFuture));
+    }
+
+    @Override
+    public CompletableFuture<PutMessageResult> asyncPutMessages(final MessageExtBatch messageExtBatch) {
+        PendingAppend append = this.beginPutMessages(messageExtBatch);
+        if (append.failedResult != null) {
+            return CompletableFuture.completedFuture(append.failedResult);
+        }
+        return this.completeAppend(append);
     }
 
+    private PendingAppend beginPutMessages(final MessageExtBatch messageExtBatch) {
+        final int tranType = MessageSysFlag.getTransactionValue(messageExtBatch.getSysFlag());
 
+        if (tranType != MessageSysFlag.TRANSACTION_NOT_TYPE) {
+            return PendingAppend.failed(PutMessageStatus.MESSAGE_ILLEGAL, null);
+        }
+        if (messageExtBatch.getDelayTimeLevel() > 0) {
+            return PendingAppend.failed(PutMessageStatus.MESSAGE_ILLEGAL, null);
+        }
+
+        // Set the storage time
+        messageExtBatch.setStoreTimestamp(System.currentTimeMillis());
+
+        ByteBuffer encodedBuff;
+        try {
+            encodedBuff = batchEncoderThreadLocal.get().encode(messageExtBatch);
+        } catch (Exception e) {
+            log.warn("Encode batch messages error, topic: {} {}", messageExtBatch.getTopic(), e.getMessage());
+            return PendingAppend.failed(PutMessageStatus.MESSAGE_ILLEGAL, new AppendMessageResult(AppendMessageStatus.MESSAGE_SIZE_EXCEEDED));
+        }
+        if (encodedBuff.remaining() > this.maxEntryBodySize()) {
+            return PendingAppend.failed(PutMessageStatus.MESSAGE_ILLEGAL, new AppendMessageResult(AppendMessageStatus.MESSAGE_SIZE_EXCEEDED));
+        }
+
+        AppendMessageResult appendResult;
+        AppendFuture<AppendEntryResponse> dledgerFuture;
+        long elapsedTimeInLock;
+
+        putMessageLock.lock(); //spin or ReentrantLock ,depending on store config
+        try {
+            beginTimeInDledgerLock = this.defaultMessageStore.getSystemClock().now();
+
+            String key = messageExtBatch.getTopic() + '-' + messageExtBatch.getQueueId();
+            Long queueOffset = topicQueueTable.get(key);
+            if (null == queueOffset) {
+                queueOffset = 0L;
+                topicQueueTable.put(key, queueOffset);
+            }
+            final long beginQueueOffset = queueOffset;
+
+            // Fill in the queue offsets, the physical offsets are filled in by the append hook
+            final int totalMsgLen = encodedBuff.remaining();
+            int msgNum = 0;
+            for (int msgPos = 0; msgPos < totalMsgLen; ) {
+                int msgLen = encodedBuff.getInt(msgPos);
+                encodedBuff.putLong(msgPos + MessageDecoder.QUEUE_OFFSET_POSITION, queueOffset++);
+                msgPos += msgLen;
+                msgNum++;
+            }
+            byte[] body = new byte[totalMsgLen];
+            encodedBuff.get(body);
+
+            dledgerFuture = this.appendEntry(body);
+            if (dledgerFuture.getPos() == -1) {
+                return PendingAppend.failed(PutMessageStatus.OS_PAGECACHE_BUSY, new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR));
+            }
+
+            long wroteOffset = dledgerFuture.getPos() + DLedgerEntry.BODY_OFFSET;
+            ByteBuffer buffer = ByteBuffer.allocate(MessageDecoder.MSG_ID_LENGTH);
+            ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+            StringBuilder msgIdBuilder = new StringBuilder();
+            for (int msgPos = 0; msgPos < totalMsgLen; ) {
+                String msgId = MessageDecoder.createMessageId(buffer, messageExtBatch.getStoreHostBytes(), wroteOffset + msgPos);
+                if (msgIdBuilder.length() > 0) {
+                    msgIdBuilder.append(',');
+                }
+                msgIdBuilder.append(msgId);
+                msgPos += bodyBuffer.getInt(msgPos);
+            }
+
+            elapsedTimeInLock = this.defaultMessageStore.getSystemClock().now() - beginTimeInDledgerLock;
+            appendResult = new AppendMessageResult(AppendMessageStatus.PUT_OK, wroteOffset, totalMsgLen, msgIdBuilder.toString(),
+                System.currentTimeMillis(), beginQueueOffset, elapsedTimeInLock);
+            appendResult.setMsgNum(msgNum);
+            topicQueueTable.put(key, queueOffset);
+        } catch (Exception e) {
+            log.error("Put messages error", e);
+            return PendingAppend.failed(PutMessageStatus.UNKNOWN_ERROR, new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR));
+        } finally {
+            beginTimeInDledgerLock = 0;
+            putMessageLock.unlock();
+        }
+
+        if (elapsedTimeInLock > 500) {
+            log.warn("[NOTIFYME]putMessages in lock cost time(ms)={}, bodyLength={} AppendMessageResult={}", elapsedTimeInLock, messageExtBatch.getBody().length, appendResult);
+        }
+
+        return new PendingAppend(messageExtBatch.getTopic(), appendResult.getMsgNum(), appendResult, dledgerFuture);
+    }
 
     @Override
     public SelectMappedBufferResult getMessage(final long offset, final int size) {
@@ -555,6 +860,54 @@ public class DLedgerCommitLog extends CommitLog {
         return diff;
     }
 
+    /**
+     * Messages appended to dledger, waiting for the quorum, or rejected before the append
+     */
+    static class PendingAppend {
+        private final String topic;
+        private final int msgNum;
+        private final AppendMessageResult appendResult;
+        private final AppendFuture<AppendEntryResponse> dledgerFuture;
+        private PutMessageResult failedResult;
+
+        PendingAppend(final String topic, final int msgNum, final AppendMessageResult appendResult,
+            final AppendFuture<AppendEntryResponse> dledgerFuture) {
+            this.topic = topic;
+            this.msgNum = msgNum;
+            this.appendResult = appendResult;
+            this.dledgerFuture = dledgerFuture;
+        }
+
+        static PendingAppend failed(final PutMessageStatus status, final AppendMessageResult result) {
+            PendingAppend append = new PendingAppend(null, 0, result, null);
+            append.failedResult = new PutMessageResult(status, result);
+            return append;
+        }
+    }
+
+    static class CoalescedPut {
+        private final MessageExtBrokerInner msg;
+        private final int tranType;
+        private long queueOffset;
+        private byte[] data;
+        private AppendMessageResult appendResult;
+        private AppendFuture<AppendEntryResponse> dledgerFuture;
+        private PutMessageStatus failedStatus;
+        private boolean done;
+
+        CoalescedPut(final MessageExtBrokerInner msg, final int tranType) {
+            this.msg = msg;
+            this.tranType = tranType;
+        }
+
+        void fail(final PutMessageStatus status, final AppendMessageResult result) {
+            this.failedStatus = status;
+            this.appendResult = result;
+            this.data = null;
+            this.done = true;
+        }
+    }
+
     class EncodeResult {
         private String queueOffsetKey;
         private byte[] data;
@@ -39,6 +39,11 @@ public class HAConnection {
     private volatile long slaveRequestOffset = -1;
     private volatile long slaveAckOffset = -1;
 
+    private final boolean transferCompressed;
+    private volatile long transferRawBytes = 0;
+    private volatile long transferWireBytes = 0;
+    private volatile long transferCompressNanos = 0;
+
     public HAConnection(final HAService haService, final SocketChannel socketChannel) throws IOException {
         this.haService = haService;
         this.socketChannel = socketChannel;
@@ -48,6 +53,8 @@ public class HAConnection {
         this.socketChannel.socket().setTcpNoDelay(true);
         this.socketChannel.socket().setReceiveBufferSize(1024 * 64);
         this.socketChannel.socket().setSendBufferSize(1024 * 64);
+        // the slave learns it from the ack frame, it has to be configured to accept compression before the master is
+        this.transferCompressed = haService.getDefaultMessageStore().getMessageStoreConfig().isHaTransferCompressEnable();
         this.writeSocketService = new WriteSocketService(this.socketChannel);
         this.readSocketService = new ReadSocketService(this.socketChannel);
         this.haService.getConnectionCount().incrementAndGet();
@@ -78,6 +85,30 @@ public class HAConnection {
         return socketChannel;
     }
 
+    public String getClientAddr() {
+        return clientAddr;
+    }
+
+    public long getSlaveAckOffset() {
+        return slaveAckOffset;
+    }
+
+    public boolean isTransferCompressed() {
+        return transferCompressed;
+    }
+
+    public long getTransferRawBytes() {
+        return transferRawBytes;
+    }
+
+    public long getTransferWireBytes() {
+        return transferWireBytes;
+    }
+
+    public long getTransferCompressNanos() {
+        return transferCompressNanos;
+    }
+
     class ReadSocketService extends ServiceThread {
         private static final int READ_MAX_BUFFER_SIZE = 1024 * 1024;
         private final Selector selector;
@@ -195,12 +226,18 @@ public class HAConnection {
         private final SocketChannel socketChannel;
 
         private final int headerSize = 8 + 4;
-        private final ByteBuffer byteBufferHeader = ByteBuffer.allocate(headerSize);
+        private final ByteBuffer byteBufferHeader = ByteBuffer.allocate(HAService.HA_COMPRESS_HEADER_SIZE);
         private long nextTransferFromWhere = -1;
         private SelectMappedBufferResult selectMappedBufferResult;
         private boolean lastWriteOver = true;
         private long lastWriteTimestamp = System.currentTimeMillis();
 
+        private final LZ4BlockCodec codec = new LZ4BlockCodec();
+        private boolean compressAckSent = false;
+        private byte[] rawBytes = new byte[0];
+        private byte[] compressedBytes = new byte[0];
+        private ByteBuffer compressedBody;
+
         public WriteSocketService(final SocketChannel socketChannel) throws IOException {
             this.selector = RemotingUtil.openSelector();
             this.socketChannel = socketChannel;
@@ -242,6 +279,20 @@ public class HAConnection {
                             + "], and slave request " + HAConnection.this.slaveRequestOffset);
                     }
 
+                    if (HAConnection.this.transferCompressed && !this.compressAckSent) {
+                        // Tell the slave that the following frames carry the compressed header
+                        this.byteBufferHeader.position(0);
+                        this.byteBufferHeader.limit(headerSize);
+                        this.byteBufferHeader.putLong(HAService.HA_COMPRESS_ACK_OFFSET);
+                        this.byteBufferHeader.putInt(0);
+                        this.byteBufferHeader.flip();
+                        this.compressAckSent = true;
+
+                        this.lastWriteOver = this.transferData();
+                        if (!this.lastWriteOver)
+                            continue;
+                    }
+
                     if (this.lastWriteOver) {
 
                         long interval =
@@ -252,9 +303,12 @@ public class HAConnection {
 
                             // Build Header
                             this.byteBufferHeader.position(0);
-                            this.byteBufferHeader.limit(headerSize);
+                            this.byteBufferHeader.limit(this.currentHeaderSize());
                             this.byteBufferHeader.putLong(this.nextTransferFromWhere);
                             this.byteBufferHeader.putInt(0);
+                            if (HAConnection.this.transferCompressed) {
+                                this.byteBufferHeader.putInt(0);
+                            }
                             this.byteBufferHeader.flip();
 
                             this.lastWriteOver = this.transferData();
@@ -279,14 +333,27 @@ public class HAConnection {
                         this.nextTransferFromWhere += size;
 
                         selectResult.getByteBuffer().limit(size);
-                        this.selectMappedBufferResult = selectResult;
 
-                        // Build Header
-                        this.byteBufferHeader.position(0);
-                        this.byteBufferHeader.limit(headerSize);
-                        this.byteBufferHeader.putLong(thisOffset);
-                        this.byteBufferHeader.putInt(size);
-                        this.byteBufferHeader.flip();
+                        if (HAConnection.this.transferCompressed) {
+                            int wireSize = this.compressBody(selectResult, size);
+
+                            // Build Header
+                            this.byteBufferHeader.position(0);
+                            this.byteBufferHeader.limit(HAService.HA_COMPRESS_HEADER_SIZE);
+                            this.byteBufferHeader.putLong(thisOffset);
+                            this.byteBufferHeader.putInt(wireSize);
+                            this.byteBufferHeader.putInt(size);
+                            this.byteBufferHeader.flip();
+                        } else {
+                            this.selectMappedBufferResult = selectResult;
+
+                            // Build Header
+                            this.byteBufferHeader.position(0);
+                            this.byteBufferHeader.limit(headerSize);
+                            this.byteBufferHeader.putLong(thisOffset);
+                            this.byteBufferHeader.putInt(size);
+                            this.byteBufferHeader.flip();
+                        }
 
                         this.lastWriteOver = this.transferData();
                     } else {
@@ -344,7 +411,8 @@ public class HAConnection {
                 }
             }
 
-            if (null == this.selectMappedBufferResult) {
+            ByteBuffer body = this.selectMappedBufferResult != null ? this.selectMappedBufferResult.getByteBuffer() : this.compressedBody;
+            if (null == body) {
                 return !this.byteBufferHeader.hasRemaining();
             }
 
@@ -352,8 +420,8 @@ public class HAConnection {
 
             // Write Body
             if (!this.byteBufferHeader.hasRemaining()) {
-                while (this.selectMappedBufferResult.getByteBuffer().hasRemaining()) {
-                    int writeSize = this.socketChannel.write(this.selectMappedBufferResult.getByteBuffer());
+                while (body.hasRemaining()) {
+                    int writeSize = this.socketChannel.write(body);
                     if (writeSize > 0) {
                         writeSizeZeroTimes = 0;
                         this.lastWriteTimestamp = HAConnection.this.haService.getDefaultMessageStore().getSystemClock().now();
@@ -367,16 +435,56 @@ public class HAConnection {
                 }
             }
 
-            boolean result = !this.byteBufferHeader.hasRemaining() && !this.selectMappedBufferResult.getByteBuffer().hasRemaining();
+            boolean result = !this.byteBufferHeader.hasRemaining() && !body.hasRemaining();
 
-            if (!this.selectMappedBufferResult.getByteBuffer().hasRemaining()) {
-                this.selectMappedBufferResult.release();
-                this.selectMappedBufferResult = null;
+            if (!body.hasRemaining()) {
+                if (this.selectMappedBufferResult != null) {
+                    this.selectMappedBufferResult.release();
+                    this.selectMappedBufferResult = null;
+                }
+                this.compressedBody = null;
             }
 
             return result;
         }
 
+        private int currentHeaderSize() {
+            return HAConnection.this.transferCompressed ? HAService.HA_COMPRESS_HEADER_SIZE : headerSize;
+        }
+
+        /**
+         * Copy the selected commit log data out of the mapped file and compress it into {@link #compressedBody}.
+         * The data is sent as is if it does not shrink, which the slave detects by wire size equal to raw size.
+         *
+         * @return size of the body on the wire
+         */
+        private int compressBody(final SelectMappedBufferResult selectResult, final int size) {
+            if (this.rawBytes.length < size) {
+                this.rawBytes = new byte[size];
+                this.compressedBytes = new byte[LZ4BlockCodec.maxCompressedLength(size)];
+            }
+
+            try {
+                selectResult.getByteBuffer().get(this.rawBytes, 0, size);
+            } finally {
+                selectResult.release();
+            }
+
+            long beginTime = System.nanoTime();
+            int compressedSize = this.codec.compress(this.rawBytes, 0, size, this.compressedBytes, 0);
+            HAConnection.this.transferCompressNanos += System.nanoTime() - beginTime;
+
+            if (compressedSize < size) {
+                this.compressedBody = ByteBuffer.wrap(this.compressedBytes, 0, compressedSize);
+            } else {
+                this.compressedBody = ByteBuffer.wrap(this.rawBytes, 0, size);
+            }
+
+            HAConnection.this.transferRawBytes += size;
+            HAConnection.this.transferWireBytes += this.compressedBody.remaining();
+            return this.compressedBody.remaining();
+        }
+
         @Override
         public String getServiceName() {
             return WriteSocketService.class.getSimpleName();
@@ -26,6 +26,8 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -34,15 +36,26 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import org.apache.rocketmq.common.ServiceThread;
 import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.running.RunningStats;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.remoting.common.RemotingUtil;
 import org.apache.rocketmq.store.CommitLog;
 import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.config.BrokerRole;
 
 public class HAService {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
 
+    /**
+     * Sent by a master with compression enabled as the offset of an empty frame, before the compressed frames.
+     */
+    public static final long HA_COMPRESS_ACK_OFFSET = -0x4c5a34L;
+    /**
+     * phyoffset + wire size + raw size
+     */
+    public static final int HA_COMPRESS_HEADER_SIZE = 8 + 4 + 4;
+
     private final AtomicInteger connectionCount = new AtomicInteger(0);
 
     private final List<HAConnection> connectionList = new LinkedList<>();
@@ -53,6 +66,10 @@ public class HAService {
 
     private final WaitNotifyObject waitNotifyObject = new WaitNotifyObject();
     private final AtomicLong push2SlaveMaxOffset = new AtomicLong(0);
+    /**
+     * Highest offset acknowledged by at least {@code haSyncReplicaQuorum} slaves.
+     */
+    private final AtomicLong push2SlaveQuorumOffset = new AtomicLong(0);
 
     private final GroupTransferService groupTransferService;
 
@@ -77,11 +94,10 @@ public class HAService {
     }
 
     public boolean isSlaveOK(final long masterPutWhere) {
-        boolean result = this.connectionCount.get() > 0;
+        boolean result = this.connectionCount.get() >= this.getSyncReplicaQuorum();
         result =
             result
-                && ((masterPutWhere - this.push2SlaveMaxOffset.get()) < this.defaultMessageStore
-                .getMessageStoreConfig().getHaSlaveFallbehindMax());
+                && this.countAvailableSlaves(masterPutWhere) >= this.getSyncReplicaQuorum();
         return result;
     }
 
@@ -89,12 +105,96 @@ public class HAService {
         for (long value = this.push2SlaveMaxOffset.get(); offset > value; ) {
             boolean ok = this.push2SlaveMaxOffset.compareAndSet(value, offset);
             if (ok) {
-                this.groupTransferService.notifyTransferSome();
                 break;
             } else {
                 value = this.push2SlaveMaxOffset.get();
             }
         }
+
+        long quorumOffset = this.computeQuorumOffset();
+        for (long value = this.push2SlaveQuorumOffset.get(); quorumOffset > value; ) {
+            boolean ok = this.push2SlaveQuorumOffset.compareAndSet(value, quorumOffset);
+            if (ok) {
+                this.groupTransferService.notifyTransferSome();
+                break;
+            } else {
+                value = this.push2SlaveQuorumOffset.get();
+            }
+        }
+    }
+
+    /**
+     * Count the slaves whose acknowledged offset is within {@code haSlaveFallbehindMax} of the master.
+     *
+     * @param masterPutWhere current master write position
+     * @return number of slaves that can take part in a synchronous replication quorum
+     */
+    public int countAvailableSlaves(final long masterPutWhere) {
+        final long fallBehindMax = this.defaultMessageStore.getMessageStoreConfig().getHaSlaveFallbehindMax();
+        int available = 0;
+        synchronized (this.connectionList) {
+            for (HAConnection c : this.connectionList) {
+                long ackOffset = Math.max(0, c.getSlaveAckOffset());
+                if ((masterPutWhere - ackOffset) < fallBehindMax) {
+                    available++;
+                }
+            }
+        }
+        return available;
+    }
+
+    /**
+     * The offset which has been acknowledged by at least {@code haSyncReplicaQuorum} slaves, that is, the
+     * quorum-th highest slave ack offset.
+     */
+    private long computeQuorumOffset() {
+        final int quorum = this.getSyncReplicaQuorum();
+        long[] ackOffsets;
+        synchronized (this.connectionList) {
+            ackOffsets = new long[this.connectionList.size()];
+            int i = 0;
+            for (HAConnection c : this.connectionList) {
+                ackOffsets[i++] = c.getSlaveAckOffset();
+            }
+        }
+
+        if (ackOffsets.length < quorum) {
+            return -1;
+        }
+
+        Arrays.sort(ackOffsets);
+        return ackOffsets[ackOffsets.length - quorum];
+    }
+
+    private int getSyncReplicaQuorum() {
+        return Math.max(1, this.defaultMessageStore.getMessageStoreConfig().getHaSyncReplicaQuorum());
+    }
+
+    public void buildRunningStats(HashMap<String, String> stats) {
+        if (BrokerRole.SLAVE == this.defaultMessageStore.getMessageStoreConfig().getBrokerRole()) {
+            if (this.haClient.transferRawBytes > 0) {
+                stats.put(RunningStats.haTransferCompress.name(), String.format("%d,%d,%d", this.haClient.transferRawBytes,
+                    this.haClient.transferWireBytes, this.haClient.transferDecompressNanos / 1000000));
+            }
+            return;
+        }
+
+        final long masterOffset = this.defaultMessageStore.getMaxPhyOffset();
+        synchronized (this.connectionList) {
+            for (HAConnection c : this.connectionList) {
+                long ackOffset = c.getSlaveAckOffset();
+                long lag = ackOffset < 0 ? masterOffset : Math.max(0, masterOffset - ackOffset);
+                String key = String.format("%s_%s", RunningStats.haSlaveLag.name(), c.getClientAddr());
+                stats.put(key, String.format("%d,%d", ackOffset, lag));
+
+                if (c.isTransferCompressed()) {
+                    key = String.format("%s_%s", RunningStats.haTransferCompress.name(), c.getClientAddr());
+                    stats.put(key, String.format("%d,%d,%d", c.getTransferRawBytes(), c.getTransferWireBytes(),
+                        c.getTransferCompressNanos() / 1000000));
+                }
+            }
+        }
+        stats.put(RunningStats.haQuorumAckOffset.name(), String.valueOf(this.push2SlaveQuorumOffset.get()));
     }
 
     public AtomicInteger getConnectionCount() {
@@ -153,6 +253,10 @@ public class HAService {
         return push2SlaveMaxOffset;
     }
 
+    public AtomicLong getPush2SlaveQuorumOffset() {
+        return push2SlaveQuorumOffset;
+    }
+
     /**
      * Listens to slave connections to create {@link HAConnection}.
      */
@@ -279,10 +383,10 @@ public class HAService {
             synchronized (this.requestsRead) {
                 if (!this.requestsRead.isEmpty()) {
                     for (CommitLog.GroupCommitRequest req : this.requestsRead) {
-                        boolean transferOK = HAService.this.push2SlaveMaxOffset.get() >= req.getNextOffset();
+                        boolean transferOK = HAService.this.push2SlaveQuorumOffset.get() >= req.getNextOffset();
                         for (int i = 0; !transferOK && i < 5; i++) {
                             this.notifyTransferObject.waitForRunning(1000);
-                            transferOK = HAService.this.push2SlaveMaxOffset.get() >= req.getNextOffset();
+                            transferOK = HAService.this.push2SlaveQuorumOffset.get() >= req.getNextOffset();
                         }
 
                         if (!transferOK) {
@@ -336,6 +440,11 @@ public class HAService {
         private ByteBuffer byteBufferRead = ByteBuffer.allocate(READ_MAX_BUFFER_SIZE);
         private ByteBuffer byteBufferBackup = ByteBuffer.allocate(READ_MAX_BUFFER_SIZE);
 
+        private boolean transferCompressed = false;
+        private volatile long transferRawBytes = 0;
+        private volatile long transferWireBytes = 0;
+        private volatile long transferDecompressNanos = 0;
+
         public HAClient() throws IOException {
             this.selector = RemotingUtil.openSelector();
         }
@@ -436,10 +545,24 @@ public class HAService {
 
             while (true) {
                 int diff = this.byteBufferRead.position() - this.dispatchPosition;
-                if (diff >= msgHeaderSize) {
+                int headerSize = this.transferCompressed ? HA_COMPRESS_HEADER_SIZE : msgHeaderSize;
+                if (diff >= headerSize) {
                     long masterPhyOffset = this.byteBufferRead.getLong(this.dispatchPosition);
                     int bodySize = this.byteBufferRead.getInt(this.dispatchPosition + 8);
 
+                    if (masterPhyOffset == HA_COMPRESS_ACK_OFFSET) {
+                        if (!HAService.this.defaultMessageStore.getMessageStoreConfig().isHaTransferCompressEnable()) {
+                            log.error("HAClient, master sends compressed transfer, but haTransferCompressEnable is off in slave");
+                            return false;
+                        }
+                        this.transferCompressed = true;
+                        this.dispatchPosition += msgHeaderSize;
+                        log.info("HAClient, master accepted compressed transfer");
+                        continue;
+                    }
+
+                    int rawSize = this.transferCompressed ? this.byteBufferRead.getInt(this.dispatchPosition + 12) : bodySize;
+
                     long slavePhyOffset = HAService.this.defaultMessageStore.getMaxPhyOffset();
 
                     if (slavePhyOffset != 0) {
@@ -450,15 +573,23 @@ public class HAService {
                         }
                     }
 
-                    if (diff >= (msgHeaderSize + bodySize)) {
+                    if (diff >= (headerSize + bodySize)) {
                         byte[] bodyData = new byte[bodySize];
-                        this.byteBufferRead.position(this.dispatchPosition + msgHeaderSize);
+                        this.byteBufferRead.position(this.dispatchPosition + headerSize);
                         this.byteBufferRead.get(bodyData);
 
+                        if (bodySize != rawSize) {
+                            bodyData = this.decompress(bodyData, rawSize);
+                            if (null == bodyData) {
+                                log.error("HAClient, decompress data from master failed, offset: " + masterPhyOffset);
+                                return false;
+                            }
+                        }
+
                         HAService.this.defaultMessageStore.appendToCommitLog(masterPhyOffset, bodyData);
 
                         this.byteBufferRead.position(readSocketPos);
-                        this.dispatchPosition += msgHeaderSize + bodySize;
+                        this.dispatchPosition += headerSize + bodySize;
 
                         if (!reportSlaveMaxOffsetPlus()) {
                             return false;
@@ -478,6 +609,16 @@ public class HAService {
             return true;
         }
 
+        private byte[] decompress(final byte[] compressed, final int rawSize) {
+            long beginTime = System.nanoTime();
+            byte[] raw = new byte[rawSize];
+            int size = LZ4BlockCodec.decompress(compressed, 0, compressed.length, raw, 0, rawSize);
+            this.transferDecompressNanos += System.nanoTime() - beginTime;
+            this.transferRawBytes += rawSize;
+            this.transferWireBytes += compressed.length;
+            return size == rawSize ? raw : null;
+        }
+
         private boolean reportSlaveMaxOffsetPlus() {
             boolean result = true;
             long currentPhyOffset = HAService.this.defaultMessageStore.getMaxPhyOffset();
@@ -533,6 +674,7 @@ public class HAService {
 
                 this.lastWriteTimestamp = 0;
                 this.dispatchPosition = 0;
+                this.transferCompressed = false;
 
                 this.byteBufferBackup.position(0);
                 this.byteBufferBackup.limit(READ_MAX_BUFFER_SIZE);
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.ha;
+
+import java.util.Arrays;
+
+/**
+ * Pure java codec of the LZ4 block format, used to compress the HA transfer stream.
+ * <p>
+ * The compressor keeps a hash table and is not thread safe, each HA connection owns its own instance.
+ */
+public class LZ4BlockCodec {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 12;
+    private static final int RUN_MASK = 0x0F;
+    private static final int SKIP_STRENGTH = 6;
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    public static int maxCompressedLength(final int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compress {@code src[srcOff, srcOff + srcLen)} into {@code dest}, which must have at least
+     * {@link #maxCompressedLength(int)} bytes available from {@code destOff}.
+     *
+     * @return the compressed length
+     */
+    public int compress(final byte[] src, final int srcOff, final int srcLen, final byte[] dest, final int destOff) {
+        Arrays.fill(this.hashTable, -1);
+
+        final int srcEnd = srcOff + srcLen;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+        final int mfLimit = srcEnd - MF_LIMIT;
+
+        int sOff = srcOff;
+        int anchor = srcOff;
+        int dOff = destOff;
+
+        while (sOff < mfLimit) {
+            int sequence = readInt(src, sOff);
+            int h = hash(sequence);
+            int ref = this.hashTable[h];
+            this.hashTable[h] = sOff;
+
+            if (ref < 0 || sOff - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                sOff += 1 + ((sOff - anchor) >>> SKIP_STRENGTH);
+                continue;
+            }
+
+            while (sOff > anchor && ref > srcOff && src[sOff - 1] == src[ref - 1]) {
+                sOff--;
+                ref--;
+            }
+
+            int matchLen = MIN_MATCH;
+            while (sOff + matchLen < matchLimit && src[sOff + matchLen] == src[ref + matchLen]) {
+                matchLen++;
+            }
+
+            dOff = writeSequence(src, anchor, sOff - anchor, sOff - ref, matchLen, dest, dOff);
+            sOff += matchLen;
+            anchor = sOff;
+        }
+
+        dOff = writeLastLiterals(src, anchor, srcEnd - anchor, dest, dOff);
+        return dOff - destOff;
+    }
+
+    /**
+     * Decompress a block produced by {@link #compress(byte[], int, int, byte[], int)}.
+     *
+     * @return the decompressed length, or -1 if the block is malformed or does not fit into {@code destLen}
+     */
+    public static int decompress(final byte[] src, final int srcOff, final int srcLen,
+        final byte[] dest, final int destOff, final int destLen) {
+        final int srcEnd = srcOff + srcLen;
+        final int destEnd = destOff + destLen;
+        int sOff = srcOff;
+        int dOff = destOff;
+
+        while (sOff < srcEnd) {
+            final int token = src[sOff++] & 0xFF;
+
+            int literalLen = token >>> 4;
+            if (literalLen == RUN_MASK) {
+                int b;
+                do {
+                    if (sOff >= srcEnd) {
+                        return -1;
+                    }
+                    b = src[sOff++] & 0xFF;
+                    literalLen += b;
+                } while (b == 0xFF);
+            }
+
+            if (sOff + literalLen > srcEnd || dOff + literalLen > destEnd) {
+                return -1;
+            }
+            System.arraycopy(src, sOff, dest, dOff, literalLen);
+            sOff += literalLen;
+            dOff += literalLen;
+
+            if (sOff == srcEnd) {
+                break;
+            }
+
+            if (sOff + 2 > srcEnd) {
+                return -1;
+            }
+            final int offset = (src[sOff] & 0xFF) | ((src[sOff + 1] & 0xFF) << 8);
+            sOff += 2;
+            int ref = dOff - offset;
+            if (offset == 0 || ref < destOff) {
+                return -1;
+            }
+
+            int matchLen = token & RUN_MASK;
+            if (matchLen == RUN_MASK) {
+                int b;
+                do {
+                    if (sOff >= srcEnd) {
+                        return -1;
+                    }
+                    b = src[sOff++] & 0xFF;
+                    matchLen += b;
+                } while (b == 0xFF);
+            }
+            matchLen += MIN_MATCH;
+
+            if (dOff + matchLen > destEnd) {
+                return -1;
+            }
+            // the match may overlap with the bytes being written, so copy byte by byte
+            for (int i = 0; i < matchLen; i++) {
+                dest[dOff++] = dest[ref++];
+            }
+        }
+
+        return dOff - destOff;
+    }
+
+    private static int writeSequence(final byte[] src, final int literalOff, final int literalLen, final int offset,
+        final int matchLen, final byte[] dest, int dOff) {
+        final int tokenOff = dOff++;
+        int token;
+
+        if (literalLen >= RUN_MASK) {
+            token = RUN_MASK << 4;
+            dOff = writeLength(literalLen - RUN_MASK, dest, dOff);
+        } else {
+            token = literalLen << 4;
+        }
+        System.arraycopy(src, literalOff, dest, dOff, literalLen);
+        dOff += literalLen;
+
+        dest[dOff++] = (byte) offset;
+        dest[dOff++] = (byte) (offset >>> 8);
+
+        final int matchCode = matchLen - MIN_MATCH;
+        if (matchCode >= RUN_MASK) {
+            token |= RUN_MASK;
+            dOff = writeLength(matchCode - RUN_MASK, dest, dOff);
+        } else {
+            token |= matchCode;
+        }
+
+        dest[tokenOff] = (byte) token;
+        return dOff;
+    }
+
+    private static int writeLastLiterals(final byte[] src, final int literalOff, final int literalLen,
+        final byte[] dest, int dOff) {
+        if (literalLen >= RUN_MASK) {
+            dest[dOff++] = (byte) (RUN_MASK << 4);
+            dOff = writeLength(literalLen - RUN_MASK, dest, dOff);
+        } else {
+            dest[dOff++] = (byte) (literalLen << 4);
+        }
+        System.arraycopy(src, literalOff, dest, dOff, literalLen);
+        return dOff + literalLen;
+    }
+
+    private static int writeLength(int length, final byte[] dest, int dOff) {
+        while (length >= 0xFF) {
+            dest[dOff++] = (byte) 0xFF;
+            length -= 0xFF;
+        }
+        dest[dOff++] = (byte) length;
+        return dOff;
+    }
+
+    private static int readInt(final byte[] buf, final int off) {
+        return (buf[off] & 0xFF) | ((buf[off + 1] & 0xFF) << 8) | ((buf[off + 2] & 0xFF) << 16) | ((buf[off + 3] & 0xFF) << 24);
+    }
+
+    private static int hash(final int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
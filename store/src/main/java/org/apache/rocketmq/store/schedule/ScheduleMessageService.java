@@ -16,15 +16,24 @@
  */
 package org.apache.rocketmq.store.schedule;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.rocketmq.common.ConfigManager;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.TopicFilterType;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.logging.InternalLogger;
@@ -57,9 +66,13 @@ public class ScheduleMessageService extends ConfigManager {
 
     private final ConcurrentMap<Integer /* level */, Long/* offset */> offsetTable =
         new ConcurrentHashMap<Integer, Long>(32);
+
+    private final ConcurrentMap<Integer /* level */, Long/* delivery lag timeMillis */> deliverLagTable =
+        new ConcurrentHashMap<Integer, Long>(32);
     private final DefaultMessageStore defaultMessageStore;
     private final AtomicBoolean started = new AtomicBoolean(false);
-    private Timer timer;
+    private ScheduledExecutorService timerExecutorService;
+    private ExecutorService deliverExecutorService;
     private MessageStore writeMessageStore;
     private int maxDelayLevel;
 
@@ -95,6 +108,16 @@ public class ScheduleMessageService extends ConfigManager {
             String key = String.format("%s_%d", RunningStats.scheduleMessageOffset.name(), next.getKey());
             stats.put(key, value);
         }
+
+        for (Map.Entry<Integer, Long> next : this.deliverLagTable.entrySet()) {
+            String key = String.format("%s_%d", RunningStats.scheduleMessageLag.name(), next.getKey());
+            stats.put(key, String.valueOf(next.getValue()));
+        }
+    }
+
+    public long getDeliverLag(final int delayLevel) {
+        Long lag = this.deliverLagTable.get(delayLevel);
+        return lag == null ? 0 : lag;
     }
 
     private void updateOffset(int delayLevel, long offset) {
@@ -112,7 +135,16 @@ public class ScheduleMessageService extends ConfigManager {
 
     public void start() {
         if (started.compareAndSet(false, true)) {
-            this.timer = new Timer("ScheduleMessageTimerThread", true);
+            int threadNum = Math.max(1, this.defaultMessageStore.getMessageStoreConfig().getScheduleDeliverThreadNum());
+            ScheduledThreadPoolExecutor timerExecutor = new ScheduledThreadPoolExecutor(Math.min(threadNum, Math.max(1, this.maxDelayLevel)),
+                new ThreadFactoryImpl("ScheduleMessageTimerThread_", true));
+            // the queued timer tasks must not deliver once shutdown, the store is closed under them
+            timerExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            this.timerExecutorService = timerExecutor;
+            if (threadNum > 1) {
+                this.deliverExecutorService = Executors.newFixedThreadPool(threadNum,
+                    new ThreadFactoryImpl("ScheduleMessageDeliverThread_", true));
+            }
             for (Map.Entry<Integer, Long> entry : this.delayLevelTable.entrySet()) {
                 Integer level = entry.getKey();
                 Long timeDelay = entry.getValue();
@@ -122,11 +154,11 @@ public class ScheduleMessageService extends ConfigManager {
                 }
 
                 if (timeDelay != null) {
-                    this.timer.schedule(new DeliverDelayedMessageTimerTask(level, offset), FIRST_DELAY_TIME);
+                    this.schedule(new DeliverDelayedMessageTimerTask(level, offset), FIRST_DELAY_TIME);
                 }
             }
 
-            this.timer.scheduleAtFixedRate(new TimerTask() {
+            this.timerExecutorService.scheduleAtFixedRate(new Runnable() {
 
                 @Override
                 public void run() {
@@ -136,18 +168,31 @@ public class ScheduleMessageService extends ConfigManager {
                         log.error("scheduleAtFixedRate flush exception", e);
                     }
                 }
-            }, 10000, this.defaultMessageStore.getMessageStoreConfig().getFlushDelayOffsetInterval());
+            }, 10000, this.defaultMessageStore.getMessageStoreConfig().getFlushDelayOffsetInterval(), TimeUnit.MILLISECONDS);
         }
     }
 
     public void shutdown() {
         if (this.started.compareAndSet(true, false)) {
-            if (null != this.timer)
-                this.timer.cancel();
+            if (null != this.timerExecutorService)
+                this.timerExecutorService.shutdown();
+            if (null != this.deliverExecutorService)
+                this.deliverExecutorService.shutdown();
         }
 
     }
 
+    private void schedule(final DeliverDelayedMessageTimerTask task, final long delay) {
+        if (!this.isStarted()) {
+            return;
+        }
+        try {
+            this.timerExecutorService.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.warn("ScheduleMessageService has been shutdown, delay level {} stops at offset {}", task.delayLevel, task.offset);
+        }
+    }
+
     public boolean isStarted() {
         return started.get();
     }
@@ -221,7 +266,7 @@ public class ScheduleMessageService extends ConfigManager {
         return true;
     }
 
-    class DeliverDelayedMessageTimerTask extends TimerTask {
+    class DeliverDelayedMessageTimerTask implements Runnable {
         private final int delayLevel;
         private final long offset;
 
@@ -239,7 +284,7 @@ public class ScheduleMessageService extends ConfigManager {
             } catch (Exception e) {
                 // XXX: warn and notify me
                 log.error("ScheduleMessageService, executeOnTimeup exception", e);
-                ScheduleMessageService.this.timer.schedule(new DeliverDelayedMessageTimerTask(
+                ScheduleMessageService.this.schedule(new DeliverDelayedMessageTimerTask(
                     this.delayLevel, this.offset), DELAY_FOR_A_PERIOD);
             }
         }
@@ -270,7 +315,11 @@ public class ScheduleMessageService extends ConfigManager {
                 SelectMappedBufferResult bufferCQ = cq.getIndexBuffer(this.offset);
                 if (bufferCQ != null) {
                     try {
+                        final int batchSize = Math.max(1,
+                            ScheduleMessageService.this.defaultMessageStore.getMessageStoreConfig().getScheduleDeliverBatchSize());
+                        List<DeliverRequest> batch = new ArrayList<DeliverRequest>(batchSize);
                         long nextOffset = offset;
+                        long countdown = 0;
                         int i = 0;
                         ConsumeQueueExt.CqExtUnit cqExtUnit = new ConsumeQueueExt.CqExtUnit();
                         for (; i < bufferCQ.getSize(); i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
@@ -295,60 +344,37 @@ public class ScheduleMessageService extends ConfigManager {
 
                             nextOffset = offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
 
-                            long countdown = deliverTimestamp - now;
-
-                            if (countdown <= 0) {
-                                MessageExt msgExt =
-                                    ScheduleMessageService.this.defaultMessageStore.lookMessageByOffset(
-                                        offsetPy, sizePy);
-
-                                if (msgExt != null) {
-                                    try {
-                                        MessageExtBrokerInner msgInner = this.messageTimeup(msgExt);
-                                        PutMessageResult putMessageResult =
-                                            ScheduleMessageService.this.writeMessageStore
-                                                .putMessage(msgInner);
-
-                                        if (putMessageResult != null
-                                            && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
-                                            continue;
-                                        } else {
-                                            // XXX: warn and notify me
-                                            log.error(
-                                                "ScheduleMessageService, a message time up, but reput it failed, topic: {} msgId {}",
-                                                msgExt.getTopic(), msgExt.getMsgId());
-                                            ScheduleMessageService.this.timer.schedule(
-                                                new DeliverDelayedMessageTimerTask(this.delayLevel,
-                                                    nextOffset), DELAY_FOR_A_PERIOD);
-                                            ScheduleMessageService.this.updateOffset(this.delayLevel,
-                                                nextOffset);
-                                            return;
-                                        }
-                                    } catch (Exception e) {
-                                        /*
-                                         * XXX: warn and notify me
-
-
-
-                                         */
-                                        log.error(
-                                            "ScheduleMessageService, messageTimeup execute error, drop it. msgExt="
-                                                + msgExt + ", nextOffset=" + nextOffset + ",offsetPy="
-                                                + offsetPy + ",sizePy=" + sizePy, e);
-                                    }
+                            countdown = deliverTimestamp - now;
+
+                            if (i == 0) {
+                                ScheduleMessageService.this.deliverLagTable.put(this.delayLevel, Math.max(0, -countdown));
+                            }
+
+                            if (countdown > 0) {
+                                break;
+                            }
+
+                            batch.add(new DeliverRequest(nextOffset, offsetPy, sizePy));
+                            if (batch.size() >= batchSize) {
+                                if (!this.deliverBatch(batch)) {
+                                    return;
                                 }
-                            } else {
-                                ScheduleMessageService.this.timer.schedule(
-                                    new DeliverDelayedMessageTimerTask(this.delayLevel, nextOffset),
-                                    countdown);
-                                ScheduleMessageService.this.updateOffset(this.delayLevel, nextOffset);
-                                return;
+                                batch.clear();
                             }
                         } // end of for
 
-                        nextOffset = offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
-                        ScheduleMessageService.this.timer.schedule(new DeliverDelayedMessageTimerTask(
-                            this.delayLevel, nextOffset), DELAY_FOR_A_WHILE);
+                        if (!batch.isEmpty() && !this.deliverBatch(batch)) {
+                            return;
+                        }
+
+                        if (countdown > 0) {
+                            ScheduleMessageService.this.schedule(
+                                new DeliverDelayedMessageTimerTask(this.delayLevel, nextOffset), countdown);
+                        } else {
+                            nextOffset = offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
+                            ScheduleMessageService.this.schedule(new DeliverDelayedMessageTimerTask(
+                                this.delayLevel, nextOffset), DELAY_FOR_A_WHILE);
+                        }
                         ScheduleMessageService.this.updateOffset(this.delayLevel, nextOffset);
                         return;
                     } finally {
@@ -364,13 +390,100 @@ public class ScheduleMessageService extends ConfigManager {
                         log.error("schedule CQ offset invalid. offset=" + offset + ", cqMinOffset="
                             + cqMinOffset + ", queueId=" + cq.getQueueId());
                     }
+                    ScheduleMessageService.this.deliverLagTable.put(this.delayLevel, 0L);
                 }
             } // end of if (cq != null)
 
-            ScheduleMessageService.this.timer.schedule(new DeliverDelayedMessageTimerTask(this.delayLevel,
+            ScheduleMessageService.this.schedule(new DeliverDelayedMessageTimerTask(this.delayLevel,
                 failScheduleOffset), DELAY_FOR_A_WHILE);
         }
 
+        /**
+         * Put the due messages back to their real topics, concurrently if a deliver executor is configured.
+         *
+         * @return false if some message failed, the level is then rescheduled from the first failed offset
+         */
+        private boolean deliverBatch(final List<DeliverRequest> batch) {
+            long failedOffset = -1;
+            if (null == ScheduleMessageService.this.deliverExecutorService || batch.size() == 1) {
+                for (DeliverRequest request : batch) {
+                    if (!this.deliver(request)) {
+                        failedOffset = request.queueOffset;
+                        break;
+                    }
+                }
+            } else {
+                List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(batch.size());
+                for (final DeliverRequest request : batch) {
+                    tasks.add(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return deliver(request);
+                        }
+                    });
+                }
+                try {
+                    List<Future<Boolean>> futures = ScheduleMessageService.this.deliverExecutorService.invokeAll(tasks);
+                    for (int j = 0; j < futures.size(); j++) {
+                        if (!futures.get(j).get()) {
+                            failedOffset = batch.get(j).queueOffset;
+                            break;
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("ScheduleMessageService, deliver batch exception, delay level " + this.delayLevel, e);
+                    failedOffset = batch.get(0).queueOffset;
+                }
+            }
+
+            if (failedOffset >= 0) {
+                // the messages behind the failed one may be delivered again
+                ScheduleMessageService.this.schedule(
+                    new DeliverDelayedMessageTimerTask(this.delayLevel, failedOffset), DELAY_FOR_A_PERIOD);
+                ScheduleMessageService.this.updateOffset(this.delayLevel, failedOffset);
+                return false;
+            }
+
+            ScheduleMessageService.this.updateOffset(this.delayLevel, batch.get(batch.size() - 1).queueOffset + 1);
+            return true;
+        }
+
+        private boolean deliver(final DeliverRequest request) {
+            MessageExt msgExt =
+                ScheduleMessageService.this.defaultMessageStore.lookMessageByOffset(
+                    request.offsetPy, request.sizePy);
+            if (msgExt == null) {
+                return true;
+            }
+
+            try {
+                MessageExtBrokerInner msgInner = this.messageTimeup(msgExt);
+                PutMessageResult putMessageResult =
+                    ScheduleMessageService.this.writeMessageStore
+                        .putMessage(msgInner);
+
+                if (putMessageResult != null
+                    && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+                    return true;
+                } else {
+                    // XXX: warn and notify me
+                    log.error(
+                        "ScheduleMessageService, a message time up, but reput it failed, topic: {} msgId {}",
+                        msgExt.getTopic(), msgExt.getMsgId());
+                    return false;
+                }
+            } catch (Exception e) {
+                /*
+                 * XXX: warn and notify me
+                 */
+                log.error(
+                    "ScheduleMessageService, messageTimeup execute error, drop it. msgExt="
+                        + msgExt + ", nextOffset=" + request.queueOffset + ",offsetPy="
+                        + request.offsetPy + ",sizePy=" + request.sizePy, e);
+                return true;
+            }
+        }
+
         private MessageExtBrokerInner messageTimeup(MessageExt msgExt) {
             MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
             msgInner.setBody(msgExt.getBody());
@@ -401,4 +514,16 @@ public class ScheduleMessageService extends ConfigManager {
             return msgInner;
         }
     }
+
+    static class DeliverRequest {
+        private final long queueOffset;
+        private final long offsetPy;
+        private final int sizePy;
+
+        DeliverRequest(long queueOffset, long offsetPy, int sizePy) {
+            this.queueOffset = queueOffset;
+            this.offsetPy = offsetPy;
+            this.sizePy = sizePy;
+        }
+    }
 }
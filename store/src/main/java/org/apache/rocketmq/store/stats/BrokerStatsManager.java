@@ -23,6 +23,8 @@ import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.common.stats.LatencySnapshot;
+import org.apache.rocketmq.common.stats.LatencyStatsItemSet;
 import org.apache.rocketmq.common.stats.MomentStatsItemSet;
 import org.apache.rocketmq.common.stats.StatsItem;
 import org.apache.rocketmq.common.stats.StatsItemSet;
@@ -56,6 +58,10 @@ public class BrokerStatsManager {
     public static final String GROUP_GET_FALL_TIME = "GROUP_GET_FALL_TIME";
     // Pull Message Latency
     public static final String GROUP_GET_LATENCY = "GROUP_GET_LATENCY";
+    // Latency percentiles of send requests by topic, and of pull requests finding messages by topic and group
+    public static final String TOPIC_PUT_RT = "TOPIC_PUT_RT";
+    public static final String GROUP_GET_RT = "GROUP_GET_RT";
+    private static final int DEFAULT_MAX_LATENCY_STATS_KEYS = 10000;
 
     /**
      * read disk follow stats
@@ -67,11 +73,16 @@ public class BrokerStatsManager {
     private final ScheduledExecutorService commercialExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl(
         "CommercialStatsThread"));
     private final HashMap<String, StatsItemSet> statsTable = new HashMap<String, StatsItemSet>();
+    private final HashMap<String, LatencyStatsItemSet> latencyStatsTable = new HashMap<String, LatencyStatsItemSet>();
     private final String clusterName;
     private final MomentStatsItemSet momentStatsItemSetFallSize = new MomentStatsItemSet(GROUP_GET_FALL_SIZE, scheduledExecutorService, log);
     private final MomentStatsItemSet momentStatsItemSetFallTime = new MomentStatsItemSet(GROUP_GET_FALL_TIME, scheduledExecutorService, log);
 
     public BrokerStatsManager(String clusterName) {
+        this(clusterName, DEFAULT_MAX_LATENCY_STATS_KEYS);
+    }
+
+    public BrokerStatsManager(String clusterName, int maxLatencyStatsKeys) {
         this.clusterName = clusterName;
 
         this.statsTable.put(TOPIC_PUT_NUMS, new StatsItemSet(TOPIC_PUT_NUMS, this.scheduledExecutorService, log));
@@ -94,6 +105,9 @@ public class BrokerStatsManager {
         this.statsTable.put(COMMERCIAL_RCV_EPOLLS, new StatsItemSet(COMMERCIAL_RCV_EPOLLS, this.commercialExecutor, COMMERCIAL_LOG));
         this.statsTable.put(COMMERCIAL_SNDBCK_TIMES, new StatsItemSet(COMMERCIAL_SNDBCK_TIMES, this.commercialExecutor, COMMERCIAL_LOG));
         this.statsTable.put(COMMERCIAL_PERM_FAILURES, new StatsItemSet(COMMERCIAL_PERM_FAILURES, this.commercialExecutor, COMMERCIAL_LOG));
+
+        this.latencyStatsTable.put(TOPIC_PUT_RT, new LatencyStatsItemSet(TOPIC_PUT_RT, maxLatencyStatsKeys, this.scheduledExecutorService, log));
+        this.latencyStatsTable.put(GROUP_GET_RT, new LatencyStatsItemSet(GROUP_GET_RT, maxLatencyStatsKeys, this.scheduledExecutorService, log));
     }
 
     public MomentStatsItemSet getMomentStatsItemSetFallSize() {
@@ -156,6 +170,24 @@ public class BrokerStatsManager {
         this.statsTable.get(GROUP_GET_LATENCY).addValue(statsKey, incValue, 1);
     }
 
+    public void recordTopicPutRt(final String topic, final long latencyMicros) {
+        this.latencyStatsTable.get(TOPIC_PUT_RT).record(topic, latencyMicros);
+    }
+
+    public void recordGroupGetRt(final String group, final String topic, final long latencyMicros) {
+        final String statsKey = buildStatsKey(topic, group);
+        this.latencyStatsTable.get(GROUP_GET_RT).record(statsKey, latencyMicros);
+    }
+
+    public LatencyStatsItemSet getLatencyStatsItemSet(final String statsName) {
+        return this.latencyStatsTable.get(statsName);
+    }
+
+    public LatencySnapshot getLatencySnapshotInMinute(final String statsName, final String statsKey) {
+        LatencyStatsItemSet latencyStatsItemSet = this.latencyStatsTable.get(statsName);
+        return latencyStatsItemSet != null ? latencyStatsItemSet.getSnapshotInMinute(statsKey) : null;
+    }
+
     public void incBrokerPutNums() {
         this.statsTable.get(BROKER_PUT_NUMS).getAndCreateStatsItem(this.clusterName).getValue().incrementAndGet();
     }
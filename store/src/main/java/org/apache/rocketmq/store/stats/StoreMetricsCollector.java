@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.stats;
+
+import org.apache.rocketmq.common.metrics.MetricsCollector;
+import org.apache.rocketmq.common.metrics.MetricsWriter;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.StoreStatsService;
+import org.apache.rocketmq.store.config.BrokerRole;
+import org.apache.rocketmq.store.ha.HAService;
+
+/**
+ * Metrics of the store internals: reput, flush and HA progress, and how long the commit log has been locked.
+ */
+public class StoreMetricsCollector implements MetricsCollector {
+    private final DefaultMessageStore defaultMessageStore;
+
+    public StoreMetricsCollector(DefaultMessageStore defaultMessageStore) {
+        this.defaultMessageStore = defaultMessageStore;
+    }
+
+    @Override
+    public void collect(MetricsWriter writer) {
+        StoreStatsService storeStatsService = this.defaultMessageStore.getStoreStatsService();
+
+        writer.gauge("rocketmq_store_commitlog_max_offset", "Max physical offset of the commit log",
+            this.defaultMessageStore.getMaxPhyOffset());
+        writer.gauge("rocketmq_store_commitlog_min_offset", "Min physical offset of the commit log",
+            this.defaultMessageStore.getMinPhyOffset());
+        writer.gauge("rocketmq_store_reput_behind_bytes", "Bytes of the commit log not dispatched to consume queues yet",
+            this.defaultMessageStore.dispatchBehindBytes());
+        writer.gauge("rocketmq_store_commitlog_lock_time_ms", "Milliseconds the message being put has held the commit log lock",
+            this.defaultMessageStore.lockTimeMills());
+        writer.gauge("rocketmq_store_page_cache_busy", "Whether the commit log lock is held long enough for the page cache to be busy",
+            this.defaultMessageStore.isOSPageCacheBusy() ? 1 : 0);
+
+        writer.counter("rocketmq_store_put_message_total", "Messages put to the store",
+            storeStatsService.getPutMessageTimesTotal());
+        writer.counter("rocketmq_store_put_message_failed_total", "Messages failed to put to the store",
+            storeStatsService.getPutMessageFailedTimes().get());
+        writer.counter("rocketmq_store_get_message_found_total", "Gets of messages finding messages",
+            storeStatsService.getGetMessageTimesTotalFound().get());
+        writer.counter("rocketmq_store_get_message_miss_total", "Gets of messages finding no message",
+            storeStatsService.getGetMessageTimesTotalMiss().get());
+
+        writer.counter("rocketmq_store_flush_total", "Flushes of the commit log",
+            storeStatsService.getFlushTimesTotal());
+        writer.counter("rocketmq_store_flush_time_ms_total", "Milliseconds spent flushing the commit log",
+            storeStatsService.getFlushTimeMillisTotal());
+        writer.gauge("rocketmq_store_flush_last_time_ms", "Milliseconds the last flush of the commit log took",
+            storeStatsService.getFlushTimeMillisLast());
+
+        HAService haService = this.defaultMessageStore.getHaService();
+        if (haService != null && this.defaultMessageStore.getMessageStoreConfig().getBrokerRole() != BrokerRole.SLAVE) {
+            writer.gauge("rocketmq_store_ha_slave_connections", "Slaves connected",
+                haService.getConnectionCount().get());
+            writer.gauge("rocketmq_store_ha_slave_fall_behind_bytes", "Bytes of the commit log not pushed to slaves yet",
+                this.defaultMessageStore.slaveFallBehindMuch());
+        }
+    }
+}
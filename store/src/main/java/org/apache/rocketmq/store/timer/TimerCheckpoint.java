@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
+
+public class TimerCheckpoint extends RemotingSerializable {
+    /**
+     * Every slot before this time has been delivered.
+     */
+    private long readTimeMs;
+    /**
+     * Consume queue offset of the timer topic that has been put into the wheel.
+     */
+    private long enqueueOffset;
+    private int precisionMs;
+    private int wheelSlots;
+
+    public long getReadTimeMs() {
+        return readTimeMs;
+    }
+
+    public void setReadTimeMs(long readTimeMs) {
+        this.readTimeMs = readTimeMs;
+    }
+
+    public long getEnqueueOffset() {
+        return enqueueOffset;
+    }
+
+    public void setEnqueueOffset(long enqueueOffset) {
+        this.enqueueOffset = enqueueOffset;
+    }
+
+    public int getPrecisionMs() {
+        return precisionMs;
+    }
+
+    public void setPrecisionMs(int precisionMs) {
+        this.precisionMs = precisionMs;
+    }
+
+    public int getWheelSlots() {
+        return wheelSlots;
+    }
+
+    public void setWheelSlots(int wheelSlots) {
+        this.wheelSlots = wheelSlots;
+    }
+}
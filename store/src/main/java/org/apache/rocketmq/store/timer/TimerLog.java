@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+import org.apache.rocketmq.store.MappedFileQueue;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+
+/**
+ * Append only log of timer units, the units of one wheel slot are chained backwards by prevPos.
+ * <pre>
+ * ┌──────────┬─────────────┬─────────────────┬──────────────┬────────────┐
+ * │ size(4B) │ prevPos(8B) │ deliverMs(8B)   │ offsetPy(8B) │ sizePy(4B) │
+ * └──────────┴─────────────┴─────────────────┴──────────────┴────────────┘
+ * </pre>
+ */
+public class TimerLog {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    public static final int UNIT_SIZE = 4 + 8 + 8 + 8 + 4;
+
+    private final MappedFileQueue mappedFileQueue;
+    private final int mappedFileSize;
+    private final ByteBuffer unitBuffer = ByteBuffer.allocate(UNIT_SIZE);
+
+    public TimerLog(final String storePath, final int fileSize) {
+        this.mappedFileSize = fileSize - fileSize % UNIT_SIZE;
+        this.mappedFileQueue = new MappedFileQueue(storePath, this.mappedFileSize, null);
+    }
+
+    public boolean load() {
+        boolean result = this.mappedFileQueue.load();
+        log.info("load timer log " + (result ? "OK" : "Failed"));
+        return result;
+    }
+
+    public void recover() {
+        final List<MappedFile> mappedFiles = this.mappedFileQueue.getMappedFiles();
+        if (mappedFiles.isEmpty()) {
+            return;
+        }
+
+        MappedFile mappedFile = mappedFiles.get(mappedFiles.size() - 1);
+        ByteBuffer byteBuffer = mappedFile.sliceByteBuffer();
+        int mappedFileOffset = 0;
+        while (mappedFileOffset + UNIT_SIZE <= this.mappedFileSize) {
+            if (byteBuffer.getInt(mappedFileOffset) != UNIT_SIZE) {
+                break;
+            }
+            mappedFileOffset += UNIT_SIZE;
+        }
+
+        long processOffset = mappedFile.getFileFromOffset() + mappedFileOffset;
+        this.mappedFileQueue.setFlushedWhere(processOffset);
+        this.mappedFileQueue.setCommittedWhere(processOffset);
+        this.mappedFileQueue.truncateDirtyFiles(processOffset);
+        log.info("recover timer log over, max offset {}", processOffset);
+    }
+
+    /**
+     * Not thread safe, the caller serializes the appends.
+     *
+     * @return the position of the unit, or -1 if the log could not be written
+     */
+    public long append(final long prevPos, final long deliverMs, final long offsetPy, final int sizePy) {
+        MappedFile mappedFile = this.mappedFileQueue.getLastMappedFile(0);
+        if (null == mappedFile) {
+            log.error("create timer log mapped file failed");
+            return -1;
+        }
+
+        final long pos = mappedFile.getFileFromOffset() + mappedFile.getWrotePosition();
+        this.unitBuffer.clear();
+        this.unitBuffer.putInt(UNIT_SIZE);
+        this.unitBuffer.putLong(prevPos);
+        this.unitBuffer.putLong(deliverMs);
+        this.unitBuffer.putLong(offsetPy);
+        this.unitBuffer.putInt(sizePy);
+        if (!mappedFile.appendMessage(this.unitBuffer.array())) {
+            log.error("append timer unit failed, pos={}", pos);
+            return -1;
+        }
+        return pos;
+    }
+
+    public TimerUnit getUnit(final long pos) {
+        MappedFile mappedFile = this.mappedFileQueue.findMappedFileByOffset(pos);
+        if (null == mappedFile) {
+            return null;
+        }
+
+        SelectMappedBufferResult result = mappedFile.selectMappedBuffer((int) (pos % this.mappedFileSize), UNIT_SIZE);
+        if (null == result) {
+            return null;
+        }
+        try {
+            ByteBuffer byteBuffer = result.getByteBuffer();
+            if (byteBuffer.getInt() != UNIT_SIZE) {
+                log.warn("[BUG] timer unit magic mismatch, pos={}", pos);
+                return null;
+            }
+            long prevPos = byteBuffer.getLong();
+            long deliverMs = byteBuffer.getLong();
+            long offsetPy = byteBuffer.getLong();
+            int sizePy = byteBuffer.getInt();
+            return new TimerUnit(prevPos, deliverMs, offsetPy, sizePy);
+        } finally {
+            result.release();
+        }
+    }
+
+    public void flush() {
+        this.mappedFileQueue.flush(0);
+    }
+
+    /**
+     * Every unit of a file points to a slot at most one wheel round ahead of the time it was written, so a file
+     * untouched for longer than that is garbage.
+     */
+    public int deleteExpiredFile(final long expiredTime) {
+        return this.mappedFileQueue.deleteExpiredFileByTime(expiredTime, 0, 1000 * 120, false);
+    }
+
+    public long getMaxOffset() {
+        return this.mappedFileQueue.getMaxOffset();
+    }
+
+    public long getMinOffset() {
+        return this.mappedFileQueue.getMinOffset();
+    }
+
+    public void shutdown() {
+        this.mappedFileQueue.flush(0);
+        this.mappedFileQueue.shutdown(1000 * 30);
+    }
+
+    public void destroy() {
+        this.mappedFileQueue.destroy();
+    }
+
+    public static class TimerUnit {
+        private final long prevPos;
+        private final long deliverMs;
+        private final long offsetPy;
+        private final int sizePy;
+
+        public TimerUnit(long prevPos, long deliverMs, long offsetPy, int sizePy) {
+            this.prevPos = prevPos;
+            this.deliverMs = deliverMs;
+            this.offsetPy = offsetPy;
+            this.sizePy = sizePy;
+        }
+
+        public long getPrevPos() {
+            return prevPos;
+        }
+
+        public long getDeliverMs() {
+            return deliverMs;
+        }
+
+        public long getOffsetPy() {
+            return offsetPy;
+        }
+
+        public int getSizePy() {
+            return sizePy;
+        }
+    }
+}
@@ -0,0 +1,622 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.rocketmq.common.ConfigManager;
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
+import org.apache.rocketmq.common.TopicFilterType;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.running.RunningStats;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.ConsumeQueue;
+import org.apache.rocketmq.store.ConsumeQueueExt;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.MessageExtBrokerInner;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.PutMessageStatus;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.config.StorePathConfigHelper;
+
+/**
+ * Schedules messages carrying {@link MessageConst#PROPERTY_TIMER_DELIVER_MS} at an arbitrary timestamp.
+ * <p>
+ * Such messages are first stored in {@link #TIMER_TOPIC}, the enqueue service reads its consume queue and links
+ * every message into the slot of its delivery time on the {@link TimerWheel}, the units themselves are appended to
+ * the {@link TimerLog}. The dequeue service walks the wheel slot by slot and puts the messages due back to their
+ * real topics. A delivery time beyond one round of the wheel is put into the farthest slot and rolled over when
+ * that slot is read, so the wheel only needs to cover a part of the max delay.
+ */
+public class TimerMessageStore extends ConfigManager {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    public static final String TIMER_TOPIC = "rmq_sys_wheel_timer";
+    private static final int TIMER_QUEUE_ID = 0;
+    private static final long ENQUEUE_INTERVAL = 100L;
+    private static final int DELIVER_RETRY_TIMES = 3;
+    /**
+     * Time left between the longest delay and the expiry of the commit log holding the message, for the dequeue
+     * service to fall behind.
+     */
+    private static final long COMMIT_LOG_RESERVE_MARGIN_MS = 3600 * 1000L;
+
+    private final DefaultMessageStore defaultMessageStore;
+    private final MessageStoreConfig messageStoreConfig;
+    private final TimerLog timerLog;
+    private final TimerWheel timerWheel;
+    private final int precisionMs;
+    private final long wheelWindowMs;
+    private final Object wheelLock = new Object();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    private final EnqueueService enqueueService = new EnqueueService();
+    private final DequeueService dequeueService = new DequeueService();
+    private final FlushService flushService = new FlushService();
+    private ExecutorService deliverExecutor;
+
+    /**
+     * Next slot the dequeue service reads, units are never linked into a slot before it.
+     */
+    private volatile long currReadTimeMs;
+    /**
+     * Slots before this time are delivered, it is what the checkpoint records.
+     */
+    private volatile long readTimeMs;
+    private volatile long enqueueOffset;
+    private final AtomicLong deliverCount = new AtomicLong(0);
+    private final AtomicLong rollCount = new AtomicLong(0);
+
+    public TimerMessageStore(final DefaultMessageStore defaultMessageStore) throws IOException {
+        this.defaultMessageStore = defaultMessageStore;
+        this.messageStoreConfig = defaultMessageStore.getMessageStoreConfig();
+        this.precisionMs = this.messageStoreConfig.getTimerPrecisionMs();
+        this.wheelWindowMs = (long) this.messageStoreConfig.getTimerWheelSlots() * this.precisionMs;
+        String rootDir = this.messageStoreConfig.getStorePathRootDir();
+        this.timerLog = new TimerLog(StorePathConfigHelper.getStorePathTimerLog(rootDir),
+            this.messageStoreConfig.getMappedFileSizeTimerLog());
+        this.timerWheel = new TimerWheel(StorePathConfigHelper.getTimerWheelPath(rootDir),
+            this.messageStoreConfig.getTimerWheelSlots(), this.precisionMs);
+        this.readTimeMs = this.timerWheel.align(System.currentTimeMillis());
+        this.currReadTimeMs = this.readTimeMs;
+        if (this.getMaxDelayMs() < this.messageStoreConfig.getTimerMaxDelaySec() * 1000L) {
+            log.warn("timerMaxDelaySec {} exceeds the fileReservedTime {}h of the commit log, timer messages are delayed for {}ms at most",
+                this.messageStoreConfig.getTimerMaxDelaySec(), this.messageStoreConfig.getFileReservedTime(), this.getMaxDelayMs());
+        }
+    }
+
+    public static boolean isTimerMessage(final MessageExtBrokerInner msg) {
+        return msg.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS) != null;
+    }
+
+    /**
+     * Redirect a message to the timer topic if it asks for a delivery time in the future.
+     *
+     * @return false if the delivery time is malformed or too far away
+     */
+    public boolean transformTimerMessage(final MessageExtBrokerInner msg) {
+        final int tranType = MessageSysFlag.getTransactionValue(msg.getSysFlag());
+        if (tranType != MessageSysFlag.TRANSACTION_NOT_TYPE && tranType != MessageSysFlag.TRANSACTION_COMMIT_TYPE) {
+            return true;
+        }
+        // half messages are scheduled when they are committed
+        if (MixAll.RMQ_SYS_TRANS_HALF_TOPIC.equals(msg.getTopic()) || MixAll.RMQ_SYS_TRANS_OP_HALF_TOPIC.equals(msg.getTopic())) {
+            return true;
+        }
+        if (msg.getDelayTimeLevel() > 0) {
+            return true;
+        }
+        if (TIMER_TOPIC.equals(msg.getTopic())) {
+            log.warn("message can not be sent to the timer topic directly");
+            return false;
+        }
+
+        long deliverMs;
+        try {
+            deliverMs = Long.parseLong(msg.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS));
+        } catch (NumberFormatException e) {
+            log.warn("illegal timer deliver time {}, topic={}", msg.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS), msg.getTopic());
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        if (deliverMs - now > this.getMaxDelayMs()) {
+            log.warn("timer deliver time {} exceeds the max delay, topic={}", deliverMs, msg.getTopic());
+            return false;
+        }
+
+        if (deliverMs <= now) {
+            MessageAccessor.clearProperty(msg, MessageConst.PROPERTY_TIMER_DELIVER_MS);
+        } else {
+            // Backup real topic, queueId
+            MessageAccessor.putProperty(msg, MessageConst.PROPERTY_REAL_TOPIC, msg.getTopic());
+            MessageAccessor.putProperty(msg, MessageConst.PROPERTY_REAL_QUEUE_ID, String.valueOf(msg.getQueueId()));
+            msg.setTopic(TIMER_TOPIC);
+            msg.setQueueId(TIMER_QUEUE_ID);
+        }
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+        return true;
+    }
+
+    /**
+     * A message is read back from the commit log when it is due, so it can not be delayed for longer than the commit
+     * log is reserved.
+     */
+    public long getMaxDelayMs() {
+        long reservedMs = this.messageStoreConfig.getFileReservedTime() * 3600 * 1000L - COMMIT_LOG_RESERVE_MARGIN_MS;
+        return Math.min(this.messageStoreConfig.getTimerMaxDelaySec() * 1000L, reservedMs);
+    }
+
+    public boolean load() {
+        boolean result = super.load();
+        result = result && this.timerLog.load();
+        if (result) {
+            this.timerLog.recover();
+        }
+        return result;
+    }
+
+    public void start() {
+        if (this.started.compareAndSet(false, true)) {
+            this.currReadTimeMs = this.readTimeMs;
+            this.deliverExecutor = Executors.newFixedThreadPool(this.messageStoreConfig.getTimerDeliverThreadNum(),
+                new ThreadFactoryImpl("TimerDeliverThread_"));
+            this.enqueueService.start();
+            this.dequeueService.start();
+            this.flushService.start();
+            log.info("timer message store started, readTimeMs={} enqueueOffset={}", this.readTimeMs, this.enqueueOffset);
+        }
+    }
+
+    /**
+     * The dequeue service finishes the slot it is delivering before it stops, so the checkpoint flushed last covers
+     * every unit delivered.
+     */
+    public void shutdown() {
+        if (this.started.compareAndSet(true, false)) {
+            this.enqueueService.shutdown();
+            this.dequeueService.shutdown();
+            this.flushService.shutdown();
+            this.deliverExecutor.shutdown();
+            this.flush();
+        }
+    }
+
+    /**
+     * Release the files, the store must be shutdown before.
+     */
+    public void close() {
+        this.timerLog.shutdown();
+        this.timerWheel.shutdown();
+    }
+
+    public void destroy() {
+        this.timerLog.destroy();
+        this.timerWheel.destroy();
+    }
+
+    public boolean isStarted() {
+        return started.get();
+    }
+
+    /**
+     * Flush the log and the wheel before the checkpoint, so that the checkpoint never runs ahead of the data.
+     */
+    public void flush() {
+        final long readTimeMs = this.readTimeMs;
+        final long enqueueOffset = this.enqueueOffset;
+        this.timerLog.flush();
+        this.timerWheel.flush();
+        this.persist(readTimeMs, enqueueOffset);
+    }
+
+    private synchronized void persist(final long readTimeMs, final long enqueueOffset) {
+        String jsonString = this.encode(readTimeMs, enqueueOffset, true);
+        try {
+            MixAll.string2File(jsonString, this.configFilePath());
+        } catch (IOException e) {
+            log.error("persist timer checkpoint exception, " + this.configFilePath(), e);
+        }
+    }
+
+    public void buildRunningStats(HashMap<String, String> stats) {
+        long maxOffset = this.defaultMessageStore.getMaxOffsetInQueue(TIMER_TOPIC, TIMER_QUEUE_ID);
+        stats.put(RunningStats.timerEnqueueOffset.name(), String.format("%d,%d", this.enqueueOffset, maxOffset));
+        stats.put(RunningStats.timerReadTimeMs.name(), String.format("%d,%d,%d,%d", this.readTimeMs,
+            System.currentTimeMillis() - this.readTimeMs, this.deliverCount.get(), this.rollCount.get()));
+    }
+
+    /**
+     * Link a unit into the slot of its delivery time, capped to the wheel window.
+     */
+    private boolean enqueue(final long offsetPy, final int sizePy, final long deliverMs) {
+        synchronized (this.wheelLock) {
+            final long currReadTimeMs = this.currReadTimeMs;
+            long slotTimeMs = this.timerWheel.align(deliverMs);
+            if (slotTimeMs < currReadTimeMs) {
+                slotTimeMs = currReadTimeMs;
+            } else if (slotTimeMs >= currReadTimeMs + this.wheelWindowMs) {
+                slotTimeMs = currReadTimeMs + this.wheelWindowMs - this.precisionMs;
+            }
+
+            TimerWheel.Slot slot = this.timerWheel.getSlot(slotTimeMs);
+            long pos = this.timerLog.append(slot.getLastPos(), deliverMs, offsetPy, sizePy);
+            if (pos < 0) {
+                return false;
+            }
+            long firstPos = slot.getFirstPos() < 0 ? pos : slot.getFirstPos();
+            this.timerWheel.putSlot(slotTimeMs, firstPos, pos, slot.getNum() + 1);
+            return true;
+        }
+    }
+
+    /**
+     * @return the units of the slot in append order, and the slot time in {@code slotTimeHolder}
+     */
+    private List<TimerLog.TimerUnit> pollSlot(final long[] slotTimeHolder) {
+        List<TimerLog.TimerUnit> units = new ArrayList<TimerLog.TimerUnit>();
+        synchronized (this.wheelLock) {
+            final long slotTimeMs = this.currReadTimeMs;
+            slotTimeHolder[0] = slotTimeMs;
+            TimerWheel.Slot slot = this.timerWheel.getSlot(slotTimeMs);
+            long pos = slot.getLastPos();
+            final long maxPos = this.timerLog.getMaxOffset();
+            while (pos >= 0 && pos < maxPos && units.size() < slot.getNum()) {
+                TimerLog.TimerUnit unit = this.timerLog.getUnit(pos);
+                if (null == unit) {
+                    log.warn("timer unit lost, slot={} pos={}", slotTimeMs, pos);
+                    break;
+                }
+                units.add(unit);
+                pos = unit.getPrevPos();
+            }
+            this.currReadTimeMs = slotTimeMs + this.precisionMs;
+        }
+
+        List<TimerLog.TimerUnit> result = new ArrayList<TimerLog.TimerUnit>(units.size());
+        for (int i = units.size() - 1; i >= 0; i--) {
+            result.add(units.get(i));
+        }
+        return result;
+    }
+
+    private boolean deliver(final TimerLog.TimerUnit unit) {
+        MessageExt msgExt = this.defaultMessageStore.lookMessageByOffset(unit.getOffsetPy(), unit.getSizePy());
+        if (null == msgExt) {
+            log.error("timer message not found, its commit log may have been deleted, offsetPy={} sizePy={}, drop it",
+                unit.getOffsetPy(), unit.getSizePy());
+            return true;
+        }
+
+        for (int i = 0; i < DELIVER_RETRY_TIMES && this.isStarted(); i++) {
+            try {
+                PutMessageResult putMessageResult = this.defaultMessageStore.putMessage(this.messageTimeup(msgExt));
+                if (putMessageResult != null && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+                    this.deliverCount.incrementAndGet();
+                    return true;
+                }
+                log.warn("put timer message to real topic failed, topic={} msgId={} result={}", msgExt.getTopic(),
+                    msgExt.getMsgId(), putMessageResult);
+            } catch (Exception e) {
+                log.error("timer messageTimeup execute error, drop it. msgExt=" + msgExt, e);
+                return true;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private MessageExtBrokerInner messageTimeup(MessageExt msgExt) {
+        MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
+        msgInner.setBody(msgExt.getBody());
+        msgInner.setFlag(msgExt.getFlag());
+        MessageAccessor.setProperties(msgInner, msgExt.getProperties());
+
+        TopicFilterType topicFilterType = MessageExt.parseTopicFilterType(msgInner.getSysFlag());
+        long tagsCodeValue =
+            MessageExtBrokerInner.tagsString2tagsCode(topicFilterType, msgInner.getTags());
+        msgInner.setTagsCode(tagsCodeValue);
+
+        msgInner.setSysFlag(msgExt.getSysFlag());
+        msgInner.setBornTimestamp(msgExt.getBornTimestamp());
+        msgInner.setBornHost(msgExt.getBornHost());
+        msgInner.setStoreHost(msgExt.getStoreHost());
+        msgInner.setReconsumeTimes(msgExt.getReconsumeTimes());
+
+        msgInner.setWaitStoreMsgOK(false);
+        MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_TIMER_DELIVER_MS);
+
+        msgInner.setTopic(msgInner.getProperty(MessageConst.PROPERTY_REAL_TOPIC));
+        msgInner.setQueueId(Integer.parseInt(msgInner.getProperty(MessageConst.PROPERTY_REAL_QUEUE_ID)));
+        MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_REAL_TOPIC);
+        MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_REAL_QUEUE_ID);
+        msgInner.setPropertiesString(MessageDecoder.messageProperties2String(msgInner.getProperties()));
+
+        return msgInner;
+    }
+
+    @Override
+    public String encode() {
+        return this.encode(false);
+    }
+
+    @Override
+    public String encode(final boolean prettyFormat) {
+        return this.encode(this.readTimeMs, this.enqueueOffset, prettyFormat);
+    }
+
+    private String encode(final long readTimeMs, final long enqueueOffset, final boolean prettyFormat) {
+        TimerCheckpoint checkpoint = new TimerCheckpoint();
+        checkpoint.setReadTimeMs(readTimeMs);
+        checkpoint.setEnqueueOffset(enqueueOffset);
+        checkpoint.setPrecisionMs(this.precisionMs);
+        checkpoint.setWheelSlots(this.timerWheel.getSlotsTotal());
+        return checkpoint.toJson(prettyFormat);
+    }
+
+    @Override
+    public void decode(String jsonString) {
+        if (jsonString != null) {
+            TimerCheckpoint checkpoint = TimerCheckpoint.fromJson(jsonString, TimerCheckpoint.class);
+            if (checkpoint != null) {
+                if (checkpoint.getPrecisionMs() != this.precisionMs
+                    || checkpoint.getWheelSlots() != this.timerWheel.getSlotsTotal()) {
+                    // the slots written with the old layout can not be located any more
+                    log.error("timer wheel layout changed from {}ms*{} to {}ms*{}, the pending timers are lost",
+                        checkpoint.getPrecisionMs(), checkpoint.getWheelSlots(), this.precisionMs,
+                        this.timerWheel.getSlotsTotal());
+                    this.enqueueOffset = checkpoint.getEnqueueOffset();
+                    return;
+                }
+                this.readTimeMs = checkpoint.getReadTimeMs();
+                this.currReadTimeMs = this.readTimeMs;
+                this.enqueueOffset = checkpoint.getEnqueueOffset();
+            }
+        }
+    }
+
+    @Override
+    public String configFilePath() {
+        return StorePathConfigHelper.getTimerCheckpointPath(this.messageStoreConfig.getStorePathRootDir());
+    }
+
+    public long getReadTimeMs() {
+        return readTimeMs;
+    }
+
+    public long getEnqueueOffset() {
+        return enqueueOffset;
+    }
+
+    class EnqueueService extends ServiceThread {
+
+        @Override
+        public String getServiceName() {
+            return EnqueueService.class.getSimpleName();
+        }
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
+
+            while (!this.isStopped()) {
+                try {
+                    if (!this.enqueueBatch()) {
+                        this.waitForRunning(ENQUEUE_INTERVAL);
+                    }
+                } catch (Throwable e) {
+                    log.error(this.getServiceName() + " service has exception. ", e);
+                    this.waitForRunning(ENQUEUE_INTERVAL);
+                }
+            }
+
+            log.info(this.getServiceName() + " service end");
+        }
+
+        /**
+         * @return true if any unit has been enqueued
+         */
+        private boolean enqueueBatch() {
+            ConsumeQueue cq = defaultMessageStore.findConsumeQueue(TIMER_TOPIC, TIMER_QUEUE_ID);
+            if (null == cq) {
+                return false;
+            }
+
+            long offset = enqueueOffset;
+            if (offset < cq.getMinOffsetInQueue()) {
+                log.error("timer CQ offset invalid. offset={}, cqMinOffset={}", offset, cq.getMinOffsetInQueue());
+                offset = cq.getMinOffsetInQueue();
+                enqueueOffset = offset;
+            }
+
+            SelectMappedBufferResult bufferCQ = cq.getIndexBuffer(offset);
+            if (null == bufferCQ) {
+                return false;
+            }
+
+            try {
+                ConsumeQueueExt.CqExtUnit cqExtUnit = new ConsumeQueueExt.CqExtUnit();
+                int i = 0;
+                for (; i < bufferCQ.getSize() && !this.isStopped(); i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
+                    long offsetPy = bufferCQ.getByteBuffer().getLong();
+                    int sizePy = bufferCQ.getByteBuffer().getInt();
+                    long tagsCode = bufferCQ.getByteBuffer().getLong();
+
+                    if (cq.isExtAddr(tagsCode)) {
+                        if (cq.getExt(tagsCode, cqExtUnit)) {
+                            tagsCode = cqExtUnit.getTagsCode();
+                        } else {
+                            MessageExt msgExt = defaultMessageStore.lookMessageByOffset(offsetPy, sizePy);
+                            tagsCode = msgExt == null ? 0 : msgExt.getDeliverTimeMs();
+                        }
+                    }
+
+                    if (!enqueue(offsetPy, sizePy, tagsCode)) {
+                        break;
+                    }
+                    enqueueOffset = offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE) + 1;
+                }
+                return i > 0;
+            } finally {
+                bufferCQ.release();
+            }
+        }
+    }
+
+    class DequeueService extends ServiceThread {
+
+        @Override
+        public String getServiceName() {
+            return DequeueService.class.getSimpleName();
+        }
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
+
+            final long[] slotTimeHolder = new long[1];
+            while (!this.isStopped()) {
+                try {
+                    // a slot is read once it is over, so that no message is delivered before its time
+                    long waitMs = currReadTimeMs + precisionMs - System.currentTimeMillis();
+                    if (waitMs > 0) {
+                        this.waitForRunning(Math.min(ENQUEUE_INTERVAL, waitMs));
+                        continue;
+                    }
+
+                    List<TimerLog.TimerUnit> units = pollSlot(slotTimeHolder);
+                    if (!units.isEmpty()) {
+                        this.deliverSlot(slotTimeHolder[0], units);
+                    }
+                    readTimeMs = slotTimeHolder[0] + precisionMs;
+                } catch (Throwable e) {
+                    log.error(this.getServiceName() + " service has exception. ", e);
+                    this.waitForRunning(ENQUEUE_INTERVAL);
+                }
+            }
+
+            log.info(this.getServiceName() + " service end");
+        }
+
+        /**
+         * Deliver the due units in parallel and roll the others over, the slot is done only when all of them are.
+         * <p>
+         * A shutdown waits for the slot in progress, but the checkpoint only records whole slots, so after a crash
+         * the units of that slot delivered before it are delivered again: delivery is at least once.
+         */
+        private void deliverSlot(final long slotTimeMs, final List<TimerLog.TimerUnit> units) throws InterruptedException {
+            final List<TimerLog.TimerUnit> dueUnits = new ArrayList<TimerLog.TimerUnit>(units.size());
+            for (TimerLog.TimerUnit unit : units) {
+                if (unit.getDeliverMs() >= slotTimeMs + precisionMs) {
+                    this.reenqueue(unit, unit.getDeliverMs());
+                    rollCount.incrementAndGet();
+                } else {
+                    dueUnits.add(unit);
+                }
+            }
+            if (dueUnits.isEmpty()) {
+                return;
+            }
+
+            final int threadNum = Math.min(messageStoreConfig.getTimerDeliverThreadNum(), dueUnits.size());
+            final CountDownLatch latch = new CountDownLatch(threadNum);
+            for (int t = 0; t < threadNum; t++) {
+                final int start = t;
+                deliverExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = start; i < dueUnits.size(); i += threadNum) {
+                                TimerLog.TimerUnit unit = dueUnits.get(i);
+                                if (!deliver(unit)) {
+                                    // retry on the next slot
+                                    reenqueue(unit, unit.getDeliverMs());
+                                }
+                            }
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+            // drain the slot even when stopping, the retries of a unit are bounded and the ones not delivered are
+            // rolled over, so the checkpoint can move past the slot without delivering any unit of it twice
+            while (!latch.await(1, TimeUnit.SECONDS)) {
+                if (this.isStopped()) {
+                    log.info("timer slot {} is still being delivered, wait for it before shutdown", slotTimeMs);
+                }
+            }
+        }
+
+        private void reenqueue(final TimerLog.TimerUnit unit, final long deliverMs) {
+            if (!enqueue(unit.getOffsetPy(), unit.getSizePy(), deliverMs)) {
+                log.error("[BUG] roll timer unit failed, offsetPy={} sizePy={}", unit.getOffsetPy(), unit.getSizePy());
+            }
+        }
+    }
+
+    class FlushService extends ServiceThread {
+
+        @Override
+        public String getServiceName() {
+            return FlushService.class.getSimpleName();
+        }
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
+
+            while (!this.isStopped()) {
+                try {
+                    this.waitForRunning(messageStoreConfig.getFlushDelayOffsetInterval());
+                    flush();
+
+                    long lagMs = Math.max(0, System.currentTimeMillis() - readTimeMs);
+                    int deleteCount = timerLog.deleteExpiredFile(wheelWindowMs + lagMs + 3600 * 1000L);
+                    if (deleteCount > 0) {
+                        log.info("delete {} expired timer log files", deleteCount);
+                    }
+                } catch (Throwable e) {
+                    log.error(this.getServiceName() + " service has exception. ", e);
+                }
+            }
+
+            log.info(this.getServiceName() + " service end");
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+
+/**
+ * Memory mapped slots of the timing wheel, each slot points to the head and tail of a linked list in the
+ * {@link TimerLog}.
+ * <pre>
+ * ┌────────────┬──────────────┬─────────────┬──────────┐
+ * │ timeMs(8B) │ firstPos(8B) │ lastPos(8B) │ num(4B)  │
+ * └────────────┴──────────────┴─────────────┴──────────┘
+ * </pre>
+ * A slot is reused every {@code slotsTotal * precisionMs}, the stored timeMs tells whether it belongs to the
+ * current round.
+ */
+public class TimerWheel {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    public static final int SLOT_SIZE = 8 + 8 + 8 + 4;
+
+    private final String fileName;
+    private final int slotsTotal;
+    private final int precisionMs;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer mappedByteBuffer;
+    private volatile boolean closed = false;
+
+    public TimerWheel(final String fileName, final int slotsTotal, final int precisionMs) throws IOException {
+        this.fileName = fileName;
+        this.slotsTotal = slotsTotal;
+        this.precisionMs = precisionMs;
+
+        File file = new File(fileName);
+        MappedFile.ensureDirOK(file.getParent());
+        long fileSize = (long) slotsTotal * SLOT_SIZE;
+        boolean exists = file.exists();
+        if (exists && file.length() != fileSize) {
+            log.warn("timer wheel size changed, file={} length={} expected={}", fileName, file.length(), fileSize);
+        }
+
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.fileChannel = this.randomAccessFile.getChannel();
+        this.mappedByteBuffer = this.fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        log.info("timer wheel {} slots={} precisionMs={} {}", fileName, slotsTotal, precisionMs,
+            exists ? "loaded" : "created");
+    }
+
+    public long align(final long timeMs) {
+        return timeMs - timeMs % this.precisionMs;
+    }
+
+    private int slotPosition(final long timeMs) {
+        return (int) ((timeMs / this.precisionMs) % this.slotsTotal) * SLOT_SIZE;
+    }
+
+    /**
+     * @return the slot of the given time, an empty slot if it is not written in this round
+     */
+    public synchronized Slot getSlot(final long timeMs) {
+        final long slotTime = this.align(timeMs);
+        final int pos = this.slotPosition(slotTime);
+        if (this.mappedByteBuffer.getLong(pos) != slotTime) {
+            return new Slot(slotTime, -1, -1, 0);
+        }
+        return new Slot(slotTime,
+            this.mappedByteBuffer.getLong(pos + 8),
+            this.mappedByteBuffer.getLong(pos + 16),
+            this.mappedByteBuffer.getInt(pos + 24));
+    }
+
+    public synchronized void putSlot(final long timeMs, final long firstPos, final long lastPos, final int num) {
+        final long slotTime = this.align(timeMs);
+        final int pos = this.slotPosition(slotTime);
+        this.mappedByteBuffer.putLong(pos, slotTime);
+        this.mappedByteBuffer.putLong(pos + 8, firstPos);
+        this.mappedByteBuffer.putLong(pos + 16, lastPos);
+        this.mappedByteBuffer.putInt(pos + 24, num);
+    }
+
+    public void flush() {
+        this.mappedByteBuffer.force();
+    }
+
+    public synchronized void shutdown() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.flush();
+        MappedFile.clean(this.mappedByteBuffer);
+        try {
+            this.fileChannel.close();
+            this.randomAccessFile.close();
+        } catch (IOException e) {
+            log.error("close timer wheel exception, " + this.fileName, e);
+        }
+    }
+
+    public void destroy() {
+        this.shutdown();
+        boolean result = new File(this.fileName).delete();
+        log.info("destroy timer wheel {} {}", this.fileName, result ? "OK" : "Failed");
+    }
+
+    public int getSlotsTotal() {
+        return slotsTotal;
+    }
+
+    public int getPrecisionMs() {
+        return precisionMs;
+    }
+
+    public static class Slot {
+        private final long timeMs;
+        private final long firstPos;
+        private final long lastPos;
+        private final int num;
+
+        public Slot(long timeMs, long firstPos, long lastPos, int num) {
+            this.timeMs = timeMs;
+            this.firstPos = firstPos;
+            this.lastPos = lastPos;
+            this.num = num;
+        }
+
+        public long getTimeMs() {
+            return timeMs;
+        }
+
+        public long getFirstPos() {
+            return firstPos;
+        }
+
+        public long getLastPos() {
+            return lastPos;
+        }
+
+        public int getNum() {
+            return num;
+        }
+    }
+}
@@ -28,11 +28,20 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.rocketmq.common.BrokerConfig;
 import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.store.config.FlushDiskType;
 import org.apache.rocketmq.store.config.MessageStoreConfig;
@@ -133,6 +142,18 @@ public class DefaultMessageStoreTest {
         verifyThatMasterIsFunctional(totalMsgs, messageStore);
     }
 
+    @Test
+    public void testAsyncPutMessage() throws Exception {
+        QUEUE_TOTAL = 1;
+        MessageBody = StoreMessage.getBytes();
+        PutMessageResult result = messageStore.asyncPutMessage(buildMessage()).get(3, TimeUnit.SECONDS);
+        assertThat(result.getPutMessageStatus()).isEqualTo(PutMessageStatus.PUT_OK);
+
+        MessageExt messageExt = messageStore.lookMessageByOffset(result.getAppendMessageResult().getWroteOffset());
+        assertThat(messageExt).isNotNull();
+        assertThat(messageExt.getBody()).isEqualTo(MessageBody);
+    }
+
     @Test
     public void should_look_message_successfully_when_offset_is_first() {
         final int totalCount = 10;
@@ -584,6 +605,89 @@ public class DefaultMessageStoreTest {
         fileChannel.close();
     }
 
+    @Test
+    public void testArrivingCoalescedPerQueue() throws Exception {
+        List<MessageExtBrokerInner> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(buildMessage(StoreMessage.getBytes(), "FooBar"));
+        }
+        assertThat(dispatchArriving(new BrokerConfig(), batch)).containsExactly("1", "11");
+    }
+
+    @Test
+    public void testArrivingCoalescedByProperties() throws Exception {
+        BrokerConfig brokerConfig = new BrokerConfig();
+        brokerConfig.setEnablePropertyFilter(true);
+        List<MessageExtBrokerInner> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            MessageExtBrokerInner msg = buildMessage(StoreMessage.getBytes(), "FooBar");
+            MessageAccessor.clearProperty(msg, MessageConst.PROPERTY_KEYS);
+            MessageAccessor.putProperty(msg, "color", i % 2 == 0 ? "red" : "blue");
+            msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+            batch.add(msg);
+        }
+        // offsets 1, 3, .. 9 are red and 2, 4, .. 10 blue, each color notified with its own properties
+        assertThat(dispatchArriving(brokerConfig, batch)).containsExactly("1", "10:red", "11:blue");
+    }
+
+    /**
+     * Put one message, then the batch while the arriving of the first one is notified, so that the batch is
+     * dispatched at once.
+     *
+     * @return the arrivings notified, by offset and color property
+     */
+    private List<String> dispatchArriving(BrokerConfig brokerConfig, List<MessageExtBrokerInner> batch) throws Exception {
+        final CountDownLatch firstArriving = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> arrivings = new CopyOnWriteArrayList<>();
+        MessageArrivingListener listener = new MessageArrivingListener() {
+            @Override
+            public void arriving(String topic, int queueId, long logicOffset, long tagsCode, long msgStoreTime,
+                byte[] filterBitMap, Map<String, String> properties) {
+                String color = properties != null ? properties.get("color") : null;
+                arrivings.add(color != null ? logicOffset + ":" + color : String.valueOf(logicOffset));
+                firstArriving.countDown();
+                try {
+                    release.await(3, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        };
+
+        String storePath = System.getProperty("user.home") + File.separator + "arriving_test#" + UUID.randomUUID();
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 1024);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 20);
+        messageStoreConfig.setHaListenPort(0);
+        DefaultMessageStore store = new DefaultMessageStore(messageStoreConfig, new BrokerStatsManager("arrivingTest"), listener, brokerConfig);
+        try {
+            assertTrue(store.load());
+            store.start();
+
+            MessageExtBrokerInner msg = buildMessage(StoreMessage.getBytes(), "FooBar");
+            msg.setQueueId(0);
+            assertThat(store.putMessage(msg).isOk()).isTrue();
+            assertTrue(firstArriving.await(3, TimeUnit.SECONDS));
+
+            // dispatched as one batch once the first notification returns
+            for (MessageExtBrokerInner batchMsg : batch) {
+                batchMsg.setQueueId(0);
+                assertThat(store.putMessage(batchMsg).isOk()).isTrue();
+            }
+            release.countDown();
+            StoreTestUtil.waitCommitLogReput(store);
+            Thread.sleep(100);
+            return arrivings;
+        } finally {
+            release.countDown();
+            store.shutdown();
+            store.destroy();
+            UtilAll.deleteFile(new File(storePath));
+        }
+    }
+
     private class MyMessageArrivingListener implements MessageArrivingListener {
         @Override
         public void arriving(String topic, int queueId, long logicOffset, long tagsCode, long msgStoreTime,
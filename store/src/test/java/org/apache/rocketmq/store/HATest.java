@@ -19,6 +19,7 @@ package org.apache.rocketmq.store;
 
 import org.apache.rocketmq.common.BrokerConfig;
 import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.running.RunningStats;
 import org.apache.rocketmq.store.config.BrokerRole;
 import org.apache.rocketmq.store.config.FlushDiskType;
 import org.apache.rocketmq.store.config.MessageStoreConfig;
@@ -34,6 +35,7 @@ import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.HashMap;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -119,6 +121,68 @@ public class HATest {
         }
     }
 
+    @Test
+    public void testHandleHAWithQuorum() {
+        QUEUE_TOTAL = 1;
+        MessageBody = StoreMessage.getBytes();
+
+        messageStore.putMessage(buildMessage());
+
+        HashMap<String, String> runtimeInfo = messageStore.getRuntimeInfo();
+        assertThat(runtimeInfo).containsKey(RunningStats.haQuorumAckOffset.name());
+        boolean foundSlaveLag = false;
+        for (String key : runtimeInfo.keySet()) {
+            if (key.startsWith(RunningStats.haSlaveLag.name())) {
+                foundSlaveLag = true;
+            }
+        }
+        assertTrue(foundSlaveLag);
+
+        // only one slave is connected, a quorum of two can never be satisfied
+        masterMessageStoreConfig.setHaSyncReplicaQuorum(2);
+        PutMessageResult result = messageStore.putMessage(buildMessage());
+        assertThat(result.getPutMessageStatus()).isEqualTo(PutMessageStatus.SLAVE_NOT_AVAILABLE);
+    }
+
+    @Test
+    public void testHandleHAWithCompression() throws Exception {
+        masterMessageStoreConfig.setBrokerRole(BrokerRole.ASYNC_MASTER);
+        masterMessageStoreConfig.setHaTransferCompressEnable(true);
+        slaveStoreConfig.setHaTransferCompressEnable(true);
+
+        // reconnect the slave so that the master compresses the new connection
+        slaveMessageStore.shutdown();
+        slaveMessageStore = buildMessageStore(slaveStoreConfig, 1L);
+        assertTrue(slaveMessageStore.load());
+        slaveMessageStore.updateHaMasterAddress("127.0.0.1:10912");
+        slaveMessageStore.start();
+
+        long totalMsgs = 10;
+        QUEUE_TOTAL = 1;
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 64; i++) {
+            body.append(StoreMessage);
+        }
+        MessageBody = body.toString().getBytes();
+        for (long i = 0; i < totalMsgs; i++) {
+            messageStore.putMessage(buildMessage());
+        }
+
+        for (int i = 0; i < 200 && slaveMessageStore.getMaxPhyOffset() < messageStore.getMaxPhyOffset(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(messageStore.getMaxPhyOffset(), slaveMessageStore.getMaxPhyOffset());
+
+        boolean foundCompress = false;
+        for (String key : messageStore.getRuntimeInfo().keySet()) {
+            if (key.startsWith(RunningStats.haTransferCompress.name())) {
+                foundCompress = true;
+            }
+        }
+        assertTrue(foundCompress);
+        assertThat(slaveMessageStore.getRuntimeInfo()).containsKey(RunningStats.haTransferCompress.name());
+    }
+
     @After
     public void destroy() throws Exception{
         Thread.sleep(5000L);
@@ -19,12 +19,19 @@ package org.apache.rocketmq.store.dledger;
 import io.openmessaging.storage.dledger.DLedgerServer;
 import io.openmessaging.storage.dledger.store.file.DLedgerMmapFileStore;
 import io.openmessaging.storage.dledger.store.file.MmapFileList;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.common.message.Message;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageExtBatch;
 import org.apache.rocketmq.store.DefaultMessageStore;
 import org.apache.rocketmq.store.GetMessageResult;
 import org.apache.rocketmq.store.GetMessageStatus;
@@ -175,6 +182,151 @@ public class DLedgerCommitlogTest extends MessageStoreTestBase {
     }
 
 
+    @Test
+    public void testAsyncPutAndGetMessage() throws Exception {
+        String base =  createBaseDir();
+        String peers = String.format("n0-localhost:%d", nextPort());
+        String group = UUID.randomUUID().toString();
+        DefaultMessageStore messageStore = createDledgerMessageStore(base, group, "n0", peers, null, false, 0);
+        Thread.sleep(1000);
+        String topic = UUID.randomUUID().toString();
+
+        List<CompletableFuture<PutMessageResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            MessageExtBrokerInner msgInner =  buildMessage();
+            msgInner.setTopic(topic);
+            msgInner.setQueueId(0);
+            futures.add(messageStore.asyncPutMessage(msgInner));
+        }
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            messages.add(new Message(topic, "TAG1", ("body" + i).getBytes()));
+        }
+        MessageExtBatch messageExtBatch = new MessageExtBatch();
+        messageExtBatch.setTopic(topic);
+        messageExtBatch.setQueueId(0);
+        messageExtBatch.setBody(MessageDecoder.encodeMessages(messages));
+        messageExtBatch.setBornTimestamp(System.currentTimeMillis());
+        messageExtBatch.setStoreHost(new InetSocketAddress("127.0.0.1", 125));
+        messageExtBatch.setBornHost(new InetSocketAddress("127.0.0.1", 126));
+        PutMessageResult batchResult = messageStore.asyncPutMessages(messageExtBatch).get(3, TimeUnit.SECONDS);
+        Assert.assertEquals(PutMessageStatus.PUT_OK, batchResult.getPutMessageStatus());
+        Assert.assertEquals(10, batchResult.getAppendMessageResult().getLogicsOffset());
+
+        for (int i = 0; i < futures.size(); i++) {
+            PutMessageResult putMessageResult = futures.get(i).get(3, TimeUnit.SECONDS);
+            Assert.assertEquals(PutMessageStatus.PUT_OK, putMessageResult.getPutMessageStatus());
+            Assert.assertEquals(i, putMessageResult.getAppendMessageResult().getLogicsOffset());
+        }
+        Thread.sleep(100);
+        Assert.assertEquals(15, messageStore.getMaxOffsetInQueue(topic, 0));
+        Assert.assertEquals(0, messageStore.dispatchBehindBytes());
+
+        GetMessageResult getMessageResult =  messageStore.getMessage("group", topic, 0, 0, 32, null);
+        Assert.assertEquals(GetMessageStatus.FOUND, getMessageResult.getStatus());
+        for (int i = 0; i < futures.size(); i++) {
+            MessageExt messageExt = MessageDecoder.decode(getMessageResult.getMessageBufferList().get(i));
+            Assert.assertEquals(futures.get(i).get().getAppendMessageResult().getMsgId(), messageExt.getMsgId());
+        }
+        getMessageResult.release();
+        messageStore.destroy();
+        messageStore.shutdown();
+    }
+
+    @Test
+    public void testBatchPutAndGetMessages() throws Exception {
+        String base =  createBaseDir();
+        String peers = String.format("n0-localhost:%d", nextPort());
+        String group = UUID.randomUUID().toString();
+        DefaultMessageStore messageStore = createDledgerMessageStore(base, group, "n0", peers, null, false, 0);
+        Thread.sleep(1000);
+        String topic = UUID.randomUUID().toString();
+
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Message msg = new Message(topic, "TAG1", ("body" + i).getBytes());
+            messages.add(msg);
+        }
+        MessageExtBatch messageExtBatch = new MessageExtBatch();
+        messageExtBatch.setTopic(topic);
+        messageExtBatch.setQueueId(0);
+        messageExtBatch.setBody(MessageDecoder.encodeMessages(messages));
+        messageExtBatch.setBornTimestamp(System.currentTimeMillis());
+        messageExtBatch.setStoreHost(new InetSocketAddress("127.0.0.1", 125));
+        messageExtBatch.setBornHost(new InetSocketAddress("127.0.0.1", 126));
+
+        PutMessageResult putMessageResult = messageStore.putMessages(messageExtBatch);
+        Assert.assertEquals(PutMessageStatus.PUT_OK, putMessageResult.getPutMessageStatus());
+        Assert.assertEquals(10, putMessageResult.getAppendMessageResult().getMsgNum());
+        Assert.assertEquals(0, putMessageResult.getAppendMessageResult().getLogicsOffset());
+
+        doPutMessages(messageStore, topic, 0, 5, 10);
+        Thread.sleep(100);
+        Assert.assertEquals(15, messageStore.getMaxOffsetInQueue(topic, 0));
+        Assert.assertEquals(0, messageStore.dispatchBehindBytes());
+
+        String[] msgIds = putMessageResult.getAppendMessageResult().getMsgId().split(",");
+        GetMessageResult getMessageResult = messageStore.getMessage("group", topic, 0, 0, 32, null);
+        Assert.assertEquals(GetMessageStatus.FOUND, getMessageResult.getStatus());
+        Assert.assertEquals(15, getMessageResult.getMessageBufferList().size());
+        for (int i = 0; i < 10; i++) {
+            MessageExt messageExt = MessageDecoder.decode(getMessageResult.getMessageBufferList().get(i));
+            Assert.assertEquals(i, messageExt.getQueueOffset());
+            Assert.assertEquals(msgIds[i], messageExt.getMsgId());
+            Assert.assertEquals("body" + i, new String(messageExt.getBody()));
+        }
+        getMessageResult.release();
+        messageStore.shutdown();
+
+        //the batch entry is split into messages again when recovering
+        messageStore = createDledgerMessageStore(base, group, "n0", peers, null, true, 0);
+        Assert.assertEquals(15, messageStore.getMaxOffsetInQueue(topic, 0));
+        doGetMessages(messageStore, topic, 0, 15, 0);
+        messageStore.destroy();
+        messageStore.shutdown();
+    }
+
+    @Test
+    public void testCoalescedPutMessage() throws Exception {
+        String base =  createBaseDir();
+        String peers = String.format("n0-localhost:%d", nextPort());
+        String group = UUID.randomUUID().toString();
+        final DefaultMessageStore messageStore = createDledgerMessageStore(base, group, "n0", peers, null, false, 0);
+        messageStore.getMessageStoreConfig().setdLegerCoalescePutEnable(true);
+        Thread.sleep(1000);
+        final String topic = UUID.randomUUID().toString();
+
+        final int threadNum = 8;
+        final int msgNumPerThread = 50;
+        final AtomicInteger okNum = new AtomicInteger(0);
+        final CountDownLatch latch = new CountDownLatch(threadNum);
+        for (int i = 0; i < threadNum; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < msgNumPerThread; j++) {
+                        MessageExtBrokerInner msgInner = buildMessage();
+                        msgInner.setTopic(topic);
+                        msgInner.setQueueId(0);
+                        if (messageStore.putMessage(msgInner).getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+                            okNum.incrementAndGet();
+                        }
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+
+        Assert.assertEquals(threadNum * msgNumPerThread, okNum.get());
+        Thread.sleep(100);
+        Assert.assertEquals(threadNum * msgNumPerThread, messageStore.getMaxOffsetInQueue(topic, 0));
+        Assert.assertEquals(0, messageStore.dispatchBehindBytes());
+        doGetMessages(messageStore, topic, 0, threadNum * msgNumPerThread, 0);
+        messageStore.destroy();
+        messageStore.shutdown();
+    }
+
     @Test
     public void testCommittedPos() throws Exception {
         String peers = String.format("n0-localhost:%d;n1-localhost:%d", nextPort(), nextPort());
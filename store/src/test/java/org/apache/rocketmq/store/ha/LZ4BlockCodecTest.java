@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.ha;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LZ4BlockCodecTest {
+    private final LZ4BlockCodec codec = new LZ4BlockCodec();
+
+    @Test
+    public void testRoundTripCompressible() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("TopicTest,TagA,KEY").append(i % 17).append(";Hello RocketMQ ");
+        }
+        byte[] src = sb.toString().getBytes();
+
+        byte[] compressed = roundTrip(src);
+        assertThat(compressed.length).isLessThan(src.length / 4);
+    }
+
+    @Test
+    public void testRoundTripRandom() {
+        Random random = new Random(0);
+        for (int size : new int[] {0, 1, 5, 12, 13, 100, 4096, 32 * 1024}) {
+            byte[] src = new byte[size];
+            random.nextBytes(src);
+            roundTrip(src);
+        }
+    }
+
+    @Test
+    public void testRoundTripLongRuns() {
+        byte[] src = new byte[70000];
+        Arrays.fill(src, 0, 30000, (byte) 'a');
+        for (int i = 30000; i < src.length; i++) {
+            src[i] = (byte) (i % 3);
+        }
+        roundTrip(src);
+    }
+
+    @Test
+    public void testDecompressMalformed() {
+        byte[] src = "Once, there was a chance for me! Once, there was a chance for me!".getBytes();
+        byte[] compressed = new byte[LZ4BlockCodec.maxCompressedLength(src.length)];
+        int compressedSize = codec.compress(src, 0, src.length, compressed, 0);
+
+        byte[] dest = new byte[src.length - 1];
+        assertThat(LZ4BlockCodec.decompress(compressed, 0, compressedSize, dest, 0, dest.length)).isEqualTo(-1);
+    }
+
+    private byte[] roundTrip(byte[] src) {
+        byte[] compressed = new byte[LZ4BlockCodec.maxCompressedLength(src.length)];
+        int compressedSize = codec.compress(src, 0, src.length, compressed, 0);
+        assertThat(compressedSize).isLessThanOrEqualTo(compressed.length);
+
+        byte[] dest = new byte[src.length];
+        int size = LZ4BlockCodec.decompress(compressed, 0, compressedSize, dest, 0, dest.length);
+        assertThat(size).isEqualTo(src.length);
+        assertThat(dest).isEqualTo(src);
+        return Arrays.copyOf(compressed, compressedSize);
+    }
+}
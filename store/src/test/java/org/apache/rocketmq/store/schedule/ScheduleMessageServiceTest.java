@@ -163,6 +163,33 @@ public class ScheduleMessageServiceTest {
 
     }
 
+    @Test
+    public void deliverDelayedMessageInBatchTest() throws Exception {
+        int realQueueId = 1;
+        int msgNum = 20;
+        for (int i = 0; i < msgNum; i++) {
+            MessageExtBrokerInner msg = buildMessage();
+            msg.setQueueId(realQueueId);
+            msg.setDelayTimeLevel(1);
+            assertThat(messageStore.putMessage(msg).isOk()).isTrue();
+        }
+        StoreTestUtil.waitCommitLogReput(messageStore);
+        assertThat(messageStore.getMaxOffsetInQueue(topic, realQueueId)).isEqualTo(0);
+
+        long begin = System.currentTimeMillis();
+        while (messageStore.getMaxOffsetInQueue(topic, realQueueId) < msgNum
+            && System.currentTimeMillis() - begin < 15000) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        assertThat(messageStore.getMaxOffsetInQueue(topic, realQueueId)).isEqualTo(msgNum);
+
+        HashMap<String, String> stats = new HashMap<String, String>();
+        scheduleMessageService.buildRunningStats(stats);
+        assertThat(stats.get("scheduleMessageOffset_1")).isEqualTo(msgNum + "," + msgNum);
+        assertThat(stats).containsKey("scheduleMessageLag_1");
+        assertThat(scheduleMessageService.getDeliverLag(1)).isGreaterThanOrEqualTo(0);
+    }
+
     /**
      * add some [error/no use] code test
      */
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.UUID;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.running.RunningStats;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.GetMessageResult;
+import org.apache.rocketmq.store.GetMessageStatus;
+import org.apache.rocketmq.store.MessageArrivingListener;
+import org.apache.rocketmq.store.MessageExtBrokerInner;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.PutMessageStatus;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimerMessageStoreTest {
+    private static final String TOPIC = "timer_topic_test";
+
+    private final String storePath = System.getProperty("user.home") + File.separator + "timer_test#" + UUID.randomUUID();
+    private MessageStoreConfig messageStoreConfig;
+    private DefaultMessageStore messageStore;
+
+    @Before
+    public void init() throws Exception {
+        messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 1024);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 20);
+        messageStoreConfig.setMessageIndexEnable(false);
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setTimerWheelEnable(true);
+        messageStoreConfig.setTimerPrecisionMs(100);
+        // a window of 2 seconds, longer delays have to be rolled over
+        messageStoreConfig.setTimerWheelSlots(20);
+        messageStoreConfig.setTimerMaxDelaySec(60);
+        messageStoreConfig.setMappedFileSizeTimerLog(TimerLog.UNIT_SIZE * 1024);
+        messageStoreConfig.setFlushDelayOffsetInterval(200);
+        messageStore = createMessageStore();
+    }
+
+    @After
+    public void destroy() {
+        messageStore.shutdown();
+        messageStore.destroy();
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    private DefaultMessageStore createMessageStore() throws Exception {
+        DefaultMessageStore store = new DefaultMessageStore(messageStoreConfig,
+            new BrokerStatsManager("TimerTest"), new MyMessageArrivingListener(), new BrokerConfig());
+        assertThat(store.load()).isTrue();
+        store.start();
+        return store;
+    }
+
+    @Test
+    public void testDeliverAtTimestamp() throws Exception {
+        long now = System.currentTimeMillis();
+        assertThat(messageStore.putMessage(buildMessage(0, now + 600)).isOk()).isTrue();
+        // beyond the wheel window
+        assertThat(messageStore.putMessage(buildMessage(1, now + 3000)).isOk()).isTrue();
+        // already due, goes to the real topic directly
+        PutMessageResult result = messageStore.putMessage(buildMessage(2, now - 1000));
+        assertThat(result.isOk()).isTrue();
+
+        assertThat(waitMessage(2, 1000)).isNotNull();
+        assertThat(getMessage(0, 0)).isNull();
+
+        MessageExt msg = waitMessage(0, 5000);
+        assertThat(msg).isNotNull();
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(now + 600);
+        assertThat(msg.getTopic()).isEqualTo(TOPIC);
+        assertThat(msg.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS)).isNull();
+        assertThat(new String(msg.getBody())).isEqualTo("timer-0");
+        assertThat(getMessage(1, 0)).isNull();
+
+        msg = waitMessage(1, 8000);
+        assertThat(msg).isNotNull();
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(now + 3000);
+        assertThat(new String(msg.getBody())).isEqualTo("timer-1");
+
+        Map<String, String> stats = messageStore.getRuntimeInfo();
+        assertThat(stats).containsKey(RunningStats.timerReadTimeMs.name());
+        assertThat(stats.get(RunningStats.timerEnqueueOffset.name())).isEqualTo("2,2");
+    }
+
+    @Test
+    public void testIllegalDeliverTime() {
+        long now = System.currentTimeMillis();
+        PutMessageResult result = messageStore.putMessage(buildMessage(0, now + 61 * 1000));
+        assertThat(result.getPutMessageStatus()).isEqualTo(PutMessageStatus.MESSAGE_ILLEGAL);
+
+        MessageExtBrokerInner msg = buildMessage(0, now);
+        MessageAccessor.putProperty(msg, MessageConst.PROPERTY_TIMER_DELIVER_MS, "abc");
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+        result = messageStore.putMessage(msg);
+        assertThat(result.getPutMessageStatus()).isEqualTo(PutMessageStatus.MESSAGE_ILLEGAL);
+    }
+
+    @Test
+    public void testMaxDelayWithinFileReservedTime() {
+        messageStoreConfig.setFileReservedTime(2);
+        messageStoreConfig.setTimerMaxDelaySec(3 * 3600);
+        TimerMessageStore timerMessageStore = messageStore.getTimerMessageStore();
+        assertThat(timerMessageStore.getMaxDelayMs()).isEqualTo(3600 * 1000L);
+
+        long now = System.currentTimeMillis();
+        PutMessageResult result = messageStore.putMessage(buildMessage(0, now + 3600 * 1000L + 1000));
+        assertThat(result.getPutMessageStatus()).isEqualTo(PutMessageStatus.MESSAGE_ILLEGAL);
+        result = messageStore.putMessage(buildMessage(0, now + 3600 * 1000L - 1000));
+        assertThat(result.getPutMessageStatus()).isEqualTo(PutMessageStatus.PUT_OK);
+    }
+
+    @Test
+    public void testRecoverPendingTimers() throws Exception {
+        long now = System.currentTimeMillis();
+        assertThat(messageStore.putMessage(buildMessage(0, now + 2500)).isOk()).isTrue();
+        Thread.sleep(500);
+        assertThat(messageStore.getTimerMessageStore().getEnqueueOffset()).isEqualTo(1);
+
+        messageStore.shutdown();
+        messageStore = createMessageStore();
+        assertThat(messageStore.getTimerMessageStore().getEnqueueOffset()).isEqualTo(1);
+        assertThat(getMessage(0, 0)).isNull();
+
+        MessageExt msg = waitMessage(0, 6000);
+        assertThat(msg).isNotNull();
+        assertThat(new String(msg.getBody())).isEqualTo("timer-0");
+        // delivered exactly once
+        assertThat(getMessage(0, 1)).isNull();
+    }
+
+    private MessageExt waitMessage(int queueId, long timeoutMs) throws InterruptedException {
+        long begin = System.currentTimeMillis();
+        while (System.currentTimeMillis() - begin < timeoutMs) {
+            MessageExt msg = getMessage(queueId, 0);
+            if (msg != null) {
+                return msg;
+            }
+            Thread.sleep(50);
+        }
+        return null;
+    }
+
+    private MessageExt getMessage(int queueId, long offset) {
+        GetMessageResult result = messageStore.getMessage("timerGroup", TOPIC, queueId, offset, 1, null);
+        try {
+            if (result == null || result.getStatus() != GetMessageStatus.FOUND) {
+                return null;
+            }
+            ByteBuffer byteBuffer = result.getMessageBufferList().get(0);
+            return MessageDecoder.decode(byteBuffer);
+        } finally {
+            if (result != null) {
+                result.release();
+            }
+        }
+    }
+
+    private MessageExtBrokerInner buildMessage(int queueId, long deliverMs) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(TOPIC);
+        msg.setQueueId(queueId);
+        msg.setTags("timer_tag");
+        msg.setBody(("timer-" + queueId).getBytes());
+        msg.setDeliverTimeMs(deliverMs);
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+        msg.setBornTimestamp(System.currentTimeMillis());
+        try {
+            msg.setBornHost(new InetSocketAddress(InetAddress.getLocalHost(), 8123));
+            msg.setStoreHost(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return msg;
+    }
+
+    private class MyMessageArrivingListener implements MessageArrivingListener {
+        @Override
+        public void arriving(String topic, int queueId, long logicOffset, long tagsCode, long msgStoreTime,
+            byte[] filterBitMap, Map<String, String> properties) {
+        }
+    }
+}
@@ -39,6 +39,8 @@ import org.apache.rocketmq.common.protocol.body.ClusterInfo;
 import org.apache.rocketmq.common.protocol.body.ConsumeMessageDirectlyResult;
 import org.apache.rocketmq.common.protocol.body.ConsumeStatsList;
 import org.apache.rocketmq.common.protocol.body.ConsumerConnection;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagHistory;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagList;
 import org.apache.rocketmq.common.protocol.body.ConsumerRunningInfo;
 import org.apache.rocketmq.common.protocol.body.GroupList;
 import org.apache.rocketmq.common.protocol.body.KVTable;
@@ -239,6 +241,13 @@ public class DefaultMQAdminExt extends ClientConfig implements MQAdminExt {
         return defaultMQAdminExtImpl.examineConsumeStats(consumerGroup, topic);
     }
 
+    @Override
+    public ConsumerLagHistory examineConsumerLagHistory(
+        String consumerGroup) throws RemotingException, MQClientException, InterruptedException,
+        MQBrokerException {
+        return defaultMQAdminExtImpl.examineConsumerLagHistory(consumerGroup);
+    }
+
     @Override
     public ClusterInfo examineBrokerClusterInfo() throws InterruptedException, RemotingConnectException, RemotingTimeoutException,
         RemotingSendRequestException, MQBrokerException {
@@ -462,6 +471,13 @@ public class DefaultMQAdminExt extends ClientConfig implements MQAdminExt {
         return this.defaultMQAdminExtImpl.fetchConsumeStatsInBroker(brokerAddr, isOrder, timeoutMillis);
     }
 
+    @Override
+    public ConsumerLagList fetchAllConsumerLagInBroker(final String brokerAddr, long timeoutMillis)
+        throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException, MQClientException,
+        InterruptedException {
+        return this.defaultMQAdminExtImpl.fetchAllConsumerLagInBroker(brokerAddr, timeoutMillis);
+    }
+
     @Override
     public Set<String> getTopicClusterList(
         final String topic) throws InterruptedException, MQBrokerException, MQClientException, RemotingException {
@@ -29,6 +29,7 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.rocketmq.client.QueryResult;
 import org.apache.rocketmq.client.admin.MQAdminExtInner;
@@ -62,6 +63,9 @@ import org.apache.rocketmq.common.protocol.body.ClusterInfo;
 import org.apache.rocketmq.common.protocol.body.ConsumeMessageDirectlyResult;
 import org.apache.rocketmq.common.protocol.body.ConsumeStatsList;
 import org.apache.rocketmq.common.protocol.body.ConsumerConnection;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagHistory;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagList;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagSample;
 import org.apache.rocketmq.common.protocol.body.ConsumerRunningInfo;
 import org.apache.rocketmq.common.protocol.body.GroupList;
 import org.apache.rocketmq.common.protocol.body.KVTable;
@@ -293,6 +297,38 @@ public class DefaultMQAdminExtImpl implements MQAdminExt, MQAdminExtInner {
         return result;
     }
 
+    @Override
+    public ConsumerLagHistory examineConsumerLagHistory(
+        String consumerGroup) throws RemotingException, MQClientException, InterruptedException,
+        MQBrokerException {
+        String retryTopic = MixAll.getRetryTopic(consumerGroup);
+        TopicRouteData topicRouteData = this.examineTopicRouteInfo(retryTopic);
+        // brokers sample at multiples of the same interval, samples taken at the same time are added up
+        TreeMap<Long, ConsumerLagSample> sampleTable = new TreeMap<Long, ConsumerLagSample>();
+
+        for (BrokerData bd : topicRouteData.getBrokerDatas()) {
+            String addr = bd.selectBrokerAddr();
+            if (addr != null) {
+                ConsumerLagHistory consumerLagHistory =
+                    this.mqClientInstance.getMQClientAPIImpl().getConsumerLagHistory(addr, consumerGroup, timeoutMillis);
+                for (ConsumerLagSample sample : consumerLagHistory.getSampleList()) {
+                    ConsumerLagSample total = sampleTable.get(sample.getTimestamp());
+                    if (null == total) {
+                        sampleTable.put(sample.getTimestamp(), sample);
+                    } else {
+                        total.setDiffTotal(total.getDiffTotal() + sample.getDiffTotal());
+                        total.setLagMillis(Math.max(total.getLagMillis(), sample.getLagMillis()));
+                    }
+                }
+            }
+        }
+
+        ConsumerLagHistory result = new ConsumerLagHistory();
+        result.setConsumerGroup(consumerGroup);
+        result.getSampleList().addAll(sampleTable.values());
+        return result;
+    }
+
     @Override
     public ClusterInfo examineBrokerClusterInfo() throws InterruptedException, MQBrokerException, RemotingTimeoutException,
         RemotingSendRequestException, RemotingConnectException {
@@ -914,6 +950,13 @@ public class DefaultMQAdminExtImpl implements MQAdminExt, MQAdminExtInner {
         return this.mqClientInstance.getMQClientAPIImpl().fetchConsumeStatsInBroker(brokerAddr, isOrder, timeoutMillis);
     }
 
+    @Override
+    public ConsumerLagList fetchAllConsumerLagInBroker(final String brokerAddr, long timeoutMillis)
+        throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException, MQClientException,
+        InterruptedException {
+        return this.mqClientInstance.getMQClientAPIImpl().getAllConsumerLag(brokerAddr, timeoutMillis);
+    }
+
     @Override
     public Set<String> getTopicClusterList(
         final String topic) throws InterruptedException, MQBrokerException, MQClientException,
@@ -29,6 +29,8 @@ import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.protocol.body.Connection;
 import org.apache.rocketmq.common.protocol.body.ConsumerConnection;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagHistory;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagSample;
 import org.apache.rocketmq.common.protocol.body.ConsumerRunningInfo;
 import org.apache.rocketmq.common.protocol.body.TopicList;
 import org.apache.rocketmq.common.protocol.heartbeat.ConsumeType;
@@ -68,6 +70,10 @@ public class ConsumerProgressSubCommand implements SubCommand {
         optionShowClientIP.setRequired(false);
         options.addOption(optionShowClientIP);
 
+        Option optionShowLagHistory = new Option("l", "showLagHistory", false, "Show diff total sampled by brokers over time");
+        optionShowLagHistory.setRequired(false);
+        options.addOption(optionShowLagHistory);
+
         return options;
     }
 
@@ -157,6 +163,20 @@ public class ConsumerProgressSubCommand implements SubCommand {
                 System.out.printf("%n");
                 System.out.printf("Consume TPS: %.2f%n", consumeStats.getConsumeTps());
                 System.out.printf("Diff Total: %d%n", diffTotal);
+
+                if (commandLine.hasOption('l')) {
+                    ConsumerLagHistory consumerLagHistory = defaultMQAdminExt.examineConsumerLagHistory(consumerGroup);
+                    System.out.printf("%n%-20s  %-20s  %s%n",
+                        "#Time",
+                        "#Diff Total",
+                        "#Lag Time(ms)");
+                    for (ConsumerLagSample sample : consumerLagHistory.getSampleList()) {
+                        System.out.printf("%-20s  %-20d  %d%n",
+                            UtilAll.formatDate(new Date(sample.getTimestamp()), UtilAll.YYYY_MM_DD_HH_MM_SS),
+                            sample.getDiffTotal(),
+                            sample.getLagMillis());
+                    }
+                }
             } else {
                 System.out.printf("%-32s  %-6s  %-24s %-5s  %-14s  %-7s  %s%n",
                     "#Group",
@@ -47,6 +47,8 @@ import org.apache.rocketmq.common.protocol.body.Connection;
 import org.apache.rocketmq.common.protocol.body.ConsumeStatsList;
 import org.apache.rocketmq.common.protocol.body.ConsumeStatus;
 import org.apache.rocketmq.common.protocol.body.ConsumerConnection;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagHistory;
+import org.apache.rocketmq.common.protocol.body.ConsumerLagSample;
 import org.apache.rocketmq.common.protocol.body.ConsumerRunningInfo;
 import org.apache.rocketmq.common.protocol.body.GroupList;
 import org.apache.rocketmq.common.protocol.body.KVTable;
@@ -189,6 +191,11 @@ public class DefaultMQAdminExtTest {
         consumeStats.setOffsetTable(stats);
         when(mQClientAPIImpl.getConsumeStats(anyString(), anyString(), anyString(), anyLong())).thenReturn(consumeStats);
 
+        ConsumerLagHistory consumerLagHistory = new ConsumerLagHistory();
+        consumerLagHistory.getSampleList().add(new ConsumerLagSample(60000, 100, 2000));
+        consumerLagHistory.getSampleList().add(new ConsumerLagSample(120000, 50, 1000));
+        when(mQClientAPIImpl.getConsumerLagHistory(anyString(), anyString(), anyLong())).thenReturn(consumerLagHistory);
+
         ConsumerConnection consumerConnection = new ConsumerConnection();
         consumerConnection.setConsumeType(ConsumeType.CONSUME_PASSIVELY);
         consumerConnection.setMessageModel(MessageModel.CLUSTERING);
@@ -280,6 +287,15 @@ public class DefaultMQAdminExtTest {
         assertThat(consumeStats.getConsumeTps()).isEqualTo(1234);
     }
 
+    @Test
+    public void testExamineConsumerLagHistory() throws InterruptedException, RemotingException, MQClientException, MQBrokerException {
+        ConsumerLagHistory consumerLagHistory = defaultMQAdminExt.examineConsumerLagHistory("default-consumer-group");
+        assertThat(consumerLagHistory.getConsumerGroup()).isEqualTo("default-consumer-group");
+        assertThat(consumerLagHistory.getSampleList()).hasSize(2);
+        assertThat(consumerLagHistory.getSampleList().get(0).getTimestamp()).isEqualTo(60000);
+        assertThat(consumerLagHistory.getSampleList().get(1).getDiffTotal()).isEqualTo(50);
+    }
+
     @Test
     public void testExamineConsumerConnectionInfo() throws InterruptedException, RemotingException, MQClientException, MQBrokerException {
         ConsumerConnection consumerConnection = defaultMQAdminExt.examineConsumerConnectionInfo("default-consumer-group");